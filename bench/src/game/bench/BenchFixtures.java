@@ -0,0 +1,124 @@
+package game.bench;
+
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Random;
+
+import game.ImageUtils;
+import game.KeyHandler;
+import game.World;
+import game.GameConfig;
+import game.map.CollisionMap;
+import game.path.PathService;
+
+/**
+ * Shared setup code for the benchmarks: worlds with synthetic maps of a
+ * given size, generated collision layers and offscreen render targets of a
+ * given image type.
+ */
+final class BenchFixtures {
+
+    private BenchFixtures() {
+        // Static helpers only
+    }
+
+    /**
+     * Creates a world with a synthetic square map and some NPCs.
+     *
+     * @param mapSize Edge length of the map in pixels
+     * @param npcs Number of NPCs
+     * @param keys Key state read by the player
+     * @return The world, with the player near the map center
+     */
+    static World world(int mapSize, int npcs, KeyHandler keys) {
+        World world = new World(keys, 0);
+        world.mapManager.loadMap(syntheticMap(mapSize));
+        // Everything walkable, sized to the synthetic map
+        world.collisionMap = new CollisionMap(world.tileSize, mapSize / world.tileSize, mapSize / world.tileSize);
+        world.paths = new PathService(world.collisionMap, GameConfig.PATH_CLUSTER_SIZE,
+                GameConfig.PATH_THREADS, GameConfig.PATH_CACHE);
+        world.spawnNpcs(npcs);
+        world.setCameraPosition(mapSize / 2, mapSize / 2);
+        world.publishSnapshot();
+        return world;
+    }
+
+    /**
+     * Creates a collision layer that is hard to path through: rooms of 40x40
+     * tiles whose walls have a gap at each corner, plus 20% of the tiles
+     * blocked at random.
+     *
+     * @param tiles Edge length of the layer in tiles
+     * @param seed Random seed
+     * @return The collision layer
+     */
+    static CollisionMap pathMap(int tiles, long seed) {
+        Random random = new Random(seed);
+        boolean[] blocked = new boolean[tiles * tiles];
+        for (int row = 0; row < tiles; row++) {
+            for (int col = 0; col < tiles; col++) {
+                boolean wall = (col % 40 == 39 && row % 40 > 4 && row % 40 < 35)
+                        || (row % 40 == 39 && col % 40 > 4 && col % 40 < 35);
+                blocked[row * tiles + col] = wall || random.nextDouble() < 0.2;
+            }
+        }
+        return CollisionMap.build(48, tiles, tiles, (col, row) -> blocked[row * tiles + col]);
+    }
+
+    /**
+     * Creates an opaque map image with a checker pattern, so blits are not
+     * optimized away as solid fills.
+     *
+     * @param size Edge length in pixels
+     * @return The map image
+     */
+    static BufferedImage syntheticMap(int size) {
+        BufferedImage map = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+        int[] pixels = ((DataBufferInt) map.getRaster().getDataBuffer()).getData();
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                pixels[y * size + x] = ((x >> 4) + (y >> 4)) % 2 == 0 ? 0x3C8D2F : 0x4FA33E;
+            }
+        }
+        return map;
+    }
+
+    /**
+     * Creates a translucent tileset image: every tile a different color with
+     * a transparent border, so tiles blend with the layers below them.
+     *
+     * @param size Edge length in pixels
+     * @param tileSize Edge length of a tile
+     * @return The tileset image
+     */
+    static BufferedImage syntheticTileset(int size, int tileSize) {
+        BufferedImage tileset = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+        int[] pixels = ((DataBufferInt) tileset.getRaster().getDataBuffer()).getData();
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                int tile = (y / tileSize) * (size / tileSize) + x / tileSize;
+                boolean border = x % tileSize < 2 || y % tileSize < 2;
+                pixels[y * size + x] = border ? 0 : 0xFF000000 | tile * 0x010307;
+            }
+        }
+        return tileset;
+    }
+
+    /**
+     * Creates an offscreen render target.
+     *
+     * @param type INT_RGB, INT_ARGB or COMPATIBLE (display-compatible opaque image, INT_RGB when headless)
+     * @param width Width in pixels
+     * @param height Height in pixels
+     * @return The render target
+     */
+    static BufferedImage target(String type, int width, int height) {
+        switch (type) {
+            case "INT_RGB":    return new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            case "INT_ARGB":   return new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+            case "COMPATIBLE": return ImageUtils.createCompatibleImage(width, height, Transparency.OPAQUE);
+            default: throw new IllegalArgumentException("Unknown target type: " + type);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package game.bench;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs all game benchmarks with the GC profiler (same as "-prof gc") and
+ * writes the results as JSON to bench/results/, named after the current
+ * git commit, so runs from different commits can be compared side by side
+ * (e.g. with jmh.morethan.io or any JSON diff). Outside a git checkout the
+ * label falls back to a timestamp.
+ *
+ * Usage: java game.bench.BenchmarkRunner [benchmark regex] [commit label]
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws RunnerException {
+        String include = args.length > 0 ? args[0] : "game\\.bench\\..*Benchmark.*";
+        String label = args.length > 1 ? args[1] : System.getProperty("bench.label", defaultLabel());
+
+        File results = new File("bench/results");
+        results.mkdirs();
+        String resultFile = new File(results, "jmh-" + label + ".json").getPath();
+
+        Options options = new OptionsBuilder()
+                .include(include)
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result(resultFile)
+                .build();
+        new Runner(options).run();
+
+        System.out.println("Results written to " + resultFile);
+    }
+
+    /**
+     * @return The short hash of the current git commit, or a timestamp if git is not available
+     */
+    private static String defaultLabel() {
+        try {
+            Process git = new ProcessBuilder("git", "rev-parse", "--short", "HEAD")
+                    .redirectErrorStream(true)
+                    .start();
+            String commit;
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(git.getInputStream(), StandardCharsets.UTF_8))) {
+                commit = reader.readLine();
+            }
+            if (git.waitFor() == 0 && commit != null && !commit.isBlank()) {
+                return commit.trim();
+            }
+        } catch (IOException e) {
+            // No git on the path, use a timestamp
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date());
+    }
+}
@@ -0,0 +1,86 @@
+package game.bench;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import game.KeyHandler;
+import game.RenderSnapshot;
+import game.World;
+import game.light.FogOfWar;
+import game.light.LightingPass;
+
+/**
+ * Measures the lighting and fog of war pass over a full 768x576 frame
+ * (budget: 4 ms) with a growing number of threads, and the fog update
+ * when the player arrives on a new tile.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Djava.awt.headless=true", "-Xmx2g"})
+public class LightingBenchmark {
+
+    @Param({"1", "2", "4"})
+    public int threads;
+
+    @Param({"2048"})
+    public int mapSize;
+
+    private World world;
+    private LightingPass lighting;
+    private RenderSnapshot snapshot;
+    private BufferedImage frame;
+    private Graphics2D g2;
+    private int playerCol, playerRow, toggle;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        world = BenchFixtures.world(mapSize, 0, new KeyHandler());
+        world.fog = new FogOfWar(world.collisionMap.cols, world.collisionMap.rows, 6, world.collisionMap);
+        world.updateFog();
+        world.publishSnapshot();
+        snapshot = world.snapshots.acquire();
+        lighting = new LightingPass(true, true, 90, 5 * world.tileSize, threads);
+        frame = new BufferedImage(world.screenWidth, world.screenHeight, BufferedImage.TYPE_INT_RGB);
+        g2 = frame.createGraphics();
+        playerCol = (world.player.x + world.originalTileSize / 2) / world.tileSize;
+        playerRow = (world.player.y + world.originalTileSize / 2) / world.tileSize;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        g2.dispose();
+        lighting.shutdown();
+    }
+
+    @Benchmark
+    public BufferedImage drawAndLight() {
+        world.draw(g2, snapshot, 0.5);
+        lighting.apply(frame, snapshot, 0.5, 1, world.tileSize, world.originalTileSize / 2);
+        return frame;
+    }
+
+    @Benchmark
+    public FogOfWar fogTileMove() {
+        // Alternates between two neighbouring tiles so every call moves the visible area
+        world.fog.update(playerCol + (toggle ^= 1), playerRow);
+        return world.fog;
+    }
+}
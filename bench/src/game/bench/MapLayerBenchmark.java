@@ -0,0 +1,104 @@
+package game.bench;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import game.KeyHandler;
+import game.MapManager;
+import game.World;
+import game.map.LayeredMap;
+import game.map.TileLayer;
+import game.map.Tileset;
+
+/**
+ * Measures tile layers: drawing the map and the overhead layer with a
+ * growing number of static layers (baked, so the cost should stay flat),
+ * and re-baking after a tile change.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Djava.awt.headless=true", "-Xmx2g"})
+public class MapLayerBenchmark {
+
+    @Param({"0", "4", "16"})
+    public int belowLayers;
+
+    @Param({"2048"})
+    public int mapSize;
+
+    private World world;
+    private BufferedImage target;
+    private Graphics2D g2;
+    private int tileCol, tileRow, toggle;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        world = BenchFixtures.world(mapSize, 0, new KeyHandler());
+        int tiles = mapSize / world.tileSize;
+        Tileset tileset = new Tileset(BenchFixtures.syntheticTileset(384, 16), 16);
+        Random random = new Random(1);
+        List<TileLayer> layers = new ArrayList<>();
+        for (int i = 0; i <= belowLayers; i++) {
+            // The last layer is overhead, every layer a third full
+            TileLayer layer = new TileLayer("layer" + i, i < belowLayers ? TileLayer.Kind.BELOW : TileLayer.Kind.OVERHEAD,
+                    1.0, tiles, tiles);
+            layers.add(layer);
+        }
+        LayeredMap map = new LayeredMap(tileset, world.scale, tiles, tiles, layers, MapManager.CHUNK_SIZE);
+        for (TileLayer layer : layers) {
+            for (int row = 0; row < tiles; row++) {
+                for (int col = 0; col < tiles; col++) {
+                    if (random.nextInt(3) == 0) {
+                        map.setTiles(layer, col, row, col, row, random.nextInt(tileset.count));
+                    }
+                }
+            }
+        }
+        world.mapManager.setLayeredMap(map);
+        world.mapManager.loadMap(BenchFixtures.syntheticMap(mapSize));
+        target = BenchFixtures.target("COMPATIBLE", world.screenWidth, world.screenHeight);
+        g2 = target.createGraphics();
+        tileCol = world.cameraX / world.tileSize + 2;
+        tileRow = world.cameraY / world.tileSize + 2;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        g2.dispose();
+    }
+
+    @Benchmark
+    public BufferedImage mapAndOverheadDraw() {
+        world.mapManager.draw(g2, world.cameraX, world.cameraY);
+        world.mapManager.drawOverhead(g2, world.cameraX, world.cameraY);
+        return target;
+    }
+
+    @Benchmark
+    public MapManager setTileRebake() {
+        // Alternates between two tiles so every call changes something (a below layer if there is one)
+        world.mapManager.setTile("layer0", tileCol, tileRow, toggle ^= 1);
+        return world.mapManager;
+    }
+}
@@ -0,0 +1,134 @@
+package game.bench;
+
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import game.map.CollisionMap;
+import game.path.PathService;
+import game.path.TilePath;
+
+/**
+ * Measures paths per second on a generated 1024x1024-tile collision layer:
+ * plain A* over the whole map, hierarchical A*, cache hits, and a batch of
+ * requests solved on the worker pool. Start and goal pairs are random
+ * walkable tiles at most maxDistance tiles apart on each axis.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Djava.awt.headless=true", "-Xmx2g"})
+public class PathBenchmark {
+
+    // Requests per pooled() batch
+    static final int BATCH = 256;
+
+    @Param({"1024"})
+    public int mapTiles;
+
+    @Param({"16", "32"})
+    public int clusterSize;
+
+    @Param({"64", "1024"})
+    public int maxDistance;
+
+    private CollisionMap map;
+    private PathService service;
+    // Same graph, no cache: every request is a search
+    private PathService uncached;
+    private int[] starts, goals;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        map = BenchFixtures.pathMap(mapTiles, 7);
+        int threads = Runtime.getRuntime().availableProcessors();
+        service = new PathService(map, clusterSize, threads, 4096);
+        uncached = new PathService(map, clusterSize, threads, 0);
+
+        Random random = new Random(3);
+        starts = new int[BATCH];
+        goals = new int[BATCH];
+        for (int i = 0; i < BATCH; i++) {
+            int start = walkableTile(random, random.nextInt(mapTiles), random.nextInt(mapTiles), mapTiles);
+            int col = start % mapTiles, row = start / mapTiles;
+            starts[i] = start;
+            goals[i] = walkableTile(random, col, row, maxDistance);
+        }
+    }
+
+    /**
+     * Picks a random walkable tile at most range tiles from (col, row) on each axis.
+     */
+    private int walkableTile(Random random, int col, int row, int range) {
+        while (true) {
+            int c = Math.max(0, Math.min(mapTiles - 1, col + random.nextInt(2 * range + 1) - range));
+            int r = Math.max(0, Math.min(mapTiles - 1, row + random.nextInt(2 * range + 1) - range));
+            if (!map.isBlocked(c, r)) {
+                return r * mapTiles + c;
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        service.shutdown();
+        uncached.shutdown();
+    }
+
+    private int nextPair() {
+        next = (next + 1) % BATCH;
+        return next;
+    }
+
+    @Benchmark
+    public TilePath direct() {
+        int i = nextPair();
+        return uncached.solveDirect(starts[i], goals[i]);
+    }
+
+    @Benchmark
+    public TilePath hierarchical() {
+        int i = nextPair();
+        return uncached.solve(starts[i], goals[i]);
+    }
+
+    @Benchmark
+    public TilePath cached() {
+        int i = nextPair();
+        return service.find(starts[i] % mapTiles, starts[i] / mapTiles, goals[i] % mapTiles, goals[i] / mapTiles);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void pooled() {
+        CompletableFuture<TilePath>[] requests = newRequests(BATCH);
+        for (int i = 0; i < BATCH; i++) {
+            requests[i] = uncached.request(starts[i] % mapTiles, starts[i] / mapTiles,
+                    goals[i] % mapTiles, goals[i] / mapTiles);
+        }
+        CompletableFuture.allOf(requests).join();
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static CompletableFuture<TilePath>[] newRequests(int count) {
+        return new CompletableFuture[count];
+    }
+}
@@ -0,0 +1,92 @@
+package game.bench;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import game.KeyHandler;
+import game.World;
+
+/**
+ * Benchmarks the drawing hot paths (MapManager.draw and a full World.draw of
+ * the latest snapshot with NPCs) into offscreen targets of different image types,
+ * for several map sizes, and the low-resolution mode (native-size frame
+ * plus one upscale blit) against the full-resolution World.draw.
+ *
+ * The forks run headless so the benchmarks work without a display. There a
+ * display-compatible image is a plain INT_RGB one, so compatible targets
+ * are not measured; compare them with the frame profiler of the running game.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Djava.awt.headless=true", "-Xmx3g"})
+public class RenderBenchmark {
+
+    @Param({"INT_RGB", "INT_ARGB"})
+    public String targetType;
+
+    @Param({"1024", "4096", "8192"})
+    public int mapSize;
+
+    @Param({"0", "1000", "10000"})
+    public int npcs;
+
+    private World world;
+    private BufferedImage target;
+    private Graphics2D g2;
+    // Native-resolution frame for worldDrawLowRes
+    private BufferedImage nativeFrame;
+    private Graphics2D nativeG2;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        world = BenchFixtures.world(mapSize, npcs, new KeyHandler());
+        target = BenchFixtures.target(targetType, world.screenWidth, world.screenHeight);
+        g2 = target.createGraphics();
+        world.mapManager.buildNativeChunks();
+        nativeFrame = BenchFixtures.target(targetType, world.screenWidth / world.scale, world.screenHeight / world.scale);
+        nativeG2 = nativeFrame.createGraphics();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        g2.dispose();
+        nativeG2.dispose();
+    }
+
+    @Benchmark
+    public BufferedImage mapDraw() {
+        world.mapManager.draw(g2, world.cameraX, world.cameraY);
+        return target;
+    }
+
+    @Benchmark
+    public BufferedImage worldDraw() {
+        world.draw(g2, world.snapshots.acquire(), 1.0);
+        return target;
+    }
+
+    @Benchmark
+    public BufferedImage worldDrawLowRes() {
+        world.drawNative(nativeG2, world.snapshots.acquire(), 1.0);
+        g2.drawImage(nativeFrame, 0, 0, world.screenWidth, world.screenHeight, null);
+        return target;
+    }
+}
@@ -0,0 +1,89 @@
+package game.bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import game.KeyHandler;
+import game.World;
+import game.save.SaveFile;
+import game.save.SaveState;
+
+/**
+ * Measures saving and loading: the copy the game thread pays for an
+ * autosave (capture), writing and syncing the file (the autosave thread's
+ * part), reading it back, and loading it into a world.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Djava.awt.headless=true", "-Xmx2g"})
+public class SaveBenchmark {
+
+    @Param({"1000", "100000"})
+    public int npcs;
+
+    @Param({"2048"})
+    public int mapSize;
+
+    private World world;
+    private World target;
+    private final SaveState state = new SaveState();
+    private final SaveState loaded = new SaveState();
+    private final SaveFile file = new SaveFile();
+    private Path path;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        world = BenchFixtures.world(mapSize, npcs, new KeyHandler());
+        for (int i = 0; i < 60; i++) {
+            world.update();
+        }
+        target = BenchFixtures.world(mapSize, 0, new KeyHandler());
+        path = Files.createTempFile("bench", ".sav");
+        file.write(state.capture(world), path);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(path);
+    }
+
+    @Benchmark
+    public SaveState capture() {
+        return state.capture(world);
+    }
+
+    @Benchmark
+    public long write() throws IOException {
+        return file.write(state, path);
+    }
+
+    @Benchmark
+    public SaveState read() throws IOException {
+        return file.read(path, loaded);
+    }
+
+    @Benchmark
+    public World readAndApply() throws IOException {
+        file.read(path, loaded).apply(target);
+        return target;
+    }
+}
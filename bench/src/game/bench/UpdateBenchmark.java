@@ -0,0 +1,68 @@
+package game.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import game.KeyHandler;
+import game.RandomWalkInput;
+import game.World;
+
+/**
+ * Benchmarks the per-tick game logic: the player's input and move phases,
+ * World.updateCamera and a full World.update with NPCs.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Djava.awt.headless=true", "-Xmx2g"})
+public class UpdateBenchmark {
+
+    @Param({"0", "1000", "10000", "50000"})
+    public int npcs;
+
+    @Param({"2048"})
+    public int mapSize;
+
+    private final KeyHandler keys = new KeyHandler();
+    private RandomWalkInput input;
+    private World world;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        world = BenchFixtures.world(mapSize, npcs, keys);
+        input = new RandomWalkInput(1);
+    }
+
+    @Benchmark
+    public void playerUpdate() {
+        input.apply(world.tick++, keys);
+        // The two phases World.update runs for the player
+        world.player.handleInput();
+        world.player.move();
+    }
+
+    @Benchmark
+    public void updateCamera() {
+        world.updateCamera();
+    }
+
+    @Benchmark
+    public void worldUpdate() {
+        input.apply(world.tick, keys);
+        world.update();
+    }
+}
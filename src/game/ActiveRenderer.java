@@ -0,0 +1,140 @@
+package game;
+
+import java.awt.BufferCapabilities;
+import java.awt.Canvas;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Toolkit;
+import java.awt.image.BufferStrategy;
+
+import game.log.Log;
+import game.log.LogCategory;
+import game.metrics.FrameProfiler;
+
+/**
+ * ActiveRenderer draws frames directly from the game thread into a
+ * Canvas BufferStrategy instead of asking Swing to repaint on the EDT.
+ *
+ * On accelerated pipelines the back buffers of the strategy are VolatileImages
+ * living in video memory; the render loop below follows the standard
+ * contentsRestored()/contentsLost() protocol so frames survive surface loss
+ * (mode switches, screen locks, etc).
+ */
+public class ActiveRenderer {
+
+    /**
+     * Something that can draw a full frame into a Graphics2D.
+     */
+    public interface Scene {
+        void drawFrame(Graphics2D g2);
+    }
+
+    // Heavyweight component that owns the buffer strategy
+    private final Canvas canvas;
+    private final Scene scene;
+    // Number of buffers requested (2 = double, 3 = triple buffering)
+    private final int bufferCount;
+    private BufferStrategy strategy;
+    // Receives the time spent presenting (null = not measured)
+    private FrameProfiler profiler;
+
+    /**
+     * Creates a renderer and its canvas. The canvas still has to be added
+     * to a visible container before {@link #init()} is called.
+     *
+     * @param scene The scene drawn every frame
+     * @param width Canvas width in pixels
+     * @param height Canvas height in pixels
+     * @param bufferCount Number of buffers (2 or 3)
+     */
+    public ActiveRenderer(Scene scene, int width, int height, int bufferCount) {
+        this.scene = scene;
+        this.bufferCount = Math.max(2, Math.min(3, bufferCount));
+
+        canvas = new Canvas();
+        canvas.setPreferredSize(new java.awt.Dimension(width, height));
+        canvas.setBackground(Color.black);
+        // We paint ourselves; ignore OS paint requests
+        canvas.setIgnoreRepaint(true);
+        canvas.setFocusable(true);
+    }
+
+    /**
+     * @return The canvas to add to the window
+     */
+    public Canvas getCanvas() {
+        return canvas;
+    }
+
+    /**
+     * Sets the profiler that records how long presenting each frame takes.
+     *
+     * @param profiler The profiler, or null
+     */
+    public void setProfiler(FrameProfiler profiler) {
+        this.profiler = profiler;
+    }
+
+    /**
+     * Creates the buffer strategy. Must be called once the canvas is displayable.
+     */
+    public void init() {
+        canvas.createBufferStrategy(bufferCount);
+        strategy = canvas.getBufferStrategy();
+
+        BufferCapabilities caps = strategy.getCapabilities();
+        Log.info(LogCategory.RENDER, "Active rendering: " + bufferCount + " buffers, page flipping: {}, accelerated: {}",
+                caps.isPageFlipping(), caps.getBackBufferCapabilities().isAccelerated());
+    }
+
+    /**
+     * Renders and presents one frame. Called from the game thread.
+     *
+     * @return true if a frame was presented
+     */
+    public boolean render() {
+        if (strategy == null || !canvas.isDisplayable()) {
+            return false;
+        }
+        long presentNanos = 0;
+        do {
+            do {
+                Graphics2D g2 = (Graphics2D) strategy.getDrawGraphics();
+                try {
+                    // Clear the back buffer, then draw the scene
+                    g2.setColor(canvas.getBackground());
+                    g2.fillRect(0, 0, canvas.getWidth(), canvas.getHeight());
+                    scene.drawFrame(g2);
+                } finally {
+                    g2.dispose();
+                }
+                // Repeat if the back buffer was restored while drawing
+            } while (strategy.contentsRestored());
+
+            long showStart = System.nanoTime();
+            strategy.show();
+            presentNanos += System.nanoTime() - showStart;
+            // Repeat if the contents were lost before they reached the screen
+        } while (strategy.contentsLost());
+
+        // Flush the window system queue (avoids lag on X11)
+        long syncStart = System.nanoTime();
+        Toolkit.getDefaultToolkit().sync();
+        presentNanos += System.nanoTime() - syncStart;
+
+        if (profiler != null) {
+            profiler.record(FrameProfiler.Phase.PRESENT, presentNanos);
+        }
+        return true;
+    }
+
+    /**
+     * Releases the buffer strategy.
+     */
+    public void dispose() {
+        if (strategy != null) {
+            strategy.dispose();
+            strategy = null;
+        }
+    }
+}
@@ -0,0 +1,285 @@
+package game;
+
+import java.awt.Rectangle;
+
+import game.entity.EntityStore;
+
+/**
+ * DirtyRegionTracker decides which parts of the screen have to be redrawn.
+ *
+ * When the camera (as drawn, i.e. interpolated) moved, the map changed or
+ * the tracker was invalidated, everything is dirty. Otherwise only sprites
+ * are compared with the previous frame: an entity whose drawn position or
+ * animation frame changed dirties both its old and its new rectangle, one
+ * that entered or left the view dirties the rectangle it appeared in or left.
+ * If nothing changed the frame can be skipped altogether.
+ *
+ * Dirty rectangles are grown by a margin that covers entities moving
+ * between tracking and drawing (the Swing path paints later, on the EDT),
+ * merged when they overlap, and collapsed into a full redraw when they
+ * cover most of the screen. Works on render snapshots, so it runs on
+ * whichever thread renders, and allocates nothing.
+ */
+public class DirtyRegionTracker {
+
+    // Above this many rectangles they are merged into their bounding box
+    public static final int MAX_RECTS = 16;
+    // Redraw everything once the dirty area exceeds this fraction of the screen
+    static final double FULL_REDRAW_FRACTION = 0.6;
+
+    private final int screenWidth, screenHeight;
+    private final int margin;
+
+    // Dirty rectangles of the current frame (screen coordinates)
+    private final Rectangle[] rects = new Rectangle[MAX_RECTS];
+    private int count;
+    private boolean full;
+
+    // State of the previous frame
+    private volatile boolean valid;
+    private int lastCamX, lastCamY;
+    private long lastMapVersion;
+    private EntityStore lastStore;
+    private int lastPlayerX, lastPlayerY, lastPlayerKey;
+    // Per NPC: drawn screen position, sprite key and frame number it was last seen in
+    private int[] npcX = new int[0], npcY = new int[0], npcKey = new int[0];
+    private long[] npcSeen = new long[0];
+    // NPCs visible in the previous and the current frame
+    private int[] visible = new int[0], lastVisible = new int[0];
+    private int visibleCount, lastVisibleCount;
+    private long frame;
+
+    // Statistics of the current and the last closed window
+    private long windowFrames, windowSkipped, windowPixels;
+    private volatile double lastFraction;
+    private volatile long lastFrames, lastSkipped;
+
+    /**
+     * @param screenWidth Viewport width in pixels
+     * @param screenHeight Viewport height in pixels
+     * @param margin Pixels added around every dirty rectangle
+     */
+    public DirtyRegionTracker(int screenWidth, int screenHeight, int margin) {
+        this.screenWidth = screenWidth;
+        this.screenHeight = screenHeight;
+        this.margin = margin;
+        for (int i = 0; i < MAX_RECTS; i++) {
+            rects[i] = new Rectangle();
+        }
+    }
+
+    /**
+     * Forces the next frame to be redrawn completely.
+     */
+    public void invalidateAll() {
+        valid = false;
+    }
+
+    /**
+     * Compares the snapshot as it will be drawn now with the previous frame
+     * and collects the dirty rectangles. More can be added with
+     * {@link #addDirty} before the result is read.
+     *
+     * @param world The world (for the tile and sprite sizes)
+     * @param snapshot The snapshot about to be drawn
+     * @param alpha The interpolation factor it will be drawn with
+     */
+    public void update(World world, RenderSnapshot snapshot, double alpha) {
+        frame++;
+        count = 0;
+        full = false;
+
+        int camX = RenderSnapshot.interpolate(snapshot.prevCameraX, snapshot.cameraX, alpha);
+        int camY = RenderSnapshot.interpolate(snapshot.prevCameraY, snapshot.cameraY, alpha);
+        long mapVersion = snapshot.mapVersion;
+        EntityStore store = snapshot.npcStore;
+        if (!valid || camX != lastCamX || camY != lastCamY || mapVersion != lastMapVersion || store != lastStore) {
+            full = true;
+        }
+        if (store != lastStore) {
+            resize(store.capacity);
+        }
+        lastCamX = camX;
+        lastCamY = camY;
+        lastMapVersion = mapVersion;
+        lastStore = store;
+
+        int size = world.originalTileSize * world.player.scale;
+        int offset = (size - world.originalTileSize) / 2;
+
+        // Player
+        int px = RenderSnapshot.interpolate(snapshot.playerPrevX, snapshot.playerX, alpha) - camX - offset;
+        int py = RenderSnapshot.interpolate(snapshot.playerPrevY, snapshot.playerY, alpha) - camY - offset;
+        int pkey = snapshot.playerClip * 64 + snapshot.playerFrame;
+        if (valid && (px != lastPlayerX || py != lastPlayerY || pkey != lastPlayerKey)) {
+            addDirty(lastPlayerX, lastPlayerY, size, size);
+            addDirty(px, py, size, size);
+        }
+        lastPlayerX = px;
+        lastPlayerY = py;
+        lastPlayerKey = pkey;
+
+        // NPCs near the view
+        visibleCount = snapshot.npcCount;
+        for (int i = 0; i < visibleCount; i++) {
+            int id = snapshot.npcId[i];
+            visible[i] = id;
+            int nx = RenderSnapshot.interpolate(snapshot.npcPrevX[i], snapshot.npcX[i], alpha) - camX - offset;
+            int ny = RenderSnapshot.interpolate(snapshot.npcPrevY[i], snapshot.npcY[i], alpha) - camY - offset;
+            int key = snapshot.npcClip[i] * 64 + snapshot.npcFrame[i];
+            if (valid) {
+                if (npcSeen[id] != frame - 1) {
+                    // Entered the view
+                    addDirty(nx, ny, size, size);
+                } else if (nx != npcX[id] || ny != npcY[id] || key != npcKey[id]) {
+                    addDirty(npcX[id], npcY[id], size, size);
+                    addDirty(nx, ny, size, size);
+                }
+            }
+            npcX[id] = nx;
+            npcY[id] = ny;
+            npcKey[id] = key;
+            npcSeen[id] = frame;
+        }
+        // NPCs that left the view
+        for (int i = 0; i < lastVisibleCount; i++) {
+            int id = lastVisible[i];
+            if (valid && npcSeen[id] != frame) {
+                addDirty(npcX[id], npcY[id], size, size);
+            }
+        }
+        int[] swap = lastVisible;
+        lastVisible = visible;
+        visible = swap;
+        lastVisibleCount = visibleCount;
+
+        valid = true;
+    }
+
+    private void resize(int capacity) {
+        npcX = new int[capacity];
+        npcY = new int[capacity];
+        npcKey = new int[capacity];
+        npcSeen = new long[capacity];
+        visible = new int[Math.max(1, capacity)];
+        lastVisible = new int[Math.max(1, capacity)];
+        lastVisibleCount = 0;
+    }
+
+    /**
+     * Marks a screen rectangle as dirty (grown by the margin, clipped to the screen).
+     */
+    public void addDirty(int x, int y, int width, int height) {
+        if (full) {
+            return;
+        }
+        int x1 = Math.max(0, x - margin), y1 = Math.max(0, y - margin);
+        int x2 = Math.min(screenWidth, x + width + margin), y2 = Math.min(screenHeight, y + height + margin);
+        if (x1 >= x2 || y1 >= y2) {
+            return;
+        }
+        // Merge into an overlapping rectangle
+        for (int i = 0; i < count; i++) {
+            Rectangle r = rects[i];
+            if (x1 <= r.x + r.width && x2 >= r.x && y1 <= r.y + r.height && y2 >= r.y) {
+                r.add(x1, y1);
+                r.add(x2, y2);
+                return;
+            }
+        }
+        if (count == MAX_RECTS) {
+            // Too many: collapse into the bounding box
+            Rectangle r = rects[0];
+            for (int i = 1; i < count; i++) {
+                r.add(rects[i]);
+            }
+            r.add(x1, y1);
+            r.add(x2, y2);
+            count = 1;
+            return;
+        }
+        rects[count++].setBounds(x1, y1, x2 - x1, y2 - y1);
+    }
+
+    /**
+     * Finishes the frame: decides between nothing, some rectangles and a full
+     * redraw, and updates the statistics.
+     *
+     * @return Number of dirty rectangles (0 = skip the frame); when
+     *         {@link #isFullRedraw()} the single rectangle is the whole screen
+     */
+    public int finish() {
+        long area = 0;
+        for (int i = 0; i < count; i++) {
+            area += (long) rects[i].width * rects[i].height;
+        }
+        long screenArea = (long) screenWidth * screenHeight;
+        if (full || area > screenArea * FULL_REDRAW_FRACTION) {
+            full = true;
+            count = 1;
+            rects[0].setBounds(0, 0, screenWidth, screenHeight);
+            area = screenArea;
+        }
+        windowFrames++;
+        windowPixels += area;
+        if (count == 0) {
+            windowSkipped++;
+        }
+        return count;
+    }
+
+    /**
+     * @return true if the current frame must be redrawn completely
+     */
+    public boolean isFullRedraw() {
+        return full;
+    }
+
+    /**
+     * @param i Index below the count returned by finish()
+     * @return A dirty rectangle (owned by the tracker)
+     */
+    public Rectangle rect(int i) {
+        return rects[i];
+    }
+
+    /**
+     * Writes the bounding box of the dirty rectangles into r.
+     *
+     * @param r Receives the bounds
+     * @return r
+     */
+    public Rectangle bounds(Rectangle r) {
+        r.setBounds(rects[0]);
+        for (int i = 1; i < count; i++) {
+            r.add(rects[i]);
+        }
+        return r;
+    }
+
+    /**
+     * Closes the statistics window. Called once per second.
+     */
+    public void roll() {
+        long screenArea = (long) screenWidth * screenHeight;
+        lastFraction = windowFrames == 0 ? 0 : (double) windowPixels / (windowFrames * screenArea);
+        lastFrames = windowFrames;
+        lastSkipped = windowSkipped;
+        windowFrames = windowSkipped = windowPixels = 0;
+    }
+
+    /**
+     * @return Fraction of screen pixels redrawn per frame in the last window (0..1)
+     */
+    public double getLastFraction() {
+        return lastFraction;
+    }
+
+    /**
+     * @return A line such as "dirty rects: 3.2% of pixels redrawn, 41/60 frames skipped"
+     */
+    public String statsLine() {
+        return String.format("dirty rects: %.1f%% of pixels redrawn, %d/%d frames skipped",
+                lastFraction * 100, lastSkipped, lastFrames);
+    }
+}
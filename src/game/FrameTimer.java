@@ -0,0 +1,69 @@
+package game;
+
+/**
+ * FrameTimer measures the time between presented frames.
+ * It accumulates the mean, standard deviation and worst interval so the
+ * Swing and active rendering backends can be compared on frame pacing.
+ * Frames may be recorded on one thread (EDT or game thread) and the
+ * statistics read on another, so all methods are synchronized.
+ */
+public class FrameTimer {
+
+    private long lastFrame = 0;     // Timestamp of the previous frame (0 = none yet)
+    private int count = 0;          // Number of intervals in the current window
+    private double sum = 0;         // Sum of intervals in nanoseconds
+    private double sumSquares = 0;  // Sum of squared intervals
+    private long max = 0;           // Longest interval in the current window
+
+    // Results of the last closed window (in milliseconds)
+    private double lastMean, lastStdDev, lastMax;
+    private int lastCount;
+
+    /**
+     * Records that a frame has just been presented.
+     */
+    public synchronized void frame() {
+        long now = System.nanoTime();
+        if (lastFrame != 0) {
+            long interval = now - lastFrame;
+            count++;
+            sum += interval;
+            sumSquares += (double) interval * interval;
+            if (interval > max) max = interval;
+        }
+        lastFrame = now;
+    }
+
+    /**
+     * Closes the current measurement window and starts a new one.
+     */
+    public synchronized void roll() {
+        lastCount = count;
+        if (count > 0) {
+            double mean = sum / count;
+            double variance = Math.max(0, sumSquares / count - mean * mean);
+            lastMean = mean / 1e6;
+            lastStdDev = Math.sqrt(variance) / 1e6;
+            lastMax = max / 1e6;
+        } else {
+            lastMean = lastStdDev = lastMax = 0;
+        }
+        count = 0;
+        sum = sumSquares = 0;
+        max = 0;
+    }
+
+    public synchronized double getLastMeanMillis() { return lastMean; }
+    public synchronized double getLastStdDevMillis() { return lastStdDev; }
+    public synchronized double getLastMaxMillis() { return lastMax; }
+
+    /**
+     * Formats the statistics of the last closed window.
+     *
+     * @return A single line such as "frames: 60, frame time: 16.67 ms +/- 0.12 ms, max: 17.01 ms"
+     */
+    public synchronized String statsLine() {
+        return String.format("frames: %d, frame time: %.2f ms +/- %.2f ms, max: %.2f ms",
+                lastCount, lastMean, lastStdDev, lastMax);
+    }
+}
@@ -0,0 +1,102 @@
+package game;
+
+/**
+ * GameConfig holds the tunable engine settings.
+ * Every value can be overridden on the command line with a system property,
+ * for example: java -Dgame.ups=120 -Dgame.loopStats=true game.Main
+ */
+public final class GameConfig {
+
+    // Fixed number of game updates per second
+    public static final int UPDATES_PER_SECOND = Integer.getInteger("game.ups", 60);
+    // Target number of rendered frames per second (0 = one frame per update batch)
+    public static final int FRAMES_PER_SECOND = Integer.getInteger("game.fps", 0);
+    // Maximum number of updates run back-to-back to catch up after a late frame
+    public static final int MAX_CATCH_UP_UPDATES = Integer.getInteger("game.maxCatchUp", 5);
+    // Print loop statistics (UPS, FPS, idle vs busy time) once per second
+    public static final boolean LOOP_STATS = Boolean.getBoolean("game.loopStats");
+
+    // Rendering backend: "swing" (repaint/paintComponent) or "active" (Canvas + BufferStrategy)
+    public static final String RENDER_MODE = System.getProperty("game.render", "swing");
+    // Number of buffers for active rendering (2 = double, 3 = triple buffering)
+    public static final int BUFFER_COUNT = Integer.getInteger("game.buffers", 2);
+
+    // Draw at native pixel-art resolution (256x192) and upscale to the window in one blit
+    public static final boolean LOW_RES = Boolean.getBoolean("game.lowres");
+    // Active rendering only: draw on a separate thread, in parallel with the updates
+    public static final boolean RENDER_THREAD = Boolean.getBoolean("game.renderThread");
+    // Redraw only the screen regions that changed, and skip frames where nothing did
+    public static final boolean DIRTY_RECTS = Boolean.getBoolean("game.dirtyRects");
+
+    // Chunked map file to stream instead of loading map.png (see game.map.MapChunker)
+    public static final String MAP_STREAM = System.getProperty("game.map.stream");
+    // Memory budget for streamed map chunks, in megabytes
+    public static final int MAP_CACHE_MB = Integer.getInteger("game.map.cacheMB", 64);
+    // Number of background threads loading streamed map chunks
+    public static final int MAP_LOADER_THREADS = Integer.getInteger("game.map.loaders", 2);
+    // Tile layer file drawn with the map (see game.map.LayeredMap); unset = game/res/map_layers.txt if present
+    public static final String MAP_LAYERS = System.getProperty("game.map.layers");
+
+    // Darken the frame around the player's light (see game.light.LightingPass)
+    public static final boolean LIGHTING = Boolean.getBoolean("game.lighting");
+    // Hide unseen tiles and dim explored ones (see game.light.FogOfWar)
+    public static final boolean FOG = Boolean.getBoolean("game.fog");
+    // Brightness away from any light, from 0 (black) to 256 (unchanged)
+    public static final int LIGHT_AMBIENT = Integer.getInteger("game.light.ambient", 90);
+    // Radius of the player's light, in tiles
+    public static final int LIGHT_RADIUS = Integer.getInteger("game.light.radius", 5);
+    // Sight radius of the fog of war, in tiles
+    public static final int FOG_RADIUS = Integer.getInteger("game.fog.radius", 6);
+    // Threads shading the frame for lighting and fog, the render thread included
+    public static final int LIGHT_THREADS = Integer.getInteger("game.light.threads",
+            Runtime.getRuntime().availableProcessors());
+
+    // Time every frame phase into latency histograms (see game.metrics.FrameProfiler)
+    public static final boolean PROFILE = !"false".equalsIgnoreCase(System.getProperty("game.profile"));
+    // CSV file the phase timings are written to on exit (empty = don't write)
+    public static final String PROFILE_CSV = System.getProperty("game.profile.csv", "frame-times.csv");
+
+    // Asset pack tried before decoding PNGs (see game.assets.AssetPacker); ignored if missing
+    public static final String ASSET_PACK = System.getProperty("game.assets.pack", "assets.pack");
+
+    // Number of threads loading assets in the background at startup
+    public static final int ASSET_THREADS = Integer.getInteger("game.assets.threads",
+            Math.max(2, Runtime.getRuntime().availableProcessors()));
+
+    // File the input of the session is recorded to, for replay with HeadlessGame --replay
+    public static final String RECORD_INPUT = System.getProperty("game.record");
+
+    // Save file: loaded at startup if present, written on exit and by the autosave (empty = no saving)
+    public static final String SAVE_FILE = System.getProperty("game.save", "savegame.dat");
+    // Seconds between two autosaves (0 = only save on exit)
+    public static final int AUTOSAVE_SECONDS = Integer.getInteger("game.autosave", 30);
+
+    // Number of wandering NPCs spawned at startup
+    public static final int NPC_COUNT = Integer.getInteger("game.npcs", 0);
+    // NPCs request paths to the player's tile and walk them instead of wandering
+    public static final boolean NPC_SEEK = Boolean.getBoolean("game.npcs.seek");
+
+    // Side of the pathfinding clusters in tiles (see game.path.ClusterGraph)
+    public static final int PATH_CLUSTER_SIZE = Integer.getInteger("game.path.cluster", 16);
+    // Threads solving path requests in the background
+    public static final int PATH_THREADS = Integer.getInteger("game.path.threads",
+            Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+    // Paths kept in the path cache (0 = no caching)
+    public static final int PATH_CACHE = Integer.getInteger("game.path.cache", 4096);
+
+    // Port the game server listens on
+    public static final int NET_PORT = Integer.getInteger("game.net.port", 7777);
+    // Ticks between two state snapshots sent by the server (clients interpolate in between)
+    public static final int NET_SNAPSHOT_INTERVAL = Math.max(1, Integer.getInteger("game.net.sendEvery", 1));
+
+    /**
+     * @return true if the active rendering backend was selected
+     */
+    public static boolean isActiveRendering() {
+        return "active".equalsIgnoreCase(RENDER_MODE);
+    }
+
+    private GameConfig() {
+        // Constants only
+    }
+}
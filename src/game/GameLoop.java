@@ -0,0 +1,202 @@
+package game;
+
+import java.util.concurrent.locks.LockSupport;
+
+import game.log.Log;
+import game.log.LogCategory;
+
+/**
+ * GameLoop is a fixed-timestep scheduler.
+ * Game logic always advances in steps of exactly 1/updatesPerSecond seconds,
+ * while rendering receives an interpolation factor describing how far the
+ * current time lies past the last update. When rendering after every batch
+ * of updates the factor is 1, so the frame shows the state just computed.
+ *
+ * Between ticks the thread is parked instead of spinning. Because parkNanos
+ * usually wakes up a little late, the loop measures that oversleep and parks
+ * slightly early, spinning only for the last few microseconds.
+ */
+public class GameLoop {
+
+    /**
+     * Callbacks driven by the loop.
+     */
+    public interface Listener {
+        // Advances the game state by one fixed step
+        void update();
+
+        // Draws a frame; alpha is in [0, 1] between the previous and current update
+        void render(double alpha);
+
+        // Called once per second after the loop statistics were published
+        default void secondElapsed(GameLoop loop) {
+            if (GameConfig.LOOP_STATS) {
+                Log.info(LogCategory.LOOP, "{}", loop.statsLine());
+            }
+        }
+    }
+
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+    // Never trust parkNanos to be more precise than this
+    private static final long MIN_PARK_SLACK = 50_000L;      // 0.05 ms
+    // Upper bound for the oversleep estimate (coarse timers on some systems)
+    private static final long MAX_PARK_SLACK = 2_000_000L;   // 2 ms
+
+    private final Listener listener;
+    private final long updateInterval;   // Nanoseconds per update
+    private final long renderInterval;   // Nanoseconds per frame (0 = render after each update batch)
+    private final int maxCatchUpUpdates;
+
+    private volatile boolean running;
+
+    // Estimated oversleep of LockSupport.parkNanos, adapted at runtime
+    private long parkSlack = 200_000L;
+
+    // Statistics of the last complete second
+    private volatile int lastUpdates, lastFrames, lastSkippedUpdates;
+    private volatile long lastIdleNanos, lastBusyNanos;
+
+    /**
+     * Creates a new loop.
+     *
+     * @param listener The object receiving update and render calls
+     * @param updatesPerSecond Fixed logic rate
+     * @param framesPerSecond Render rate, or 0 to render once after every batch of updates
+     * @param maxCatchUpUpdates Maximum updates run in a row before the backlog is dropped
+     */
+    public GameLoop(Listener listener, int updatesPerSecond, int framesPerSecond, int maxCatchUpUpdates) {
+        this.listener = listener;
+        this.updateInterval = NANOS_PER_SECOND / updatesPerSecond;
+        this.renderInterval = framesPerSecond > 0 ? NANOS_PER_SECOND / framesPerSecond : 0;
+        this.maxCatchUpUpdates = Math.max(1, maxCatchUpUpdates);
+    }
+
+    /**
+     * Runs the loop on the calling thread until {@link #stop()} is called.
+     */
+    public void run() {
+        running = true;
+
+        long nextUpdate = System.nanoTime();
+        long nextRender = nextUpdate;
+        long secondStart = nextUpdate;
+        // When the last update finished, for the interpolation factor
+        long lastUpdateEnd = nextUpdate;
+
+        int updates = 0, frames = 0, skipped = 0;
+        long idle = 0, busy = 0;
+
+        while (running) {
+            long frameStart = System.nanoTime();
+
+            // Run all updates that are due, but never more than the catch-up cap
+            int caughtUp = 0;
+            while (frameStart - nextUpdate >= 0 && caughtUp < maxCatchUpUpdates) {
+                listener.update();
+                nextUpdate += updateInterval;
+                caughtUp++;
+            }
+            updates += caughtUp;
+            if (caughtUp > 0) {
+                lastUpdateEnd = System.nanoTime();
+            }
+
+            // Still behind after the cap: drop the backlog instead of spiralling
+            if (frameStart - nextUpdate >= 0) {
+                long behind = (frameStart - nextUpdate) / updateInterval + 1;
+                skipped += (int) behind;
+                nextUpdate += behind * updateInterval;
+            }
+
+            // Render either after every update batch or at the requested frame rate
+            boolean renderDue = renderInterval == 0 ? caughtUp > 0 : frameStart - nextRender >= 0;
+            if (renderDue) {
+                long now = System.nanoTime();
+                // Right after a batch the current state is drawn as is; at a fixed
+                // frame rate, the fraction of a tick elapsed since the last update
+                double alpha = renderInterval == 0 ? 1.0 : (double) (now - lastUpdateEnd) / updateInterval;
+                listener.render(Math.max(0.0, Math.min(1.0, alpha)));
+                frames++;
+                if (renderInterval > 0) {
+                    nextRender += renderInterval;
+                    if (now - nextRender >= 0) nextRender = now + renderInterval;
+                }
+            }
+
+            long workEnd = System.nanoTime();
+            busy += workEnd - frameStart;
+
+            // Sleep until whichever event comes first
+            long deadline = renderInterval == 0 || nextUpdate - nextRender < 0 ? nextUpdate : nextRender;
+            sleepUntil(deadline);
+            long sleepEnd = System.nanoTime();
+            idle += sleepEnd - workEnd;
+
+            // Publish statistics once per second
+            if (sleepEnd - secondStart >= NANOS_PER_SECOND) {
+                lastUpdates = updates;
+                lastFrames = frames;
+                lastSkippedUpdates = skipped;
+                lastIdleNanos = idle;
+                lastBusyNanos = busy;
+                listener.secondElapsed(this);
+                updates = frames = skipped = 0;
+                idle = busy = 0;
+                secondStart = sleepEnd;
+            }
+        }
+    }
+
+    /**
+     * Parks the current thread until the given System.nanoTime() deadline.
+     * Parks in one go up to the estimated oversleep, then spins the rest.
+     */
+    private void sleepUntil(long deadline) {
+        long remaining = deadline - System.nanoTime();
+        if (remaining > parkSlack) {
+            long requested = remaining - parkSlack;
+            long before = System.nanoTime();
+            LockSupport.parkNanos(requested);
+            long overslept = System.nanoTime() - before - requested;
+            // Track the oversleep: jump up quickly, decay slowly
+            if (overslept > parkSlack) {
+                parkSlack = Math.min(MAX_PARK_SLACK, overslept);
+            } else {
+                parkSlack = Math.max(MIN_PARK_SLACK, parkSlack - (parkSlack - Math.max(overslept, 0)) / 16);
+            }
+        }
+        while (deadline - System.nanoTime() > 0 && running) {
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * Requests the loop to exit after the current iteration.
+     */
+    public void stop() {
+        running = false;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    // Statistics of the last complete second
+    public int getLastUpdates() { return lastUpdates; }
+    public int getLastFrames() { return lastFrames; }
+    public int getLastSkippedUpdates() { return lastSkippedUpdates; }
+    public long getLastIdleNanos() { return lastIdleNanos; }
+    public long getLastBusyNanos() { return lastBusyNanos; }
+
+    /**
+     * Formats the statistics of the last complete second.
+     *
+     * @return A single line such as "UPS: 60, FPS: 60, busy: 1.2 ms (0.1%), idle: 998.8 ms"
+     */
+    public String statsLine() {
+        long total = Math.max(1, lastBusyNanos + lastIdleNanos);
+        return String.format("UPS: %d, FPS: %d, skipped: %d, busy: %.1f ms (%.1f%%), idle: %.1f ms",
+                lastUpdates, lastFrames, lastSkippedUpdates,
+                lastBusyNanos / 1e6, 100.0 * lastBusyNanos / total, lastIdleNanos / 1e6);
+    }
+}
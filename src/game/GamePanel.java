@@ -1,48 +1,97 @@
 package game;
 
 import javax.swing.JPanel;
+import java.awt.BorderLayout;
+import java.awt.Component;
 import java.awt.Dimension;
 import java.awt.Color;
+import java.awt.Font;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
-import game.entity.Player;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Paths;
+import java.util.concurrent.locks.LockSupport;
+
+import game.light.LightingPass;
+import game.log.Log;
+import game.log.LogCategory;
+import game.metrics.FrameProfiler;
+import game.save.AutoSaver;
 
 /**
  * GamePanel is the main game container that handles the game loop,
  * rendering, and input handling. It extends JPanel and implements Runnable
  * to run the game in a separate thread.
+ *
+ * The game state and logic live in {@link World}; this class only drives it
+ * and puts it on screen.
+ *
+ * Two rendering backends are available (see GameConfig.RENDER_MODE):
+ * the default Swing path (repaint/paintComponent on the EDT) and an active
+ * path that draws from the game thread into a Canvas BufferStrategy, or
+ * from a separate render thread with -Dgame.renderThread=true. Either way
+ * frames are drawn from the render snapshots World publishes after each tick.
  */
 
 
-public class GamePanel extends JPanel implements Runnable {
-    // Original size of tiles in pixels (before scaling)
-    public final int originalTileSize = 16;
-    // Scale factor for all game elements
-    final int scale = 3;
-
-    // Actual size of tiles after scaling
-    public final int tileSize = originalTileSize * scale; // 48x48 pixels
-
-    // Grid dimensions in number of tiles
-    final int gridWidth = 16;   // Number of tiles horizontally
-    final int gridHeight = 12;  // Number of tiles vertically
-
-    // Screen dimensions in pixels
-    final int screenWidth = tileSize * gridWidth;   // 768 pixels
-    final int screenHeight = tileSize * gridHeight; // 576 pixels
+public class GamePanel extends JPanel implements Runnable, GameLoop.Listener, ActiveRenderer.Scene {
 
     // Input handler for keyboard controls
-    KeyHandler keyHandler = new KeyHandler();
+    final KeyHandler keyHandler;
     // Game thread for running the game loop
     Thread gameThread;
+    // Fixed-timestep scheduler driving update() and render()
+    GameLoop gameLoop;
+
+    // Game state: map, player, NPCs and camera
+    final World world;
+    // Saves the game in the background (null when -Dgame.save is empty)
+    volatile AutoSaver autoSaver;
+
+    // Active rendering backend (null when using the Swing repaint path)
+    ActiveRenderer activeRenderer;
+    // Measures frame pacing of whichever backend is in use
+    final FrameTimer frameTimer = new FrameTimer();
+
+    // Font and background of the frame timing overlay (F3)
+    private static final Font OVERLAY_FONT = new Font(Font.MONOSPACED, Font.PLAIN, 12);
+    private static final Color OVERLAY_BACKGROUND = new Color(0, 0, 0, 170);
+    // Nanoseconds spent drawing during the current Swing paint (EDT only)
+    private long swingDrawNanos;
+    // Set once the first frame has been presented
+    private volatile boolean firstFramePresented;
+
+    // Dirty-rectangle mode (GameConfig.DIRTY_RECTS): null when every frame is redrawn
+    DirtyRegionTracker dirtyRegions;
+    // Active path: the last frame, patched in place and blitted to the back buffer
+    private BufferedImage frameImage;
+    // Bounds of the profiler overlay, and whether it was shown in the last frame
+    private static final int OVERLAY_X = 4, OVERLAY_Y = 4, OVERLAY_WIDTH = 330;
+    private boolean overlayShown;
+    private final Rectangle dirtyBounds = new Rectangle();
+
+    // Low-resolution mode (GameConfig.LOW_RES): the native-size frame and its graphics, else null
+    private BufferedImage nativeFrame;
+    private Graphics2D nativeGraphics;
 
-    // Game entities
-    Player player = new Player(this, keyHandler);
-    MapManager mapManager = new MapManager(this);
-    
-    // Camera position (top-left corner of the viewport in world coordinates)
-    public int cameraX = 0;  // X-coordinate of camera in world space
-    public int cameraY = 0;  // Y-coordinate of camera in world space
+    // Lighting and fog of war (GameConfig.LIGHTING, GameConfig.FOG), else null
+    private LightingPass lighting;
+    // Full-resolution frame the lighting is applied to before it is blitted (null in low-resolution mode)
+    private BufferedImage litFrame;
+    private Graphics2D litGraphics;
+
+    // Separate render thread (active rendering with GameConfig.RENDER_THREAD), else null
+    volatile Thread renderThread;
+    // Snapshot and interpolation factor of the frame the active renderer is drawing
+    private RenderSnapshot frameSnapshot;
+    private double frameAlpha;
 
     //https://youtu.be/wT9uNGzMEM4?si=Um1deZEkYPkZAq9I&t=188
 
@@ -50,10 +99,14 @@ public class GamePanel extends JPanel implements Runnable {
     /**
      * Constructs a new GamePanel and initializes its properties.
      * Sets up the panel size, background, and input handling.
+     *
+     * @param world The loaded game world to show (see GameWindow)
      */
-    public GamePanel() {
+    public GamePanel(World world) {
+       this.world = world;
+       this.keyHandler = world.keyHandler;
        // Set the preferred size of the game window
-       this.setPreferredSize(new Dimension(screenWidth, screenHeight));
+       this.setPreferredSize(new Dimension(world.screenWidth, world.screenHeight));
        // Set black background
        this.setBackground(Color.black);
        // Enable double buffering for smoother rendering
@@ -62,125 +115,356 @@ public class GamePanel extends JPanel implements Runnable {
        this.addKeyListener(keyHandler);
        // Allow the panel to receive key events
        this.setFocusable(true);
-       
-       // Initialize camera position to center on the player's starting position
-       setCameraPosition(616, 454);
+
+       if (GameConfig.isActiveRendering()) {
+           // Draw into a Canvas from the game thread; Swing no longer paints this panel
+           activeRenderer = new ActiveRenderer(this, world.screenWidth, world.screenHeight, GameConfig.BUFFER_COUNT);
+           activeRenderer.getCanvas().addKeyListener(keyHandler);
+           activeRenderer.setProfiler(world.profiler);
+           this.setLayout(new BorderLayout());
+           this.add(activeRenderer.getCanvas(), BorderLayout.CENTER);
+           this.setIgnoreRepaint(true);
+       }
+
+       if (GameConfig.FOG && world.fog == null) {
+           Log.warn(LogCategory.RENDER, "game.fog is ignored without a map");
+       }
+       if (GameConfig.LIGHTING || world.fog != null) {
+           lighting = new LightingPass(GameConfig.LIGHTING, world.fog != null, GameConfig.LIGHT_AMBIENT,
+                   GameConfig.LIGHT_RADIUS * world.tileSize, GameConfig.LIGHT_THREADS);
+       }
+
+       if (GameConfig.LOW_RES) {
+           // Pixel-art resolution frame, upscaled to the panel in one blit
+           int width = world.screenWidth / world.scale, height = world.screenHeight / world.scale;
+           // The lighting works on the pixels of an int image, whatever the screen prefers
+           nativeFrame = lighting != null ? new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB)
+                   : ImageUtils.createCompatibleImage(width, height, Transparency.OPAQUE);
+           nativeGraphics = nativeFrame.createGraphics();
+       } else if (lighting != null) {
+           // Neither Swing's back buffer nor a BufferStrategy exposes its pixels,
+           // so frames are drawn and lit here, then blitted
+           litFrame = new BufferedImage(world.screenWidth, world.screenHeight, BufferedImage.TYPE_INT_RGB);
+           litGraphics = litFrame.createGraphics();
+       }
+
+       if (GameConfig.DIRTY_RECTS && GameConfig.LOW_RES) {
+           // Dirty rectangles are in window pixels; the upscale blit redraws everything anyway
+           Log.warn(LogCategory.RENDER, "game.dirtyRects is ignored with game.lowres");
+       } else if (GameConfig.DIRTY_RECTS && lighting != null) {
+           // The light moves with the player and shades the whole frame
+           Log.warn(LogCategory.RENDER, "game.dirtyRects is ignored with game.lighting and game.fog");
+       } else if (GameConfig.DIRTY_RECTS) {
+           // On the Swing path the EDT paints after a delay during which up to
+           // MAX_CATCH_UP_UPDATES more updates can move the sprites
+           int margin = activeRenderer != null ? 0 : world.player.speed * GameConfig.MAX_CATCH_UP_UPDATES;
+           dirtyRegions = new DirtyRegionTracker(world.screenWidth, world.screenHeight, margin);
+           if (activeRenderer != null) {
+               frameImage = ImageUtils.createCompatibleImage(world.screenWidth, world.screenHeight, Transparency.OPAQUE);
+           }
+           // Whatever was on screen may be gone after the window changed
+           ComponentAdapter invalidate = new ComponentAdapter() {
+               @Override
+               public void componentResized(ComponentEvent e) {
+                   dirtyRegions.invalidateAll();
+               }
+
+               @Override
+               public void componentShown(ComponentEvent e) {
+                   dirtyRegions.invalidateAll();
+               }
+           };
+           this.addComponentListener(invalidate);
+           if (activeRenderer != null) {
+               activeRenderer.getCanvas().addComponentListener(invalidate);
+           }
+       }
     }
-    
+
     /**
-     * Sets the camera position to center on the specified world coordinates.
-     * Ensures the camera stays within the map boundaries.
-     * 
-     * @param worldX The x-coordinate in world space to center the camera on
-     * @param worldY The y-coordinate in world space to center the camera on
+     * Starts the game thread which runs the main game loop.
      */
-    public void setCameraPosition(int worldX, int worldY) {
-        // Calculate camera position to center on the target coordinates
-        cameraX = worldX - screenWidth / 2;
-        cameraY = worldY - screenHeight / 2;
-        
-        // Ensure camera stays within map bounds
-        if (mapManager.mapImage != null) {
-            // Prevent camera from going above or to the left of the map
-            if (cameraX < 0) cameraX = 0;
-            if (cameraY < 0) cameraY = 0;
-            
-            // Prevent camera from going below or to the right of the map
-            if (cameraX > mapManager.mapWidth - screenWidth) {
-                cameraX = mapManager.mapWidth - screenWidth;
+    public void startGameThread() {
+        if (activeRenderer != null) {
+            // The canvas is displayable now that the window is visible
+            activeRenderer.init();
+        }
+        gameLoop = new GameLoop(this, GameConfig.UPDATES_PER_SECOND,
+                GameConfig.FRAMES_PER_SECOND, GameConfig.MAX_CATCH_UP_UPDATES);
+        world.profiler.writeCsvOnExit(GameConfig.PROFILE_CSV);
+        if (GameConfig.RECORD_INPUT != null) {
+            recordInputUntilExit(GameConfig.RECORD_INPUT);
+        }
+        if (!GameConfig.SAVE_FILE.isEmpty()) {
+            saveUntilExit(GameConfig.SAVE_FILE);
+        }
+        gameThread = new Thread(this, "Game Loop");
+        if (activeRenderer != null && GameConfig.RENDER_THREAD) {
+            // Update and render in parallel; the game thread only publishes snapshots
+            renderThread = new Thread(this::runRenderThread, "Render");
+            world.snapshots.setWaiter(renderThread);
+            renderThread.start();
+        }
+        gameThread.start();  // This will call the run() method in a new thread
+    }
+
+    /**
+     * Records the input of every tick and writes the recording when the JVM
+     * exits, after stopping the game thread so the final state is consistent.
+     *
+     * @param path Output file
+     */
+    private void recordInputUntilExit(String path) {
+        InputRecorder recorder = new InputRecorder(GameConfig.UPDATES_PER_SECOND, world.npcs.capacity);
+        world.inputRecorder = recorder;
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            Thread thread = gameThread;
+            stopGameThread();
+            try {
+                if (thread != null) {
+                    thread.join(1000);
+                }
+                recorder.finish(world, Paths.get(path));
+                Log.info(LogCategory.INPUT, "Input recorded to {} ({})", path,
+                        world.tick + " ticks, " + recorder.size() + " bytes");
+            } catch (IOException | InterruptedException e) {
+                Log.error(LogCategory.INPUT, "Error writing input recording", e);
+            } finally {
+                // The log's own shutdown hook may already have drained the queue
+                Log.flush();
             }
-            if (cameraY > mapManager.mapHeight - screenHeight) {
-                cameraY = mapManager.mapHeight - screenHeight;
+        }, "Input Recorder"));
+    }
+
+    /**
+     * Autosaves every AUTOSAVE_SECONDS and saves once more when the JVM
+     * exits, after stopping the game thread so the final state is consistent.
+     *
+     * @param path Save file
+     */
+    private void saveUntilExit(String path) {
+        AutoSaver saver = new AutoSaver(Paths.get(path), (long) GameConfig.AUTOSAVE_SECONDS * GameConfig.UPDATES_PER_SECOND);
+        autoSaver = saver;
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            Thread thread = gameThread;
+            stopGameThread();
+            try {
+                if (thread != null) {
+                    thread.join(1000);
+                }
+                saver.saveAndWait(world);
+                saver.shutdown();
+                Log.info(LogCategory.SAVE, "Game saved to {} ({})", path, saver.statsLine());
+            } catch (IOException | InterruptedException e) {
+                Log.error(LogCategory.SAVE, "Error saving the game", e);
+            } finally {
+                Log.flush();
             }
+        }, "Save On Exit"));
+    }
+
+    /**
+     * Stops the game loop. The game thread exits after its current iteration.
+     */
+    public void stopGameThread() {
+        if (gameLoop != null) {
+            gameLoop.stop();
         }
-        
-        // Update player's position to match the camera's target
-        player.x = worldX;
-        player.y = worldY;
+        Thread render = renderThread;
+        renderThread = null;
+        if (render != null) {
+            world.snapshots.setWaiter(null);
+            LockSupport.unpark(render);
+        }
+        gameThread = null;
     }
 
+    /**
+     * The main game loop running in a separate thread.
+     * Delegates to the fixed-timestep GameLoop, which calls update() at a fixed
+     * rate and render() in between, parking the thread while idle.
+     */
+    @Override
+    public void run() {
+        gameLoop.run();
+    }
 
+    /**
+     * Called by the game loop whenever a frame should be drawn.
+     *
+     * @param alpha Interpolation factor between the previous and the current update
+     */
+    @Override
+    public void render(double alpha) {
+        world.renderAlpha = alpha;
+        if (renderThread != null) {
+            // The render thread draws every published snapshot by itself
+            return;
+        }
+        if (activeRenderer != null) {
+            // Draw and present immediately on the game thread
+            renderActive(world.snapshots.acquire(), alpha);
+        } else if (dirtyRegions != null) {
+            repaintDirty(alpha);
+        } else {
+            repaint(); // Request a repaint
+        }
+    }
 
+    /**
+     * Draws a snapshot into the back buffer and presents it (active path).
+     * In dirty-rectangle mode only the regions that changed are redrawn, into
+     * the persistent frame image, and nothing is presented if none did.
+     *
+     * @param snapshot The snapshot to draw
+     * @param alpha Interpolation factor within the snapshot's tick
+     */
+    private void renderActive(RenderSnapshot snapshot, double alpha) {
+        if (dirtyRegions != null) {
+            int count = trackDirty(snapshot, alpha);
+            if (count == 0) {
+                return;
+            }
+            Graphics2D g = frameImage.createGraphics();
+            try {
+                for (int i = 0; i < count; i++) {
+                    Rectangle r = dirtyRegions.rect(i);
+                    g.setClip(r.x, r.y, r.width, r.height);
+                    g.setColor(Color.black);
+                    g.fillRect(r.x, r.y, r.width, r.height);
+                    drawScene(g, snapshot, alpha);
+                }
+            } finally {
+                g.dispose();
+            }
+        }
+        frameSnapshot = snapshot;
+        frameAlpha = alpha;
+        if (activeRenderer.render()) {
+            framePresented();
+        }
+    }
 
+    /**
+     * Asks Swing to repaint the bounding box of the regions that changed
+     * (Swing merges repaint requests into one rectangle anyway) and keeps the
+     * rest of its back buffer. Nothing is repainted if nothing changed.
+     *
+     * @param alpha Interpolation factor within the last tick
+     */
+    private void repaintDirty(double alpha) {
+        if (trackDirty(world.snapshots.published(), alpha) > 0) {
+            Rectangle r = dirtyRegions.bounds(dirtyBounds);
+            repaint(r.x, r.y, r.width, r.height);
+        }
+    }
 
     /**
-     * Starts the game thread which runs the main game loop.
+     * Collects the regions that differ from the previous frame, including the
+     * overlay while it is shown and once after it was hidden.
+     *
+     * @return Number of dirty rectangles (0 = nothing to draw)
      */
-    public void startGameThread() {
-        gameThread = new Thread(this);
-        gameThread.start();  // This will call the run() method in a new thread
+    private int trackDirty(RenderSnapshot snapshot, double alpha) {
+        DirtyRegionTracker tracker = dirtyRegions;
+        tracker.update(world, snapshot, alpha);
+        boolean overlay = keyHandler.showProfiler;
+        if (overlay || overlayShown) {
+            tracker.addDirty(OVERLAY_X, OVERLAY_Y, OVERLAY_WIDTH, overlayHeight());
+        }
+        overlayShown = overlay;
+        return tracker.finish();
     }
 
     /**
-     * The main game loop running in a separate thread.
-     * Handles game updates and rendering at a fixed frame rate.
+     * Body of the render thread (active rendering with GameConfig.RENDER_THREAD):
+     * draws the latest snapshot, interpolated by the time elapsed since it was
+     * published, while the game thread goes on with the next ticks. Without a
+     * frame rate cap it waits for each new snapshot.
      */
-    @Override
-    public void run() {
-        // Target time per frame in nanoseconds (60 FPS)
-        final double drawInterval = 1000000000/60.0;
-        double delta = 0;
-        long lastTime = System.nanoTime();
-        long currentTime;
-        long timer = 0;
-        int drawCount = 0;
-
-        while (gameThread != null) {
-            currentTime = System.nanoTime();
-            delta += (currentTime - lastTime) / drawInterval;
-            timer += (currentTime - lastTime);
-            lastTime = currentTime;
-
-            // Update game state at fixed intervals
-            if (delta >= 1) {
-                update();  // Update game logic
-                repaint(); // Request a repaint
-                delta--;
-                drawCount++;
+    private void runRenderThread() {
+        long updateInterval = 1_000_000_000L / GameConfig.UPDATES_PER_SECOND;
+        long frameInterval = GameConfig.FRAMES_PER_SECOND > 0 ? 1_000_000_000L / GameConfig.FRAMES_PER_SECOND : 0;
+        long nextFrame = System.nanoTime();
+        while (renderThread == Thread.currentThread()) {
+            long now = System.nanoTime();
+            if (frameInterval > 0 ? now - nextFrame < 0 : !world.snapshots.hasFresh()) {
+                // Woken early by every publish, so the uncapped case reacts at once
+                LockSupport.parkNanos(frameInterval > 0 ? nextFrame - now : updateInterval);
+                continue;
+            }
+            if (frameInterval > 0) {
+                nextFrame = Math.max(nextFrame + frameInterval, now);
             }
+            RenderSnapshot snapshot = world.snapshots.acquire();
+            double alpha = (double) (System.nanoTime() - snapshot.publishNanos) / updateInterval;
+            renderActive(snapshot, Math.max(0.0, Math.min(1.0, alpha)));
+        }
+    }
 
-            // Optional: Display FPS in console (uncomment to enable)
-            if (timer >= 1000000000) {
-                // System.out.println("FPS: " + drawCount);
-                drawCount = 0;
-                timer = 0;
+    /**
+     * Called by the game loop once per second. Prints the loop and
+     * frame pacing statistics when enabled.
+     *
+     * @param loop The game loop
+     */
+    @Override
+    public void secondElapsed(GameLoop loop) {
+        frameTimer.roll();
+        world.profiler.roll();
+        if (dirtyRegions != null) {
+            dirtyRegions.roll();
+        }
+        if (GameConfig.LOOP_STATS) {
+            Log.info(LogCategory.LOOP, "{} | {}", loop.statsLine(), GameConfig.RENDER_MODE + " " + frameTimer.statsLine());
+            if (dirtyRegions != null) {
+                Log.info(LogCategory.RENDER, "{}", dirtyRegions.statsLine());
+            }
+            if (world.mapManager.streamingStats() != null) {
+                Log.info(LogCategory.MAP, "Map streaming: {}", world.mapManager.streamingStats());
+            }
+            if (world.paths != null && GameConfig.NPC_SEEK) {
+                Log.info(LogCategory.PATH, "{}", world.paths.statsLine());
+            }
+            if (world.fog != null) {
+                Log.info(LogCategory.RENDER, "{}", world.fog.statsLine());
             }
         }
     }
 
     /**
-     * Updates the game state for each frame.
-     * Called in the game loop to update all game objects.
+     * Records a presented frame and reports the time to the first one.
      */
-    public void update() {
-        // Update player position and state
-        player.update();
-        // Update camera to follow the player
-        updateCamera();
+    private void framePresented() {
+        frameTimer.frame();
+        if (!firstFramePresented) {
+            firstFramePresented = true;
+            Log.info(LogCategory.GAME, "Time to first frame: {} ms after main(), {} ms after JVM start",
+                    (System.nanoTime() - Main.START_NANOS) / 1_000_000,
+                    ManagementFactory.getRuntimeMXBean().getUptime());
+        }
+    }
+
+    /**
+     * Returns the component that should hold keyboard focus:
+     * the canvas in active rendering mode, otherwise this panel.
+     *
+     * @return The focus target for keyboard input
+     */
+    public Component getInputComponent() {
+        return activeRenderer != null ? activeRenderer.getCanvas() : this;
     }
-    
+
     /**
-     * Updates the camera position to follow the player.
-     * Ensures the camera stays within the bounds of the map.
+     * Updates the game state for each frame.
+     * Called in the game loop to update all game objects.
      */
-    public void updateCamera() {
-        // Calculate camera position to center on the player
-        // Using tileSize from GamePanel since it's the source of truth for tile dimensions
-        cameraX = player.x - screenWidth / 2 + tileSize / 2;
-        cameraY = player.y - screenHeight / 2 + tileSize / 2;
-        
-        // Ensure camera stays within map bounds
-        if (mapManager.mapImage != null) {
-            // Prevent camera from showing outside the left or top edges
-            if (cameraX < 0) cameraX = 0;
-            if (cameraY < 0) cameraY = 0;
-            
-            // Prevent camera from showing outside the right or bottom edges
-            int maxCameraX = mapManager.mapWidth - screenWidth;
-            int maxCameraY = mapManager.mapHeight - screenHeight;
-            
-            if (cameraX > maxCameraX) cameraX = maxCameraX;
-            if (cameraY > maxCameraY) cameraY = maxCameraY;
+    @Override
+    public void update() {
+        world.update();
+        AutoSaver saver = autoSaver;
+        if (saver != null) {
+            saver.update(world);
         }
     }
 
@@ -196,14 +480,134 @@ public class GamePanel extends JPanel implements Runnable {
 
         // Convert to Graphics2D for better rendering features
         Graphics2D g2 = (Graphics2D) g;
-        
-        // Draw the game world (background)
-        mapManager.draw(g2, cameraX, cameraY);
-        
-        // Draw the player (foreground)
-        player.draw(g2, cameraX, cameraY);
+
+        long start = System.nanoTime();
+        // The EDT is the only reader of the snapshots on this path
+        drawScene(g2, world.snapshots.acquire(), world.renderAlpha);
+        swingDrawNanos = System.nanoTime() - start;
+        framePresented();
         
         // Clean up graphics resources
         g2.dispose();
     }
+
+    /**
+     * Paints the panel and puts the result on screen. On the Swing path this
+     * is where the RepaintManager copies its back buffer to the window, so the
+     * time not spent in drawFrame() is recorded as the present phase.
+     */
+    @Override
+    public void paintImmediately(int x, int y, int w, int h) {
+        long start = System.nanoTime();
+        swingDrawNanos = 0;
+        super.paintImmediately(x, y, w, h);
+        if (activeRenderer == null && swingDrawNanos > 0) {
+            world.profiler.record(FrameProfiler.Phase.PRESENT, System.nanoTime() - start - swingDrawNanos);
+        }
+    }
+
+    /**
+     * Draws the map and all entities. Shared by the Swing and active backends.
+     * In dirty-rectangle mode the active backend only blits the frame image
+     * patched by renderActive().
+     *
+     * @param g2 The Graphics2D context to draw on
+     */
+    @Override
+    public void drawFrame(Graphics2D g2) {
+        if (frameImage != null) {
+            g2.drawImage(frameImage, 0, 0, null);
+        } else {
+            drawScene(g2, frameSnapshot, frameAlpha);
+        }
+    }
+
+    /**
+     * Draws a snapshot of the world and the overlay, limited to the clip of g2.
+     *
+     * @param g2 The Graphics2D context to draw on
+     * @param snapshot The snapshot to draw
+     * @param alpha Interpolation factor within the snapshot's tick
+     */
+    private void drawScene(Graphics2D g2, RenderSnapshot snapshot, double alpha) {
+        if (nativeFrame != null) {
+            drawLowRes(g2, snapshot, alpha);
+        } else if (litFrame != null) {
+            litGraphics.setColor(Color.black);
+            litGraphics.fillRect(0, 0, litFrame.getWidth(), litFrame.getHeight());
+            world.draw(litGraphics, snapshot, alpha);
+            applyLighting(litFrame, snapshot, alpha, 1);
+            g2.drawImage(litFrame, 0, 0, null);
+        } else {
+            world.draw(g2, snapshot, alpha);
+        }
+        if (keyHandler.showProfiler) {
+            drawProfilerOverlay(g2);
+        }
+    }
+
+    /**
+     * Draws the snapshot at native resolution, then upscales it to the
+     * largest integer scale that fits the panel, centered between black bars.
+     * Nearest-neighbour scaling keeps the pixel art sharp.
+     */
+    private void drawLowRes(Graphics2D g2, RenderSnapshot snapshot, double alpha) {
+        int width = nativeFrame.getWidth(), height = nativeFrame.getHeight();
+        nativeGraphics.setColor(Color.black);
+        nativeGraphics.fillRect(0, 0, width, height);
+        world.drawNative(nativeGraphics, snapshot, alpha);
+        if (lighting != null) {
+            applyLighting(nativeFrame, snapshot, alpha, world.scale);
+        }
+
+        Component target = getInputComponent();
+        int targetWidth = target.getWidth(), targetHeight = target.getHeight();
+        int scale = Math.max(1, Math.min(targetWidth / width, targetHeight / height));
+        int x = (targetWidth - width * scale) / 2, y = (targetHeight - height * scale) / 2;
+        g2.setColor(Color.black);
+        g2.fillRect(0, 0, targetWidth, targetHeight);
+        g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+        g2.drawImage(nativeFrame, x, y, width * scale, height * scale, null);
+    }
+
+    /**
+     * Shades a drawn frame for lighting and fog of war.
+     *
+     * @param frame The frame, drawn from the snapshot
+     * @param scale World pixels per frame pixel
+     */
+    private void applyLighting(BufferedImage frame, RenderSnapshot snapshot, double alpha, int scale) {
+        long t = world.profiler.begin();
+        // The light is centered on the player's tile, like the sprite
+        lighting.apply(frame, snapshot, alpha, scale, world.tileSize, world.originalTileSize / 2);
+        world.profiler.end(FrameProfiler.Phase.LIGHTING, t);
+    }
+
+    /**
+     * @return Height of the profiler overlay box in pixels
+     */
+    private int overlayHeight() {
+        return world.profiler.overlayLines().length * 14 + 8;
+    }
+
+    /**
+     * Draws the per-phase frame timings of the last second in the top-left corner.
+     * The text is rebuilt once per second, so drawing it allocates nothing.
+     *
+     * @param g2 The Graphics2D context to draw on
+     */
+    private void drawProfilerOverlay(Graphics2D g2) {
+        String[] lines = world.profiler.overlayLines();
+        if (lines.length == 0) {
+            return;
+        }
+        int lineHeight = 14;
+        g2.setColor(OVERLAY_BACKGROUND);
+        g2.fillRect(OVERLAY_X, OVERLAY_Y, OVERLAY_WIDTH, lines.length * lineHeight + 8);
+        g2.setFont(OVERLAY_FONT);
+        g2.setColor(Color.white);
+        for (int i = 0; i < lines.length; i++) {
+            g2.drawString(lines[i], 10, 18 + i * lineHeight);
+        }
+    }
 }
@@ -1,18 +1,30 @@
 package game;
 
 import javax.swing.JFrame;
+import javax.swing.SwingUtilities;
 import java.awt.Dimension;
+import java.nio.file.Paths;
+
+import game.assets.AssetLoader;
+import game.assets.AssetManager;
+import game.log.Log;
+import game.log.LogCategory;
+import game.save.SaveFile;
 
 /**
  * GameWindow is the main application window that extends JFrame.
  * It serves as the top-level container for the game and manages
  * the game panel and window properties.
+ *
+ * The window opens immediately with a LoadingPanel. All assets load in
+ * parallel on the AssetManager's threads, the World is built there as well,
+ * and only then is the GamePanel swapped in and the game loop started.
  */
 public class GameWindow extends JFrame {
     
     /**
-     * Constructs the main game window and initializes the game panel.
-     * Sets up the window properties and starts the game loop.
+     * Constructs the main game window and starts loading the game.
+     * Sets up the window properties; the game loop starts once loading is done.
      */
     public GameWindow() {
         // Set window title
@@ -20,11 +32,18 @@ public class GameWindow extends JFrame {
         // Ensure the application exits when the window is closed
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         // Prevent window resizing to maintain consistent game dimensions
-        setResizable(false);
+        // (the low-resolution mode letterboxes at any size)
+        setResizable(GameConfig.LOW_RES);
 
-        // Create and add the main game panel
-        GamePanel gamePanel = new GamePanel();
-        add(gamePanel);
+        // Start every asset load at once, off the EDT
+        long loadStart = System.nanoTime();
+        AssetManager assets = new AssetManager(GameConfig.ASSET_THREADS);
+        AssetLoader.setPreloader(assets);
+        World.preload(assets);
+
+        // Show progress until the world is ready
+        LoadingPanel loadingPanel = new LoadingPanel(assets, World.SCREEN_WIDTH, World.SCREEN_HEIGHT);
+        add(loadingPanel);
 
         // Pack the window to fit the preferred size of its components
         pack();
@@ -32,8 +51,55 @@ public class GameWindow extends JFrame {
         setLocationRelativeTo(null);
         // Make the window visible
         setVisible(true);
+
+        // Build the world (sprites, map chunks, NPCs) on a loader thread once its
+        // assets are in; failed loads are handled by the world itself as before
+        KeyHandler keyHandler = new KeyHandler();
+        assets.allLoaded()
+                .handle((ignored, error) -> null)
+                .thenCompose(ignored -> assets.load("world", () -> restore(new World(keyHandler, GameConfig.NPC_COUNT))))
+                .whenComplete((world, error) -> SwingUtilities.invokeLater(() -> {
+                    loadingPanel.stop();
+                    AssetLoader.setPreloader(null);
+                    assets.shutdown();
+                    if (error != null) {
+                        Log.error(LogCategory.GAME, "Could not start the game", error);
+                        loadingPanel.showError(String.valueOf(error.getCause() != null ? error.getCause() : error));
+                        return;
+                    }
+                    Log.info(LogCategory.GAME, "Loading took {} ms", (System.nanoTime() - loadStart) / 1_000_000);
+                    startGame(world, loadingPanel);
+                }));
+    }
+
+    /**
+     * Continues the saved game, if there is one. A recording of the input
+     * (-Dgame.record) always starts from a fresh world, so it can be replayed.
+     *
+     * @param world The newly built world
+     * @return The same world
+     */
+    private static World restore(World world) {
+        if (!GameConfig.SAVE_FILE.isEmpty() && GameConfig.RECORD_INPUT == null) {
+            SaveFile.loadIfPresent(Paths.get(GameConfig.SAVE_FILE), world);
+        }
+        return world;
+    }
+
+    /**
+     * Replaces the loading screen with the game and starts the game loop (EDT).
+     *
+     * @param world The loaded world
+     * @param loadingPanel The loading screen to remove
+     */
+    private void startGame(World world, LoadingPanel loadingPanel) {
+        // Create and add the main game panel
+        GamePanel gamePanel = new GamePanel(world);
+        remove(loadingPanel);
+        add(gamePanel);
+        pack();
         // Ensure the game panel has focus to receive keyboard input
-        gamePanel.requestFocusInWindow();
+        gamePanel.getInputComponent().requestFocusInWindow();
 
         // Start the game loop in a separate thread
         gamePanel.startGameThread();
@@ -0,0 +1,310 @@
+package game;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+import game.log.Log;
+import game.save.SaveFile;
+import game.save.SaveState;
+
+/**
+ * HeadlessGame runs the simulation without a window, without pacing,
+ * for a fixed number of ticks, and reports ticks per second.
+ * Meant for soak tests, bots and CI performance checks on servers
+ * without a display.
+ *
+ * Usage:
+ * <pre>
+ *   java game.HeadlessGame [--ticks N] [--warmup N] [--npcs N] [--seed S] [--script file]
+ *                          [--record file] [--render serial|thread] [--load file] [--save file]
+ *   java game.HeadlessGame --replay file [--warmup N] [--realtime]
+ * </pre>
+ * Without --script the player is driven by a seeded random walk.
+ * With -Dgame.npcs.seek=true the NPCs walk paths to the player and the
+ * path service statistics are printed at the end.
+ *
+ * --record writes the input of the measured run to a file (see InputRecorder).
+ * --replay runs a recording (made here or in the game with -Dgame.record=file)
+ * on a fresh world, as fast as possible or at the recorded update rate with
+ * --realtime, and fails if the final player and camera state differ from the
+ * recorded one. Warmup ticks then run the recording on a separate world.
+ * Recording a script that taps the same key on consecutive ticks (see
+ * ScriptedInput) and replaying it checks that buffered moves are recorded.
+ *
+ * --load starts from a saved game (see game.save.SaveFile) instead of a
+ * fresh world and reports how long reading and applying it took; --save
+ * writes the final state, reporting the time to copy it (what the game
+ * thread pays for an autosave) and to write it to disk.
+ *
+ * --render also draws frames into an offscreen image: after every tick on
+ * the same thread (serial), or on a second thread drawing the latest render
+ * snapshot while the updates go on (thread), to measure what running update
+ * and render in parallel gains.
+ */
+public class HeadlessGame {
+
+    public static void main(String[] args) throws IOException {
+        // No AWT window will ever be created
+        System.setProperty("java.awt.headless", "true");
+
+        long ticks = 100_000;
+        long warmup = 10_000;
+        int npcs = GameConfig.NPC_COUNT;
+        long seed = 1;
+        String script = null;
+        String record = null;
+        String replayFile = null;
+        boolean realtime = false;
+        String render = null;
+        String load = null;
+        String save = null;
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--ticks":  ticks = Long.parseLong(args[++i]); break;
+                case "--warmup": warmup = Long.parseLong(args[++i]); break;
+                case "--npcs":   npcs = Integer.parseInt(args[++i]); break;
+                case "--seed":   seed = Long.parseLong(args[++i]); break;
+                case "--script": script = args[++i]; break;
+                case "--record": record = args[++i]; break;
+                case "--replay": replayFile = args[++i]; break;
+                case "--realtime": realtime = true; break;
+                case "--render": render = args[++i]; break;
+                case "--load":   load = args[++i]; break;
+                case "--save":   save = args[++i]; break;
+                default:
+                    System.err.println("Unknown option: " + args[i]);
+                    System.err.println("Usage: java game.HeadlessGame [--ticks N] [--warmup N] [--npcs N] [--seed S] [--script file] [--record file] [--render serial|thread] [--load file] [--save file]");
+                    System.err.println("       java game.HeadlessGame --replay file [--warmup N] [--realtime]");
+                    System.exit(1);
+            }
+        }
+
+        if (replayFile != null) {
+            System.exit(replay(new InputReplay(Paths.get(replayFile)), warmup, realtime) ? 0 : 2);
+        }
+
+        KeyHandler keys = new KeyHandler();
+        World world = new World(keys, load != null ? 0 : npcs);
+        if (load != null) {
+            npcs = load(world, Paths.get(load));
+        }
+        InputScript input = script != null ? new ScriptedInput(Paths.get(script)) : new RandomWalkInput(seed);
+
+        if (render != null) {
+            if (!render.equals("serial") && !render.equals("thread")) {
+                System.err.println("--render must be serial or thread");
+                System.exit(1);
+            }
+            boolean parallel = render.equals("thread");
+            runRendered(world, input, keys, warmup, parallel);
+            long start = System.nanoTime();
+            long frames = runRendered(world, input, keys, ticks, parallel);
+            long elapsed = System.nanoTime() - start;
+            Log.flush();
+            System.out.printf("Simulated and rendered (%s) %d ticks (%d NPCs) in %.1f ms: %.0f ticks/s, %.0f frames/s on %d cores%n",
+                    render, ticks, npcs, elapsed / 1e6, ticks * 1e9 / elapsed, frames * 1e9 / elapsed,
+                    Runtime.getRuntime().availableProcessors());
+            return;
+        }
+
+        // Let the JIT compile the hot paths before measuring
+        run(world, input, keys, warmup);
+
+        // A recording has to start from a fresh world
+        InputRecorder recorder = null;
+        if (record != null) {
+            keys = new KeyHandler();
+            world = new World(keys, npcs);
+            input = script != null ? new ScriptedInput(Paths.get(script)) : new RandomWalkInput(seed);
+            recorder = new InputRecorder(GameConfig.UPDATES_PER_SECOND, npcs);
+            world.inputRecorder = recorder;
+        }
+
+        long start = System.nanoTime();
+        run(world, input, keys, ticks);
+        long elapsed = System.nanoTime() - start;
+        // Let queued log lines out first so the report comes last
+        Log.flush();
+
+        System.out.printf("Simulated %d ticks (%d NPCs) in %.1f ms: %.0f ticks/s (%.3f us/tick)%n",
+                ticks, npcs, elapsed / 1e6, ticks * 1e9 / elapsed, elapsed / 1e3 / Math.max(1, ticks));
+        System.out.println("Final state - player: " + world.player.x + "," + world.player.y
+                + " " + world.player.direction.name().toLowerCase() + ", camera: " + world.cameraX + "," + world.cameraY);
+        if (GameConfig.NPC_SEEK && world.paths != null) {
+            System.out.println(world.paths.statsLine());
+        }
+        if (save != null) {
+            save(world, Paths.get(save));
+        }
+        if (recorder != null) {
+            recorder.finish(world, Paths.get(record));
+            System.out.println("Input recorded to " + record + " (" + recorder.size() + " bytes)");
+        }
+    }
+
+    /**
+     * Loads a saved game into a world and reports the time it took.
+     *
+     * @return Number of NPCs loaded
+     */
+    static int load(World world, Path path) throws IOException {
+        long start = System.nanoTime();
+        SaveState state = new SaveFile().read(path, new SaveState());
+        long read = System.nanoTime();
+        state.apply(world);
+        long end = System.nanoTime();
+        System.out.printf("Loaded %s (%d bytes, tick %d, %d NPCs) in %.1f ms: read %.1f ms, applied %.1f ms%n",
+                path, Files.size(path), state.tick, state.npcCount, (end - start) / 1e6, (read - start) / 1e6, (end - read) / 1e6);
+        return state.npcCount;
+    }
+
+    /**
+     * Saves the world and reports the time the copy and the write took.
+     */
+    static void save(World world, Path path) throws IOException {
+        long start = System.nanoTime();
+        SaveState state = new SaveState().capture(world);
+        long captured = System.nanoTime();
+        long bytes = new SaveFile().write(state, path);
+        long end = System.nanoTime();
+        System.out.printf("Saved to %s (%d bytes, %d NPCs): captured in %d us, written and synced in %.1f ms%n",
+                path, bytes, state.npcCount, (captured - start) / 1000, (end - captured) / 1e6);
+    }
+
+    /**
+     * Replays a recording on a fresh world and checks the final state.
+     *
+     * @param replay The recording
+     * @param warmup Ticks replayed on a throwaway world first
+     * @param realtime true to pace ticks at the recorded update rate
+     * @return true if the final state matches the recording
+     */
+    static boolean replay(InputReplay replay, long warmup, boolean realtime) {
+        long ticks = replay.getTotalTicks();
+        if (warmup > 0) {
+            KeyHandler keys = new KeyHandler();
+            run(new World(keys, replay.getNpcCount()), replay, keys, Math.min(warmup, ticks));
+            replay.rewind();
+        }
+
+        KeyHandler keys = new KeyHandler();
+        World world = new World(keys, replay.getNpcCount());
+        long start = System.nanoTime();
+        if (realtime) {
+            runRealtime(world, replay, keys, ticks, replay.getUpdatesPerSecond());
+        } else {
+            run(world, replay, keys, ticks);
+        }
+        long elapsed = System.nanoTime() - start;
+        Log.flush();
+
+        System.out.printf("Replayed %d ticks (%d key changes, %d NPCs) in %.1f ms: %.0f ticks/s (%.3f us/tick)%n",
+                ticks, replay.getChanges(), replay.getNpcCount(), elapsed / 1e6,
+                ticks * 1e9 / elapsed, elapsed / 1e3 / Math.max(1, ticks));
+        String mismatch = replay.verify(world);
+        if (mismatch != null) {
+            System.out.println("Replay diverged: " + mismatch);
+            return false;
+        }
+        System.out.println("Replay matches the recording (checksum " + Long.toHexString(InputRecorder.checksum(world)) + ")");
+        return true;
+    }
+
+    /**
+     * Runs the given number of ticks paced by a GameLoop, as in the game.
+     */
+    static void runRealtime(World world, InputScript input, KeyHandler keys, long ticks, int updatesPerSecond) {
+        GameLoop[] loop = new GameLoop[1];
+        loop[0] = new GameLoop(new GameLoop.Listener() {
+            @Override
+            public void update() {
+                // The loop may still run a catch-up batch after stop()
+                if (world.tick < ticks) {
+                    input.apply(world.tick, keys);
+                    world.update();
+                }
+                if (world.tick >= ticks) {
+                    loop[0].stop();
+                }
+            }
+
+            @Override
+            public void render(double alpha) {
+                // Nothing to draw
+            }
+        }, updatesPerSecond, 0, GameConfig.MAX_CATCH_UP_UPDATES);
+        if (ticks > 0) {
+            loop[0].run();
+        }
+    }
+
+    /**
+     * Runs the given number of ticks back to back and draws frames into an
+     * offscreen image, after every tick or on a separate thread.
+     *
+     * @return Number of frames drawn
+     */
+    static long runRendered(World world, InputScript input, KeyHandler keys, long ticks, boolean parallel) {
+        BufferedImage target = new BufferedImage(world.screenWidth, world.screenHeight, BufferedImage.TYPE_INT_RGB);
+        if (!parallel) {
+            Graphics2D g2 = target.createGraphics();
+            try {
+                for (long i = 0; i < ticks; i++) {
+                    input.apply(world.tick, keys);
+                    world.update();
+                    world.draw(g2, world.snapshots.acquire(), 1.0);
+                }
+            } finally {
+                g2.dispose();
+            }
+            return ticks;
+        }
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        long[] frames = new long[1];
+        Thread renderer = new Thread(() -> {
+            Graphics2D g2 = target.createGraphics();
+            try {
+                while (running.get()) {
+                    if (!world.snapshots.hasFresh()) {
+                        LockSupport.parkNanos(1_000_000);
+                        continue;
+                    }
+                    world.draw(g2, world.snapshots.acquire(), 1.0);
+                    frames[0]++;
+                }
+            } finally {
+                g2.dispose();
+            }
+        }, "Render");
+        world.snapshots.setWaiter(renderer);
+        renderer.start();
+        run(world, input, keys, ticks);
+        running.set(false);
+        world.snapshots.setWaiter(null);
+        LockSupport.unpark(renderer);
+        try {
+            renderer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return frames[0];
+    }
+
+    /**
+     * Runs the given number of ticks back to back.
+     */
+    static void run(World world, InputScript input, KeyHandler keys, long ticks) {
+        for (long i = 0; i < ticks; i++) {
+            input.apply(world.tick, keys);
+            world.update();
+        }
+    }
+}
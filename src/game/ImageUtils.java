@@ -0,0 +1,38 @@
+package game;
+
+import java.awt.GraphicsConfiguration;
+import java.awt.GraphicsEnvironment;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+
+/**
+ * Helpers for creating images in the format the screen uses.
+ * Images that match the display's pixel layout can be blitted without
+ * conversion and are cached in video memory by Java2D ("managed images").
+ */
+public final class ImageUtils {
+
+    private ImageUtils() {
+        // Static helpers only
+    }
+
+    /**
+     * Creates an image compatible with the default screen.
+     * Falls back to a plain INT_RGB/INT_ARGB image when running headless.
+     *
+     * @param width Width in pixels
+     * @param height Height in pixels
+     * @param transparency One of Transparency.OPAQUE, BITMASK or TRANSLUCENT
+     * @return A new, empty image
+     */
+    public static BufferedImage createCompatibleImage(int width, int height, int transparency) {
+        if (GraphicsEnvironment.isHeadless()) {
+            int type = transparency == Transparency.OPAQUE
+                    ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB;
+            return new BufferedImage(width, height, type);
+        }
+        GraphicsConfiguration gc = GraphicsEnvironment.getLocalGraphicsEnvironment()
+                .getDefaultScreenDevice().getDefaultConfiguration();
+        return gc.createCompatibleImage(width, height, transparency);
+    }
+}
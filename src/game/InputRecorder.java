@@ -0,0 +1,202 @@
+package game;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import game.entity.Direction;
+
+/**
+ * InputRecorder captures the key state the player reacts to on every tick,
+ * so a session can be replayed exactly with {@link InputReplay}.
+ *
+ * The state of a tick fits in one byte (see {@link #mask}). Only ticks where
+ * it changes are stored, as a varint tick delta followed by the mask, so an
+ * hour of play takes a few kilobytes. Everything is kept in memory and
+ * written by {@link #finish}, together with the final player and camera
+ * state and a checksum of it.
+ *
+ * File layout (big-endian):
+ * <pre>
+ *   int   MAGIC, short VERSION
+ *   int   updates per second, int NPC count
+ *   ...   [varint tick delta][byte mask] per change, then [varint 0][byte END]
+ *   long  ticks recorded
+ *   int   player x, int player y, byte direction, int camera x, int camera y
+ *   long  checksum of the final state
+ * </pre>
+ */
+public class InputRecorder {
+
+    static final int MAGIC = 0x47524543; // "GREC"
+    static final short VERSION = 1;
+    // Mask value closing the list of changes (never a valid state)
+    static final int END = 0xFF;
+
+    // Bits 0-3: held keys; bits 4-6: buffered move (0 = none, else ordinal + 1)
+    static final int UP = 1, DOWN = 2, LEFT = 4, RIGHT = 8;
+    static final int BUFFERED_SHIFT = 4;
+
+    private final int updatesPerSecond;
+    private final int npcCount;
+
+    // Encoded changes
+    private byte[] data = new byte[4096];
+    private int length;
+    // State a replay holds after the last tick (the stored state minus what
+    // the player consumed), and the tick the last change was stored at
+    private int lastMask;
+    private long lastTick;
+
+    /**
+     * @param updatesPerSecond Update rate of the recorded session (for real-time replay)
+     * @param npcCount Number of NPCs the world was created with
+     */
+    public InputRecorder(int updatesPerSecond, int npcCount) {
+        this.updatesPerSecond = updatesPerSecond;
+        this.npcCount = npcCount;
+    }
+
+    /**
+     * Records the key state of a tick. Called by World.update on the game
+     * thread after the key events have been applied and before the player
+     * reads them.
+     *
+     * @param tick The tick being simulated
+     * @param keys The key state
+     */
+    public void record(long tick, KeyHandler keys) {
+        int mask = mask(keys);
+        if (mask == lastMask) {
+            return;
+        }
+        writeVarLong(tick - lastTick);
+        writeByte(mask);
+        lastMask = mask;
+        lastTick = tick;
+    }
+
+    /**
+     * Notes the key state left after the player has read it. A buffered move
+     * is consumed when the player starts it, so the same tap on a later tick
+     * is a change again and gets recorded. Called by World.update right after
+     * Player.handleInput.
+     *
+     * @param keys The key state
+     */
+    public void inputTaken(KeyHandler keys) {
+        lastMask = mask(keys);
+    }
+
+    /**
+     * Packs the input seen by the player into one byte.
+     *
+     * @param keys The key state
+     * @return The mask
+     */
+    public static int mask(KeyHandler keys) {
+        int mask = 0;
+        if (keys.upPressed) mask |= UP;
+        if (keys.downPressed) mask |= DOWN;
+        if (keys.leftPressed) mask |= LEFT;
+        if (keys.rightPressed) mask |= RIGHT;
+        Direction buffered = keys.peekBufferedMove();
+        if (buffered != null) {
+            mask |= (buffered.ordinal() + 1) << BUFFERED_SHIFT;
+        }
+        return mask;
+    }
+
+    /**
+     * Sets the key state from a mask made by {@link #mask}.
+     *
+     * @param mask The packed input
+     * @param keys The key state to set
+     */
+    public static void apply(int mask, KeyHandler keys) {
+        keys.upPressed = (mask & UP) != 0;
+        keys.downPressed = (mask & DOWN) != 0;
+        keys.leftPressed = (mask & LEFT) != 0;
+        keys.rightPressed = (mask & RIGHT) != 0;
+        int buffered = (mask >>> BUFFERED_SHIFT) & 7;
+        keys.setBufferedMove(buffered == 0 || buffered > Direction.VALUES.length ? null : Direction.VALUES[buffered - 1]);
+    }
+
+    /**
+     * Writes the recording, ending with the current state of the world.
+     * Must be called while the world is not being updated.
+     *
+     * @param world The recorded world, stopped
+     * @param path Output file
+     * @throws IOException If the file cannot be written
+     */
+    public void finish(World world, Path path) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeInt(updatesPerSecond);
+            out.writeInt(npcCount);
+            out.write(data, 0, length);
+            out.writeByte(0);
+            out.writeByte(END);
+            out.writeLong(world.tick);
+            writeState(out, world);
+        }
+    }
+
+    /**
+     * Writes the final state and its checksum.
+     */
+    static void writeState(DataOutputStream out, World world) throws IOException {
+        out.writeInt(world.player.x);
+        out.writeInt(world.player.y);
+        out.writeByte(world.player.direction.ordinal());
+        out.writeInt(world.cameraX);
+        out.writeInt(world.cameraY);
+        out.writeLong(checksum(world));
+    }
+
+    /**
+     * FNV-1a hash of the tick count, player position and direction and camera position.
+     *
+     * @param world The world
+     * @return The checksum
+     */
+    public static long checksum(World world) {
+        long[] values = {world.tick, world.player.x, world.player.y,
+                world.player.direction.ordinal(), world.cameraX, world.cameraY};
+        long hash = 0xcbf29ce484222325L;
+        for (long value : values) {
+            for (int shift = 0; shift < 64; shift += 8) {
+                hash ^= (value >>> shift) & 0xFF;
+                hash *= 0x100000001b3L;
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * @return Bytes of encoded changes recorded so far
+     */
+    public int size() {
+        return length;
+    }
+
+    private void writeVarLong(long value) {
+        while ((value & ~0x7FL) != 0) {
+            writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        writeByte((int) value);
+    }
+
+    private void writeByte(int b) {
+        if (length == data.length) {
+            data = Arrays.copyOf(data, length * 2);
+        }
+        data[length++] = (byte) b;
+    }
+}
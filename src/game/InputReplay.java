@@ -0,0 +1,160 @@
+package game;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import game.entity.Direction;
+
+/**
+ * InputReplay feeds a session recorded by {@link InputRecorder} back into
+ * the KeyHandler, tick by tick, and checks that the world ends up in the
+ * recorded state.
+ *
+ * The world must be created the same way as the recorded one (same map,
+ * NPC count from {@link #getNpcCount()}) and replayed from tick 0.
+ */
+public class InputReplay implements InputScript {
+
+    private final int updatesPerSecond;
+    private final int npcCount;
+    // Ticks and masks of the recorded changes
+    private final long[] ticks;
+    private final int[] masks;
+    // Next change to apply
+    private int next = 0;
+
+    // Recorded final state
+    private final long totalTicks;
+    private final int playerX, playerY, direction, cameraX, cameraY;
+    private final long checksum;
+
+    /**
+     * Reads a recording.
+     *
+     * @param path The file written by InputRecorder.finish
+     * @throws IOException If the file cannot be read or is not a recording
+     */
+    public InputReplay(Path path) throws IOException {
+        ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(path));
+        if (in.remaining() < 14 || in.getInt() != InputRecorder.MAGIC) {
+            throw new IOException(path + ": not an input recording");
+        }
+        short version = in.getShort();
+        if (version != InputRecorder.VERSION) {
+            throw new IOException(path + ": unsupported recording version " + version);
+        }
+        updatesPerSecond = in.getInt();
+        npcCount = in.getInt();
+
+        // At most one change per two bytes
+        long[] t = new long[in.remaining() / 2];
+        int[] m = new int[t.length];
+        int count = 0;
+        long tick = 0;
+        try {
+            while (true) {
+                tick += readVarLong(in);
+                int mask = in.get() & 0xFF;
+                if (mask == InputRecorder.END) {
+                    break;
+                }
+                t[count] = tick;
+                m[count] = mask;
+                count++;
+            }
+            totalTicks = in.getLong();
+            playerX = in.getInt();
+            playerY = in.getInt();
+            direction = in.get();
+            cameraX = in.getInt();
+            cameraY = in.getInt();
+            checksum = in.getLong();
+        } catch (RuntimeException e) {
+            throw new IOException(path + ": truncated or corrupt recording", e);
+        }
+        ticks = Arrays.copyOf(t, count);
+        masks = Arrays.copyOf(m, count);
+    }
+
+    private static long readVarLong(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+    }
+
+    /**
+     * Restores the recorded key state of a tick. Ticks must be applied in order.
+     */
+    @Override
+    public void apply(long tick, KeyHandler keys) {
+        if (next == 0 && tick == 0) {
+            set(keys, 0);
+        }
+        while (next < ticks.length && ticks[next] <= tick) {
+            set(keys, masks[next]);
+            next++;
+        }
+    }
+
+    private static void set(KeyHandler keys, int mask) {
+        InputRecorder.apply(mask, keys);
+    }
+
+    /**
+     * Starts the replay over (for a fresh world).
+     */
+    public void rewind() {
+        next = 0;
+    }
+
+    /**
+     * Compares the world, after all recorded ticks, with the recorded state.
+     *
+     * @param world The replayed world
+     * @return null if it matches, otherwise a description of the difference
+     */
+    public String verify(World world) {
+        if (InputRecorder.checksum(world) == checksum) {
+            return null;
+        }
+        return String.format("expected tick %d, player %d,%d %s, camera %d,%d but got tick %d, player %d,%d %s, camera %d,%d",
+                totalTicks, playerX, playerY, Direction.VALUES[direction].name().toLowerCase(), cameraX, cameraY,
+                world.tick, world.player.x, world.player.y, world.player.direction.name().toLowerCase(), world.cameraX, world.cameraY);
+    }
+
+    /**
+     * @return Number of ticks recorded
+     */
+    public long getTotalTicks() {
+        return totalTicks;
+    }
+
+    /**
+     * @return Update rate of the recorded session
+     */
+    public int getUpdatesPerSecond() {
+        return updatesPerSecond;
+    }
+
+    /**
+     * @return Number of NPCs the recorded world was created with
+     */
+    public int getNpcCount() {
+        return npcCount;
+    }
+
+    /**
+     * @return Number of key state changes recorded
+     */
+    public int getChanges() {
+        return ticks.length;
+    }
+}
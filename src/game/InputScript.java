@@ -0,0 +1,17 @@
+package game;
+
+/**
+ * Source of scripted input for runs without a keyboard
+ * (headless simulation, bots, soak tests).
+ */
+public interface InputScript {
+
+    /**
+     * Sets the key state for the given tick. Called once per tick,
+     * before the world is updated.
+     *
+     * @param tick The tick about to be simulated
+     * @param keys The key state read by the player
+     */
+    void apply(long tick, KeyHandler keys);
+}
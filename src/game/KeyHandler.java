@@ -3,13 +3,49 @@ package game;
 import java.awt.event.KeyListener;
 import java.awt.event.KeyEvent;
 
+import game.entity.Direction;
+import game.input.InputAction;
+import game.input.InputQueue;
+import game.input.KeyBindings;
+import game.metrics.FrameProfiler;
+
 /**
  * KeyHandler class manages keyboard input for the game.
- * Implements KeyListener to handle keyboard events and tracks the state of movement keys.
+ *
+ * Key events arrive on the EDT. They are translated to game actions through
+ * the remappable {@link KeyBindings} and queued, with a timestamp, on a
+ * lock-free {@link InputQueue}. The game thread calls {@link #poll} once at
+ * the start of every update to drain the queue into the movement flags, so
+ * the flags are only ever touched by the game thread.
+ *
+ * A key pressed and released within one tick still counts as held for that
+ * update, and the last movement key pressed is remembered as a buffered move
+ * so a step can be queued while the player is still walking.
  */
-public class KeyHandler implements KeyListener {
+public class KeyHandler implements KeyListener, InputQueue.Consumer {
 
+    // Movement state seen by the game (game thread only)
     public boolean upPressed, downPressed, leftPressed, rightPressed;
+    // Frame timing overlay, toggled with F3
+    public volatile boolean showProfiler;
+
+    // Key to action mapping (default arrows/WASD, see -Dgame.keys.*)
+    public final KeyBindings bindings = new KeyBindings();
+    // Events from the EDT to the game thread
+    private final InputQueue queue = new InputQueue(256);
+
+    // EDT side: physical key state (filters auto-repeat) and held keys per action
+    private final boolean[] keyDown = new boolean[1 << 16];
+    private final int[] heldKeys = new int[InputAction.VALUES.length];
+
+    // Game thread side: actions pressed during the current poll, and taps to release next poll
+    private final boolean[] pressedThisPoll = new boolean[InputAction.VALUES.length];
+    private final boolean[] releasePending = new boolean[InputAction.VALUES.length];
+    // Last movement key pressed, until the player takes it
+    private Direction bufferedMove;
+    // Context of the current poll, for the latency measurement
+    private long pollTime;
+    private FrameProfiler profiler;
 
     /**
      * Invoked when a key is typed (pressed and released).
@@ -17,56 +53,136 @@ public class KeyHandler implements KeyListener {
      * @param e the KeyEvent containing information about the key typed
      */
     @Override
-    public void keyTyped(KeyEvent e) {  
+    public void keyTyped(KeyEvent e) {
         // Not used in this implementation
     }
 
     /**
-     * Handles key press events and updates the corresponding key state.
-     * Sets the appropriate flag to true when a movement key is pressed.
+     * Handles key press events on the EDT and queues the bound action.
+     * Auto-repeated presses of a key that is already down are ignored.
      * @param e the KeyEvent containing information about the key press
      */
     @Override
     public void keyPressed(KeyEvent e) {
-        int keyCode = e.getKeyCode();
-
-        if(keyCode == KeyEvent.VK_UP) {    
-            upPressed = true;
+        int keyCode = e.getKeyCode() & 0xFFFF;
+        InputAction action = bindings.actionFor(keyCode);
+        if (action == null || keyDown[keyCode]) {
+            return;
         }
-        if(keyCode == KeyEvent.VK_DOWN) {    
-            downPressed = true;
-        }
-        if(keyCode == KeyEvent.VK_LEFT) {    
-            leftPressed = true;
-        }
-        if(keyCode == KeyEvent.VK_RIGHT) {    
-            rightPressed = true;
+        keyDown[keyCode] = true;
+
+        if (action == InputAction.TOGGLE_PROFILER) {
+            showProfiler = !showProfiler;
+        } else if (heldKeys[action.ordinal()]++ == 0) {
+            queue.offer(action, true, System.nanoTime());
         }
-        
     }
 
     /**
-     * Handles key release events and updates the corresponding key state.
-     * Resets the appropriate flag when a movement key is released.
+     * Handles key release events on the EDT. The action is released once
+     * the last key bound to it goes up.
      * @param e the KeyEvent containing information about the key release
      */
     @Override
     public void keyReleased(KeyEvent e) {
-        int keyCode = e.getKeyCode();
+        int keyCode = e.getKeyCode() & 0xFFFF;
+        InputAction action = bindings.actionFor(keyCode);
+        if (action == null || !keyDown[keyCode]) {
+            return;
+        }
+        keyDown[keyCode] = false;
 
-        if(keyCode == KeyEvent.VK_UP) {    
-            upPressed = false;
+        if (action != InputAction.TOGGLE_PROFILER && --heldKeys[action.ordinal()] == 0) {
+            queue.offer(action, false, System.nanoTime());
         }
-        if(keyCode == KeyEvent.VK_DOWN) {    
-            downPressed = false;
+    }
+
+    /**
+     * Applies the queued key events to the movement flags. Called by the game
+     * thread once per update, before the player reads the flags.
+     *
+     * @param profiler Receives the key-to-update latency of every event (may be null)
+     */
+    public void poll(FrameProfiler profiler) {
+        // Keys tapped during the previous tick have been seen by one update now
+        for (InputAction action : InputAction.VALUES) {
+            int i = action.ordinal();
+            pressedThisPoll[i] = false;
+            if (releasePending[i]) {
+                releasePending[i] = false;
+                setPressed(action.direction, false);
+            }
+        }
+        this.profiler = profiler;
+        pollTime = System.nanoTime();
+        queue.drain(this);
+    }
+
+    /**
+     * Applies one drained event (game thread).
+     */
+    @Override
+    public void event(InputAction action, boolean down, long nanoTime) {
+        if (profiler != null) {
+            profiler.record(FrameProfiler.Phase.KEY_LATENCY, pollTime - nanoTime);
         }
-        if(keyCode == KeyEvent.VK_LEFT) {    
-            leftPressed = false;
+        if (action.direction == null) {
+            return;
         }
-        if(keyCode == KeyEvent.VK_RIGHT) {    
-            rightPressed = false;
+        int i = action.ordinal();
+        if (down) {
+            pressedThisPoll[i] = true;
+            releasePending[i] = false;
+            setPressed(action.direction, true);
+            bufferedMove = action.direction;
+        } else if (pressedThisPoll[i]) {
+            // Pressed and released within one tick: keep it for this update
+            releasePending[i] = true;
+        } else {
+            setPressed(action.direction, false);
         }
     }
 
-    
+    private void setPressed(Direction direction, boolean pressed) {
+        switch (direction) {
+            case UP:    upPressed = pressed; break;
+            case DOWN:  downPressed = pressed; break;
+            case LEFT:  leftPressed = pressed; break;
+            case RIGHT: rightPressed = pressed; break;
+        }
+    }
+
+    /**
+     * Returns and forgets the last movement key pressed.
+     *
+     * @return The buffered direction, or null if none
+     */
+    public Direction takeBufferedMove() {
+        Direction move = bufferedMove;
+        bufferedMove = null;
+        return move;
+    }
+
+    /**
+     * @return The buffered direction, without taking it (null if none)
+     */
+    public Direction peekBufferedMove() {
+        return bufferedMove;
+    }
+
+    /**
+     * Replaces the buffered move. Used when replaying recorded input.
+     *
+     * @param move The direction to buffer, or null for none
+     */
+    public void setBufferedMove(Direction move) {
+        bufferedMove = move;
+    }
+
+    /**
+     * @return Number of key events lost because the game thread fell behind
+     */
+    public long getDroppedEvents() {
+        return queue.getDropped();
+    }
 }
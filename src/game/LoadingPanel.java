@@ -0,0 +1,110 @@
+package game;
+
+import javax.swing.JPanel;
+import javax.swing.Timer;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+
+import game.assets.AssetManager;
+
+/**
+ * LoadingPanel is shown while the assets load in the background.
+ * It draws a progress bar from the AssetManager's counters and the name
+ * of the asset that finished last, refreshed by a Swing timer.
+ */
+public class LoadingPanel extends JPanel {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final Font TITLE_FONT = new Font(Font.SANS_SERIF, Font.BOLD, 28);
+    private static final Font DETAIL_FONT = new Font(Font.MONOSPACED, Font.PLAIN, 12);
+    private static final Color BAR_COLOR = new Color(0x4FA33E);
+
+    private final AssetManager assets;
+    // Repaints the progress while loading (runs on the EDT)
+    private final Timer timer;
+    // Shown instead of the progress if loading failed
+    private volatile String error;
+
+    /**
+     * Creates the panel and starts refreshing it.
+     *
+     * @param assets The asset manager whose progress is shown
+     * @param width Panel width in pixels
+     * @param height Panel height in pixels
+     */
+    public LoadingPanel(AssetManager assets, int width, int height) {
+        this.assets = assets;
+        this.setPreferredSize(new Dimension(width, height));
+        this.setBackground(Color.black);
+        this.setDoubleBuffered(true);
+        timer = new Timer(33, e -> repaint());
+        timer.start();
+    }
+
+    /**
+     * Stops refreshing the panel.
+     */
+    public void stop() {
+        timer.stop();
+    }
+
+    /**
+     * Replaces the progress with an error message.
+     *
+     * @param message The message to show
+     */
+    public void showError(String message) {
+        error = message;
+        repaint();
+    }
+
+    /**
+     * Draws the title, the progress bar and the last loaded asset.
+     *
+     * @param g The Graphics context used for rendering
+     */
+    @Override
+    public void paintComponent(Graphics g) {
+        super.paintComponent(g);
+        Graphics2D g2 = (Graphics2D) g;
+        g2.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+
+        int width = getWidth(), height = getHeight();
+        g2.setFont(TITLE_FONT);
+        g2.setColor(Color.white);
+        drawCentered(g2, error == null ? "Loading..." : "Loading failed", height / 2 - 40);
+
+        g2.setFont(DETAIL_FONT);
+        if (error != null) {
+            g2.setColor(Color.red);
+            drawCentered(g2, error, height / 2);
+            return;
+        }
+
+        // Progress bar
+        int started = Math.max(1, assets.getStarted());
+        int finished = Math.min(started, assets.getFinished());
+        int barWidth = width / 2, barHeight = 16;
+        int barX = (width - barWidth) / 2, barY = height / 2;
+        g2.setColor(Color.darkGray);
+        g2.fillRect(barX, barY, barWidth, barHeight);
+        g2.setColor(BAR_COLOR);
+        g2.fillRect(barX, barY, barWidth * finished / started, barHeight);
+        g2.setColor(Color.white);
+        g2.drawRect(barX, barY, barWidth, barHeight);
+
+        String detail = finished + " / " + started + "  " + assets.getLastFinished();
+        drawCentered(g2, detail, barY + barHeight + 20);
+    }
+
+    private void drawCentered(Graphics2D g2, String text, int y) {
+        FontMetrics metrics = g2.getFontMetrics();
+        g2.drawString(text, (getWidth() - metrics.stringWidth(text)) / 2, y);
+    }
+}
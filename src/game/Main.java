@@ -7,6 +7,9 @@ package game;
 import javax.swing.SwingUtilities;
 
 public class Main {
+    // When main() was entered, for the time-to-first-frame measurement
+    public static final long START_NANOS = System.nanoTime();
+
     public static void main(String[] args) {
         // SwingUtilities.invokeLater ensures GUI code runs on the Event Dispatch Thread (EDT)
         // This is required for thread safety in Swing applications
@@ -1,88 +1,494 @@
 package game;
 
-import javax.imageio.ImageIO;
+import game.assets.AssetLoader;
+import game.log.Log;
+import game.log.LogCategory;
+import game.map.LayeredMap;
+import game.map.StreamingMap;
+import game.map.TileLayer;
+
 import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
+import java.nio.file.Paths;
 
 /**
  * Manages the game map, including loading and rendering the map image.
  * Handles different loading strategies for the map image and provides
  * methods to draw the map with camera support.
+ *
+ * After loading, the map is split into fixed-size chunks stored as
+ * display-compatible images, and only the chunks overlapping the camera
+ * rectangle are drawn. Drawing cost therefore depends on the viewport
+ * size, not on the size of the map.
+ *
+ * For maps larger than the heap, a chunked map file can be streamed instead
+ * (GameConfig.MAP_STREAM): chunks near the camera are loaded in the
+ * background into a bounded LRU cache, see {@link StreamingMap}.
+ *
+ * Tile layers from a layer file (see {@link LayeredMap}) are baked into the
+ * chunks: layers below the entities into the map chunks themselves, so
+ * drawing the map costs the same whatever the number of layers, overhead
+ * and parallax layers into chunks of their own drawn by {@link #drawOverhead}.
  */
 public class MapManager {
+
+    // Edge length of a map chunk in pixels
+    public static final int CHUNK_SIZE = 256;
+    // Where the map image is looked up (resource path, alternative resource path, file system)
+    public static final String[] MAP_IMAGE = {"/game/res/map.png", "/res/map.png", "Assets/map.png"};
     
-    // Reference to the main game panel
-    GamePanel gp;
+    // Reference to the game world
+    World world;
     
-    // The map image that will be drawn
+    // The decoded map image; released once it has been split into chunks
     public BufferedImage mapImage;
     
     // Dimensions of the map in pixels
     public int mapWidth, mapHeight;
+
+    // Map chunks in row-major order (chunkRows x chunkCols); replaced as a whole when tiles change
+    volatile BufferedImage[] chunks;
+    int chunkCols, chunkRows;
+
+    // The same chunks at native pixel-art resolution (GameConfig.LOW_RES only)
+    volatile BufferedImage[] nativeChunks;
+    int nativeChunkCols, nativeChunkRows;
+
+    // Number of chunks drawn in the last frame, under and over the entities
+    public int lastChunksDrawn, lastOverheadDrawn;
+
+    // Tile layers baked into the chunks (null without a layer file)
+    LayeredMap layeredMap;
+
+    // Out-of-core map source (null when the whole map is in memory)
+    StreamingMap streamingMap;
+
+    // Bumped whenever the drawn map content changes (a new map is loaded)
+    private long version;
     
     /**
      * Constructs a new MapManager and loads the map image.
      * 
-     * @param gp The GamePanel instance this map manager belongs to
+     * @param world The World instance this map manager belongs to
      */
-    public MapManager(GamePanel gp) {
-        this.gp = gp;
+    public MapManager(World world) {
+        this.world = world;
         loadMap(); // Load the map when the manager is created
     }
     
     /**
-     * Loads the map image from the resources or file system.
+     * Loads the map image from the asset pack, the resources or file system.
      * Tries multiple locations to find the map image:
      * 1. /game/res/map.png (resource path)
      * 2. /res/map.png (alternative resource path)
      * 3. Assets/map.png (file system)
      */
     public void loadMap() {
+        if (GameConfig.MAP_STREAM != null) {
+            openStreamingMap(GameConfig.MAP_STREAM);
+            return;
+        }
         try {
-            // First try loading from the classpath (JAR resources)
-            java.net.URL imgUrl = getClass().getResource("/game/res/map.png");
-            if (imgUrl == null) {
-                // Try alternative resource path (for different project structures)
-                imgUrl = getClass().getResource("/res/map.png");
+            long start = System.nanoTime();
+            try {
+                layeredMap = LayeredMap.load(GameConfig.MAP_LAYERS, world.scale, CHUNK_SIZE);
+            } catch (IOException e) {
+                // The map image alone is still a playable map
+                Log.error(LogCategory.MAP, "Error loading map layers", e);
             }
-            
-            // If not found in resources, try loading from file system
-            if (imgUrl == null) {
-                System.out.println("Map not found in resources, trying file system...");
-                mapImage = ImageIO.read(new java.io.File("Assets/map.png"));
-            } else {
-                mapImage = ImageIO.read(imgUrl);
+            // Pack first, then the classpath (JAR resources), then the file system
+            try {
+                mapImage = AssetLoader.readImage(MAP_IMAGE);
+            } catch (IOException e) {
+                if (layeredMap == null) {
+                    throw e;
+                }
+                // A map made of tile layers only
+                Log.info(LogCategory.MAP, "No map image, drawing the tile layers only");
             }
-            
-            // If map was successfully loaded, store its dimensions
+            long loaded = System.nanoTime();
             if (mapImage != null) {
-                mapWidth = mapImage.getWidth();
-                mapHeight = mapImage.getHeight();
-                System.out.println("Map loaded successfully: " + mapWidth + "x" + mapHeight);
+                loadMap(mapImage);
             } else {
-                System.err.println("Failed to load map.png - File not found or invalid image");
+                mapWidth = layeredMap.getWidth();
+                mapHeight = layeredMap.getHeight();
+                buildChunks(null);
             }
-            
+            long end = System.nanoTime();
+            Log.info(LogCategory.MAP, "Map loaded successfully: {}x{} ({}x{} chunks)",
+                    mapWidth, mapHeight, chunkCols, chunkRows);
+            if (layeredMap != null) {
+                Log.info(LogCategory.MAP, "Map layers: {} layers, {} baked chunks",
+                        layeredMap.getLayers().size(), layeredMap.bakedChunks());
+            }
+            Log.info(LogCategory.MAP, "Map load took {} ms ({} ms reading, {} ms chunking)",
+                    (end - start) / 1_000_000, (loaded - start) / 1_000_000, (end - loaded) / 1_000_000);
         } catch (IOException e) {
-            System.err.println("Error loading map: " + e.getMessage());
-            e.printStackTrace();
+            Log.error(LogCategory.MAP, "Error loading map", e);
         }
     }
     
+    /**
+     * Uses an already decoded image as the map, replacing the current one.
+     *
+     * @param image The full map image
+     */
+    public void loadMap(BufferedImage image) {
+        if (streamingMap != null) {
+            streamingMap.close();
+            streamingMap = null;
+        }
+        mapWidth = image.getWidth();
+        mapHeight = image.getHeight();
+        buildChunks(image);
+        // The chunks hold all pixels now; don't keep a second copy
+        mapImage = null;
+    }
+
+    /**
+     * Opens a chunked map file for streaming instead of decoding map.png.
+     *
+     * @param path Path of the chunked map file
+     */
+    void openStreamingMap(String path) {
+        if (GameConfig.MAP_LAYERS != null) {
+            // Streamed chunks are never fully in memory to bake into
+            Log.warn(LogCategory.MAP, "Map layers are not supported with a streamed map, ignoring {}", GameConfig.MAP_LAYERS);
+        }
+        try {
+            streamingMap = new StreamingMap(Paths.get(path),
+                    GameConfig.MAP_CACHE_MB * 1024L * 1024L, GameConfig.MAP_LOADER_THREADS,
+                    world.screenWidth, world.screenHeight);
+            version++;
+            mapWidth = streamingMap.getMapWidth();
+            mapHeight = streamingMap.getMapHeight();
+            Log.info(LogCategory.MAP, "Streaming map opened: {}x{} (cache: {} chunks)",
+                    mapWidth, mapHeight, streamingMap.getCache().getCapacity());
+        } catch (IOException e) {
+            Log.error(LogCategory.MAP, "Error opening streaming map", e);
+        }
+    }
+
+    /**
+     * Requests the map chunks around the camera when streaming.
+     * Called once per tick on the game thread.
+     *
+     * @param cameraX The x-coordinate of the camera in world space
+     * @param cameraY The y-coordinate of the camera in world space
+     * @param dirX Horizontal movement direction of the player (-1, 0, 1)
+     * @param dirY Vertical movement direction of the player (-1, 0, 1)
+     */
+    public void update(int cameraX, int cameraY, int dirX, int dirY) {
+        if (streamingMap != null) {
+            streamingMap.update(cameraX, cameraY, world.screenWidth, world.screenHeight, dirX, dirY);
+        }
+    }
+
+    /**
+     * @return Streaming cache statistics, or null when the map is fully in memory
+     */
+    public String streamingStats() {
+        return streamingMap != null ? streamingMap.statsLine() : null;
+    }
+
+    /**
+     * Splits the source image into CHUNK_SIZE x CHUNK_SIZE compatible images.
+     * Chunks on the right and bottom edges are cropped to the map size.
+     * Tile layers, if any, are baked in afterwards.
+     *
+     * @param source The full map image, or null for a map of tile layers only
+     */
+    void buildChunks(BufferedImage source) {
+        chunkCols = (mapWidth + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        chunkRows = (mapHeight + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        BufferedImage[] chunks = source != null ? new BufferedImage[chunkCols * chunkRows] : null;
+        version++;
+
+        for (int row = 0; source != null && row < chunkRows; row++) {
+            for (int col = 0; col < chunkCols; col++) {
+                int sx = col * CHUNK_SIZE;
+                int sy = row * CHUNK_SIZE;
+                int w = Math.min(CHUNK_SIZE, mapWidth - sx);
+                int h = Math.min(CHUNK_SIZE, mapHeight - sy);
+
+                BufferedImage chunk = ImageUtils.createCompatibleImage(w, h, source.getTransparency());
+                Graphics2D g = chunk.createGraphics();
+                g.drawImage(source, 0, 0, w, h, sx, sy, sx + w, sy + h, null);
+                g.dispose();
+                chunks[row * chunkCols + col] = chunk;
+            }
+        }
+        this.chunks = layeredMap != null ? layeredMap.bake(chunks, mapWidth, mapHeight) : chunks;
+        if (GameConfig.LOW_RES) {
+            buildNativeChunks();
+        }
+    }
+
+    /**
+     * Uses tile layers built in code (generated maps, benchmarks) instead of
+     * the layer file. They are baked when the next map image is loaded with
+     * {@link #loadMap(BufferedImage)}.
+     *
+     * @param layers The layers, or null for none
+     */
+    public void setLayeredMap(LayeredMap layers) {
+        layeredMap = layers;
+    }
+
+    /**
+     * @return The tile layers of the map, or null if it has none
+     */
+    public LayeredMap getLayeredMap() {
+        return layeredMap;
+    }
+
+    /**
+     * Changes one tile of a layer at runtime.
+     *
+     * @param layer Layer name
+     * @param col Tile column
+     * @param row Tile row
+     * @param tile Tile index, -1 to clear
+     */
+    public void setTile(String layer, int col, int row, int tile) {
+        setTiles(layer, col, row, col, row, tile);
+    }
+
+    /**
+     * Changes a rectangle of tiles of a layer at runtime and re-bakes only
+     * the chunks it touches. Game thread only (or before the game loop starts).
+     *
+     * @param layer Layer name
+     * @param minCol First column
+     * @param minRow First row
+     * @param maxCol Last column (inclusive)
+     * @param maxRow Last row (inclusive)
+     * @param tile Tile index, -1 to clear
+     * @throws IllegalStateException If the map has no tile layers
+     */
+    public void setTiles(String layer, int minCol, int minRow, int maxCol, int maxRow, int tile) {
+        if (layeredMap == null) {
+            throw new IllegalStateException("The map has no tile layers");
+        }
+        TileLayer target = layeredMap.layer(layer);
+        if (!layeredMap.setTiles(target, minCol, minRow, maxCol, maxRow, tile)) {
+            return;
+        }
+        if (target.kind == TileLayer.Kind.BELOW) {
+            chunks = layeredMap.belowChunks();
+            if (nativeChunks != null) {
+                int size = layeredMap.tilePixels;
+                rebuildNativeChunks(minCol * size, minRow * size, (maxCol + 1) * size - 1, (maxRow + 1) * size - 1);
+            }
+        }
+        // Redrawn by the dirty-rectangle tracker like a new map
+        version++;
+    }
+
+    /**
+     * Builds CHUNK_SIZE x CHUNK_SIZE chunks of the map shrunk to native
+     * resolution (1/scale), sampling the nearest pixel, for low-resolution
+     * rendering. Done on load when GameConfig.LOW_RES is set.
+     */
+    public void buildNativeChunks() {
+        BufferedImage[] chunks = this.chunks;
+        if (chunks == null) {
+            return;
+        }
+        int scale = world.scale;
+        nativeChunkCols = (mapWidth / scale + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        nativeChunkRows = (mapHeight / scale + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        BufferedImage[] built = new BufferedImage[nativeChunkCols * nativeChunkRows];
+        for (int i = 0; i < built.length; i++) {
+            built[i] = buildNativeChunk(chunks, i);
+        }
+        nativeChunks = built;
+    }
+
+    /**
+     * Rebuilds the native-resolution chunks covering a rectangle after the
+     * full-resolution chunks there were re-baked.
+     *
+     * @param minX Left edge in world pixels
+     * @param minY Top edge in world pixels
+     * @param maxX Right edge in world pixels (inclusive)
+     * @param maxY Bottom edge in world pixels (inclusive)
+     */
+    void rebuildNativeChunks(int minX, int minY, int maxX, int maxY) {
+        int span = CHUNK_SIZE * world.scale;
+        BufferedImage[] copy = nativeChunks.clone();
+        for (int row = minY / span; row <= Math.min(nativeChunkRows - 1, maxY / span); row++) {
+            for (int col = minX / span; col <= Math.min(nativeChunkCols - 1, maxX / span); col++) {
+                copy[row * nativeChunkCols + col] = buildNativeChunk(chunks, row * nativeChunkCols + col);
+            }
+        }
+        nativeChunks = copy;
+    }
+
+    /**
+     * Shrinks the full-resolution chunks one native chunk covers into it.
+     */
+    private BufferedImage buildNativeChunk(BufferedImage[] chunks, int index) {
+        int scale = world.scale;
+        int col = index % nativeChunkCols, row = index / nativeChunkCols;
+        int w = Math.min(CHUNK_SIZE, mapWidth / scale - col * CHUNK_SIZE);
+        int h = Math.min(CHUNK_SIZE, mapHeight / scale - row * CHUNK_SIZE);
+        // Chunks without a map image are translucent, and null where no layer has a tile
+        int transparency = chunks[0] != null ? chunks[0].getTransparency() : Transparency.TRANSLUCENT;
+        BufferedImage chunk = ImageUtils.createCompatibleImage(w, h, transparency);
+        Graphics2D g = chunk.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+        g.scale(1.0 / scale, 1.0 / scale);
+        // Draw the full-resolution chunks this one covers, shrunk
+        int originX = col * CHUNK_SIZE * scale, originY = row * CHUNK_SIZE * scale;
+        for (int r = originY / CHUNK_SIZE; r <= Math.min(chunkRows - 1, (originY + h * scale - 1) / CHUNK_SIZE); r++) {
+            for (int c = originX / CHUNK_SIZE; c <= Math.min(chunkCols - 1, (originX + w * scale - 1) / CHUNK_SIZE); c++) {
+                if (chunks[r * chunkCols + c] != null) {
+                    g.drawImage(chunks[r * chunkCols + c], c * CHUNK_SIZE - originX, r * CHUNK_SIZE - originY, null);
+                }
+            }
+        }
+        g.dispose();
+        return chunk;
+    }
+
+    /**
+     * Identifies what the map looks like: two equal values mean the same
+     * camera position draws the same pixels. Streaming maps change whenever
+     * a chunk finishes loading (its placeholder is replaced).
+     *
+     * @return The current content version
+     */
+    public long contentVersion() {
+        return streamingMap != null ? version + streamingMap.getLoads() : version;
+    }
+
+    /**
+     * @return true if a map has been loaded
+     */
+    public boolean isLoaded() {
+        return chunks != null || streamingMap != null;
+    }
+
     /**
      * Draws the map on the screen with camera offset.
-     * The camera position determines which part of the map is visible.
+     * Only the chunks that overlap the camera rectangle are drawn.
      * 
      * @param g2 The Graphics2D context to draw on
      * @param cameraX The x-coordinate of the camera in world space
      * @param cameraY The y-coordinate of the camera in world space
      */
     public void draw(Graphics2D g2, int cameraX, int cameraY) {
-        if (mapImage != null) {
-            // Draw the map with negative camera offset to create scrolling effect
-            // The camera position represents the top-left corner of the visible area
-            g2.drawImage(mapImage, -cameraX, -cameraY, null);
+        lastChunksDrawn = 0;
+        if (streamingMap != null) {
+            lastChunksDrawn = streamingMap.draw(g2, cameraX, cameraY, world.screenWidth, world.screenHeight);
+            return;
+        }
+        BufferedImage[] chunks = this.chunks;
+        if (chunks == null) {
+            return;
+        }
+
+        // Range of chunks covered by the viewport
+        int firstCol = Math.max(0, Math.floorDiv(cameraX, CHUNK_SIZE));
+        int firstRow = Math.max(0, Math.floorDiv(cameraY, CHUNK_SIZE));
+        int lastCol = Math.min(chunkCols - 1, Math.floorDiv(cameraX + world.screenWidth - 1, CHUNK_SIZE));
+        int lastRow = Math.min(chunkRows - 1, Math.floorDiv(cameraY + world.screenHeight - 1, CHUNK_SIZE));
+
+        // Chunks are drawn 1:1, no interpolation needed
+        g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int col = firstCol; col <= lastCol; col++) {
+                BufferedImage chunk = chunks[row * chunkCols + col];
+                if (chunk == null) {
+                    // No map image and no tile here
+                    continue;
+                }
+                // The camera position represents the top-left corner of the visible area
+                g2.drawImage(chunk, col * CHUNK_SIZE - cameraX, row * CHUNK_SIZE - cameraY, null);
+                lastChunksDrawn++;
+            }
+        }
+    }
+
+    /**
+     * Draws the map at native pixel-art resolution (1/scale) for the
+     * low-resolution render mode.
+     *
+     * @param g2 The Graphics2D context of the native-resolution frame
+     * @param cameraX Camera x in native pixels
+     * @param cameraY Camera y in native pixels
+     * @param viewWidth Frame width in native pixels
+     * @param viewHeight Frame height in native pixels
+     */
+    public void drawNative(Graphics2D g2, int cameraX, int cameraY, int viewWidth, int viewHeight) {
+        lastChunksDrawn = 0;
+        int scale = world.scale;
+        if (streamingMap != null) {
+            // Streamed chunks only exist at full resolution: shrink them while drawing
+            Graphics2D g = (Graphics2D) g2.create();
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+            g.scale(1.0 / scale, 1.0 / scale);
+            lastChunksDrawn = streamingMap.draw(g, cameraX * scale, cameraY * scale, viewWidth * scale, viewHeight * scale);
+            g.dispose();
+            return;
+        }
+        BufferedImage[] nativeChunks = this.nativeChunks;
+        if (nativeChunks == null) {
+            return;
+        }
+
+        int firstCol = Math.max(0, Math.floorDiv(cameraX, CHUNK_SIZE));
+        int firstRow = Math.max(0, Math.floorDiv(cameraY, CHUNK_SIZE));
+        int lastCol = Math.min(nativeChunkCols - 1, Math.floorDiv(cameraX + viewWidth - 1, CHUNK_SIZE));
+        int lastRow = Math.min(nativeChunkRows - 1, Math.floorDiv(cameraY + viewHeight - 1, CHUNK_SIZE));
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int col = firstCol; col <= lastCol; col++) {
+                g2.drawImage(nativeChunks[row * nativeChunkCols + col],
+                        col * CHUNK_SIZE - cameraX, row * CHUNK_SIZE - cameraY, null);
+                lastChunksDrawn++;
+            }
+        }
+    }
+
+    /**
+     * Draws the overhead and parallax tile layers, after the entities.
+     *
+     * @param g2 The Graphics2D context to draw on
+     * @param cameraX The x-coordinate of the camera in world space
+     * @param cameraY The y-coordinate of the camera in world space
+     */
+    public void drawOverhead(Graphics2D g2, int cameraX, int cameraY) {
+        LayeredMap layers = layeredMap;
+        lastOverheadDrawn = layers != null
+                ? layers.drawAbove(g2, cameraX, cameraY, world.screenWidth, world.screenHeight) : 0;
+    }
+
+    /**
+     * Draws the overhead and parallax tile layers at native resolution.
+     * They are only baked at full resolution, so they are shrunk while drawing.
+     *
+     * @param g2 The Graphics2D context of the native-resolution frame
+     * @param cameraX Camera x in native pixels
+     * @param cameraY Camera y in native pixels
+     * @param viewWidth Frame width in native pixels
+     * @param viewHeight Frame height in native pixels
+     */
+    public void drawOverheadNative(Graphics2D g2, int cameraX, int cameraY, int viewWidth, int viewHeight) {
+        LayeredMap layers = layeredMap;
+        if (layers == null) {
+            lastOverheadDrawn = 0;
+            return;
         }
+        int scale = world.scale;
+        Graphics2D g = (Graphics2D) g2.create();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+        g.scale(1.0 / scale, 1.0 / scale);
+        lastOverheadDrawn = layers.drawAbove(g, cameraX * scale, cameraY * scale, viewWidth * scale, viewHeight * scale);
+        g.dispose();
     }
 }
@@ -0,0 +1,38 @@
+package game;
+
+import java.util.Random;
+
+/**
+ * Scripted input that holds a random arrow key for a random number of
+ * ticks, then lets go for a while. Seeded, so runs are repeatable.
+ */
+public class RandomWalkInput implements InputScript {
+
+    private final Random random;
+    // Tick at which the current key (or pause) ends
+    private long nextChange = 0;
+
+    /**
+     * @param seed Random seed
+     */
+    public RandomWalkInput(long seed) {
+        this.random = new Random(seed);
+    }
+
+    @Override
+    public void apply(long tick, KeyHandler keys) {
+        if (tick < nextChange) {
+            return;
+        }
+        keys.upPressed = keys.downPressed = keys.leftPressed = keys.rightPressed = false;
+        // One time in five: stand still
+        switch (random.nextInt(5)) {
+            case 0: keys.upPressed = true; break;
+            case 1: keys.downPressed = true; break;
+            case 2: keys.leftPressed = true; break;
+            case 3: keys.rightPressed = true; break;
+            default: break;
+        }
+        nextChange = tick + 24 + random.nextInt(240);
+    }
+}
@@ -0,0 +1,137 @@
+package game;
+
+import java.util.Arrays;
+
+import game.anim.Animations;
+import game.entity.EntityStore;
+
+/**
+ * RenderSnapshot is everything needed to draw one frame, copied from the
+ * World at the end of a tick: the camera, the player and the NPCs near the
+ * view, each with its position before and after the tick for interpolation.
+ *
+ * Snapshots are filled on the game thread and handed to the renderer through
+ * a {@link SnapshotBuffer}, so drawing never reads state the simulation is
+ * changing. The arrays are reused; they only grow when more NPCs are near
+ * the view than ever before.
+ */
+public class RenderSnapshot {
+
+    // Tick this snapshot was taken after, and when it was published (System.nanoTime)
+    public long tick;
+    public long publishNanos;
+
+    // Camera (top-left of the viewport) before and after the tick
+    public int cameraX, cameraY, prevCameraX, prevCameraY;
+    // Map content version (see MapManager.contentVersion)
+    public long mapVersion;
+
+    // Player position, animation clip and the sheet column of its current frame
+    public int playerX, playerY, playerPrevX, playerPrevY;
+    public int playerClip, playerFrame;
+
+    // NPCs near the view, struct-of-arrays like EntityStore
+    public int npcCount;
+    public int[] npcId = new int[0];
+    public int[] npcX = new int[0], npcY = new int[0], npcPrevX = new int[0], npcPrevY = new int[0];
+    public int[] npcClip = new int[0], npcFrame = new int[0];
+    // Identity of the NPC store the ids refer to
+    public EntityStore npcStore;
+
+    // Fog of war states (see game.light.FogOfWar) of the tiles around the view, row by row,
+    // for fogCols x fogRows tiles starting at tile (fogCol, fogRow); fogCols is 0 without fog
+    public byte[] fog = new byte[0];
+    public int fogCol, fogRow, fogCols, fogRows;
+
+    /**
+     * Copies the drawable state of the world. Game thread only.
+     *
+     * @param world The world, between two updates
+     * @param scratch Receives the ids of the NPCs near the view
+     * @return This snapshot
+     */
+    RenderSnapshot capture(World world, int[] scratch) {
+        tick = world.tick;
+        cameraX = world.cameraX;
+        cameraY = world.cameraY;
+        prevCameraX = world.prevCameraX;
+        prevCameraY = world.prevCameraY;
+        mapVersion = world.mapManager.contentVersion();
+
+        playerX = world.player.x;
+        playerY = world.player.y;
+        playerPrevX = world.player.prevX;
+        playerPrevY = world.player.prevY;
+        playerClip = world.player.clip;
+        playerFrame = Animations.clip(playerClip).frameAt(world.player.animTime);
+
+        // The view at either end of the tick, plus a tile of margin for sprites overlapping the edges
+        int tile = world.tileSize;
+        int x = Math.min(cameraX, prevCameraX) - tile;
+        int y = Math.min(cameraY, prevCameraY) - tile;
+        int width = world.screenWidth + Math.abs(cameraX - prevCameraX) + 2 * tile;
+        int height = world.screenHeight + Math.abs(cameraY - prevCameraY) + 2 * tile;
+        EntityStore store = world.npcs;
+        int count = world.npcGrid.queryRect(x, y, width, height, scratch);
+        ensureCapacity(count);
+        for (int i = 0; i < count; i++) {
+            int id = scratch[i];
+            npcId[i] = id;
+            npcX[i] = store.x[id];
+            npcY[i] = store.y[id];
+            npcPrevX[i] = store.prevX[id];
+            npcPrevY[i] = store.prevY[id];
+            npcClip[i] = store.clip[id];
+            npcFrame[i] = Animations.clip(store.clip[id]).frameAt(store.animTime[id]);
+        }
+        npcCount = count;
+        npcStore = store;
+
+        if (world.fog != null) {
+            // Same area, in whole tiles; the margin covers the tile centers the lighting samples
+            fogCol = Math.floorDiv(x, tile);
+            fogRow = Math.floorDiv(y, tile);
+            fogCols = Math.floorDiv(x + width, tile) - fogCol + 1;
+            fogRows = Math.floorDiv(y + height, tile) - fogRow + 1;
+            if (fog.length < fogCols * fogRows) {
+                fog = new byte[fogCols * fogRows];
+            }
+            world.fog.copyRegion(fogCol, fogRow, fogCols, fogRows, fog);
+        } else {
+            fogCols = fogRows = 0;
+        }
+        return this;
+    }
+
+    /**
+     * Grows the NPC arrays to hold at least the given number of NPCs
+     * (for snapshots filled from elsewhere, such as a network client).
+     *
+     * @param count Number of NPCs
+     */
+    public void ensureCapacity(int count) {
+        if (npcId.length >= count) {
+            return;
+        }
+        int size = Math.max(count, npcId.length * 2);
+        npcId = Arrays.copyOf(npcId, size);
+        npcX = Arrays.copyOf(npcX, size);
+        npcY = Arrays.copyOf(npcY, size);
+        npcPrevX = Arrays.copyOf(npcPrevX, size);
+        npcPrevY = Arrays.copyOf(npcPrevY, size);
+        npcClip = Arrays.copyOf(npcClip, size);
+        npcFrame = Arrays.copyOf(npcFrame, size);
+    }
+
+    /**
+     * Interpolates between a value before and after the tick.
+     *
+     * @param previous Value before the tick
+     * @param current Value after the tick
+     * @param alpha Render interpolation factor (0..1)
+     * @return The value to draw with
+     */
+    public static int interpolate(int previous, int current, double alpha) {
+        return (int) Math.round(previous + (current - previous) * alpha);
+    }
+}
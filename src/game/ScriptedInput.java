@@ -0,0 +1,135 @@
+package game;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import game.entity.Direction;
+
+/**
+ * Scripted input read from a text file. Each line holds one key event:
+ * <pre>
+ *   # tick  key    action
+ *   0       RIGHT  press
+ *   120     RIGHT  release
+ *   120     DOWN   press
+ *   300     LEFT   tap
+ * </pre>
+ * Keys are UP, DOWN, LEFT and RIGHT; actions are press, release and tap.
+ * A tap is a key pressed and released within one tick: it buffers a move
+ * (see KeyHandler.takeBufferedMove) without changing the held keys.
+ * Blank lines and lines starting with '#' are ignored.
+ */
+public class ScriptedInput implements InputScript {
+
+    // Action of a tap event
+    private static final int TAP = 2;
+
+    private final long[] ticks;
+    private final int[] keys;
+    // Per event: 1 = press, 0 = release, TAP = tap
+    private final int[] actions;
+    // Next event to apply
+    private int next = 0;
+
+    /**
+     * Reads an input script.
+     *
+     * @param path The script file
+     * @throws IOException If the file cannot be read or contains an invalid line
+     */
+    public ScriptedInput(Path path) throws IOException {
+        // Parsed events as {tick, key, action}, in file order
+        List<long[]> events = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] parts = line.split("\\s+");
+                try {
+                    events.add(parse(parts));
+                } catch (IllegalArgumentException e) {
+                    throw new IOException(path + ":" + lineNumber + ": " + e.getMessage(), e);
+                }
+            }
+        }
+        // Stable, so events of the same tick keep their order
+        events.sort(Comparator.comparingLong(e -> e[0]));
+
+        ticks = new long[events.size()];
+        keys = new int[events.size()];
+        actions = new int[events.size()];
+        for (int i = 0; i < events.size(); i++) {
+            long[] e = events.get(i);
+            ticks[i] = e[0];
+            keys[i] = (int) e[1];
+            actions[i] = (int) e[2];
+        }
+    }
+
+    /**
+     * Parses the fields of one event line.
+     *
+     * @return {tick, key, action}
+     * @throws IllegalArgumentException If a field is invalid
+     */
+    private static long[] parse(String[] parts) {
+        if (parts.length != 3) {
+            throw new IllegalArgumentException("expected '<tick> <key> <press|release|tap>'");
+        }
+        long tick;
+        try {
+            tick = Long.parseLong(parts[0]);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("bad tick '" + parts[0] + "'");
+        }
+        if (tick < 0) {
+            throw new IllegalArgumentException("bad tick '" + parts[0] + "'");
+        }
+        int key;
+        switch (parts[1].toUpperCase()) {
+            case "UP":    key = 0; break;
+            case "DOWN":  key = 1; break;
+            case "LEFT":  key = 2; break;
+            case "RIGHT": key = 3; break;
+            default: throw new IllegalArgumentException("unknown key '" + parts[1] + "'");
+        }
+        int action;
+        switch (parts[2].toLowerCase()) {
+            case "press":   action = 1; break;
+            case "release": action = 0; break;
+            case "tap":     action = TAP; break;
+            default: throw new IllegalArgumentException("unknown action '" + parts[2] + "', expected press, release or tap");
+        }
+        return new long[] {tick, key, action};
+    }
+
+    @Override
+    public void apply(long tick, KeyHandler keyState) {
+        while (next < ticks.length && ticks[next] <= tick) {
+            if (actions[next] == TAP) {
+                // Key indices are Direction ordinals
+                keyState.setBufferedMove(Direction.VALUES[keys[next]]);
+            } else {
+                boolean down = actions[next] == 1;
+                switch (keys[next]) {
+                    case 0: keyState.upPressed = down; break;
+                    case 1: keyState.downPressed = down; break;
+                    case 2: keyState.leftPressed = down; break;
+                    case 3: keyState.rightPressed = down; break;
+                }
+            }
+            next++;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package game;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * SnapshotBuffer passes render snapshots from the game thread to the
+ * render thread without locks: a triple buffer of three preallocated
+ * snapshots.
+ *
+ * The writer fills its back snapshot and swaps it with the middle one; the
+ * reader swaps the middle one with its front snapshot whenever a new one was
+ * published since. Each side only ever touches the snapshot it owns, the
+ * writer never waits for the reader, and the reader always gets the latest
+ * complete tick (older ones it did not get to are simply overwritten).
+ *
+ * One writer thread and one reader thread at a time.
+ */
+public class SnapshotBuffer {
+
+    // Set in the middle index when it holds a snapshot the reader has not taken yet
+    private static final int FRESH = 4;
+    private static final int INDEX = 3;
+
+    private final RenderSnapshot[] snapshots = {new RenderSnapshot(), new RenderSnapshot(), new RenderSnapshot()};
+    // Index of the shared snapshot, plus the FRESH flag
+    private final AtomicInteger middle = new AtomicInteger(1);
+    // Owned by the writer
+    private int back = 0;
+    private RenderSnapshot published;
+    // Owned by the reader
+    private int front = 2;
+
+    // Thread to wake up on publish (null = none)
+    private volatile Thread waiter;
+
+    /**
+     * @return The snapshot to fill next (writer only)
+     */
+    public RenderSnapshot back() {
+        return snapshots[back];
+    }
+
+    /**
+     * Publishes the back snapshot and takes over the previous middle one (writer only).
+     */
+    public void publish() {
+        RenderSnapshot snapshot = snapshots[back];
+        snapshot.publishNanos = System.nanoTime();
+        back = middle.getAndSet(back | FRESH) & INDEX;
+        published = snapshot;
+        Thread thread = waiter;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * @return The snapshot published last (writer only: the reader may be
+     *         drawing it, but it is not reused until the writer publishes again)
+     */
+    public RenderSnapshot published() {
+        return published;
+    }
+
+    /**
+     * @return The latest published snapshot (reader only; stays valid until the next call)
+     */
+    public RenderSnapshot acquire() {
+        if ((middle.get() & FRESH) != 0) {
+            front = middle.getAndSet(front) & INDEX;
+        }
+        return snapshots[front];
+    }
+
+    /**
+     * @return true if a snapshot was published since the last acquire()
+     */
+    public boolean hasFresh() {
+        return (middle.get() & FRESH) != 0;
+    }
+
+    /**
+     * Sets the thread unparked whenever a snapshot is published.
+     *
+     * @param thread The reader thread, or null
+     */
+    public void setWaiter(Thread thread) {
+        waiter = thread;
+    }
+}
@@ -0,0 +1,444 @@
+package game;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+
+import game.anim.Animations;
+import game.assets.AssetManager;
+import game.entity.EntityStore;
+import game.entity.Player;
+import game.entity.SpatialGrid;
+import game.light.FogOfWar;
+import game.map.CollisionMap;
+import game.metrics.FrameProfiler;
+import game.metrics.FrameProfiler.Phase;
+import game.path.PathService;
+import game.path.TilePath;
+
+/**
+ * World holds the complete game state and the per-tick game logic:
+ * the map, the player, the NPCs and the camera.
+ *
+ * It has no dependency on Swing or a display, so the same simulation can be
+ * driven by the windowed GamePanel or by HeadlessGame (tests, bots, soak runs
+ * on servers without a display).
+ *
+ * At the end of every tick the drawable state is copied into a
+ * {@link RenderSnapshot}; drawing only reads snapshots, so rendering can run
+ * on another thread than the simulation without ever seeing half a tick.
+ */
+public class World {
+    // Viewport size in pixels, also needed before a World exists (loading screen)
+    public static final int SCREEN_WIDTH = 16 * 3 * 16;   // 768 pixels
+    public static final int SCREEN_HEIGHT = 16 * 3 * 12;  // 576 pixels
+
+    // Original size of tiles in pixels (before scaling)
+    public final int originalTileSize = 16;
+    // Scale factor for all game elements
+    public final int scale = 3;
+
+    // Actual size of tiles after scaling
+    public final int tileSize = originalTileSize * scale; // 48x48 pixels
+
+    // Viewport dimensions in number of tiles
+    public final int gridWidth = 16;   // Number of tiles horizontally
+    public final int gridHeight = 12;  // Number of tiles vertically
+
+    // Viewport dimensions in pixels
+    public final int screenWidth = tileSize * gridWidth;   // 768 pixels (SCREEN_WIDTH)
+    public final int screenHeight = tileSize * gridHeight; // 576 pixels (SCREEN_HEIGHT)
+
+    // Input state read by the player
+    public final KeyHandler keyHandler;
+
+    // Game entities
+    public final Player player;
+    public final MapManager mapManager;
+    // Blocked tiles, built from the map's collision data
+    public CollisionMap collisionMap;
+    // Paths over the collision layer (null without a map)
+    public PathService paths;
+    // Tiles the player has seen (null unless GameConfig.FOG is set and a map is loaded)
+    public FogOfWar fog;
+    // Wandering NPCs, stored as struct-of-arrays
+    public EntityStore npcs;
+    // Tile-aligned spatial index over the NPCs
+    public SpatialGrid npcGrid;
+    // Ids of the NPCs near the view, found when taking a snapshot (reused every tick)
+    int[] snapshotNpcs;
+
+    // Path requests made for NPCs per tick when they seek the player (GameConfig.NPC_SEEK)
+    static final int SEEK_REQUESTS_PER_TICK = 64;
+    // Pending path request of each NPC (null = none), and the ids that have one
+    private CompletableFuture<TilePath>[] npcPathRequests;
+    private int[] pendingPaths;
+    private int pendingCount;
+    // Next NPC considered for a request
+    private int seekCursor;
+    // Clip of the current draw call (reused every frame)
+    private final Rectangle drawClip = new Rectangle();
+
+    // Render snapshots published at the end of every tick
+    public final SnapshotBuffer snapshots = new SnapshotBuffer();
+
+    // Camera position (top-left corner of the viewport in world coordinates)
+    public int cameraX = 0;  // X-coordinate of camera in world space
+    public int cameraY = 0;  // Y-coordinate of camera in world space
+    // Camera position before the last update (used for render interpolation)
+    public int prevCameraX = 0, prevCameraY = 0;
+
+    // Interpolation factor between the previous and the current update (0..1)
+    public volatile double renderAlpha = 1.0;
+
+    // Number of updates run so far
+    public long tick = 0;
+
+    // Records the input of every tick when set (see InputRecorder)
+    public InputRecorder inputRecorder;
+
+    // Per-phase timings of updates and frames
+    public final FrameProfiler profiler = new FrameProfiler(GameConfig.PROFILE);
+
+    /**
+     * Creates the world: loads the map and sprites, places the player and spawns the NPCs.
+     *
+     * @param keyHandler Input state the player reacts to
+     * @param npcCount Number of wandering NPCs to spawn
+     */
+    public World(KeyHandler keyHandler, int npcCount) {
+        this.keyHandler = keyHandler;
+        this.player = new Player(this, keyHandler);
+        this.mapManager = new MapManager(this);
+
+        // Initialize camera position to center on the player's starting position
+        setCameraPosition(616, 454);
+
+        if (mapManager.isLoaded()) {
+            collisionMap = CollisionMap.load(tileSize, mapManager.mapWidth, mapManager.mapHeight);
+            paths = new PathService(collisionMap, GameConfig.PATH_CLUSTER_SIZE,
+                    GameConfig.PATH_THREADS, GameConfig.PATH_CACHE);
+            if (GameConfig.FOG) {
+                fog = new FogOfWar(collisionMap.cols, collisionMap.rows, GameConfig.FOG_RADIUS, collisionMap);
+                updateFog();
+            }
+        }
+        spawnNpcs(npcCount);
+        publishSnapshot();
+    }
+
+    /**
+     * Starts loading everything a World needs in the background, so that
+     * constructing it afterwards only waits for loads still in flight.
+     *
+     * @param assets The asset manager to load with
+     */
+    public static void preload(AssetManager assets) {
+        if (GameConfig.MAP_STREAM == null) {
+            assets.loadImage(MapManager.MAP_IMAGE);
+        }
+        assets.loadImage(Player.SPRITE_SHEET);
+    }
+
+    /**
+     * Creates the NPC store and places NPCs on random tiles of the map,
+     * replacing any existing NPCs.
+     *
+     * @param count Number of NPCs to spawn
+     */
+    public void spawnNpcs(int count) {
+        clearNpcs(count);
+        int worldWidth = mapManager.isLoaded() ? mapManager.mapWidth : screenWidth;
+        int worldHeight = mapManager.isLoaded() ? mapManager.mapHeight : screenHeight;
+        int tilesX = Math.max(1, worldWidth / tileSize);
+        int tilesY = Math.max(1, worldHeight / tileSize);
+        Random random = new Random(42);
+        for (int i = 0; i < count; i++) {
+            int tx = random.nextInt(tilesX);
+            int ty = random.nextInt(tilesY);
+            // Re-roll a few times to avoid spawning on blocked tiles
+            for (int tries = 0; tries < 8 && collisionMap != null && collisionMap.isBlocked(tx, ty); tries++) {
+                tx = random.nextInt(tilesX);
+                ty = random.nextInt(tilesY);
+            }
+            npcs.add(tx * tileSize, ty * tileSize, player.animations.id, random.nextInt() | 1);
+        }
+        npcGrid.sync(npcs);
+    }
+
+    /**
+     * Replaces the NPCs with an empty store, for callers that fill it
+     * themselves (loading a saved game). Call npcGrid.sync(npcs) once the
+     * NPCs are in.
+     *
+     * @param capacity Number of NPCs the store can hold
+     */
+    public void clearNpcs(int capacity) {
+        int worldWidth = mapManager.isLoaded() ? mapManager.mapWidth : screenWidth;
+        int worldHeight = mapManager.isLoaded() ? mapManager.mapHeight : screenHeight;
+        npcs = new EntityStore(capacity, tileSize, player.speed, worldWidth, worldHeight);
+        npcs.setCollisionMap(collisionMap);
+        npcGrid = new SpatialGrid(tileSize, worldWidth, worldHeight, Math.max(1, capacity));
+        snapshotNpcs = new int[Math.max(1, capacity)];
+        npcPathRequests = newPathRequests(capacity);
+        pendingPaths = new int[capacity];
+        pendingCount = 0;
+        seekCursor = 0;
+    }
+
+    // Generic arrays cannot be created directly
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static CompletableFuture<TilePath>[] newPathRequests(int capacity) {
+        return new CompletableFuture[capacity];
+    }
+
+    /**
+     * Sets the camera position to center on the specified world coordinates.
+     * Ensures the camera stays within the map boundaries.
+     *
+     * @param worldX The x-coordinate in world space to center the camera on
+     * @param worldY The y-coordinate in world space to center the camera on
+     */
+    public void setCameraPosition(int worldX, int worldY) {
+        // Calculate camera position to center on the target coordinates
+        cameraX = worldX - screenWidth / 2;
+        cameraY = worldY - screenHeight / 2;
+
+        // Ensure camera stays within map bounds
+        if (mapManager.isLoaded()) {
+            // Prevent camera from going above or to the left of the map
+            if (cameraX < 0) cameraX = 0;
+            if (cameraY < 0) cameraY = 0;
+
+            // Prevent camera from going below or to the right of the map
+            if (cameraX > mapManager.mapWidth - screenWidth) {
+                cameraX = mapManager.mapWidth - screenWidth;
+            }
+            if (cameraY > mapManager.mapHeight - screenHeight) {
+                cameraY = mapManager.mapHeight - screenHeight;
+            }
+        }
+
+        // Update player's position to match the camera's target
+        player.x = worldX;
+        player.y = worldY;
+
+        // Teleport: nothing to interpolate from
+        player.prevX = player.x;
+        player.prevY = player.y;
+        prevCameraX = cameraX;
+        prevCameraY = cameraY;
+    }
+
+    /**
+     * Advances the game state by one tick.
+     */
+    public void update() {
+        long t = profiler.begin();
+        // Apply the key events queued since the last tick
+        keyHandler.poll(profiler);
+        if (inputRecorder != null) {
+            inputRecorder.record(tick, keyHandler);
+        }
+        // Turn the current key state into the player's next move
+        player.handleInput();
+        if (inputRecorder != null) {
+            inputRecorder.inputTaken(keyHandler);
+        }
+        t = profiler.end(Phase.INPUT, t);
+
+        // Remember the camera position for render interpolation
+        prevCameraX = cameraX;
+        prevCameraY = cameraY;
+        // Update player position and state
+        player.move();
+        // Reveal the tiles around the player once it has arrived on a new one
+        if (fog != null && !player.isMoving()) {
+            updateFog();
+        }
+        // Send NPCs toward the player along solved paths
+        if (GameConfig.NPC_SEEK && paths != null) {
+            seekPlayer();
+        }
+        // Update all NPCs and relink those that crossed a tile boundary
+        npcs.update();
+        npcGrid.sync(npcs);
+        // Advance every animation in one pass
+        player.animTime = Animations.advance(player.clip, player.animTime);
+        npcs.advanceAnimations();
+        // Update camera to follow the player
+        updateCamera();
+        // Stream in map chunks around the camera, prefetching where the player heads
+        mapManager.update(cameraX, cameraY, player.getDirectionX(), player.getDirectionY());
+        tick++;
+        // Hand the result to the renderer
+        publishSnapshot();
+        profiler.end(Phase.UPDATE, t);
+    }
+
+    /**
+     * Moves the visible area of the fog of war to the player's tile
+     * (nothing to do if the player is still on the same tile).
+     */
+    public void updateFog() {
+        fog.update(Math.floorDiv(player.x + originalTileSize / 2, tileSize),
+                Math.floorDiv(player.y + originalTileSize / 2, tileSize));
+    }
+
+    /**
+     * Hands finished path requests to their NPCs, then requests paths to
+     * the player's tile for up to SEEK_REQUESTS_PER_TICK wandering NPCs.
+     * The requests are solved on the path workers while the tick goes on;
+     * results arrive on a later tick, so seeking NPCs are not deterministic.
+     */
+    void seekPlayer() {
+        int kept = 0;
+        for (int k = 0; k < pendingCount; k++) {
+            int id = pendingPaths[k];
+            CompletableFuture<TilePath> request = npcPathRequests[id];
+            if (!request.isDone()) {
+                pendingPaths[kept++] = id;
+                continue;
+            }
+            npcPathRequests[id] = null;
+            if (!request.isCompletedExceptionally()) {
+                npcs.setPath(id, request.join());
+            }
+        }
+        pendingCount = kept;
+
+        int goalCol = Math.floorDiv(player.x + tileSize / 2, tileSize);
+        int goalRow = Math.floorDiv(player.y + tileSize / 2, tileSize);
+        int count = npcs.count;
+        for (int n = 0; n < Math.min(SEEK_REQUESTS_PER_TICK, count); n++) {
+            int id = seekCursor;
+            seekCursor = seekCursor + 1 < count ? seekCursor + 1 : 0;
+            if (npcPathRequests[id] != null || !npcs.isWandering(id)) {
+                continue;
+            }
+            npcPathRequests[id] = paths.request(npcs.x[id] / tileSize, npcs.y[id] / tileSize, goalCol, goalRow);
+            pendingPaths[pendingCount++] = id;
+        }
+    }
+
+    /**
+     * Updates the camera position to follow the player.
+     * Ensures the camera stays within the bounds of the map.
+     */
+    public void updateCamera() {
+        // Calculate camera position to center on the player
+        // Using tileSize since it's the source of truth for tile dimensions
+        cameraX = player.x - screenWidth / 2 + tileSize / 2;
+        cameraY = player.y - screenHeight / 2 + tileSize / 2;
+
+        // Ensure camera stays within map bounds
+        if (mapManager.isLoaded()) {
+            // Prevent camera from showing outside the left or top edges
+            if (cameraX < 0) cameraX = 0;
+            if (cameraY < 0) cameraY = 0;
+
+            // Prevent camera from showing outside the right or bottom edges
+            int maxCameraX = mapManager.mapWidth - screenWidth;
+            int maxCameraY = mapManager.mapHeight - screenHeight;
+
+            if (cameraX > maxCameraX) cameraX = maxCameraX;
+            if (cameraY > maxCameraY) cameraY = maxCameraY;
+        }
+    }
+
+    /**
+     * Draws the map, all entities of a snapshot and the overhead map layers
+     * as seen from its camera.
+     * Only the NPCs overlapping the clip of g2 are drawn, so redrawing a
+     * dirty region costs in proportion to its size.
+     *
+     * @param g2 The Graphics2D context to draw on
+     * @param snapshot The state to draw
+     * @param alpha Interpolation factor between the snapshot's previous and current tick
+     */
+    public void draw(Graphics2D g2, RenderSnapshot snapshot, double alpha) {
+        // Camera position interpolated between the last two updates
+        int camX = RenderSnapshot.interpolate(snapshot.prevCameraX, snapshot.cameraX, alpha);
+        int camY = RenderSnapshot.interpolate(snapshot.prevCameraY, snapshot.cameraY, alpha);
+        int scaled = originalTileSize * player.scale;
+        // Sprites are drawn centered on their tile
+        int offset = (scaled - originalTileSize) / 2;
+
+        long t = profiler.begin();
+        // Draw the game world (background)
+        mapManager.draw(g2, camX, camY);
+        t = profiler.end(Phase.MAP_DRAW, t);
+
+        // Draw the NPCs overlapping the clip
+        drawClip.setBounds(0, 0, screenWidth, screenHeight);
+        Rectangle clip = g2.getClipBounds(drawClip);
+        for (int i = 0; i < snapshot.npcCount; i++) {
+            int x = RenderSnapshot.interpolate(snapshot.npcPrevX[i], snapshot.npcX[i], alpha) - camX - offset;
+            int y = RenderSnapshot.interpolate(snapshot.npcPrevY[i], snapshot.npcY[i], alpha) - camY - offset;
+            if (x < clip.x + clip.width && x + scaled > clip.x && y < clip.y + clip.height && y + scaled > clip.y) {
+                g2.drawImage(Animations.clip(snapshot.npcClip[i]).image(snapshot.npcFrame[i], player.scale), x, y, null);
+            }
+        }
+        t = profiler.end(Phase.NPC_DRAW, t);
+
+        // Draw the player (foreground)
+        int px = RenderSnapshot.interpolate(snapshot.playerPrevX, snapshot.playerX, alpha) - camX - offset;
+        int py = RenderSnapshot.interpolate(snapshot.playerPrevY, snapshot.playerY, alpha) - camY - offset;
+        g2.drawImage(Animations.clip(snapshot.playerClip).image(snapshot.playerFrame, player.scale), px, py, null);
+        t = profiler.end(Phase.PLAYER_DRAW, t);
+
+        // Roofs, tree tops and parallax layers cover the entities
+        mapManager.drawOverhead(g2, camX, camY);
+        profiler.end(Phase.OVERHEAD_DRAW, t);
+    }
+
+    /**
+     * Draws a snapshot at native pixel-art resolution: every position is
+     * divided by the scale, sprites and map are drawn unscaled, and the
+     * caller upscales the whole frame once (GameConfig.LOW_RES).
+     *
+     * @param g2 The Graphics2D context of a (screenWidth / scale) x (screenHeight / scale) frame
+     * @param snapshot The state to draw
+     * @param alpha Interpolation factor between the snapshot's previous and current tick
+     */
+    public void drawNative(Graphics2D g2, RenderSnapshot snapshot, double alpha) {
+        int s = scale;
+        int width = screenWidth / s, height = screenHeight / s;
+        // Everything snaps to the same native pixel grid as the map
+        int camX = Math.floorDiv(RenderSnapshot.interpolate(snapshot.prevCameraX, snapshot.cameraX, alpha), s);
+        int camY = Math.floorDiv(RenderSnapshot.interpolate(snapshot.prevCameraY, snapshot.cameraY, alpha), s);
+        int offset = (originalTileSize * player.scale - originalTileSize) / 2;
+
+        long t = profiler.begin();
+        mapManager.drawNative(g2, camX, camY, width, height);
+        t = profiler.end(Phase.MAP_DRAW, t);
+
+        for (int i = 0; i < snapshot.npcCount; i++) {
+            int x = Math.floorDiv(RenderSnapshot.interpolate(snapshot.npcPrevX[i], snapshot.npcX[i], alpha) - offset, s) - camX;
+            int y = Math.floorDiv(RenderSnapshot.interpolate(snapshot.npcPrevY[i], snapshot.npcY[i], alpha) - offset, s) - camY;
+            if (x < width && x + originalTileSize > 0 && y < height && y + originalTileSize > 0) {
+                g2.drawImage(Animations.clip(snapshot.npcClip[i]).image(snapshot.npcFrame[i], 1), x, y, null);
+            }
+        }
+        t = profiler.end(Phase.NPC_DRAW, t);
+
+        int px = Math.floorDiv(RenderSnapshot.interpolate(snapshot.playerPrevX, snapshot.playerX, alpha) - offset, s) - camX;
+        int py = Math.floorDiv(RenderSnapshot.interpolate(snapshot.playerPrevY, snapshot.playerY, alpha) - offset, s) - camY;
+        g2.drawImage(Animations.clip(snapshot.playerClip).image(snapshot.playerFrame, 1), px, py, null);
+        t = profiler.end(Phase.PLAYER_DRAW, t);
+
+        mapManager.drawOverheadNative(g2, camX, camY, width, height);
+        profiler.end(Phase.OVERHEAD_DRAW, t);
+    }
+
+    /**
+     * Copies the drawable state into a render snapshot and publishes it.
+     * Called at the end of every update; call it after changing the world
+     * outside of update() (teleports, respawns) so the change gets drawn.
+     */
+    public void publishSnapshot() {
+        snapshots.back().capture(this, snapshotNpcs);
+        snapshots.publish();
+    }
+}
@@ -0,0 +1,103 @@
+package game.anim;
+
+import java.awt.image.BufferedImage;
+
+import game.entity.SpriteCache;
+
+/**
+ * AnimationClip is one animation of a sprite sheet: a row of the sheet, the
+ * frames to show in order, how many ticks each one stays, and what happens
+ * after the last one.
+ *
+ * Clips are immutable and shared by every entity playing them; an entity
+ * only stores the clip id and the ticks elapsed in it. The frame for every
+ * tick of a cycle is precomputed, so looking it up is a single array read.
+ */
+public final class AnimationClip {
+
+    public final int id;
+    public final String name;
+    // Name of the sprite set (see SpriteCache) and row within it
+    public final String sheet;
+    public final int row;
+    public final LoopMode loop;
+
+    // Sheet column shown at each tick of one cycle
+    private final int[] timeline;
+    // Resolved on first draw (the sheet is registered when its image is loaded)
+    private volatile SpriteCache.SpriteSet sprites;
+
+    /**
+     * @param id Clip id (index in Animations)
+     * @param name Clip name, e.g. "player.walk.up"
+     * @param sheet Sprite set name
+     * @param row Row of the sprite set
+     * @param frames Sheet columns, in playing order
+     * @param durations Ticks per frame (one value per frame)
+     * @param loop What to do after the last frame
+     */
+    AnimationClip(int id, String name, String sheet, int row, int[] frames, int[] durations, LoopMode loop) {
+        this.id = id;
+        this.name = name;
+        this.sheet = sheet;
+        this.row = row;
+        this.loop = loop;
+
+        // Ping-pong plays the inner frames again backwards before looping
+        int[] order = frames;
+        int[] ticks = durations;
+        if (loop == LoopMode.PING_PONG && frames.length > 2) {
+            int n = frames.length;
+            order = new int[2 * n - 2];
+            ticks = new int[2 * n - 2];
+            for (int i = 0; i < order.length; i++) {
+                int src = i < n ? i : 2 * n - 2 - i;
+                order[i] = frames[src];
+                ticks[i] = durations[src];
+            }
+        }
+        int length = 0;
+        for (int t : ticks) {
+            length += t;
+        }
+        timeline = new int[length];
+        int at = 0;
+        for (int i = 0; i < order.length; i++) {
+            for (int t = 0; t < ticks[i]; t++) {
+                timeline[at++] = order[i];
+            }
+        }
+    }
+
+    /**
+     * @return Ticks in one cycle of the clip
+     */
+    public int length() {
+        return timeline.length;
+    }
+
+    /**
+     * @param time Ticks elapsed in the clip (kept below length() by Animations.advance)
+     * @return The sheet column to show
+     */
+    public int frameAt(int time) {
+        return timeline[time < timeline.length ? time : timeline.length - 1];
+    }
+
+    /**
+     * @param column Sheet column (from frameAt)
+     * @param scale Scale factor
+     * @return The frame image, already scaled
+     */
+    public BufferedImage image(int column, int scale) {
+        SpriteCache.SpriteSet set = sprites;
+        if (set == null) {
+            set = SpriteCache.get(sheet);
+            if (set == null) {
+                throw new IllegalStateException("Sprite sheet '" + sheet + "' of clip " + name + " is not loaded");
+            }
+            sprites = set;
+        }
+        return set.frame(row, column, scale);
+    }
+}
@@ -0,0 +1,37 @@
+package game.anim;
+
+/**
+ * AnimationSet groups the idle and walking clips of one character for the
+ * four directions, so movement code picks a clip with an array read instead
+ * of building or comparing names.
+ */
+public final class AnimationSet {
+
+    public final int id;
+    public final String name;
+    // Clip ids indexed by Direction ordinal
+    private final int[] idle, walk;
+
+    AnimationSet(int id, String name, int[] idle, int[] walk) {
+        this.id = id;
+        this.name = name;
+        this.idle = idle;
+        this.walk = walk;
+    }
+
+    /**
+     * @param direction Direction ordinal
+     * @return Id of the clip shown while standing facing that way
+     */
+    public int idle(int direction) {
+        return idle[direction];
+    }
+
+    /**
+     * @param direction Direction ordinal
+     * @return Id of the clip played while stepping that way
+     */
+    public int walk(int direction) {
+        return walk[direction];
+    }
+}
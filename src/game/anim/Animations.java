@@ -0,0 +1,263 @@
+package game.anim;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import game.entity.Direction;
+
+/**
+ * Animations is the registry of animation clips, loaded once from a data
+ * file and shared read-only by every entity.
+ *
+ * Each non-comment line of the file defines one clip:
+ * <pre>
+ *   # name            sheet   row  frames    ticks  loop
+ *   player.walk.down  player  1    1,2,3,0   9      loop
+ * </pre>
+ * frames are sheet columns in playing order; ticks is the duration of every
+ * frame, or a comma-separated duration per frame; loop is loop, once or
+ * pingpong. Clips named &lt;set&gt;.idle.&lt;direction&gt; and
+ * &lt;set&gt;.walk.&lt;direction&gt; form an {@link AnimationSet}.
+ *
+ * Entities store a clip id and the ticks elapsed in it, and
+ * {@link #advance(int[], int[], int)} moves all of them forward in one
+ * allocation-free pass per tick.
+ */
+public final class Animations {
+
+    // Where the clip definitions are looked up (resource path, then alternative path)
+    public static final String[] CLIPS_FILE = {"/game/res/animations.txt", "/res/animations.txt"};
+
+    private static volatile AnimationClip[] clips;
+    // Per clip id: ticks in one cycle, and whether the clip starts over (else it holds)
+    private static int[] lengths;
+    private static boolean[] repeats;
+    // Hash of the clip names in id order, to tell whether saved clip ids still mean the same clips
+    private static long tableHash;
+    private static Map<String, AnimationClip> byName;
+    private static final Map<String, AnimationSet> sets = new HashMap<>();
+    // Sets by id, replaced as a whole when a set is added (read without locking)
+    private static volatile AnimationSet[] setsById = new AnimationSet[0];
+
+    private Animations() {
+        // Static registry only
+    }
+
+    /**
+     * Loads the clip definitions if that has not happened yet.
+     *
+     * @throws UncheckedIOException If the file is missing or invalid
+     */
+    public static synchronized void load() {
+        if (clips != null) {
+            return;
+        }
+        for (String candidate : CLIPS_FILE) {
+            InputStream in = Animations.class.getResourceAsStream(candidate);
+            if (in != null) {
+                try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+                    define(parse(reader, candidate));
+                    return;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+        throw new UncheckedIOException(new IOException("Animation clips not found: " + String.join(", ", CLIPS_FILE)));
+    }
+
+    /**
+     * Parses clip definitions.
+     */
+    static List<AnimationClip> parse(BufferedReader reader, String source) throws IOException {
+        List<AnimationClip> parsed = new ArrayList<>();
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] parts = line.split("\\s+");
+            if (parts.length != 6) {
+                throw new IOException(source + ":" + lineNumber + ": expected '<name> <sheet> <row> <frames> <ticks> <loop>'");
+            }
+            try {
+                int[] frames = parseInts(parts[3]);
+                int[] ticks = parseInts(parts[4]);
+                if (ticks.length == 1 && frames.length > 1) {
+                    int each = ticks[0];
+                    ticks = new int[frames.length];
+                    Arrays.fill(ticks, each);
+                }
+                if (ticks.length != frames.length) {
+                    throw new IllegalArgumentException("one duration or one per frame expected");
+                }
+                for (int t : ticks) {
+                    if (t < 1) {
+                        throw new IllegalArgumentException("frame durations must be at least 1 tick");
+                    }
+                }
+                parsed.add(new AnimationClip(parsed.size(), parts[0], parts[1], Integer.parseInt(parts[2]),
+                        frames, ticks, LoopMode.parse(parts[5])));
+            } catch (IllegalArgumentException e) {
+                throw new IOException(source + ":" + lineNumber + ": " + e.getMessage(), e);
+            }
+        }
+        return parsed;
+    }
+
+    private static int[] parseInts(String list) {
+        String[] items = list.split(",");
+        int[] values = new int[items.length];
+        for (int i = 0; i < items.length; i++) {
+            values[i] = Integer.parseInt(items[i]);
+        }
+        return values;
+    }
+
+    private static void define(List<AnimationClip> parsed) {
+        Map<String, AnimationClip> names = new HashMap<>();
+        lengths = new int[parsed.size()];
+        repeats = new boolean[parsed.size()];
+        long hash = 0xcbf29ce484222325L;    // 64-bit FNV-1a
+        for (AnimationClip clip : parsed) {
+            names.put(clip.name, clip);
+            lengths[clip.id] = clip.length();
+            repeats[clip.id] = clip.loop != LoopMode.ONCE;
+            for (int i = 0; i < clip.name.length(); i++) {
+                hash = (hash ^ clip.name.charAt(i)) * 0x100000001b3L;
+            }
+            hash = (hash ^ '\n') * 0x100000001b3L;
+        }
+        tableHash = hash;
+        byName = names;
+        clips = parsed.toArray(new AnimationClip[0]);
+    }
+
+    /**
+     * @param name Clip name
+     * @return The clip
+     * @throws IllegalArgumentException If no clip has that name
+     */
+    public static AnimationClip get(String name) {
+        load();
+        AnimationClip clip = byName.get(name);
+        if (clip == null) {
+            throw new IllegalArgumentException("Unknown animation clip: " + name);
+        }
+        return clip;
+    }
+
+    /**
+     * @param id Clip id
+     * @return The clip with that id
+     */
+    public static AnimationClip clip(int id) {
+        return clips[id];
+    }
+
+    /**
+     * @return Number of clips; valid clip ids are 0 to clipCount() - 1
+     */
+    public static int clipCount() {
+        load();
+        return clips.length;
+    }
+
+    /**
+     * @return A hash of the clip names in id order, which changes whenever
+     *         clips are added, removed, renamed or reordered
+     */
+    public static long tableHash() {
+        load();
+        return tableHash;
+    }
+
+    /**
+     * Returns the idle and walk clips of every direction for a set name,
+     * built on first use.
+     *
+     * @param name Set name, the prefix of its clip names (e.g. "player")
+     * @return The shared animation set
+     */
+    public static synchronized AnimationSet set(String name) {
+        AnimationSet set = sets.get(name);
+        if (set == null) {
+            int[] idle = new int[Direction.VALUES.length];
+            int[] walk = new int[Direction.VALUES.length];
+            for (Direction dir : Direction.VALUES) {
+                String suffix = "." + dir.name().toLowerCase();
+                idle[dir.ordinal()] = get(name + ".idle" + suffix).id;
+                walk[dir.ordinal()] = get(name + ".walk" + suffix).id;
+            }
+            set = new AnimationSet(setsById.length, name, idle, walk);
+            sets.put(name, set);
+            AnimationSet[] byId = Arrays.copyOf(setsById, setsById.length + 1);
+            byId[set.id] = set;
+            setsById = byId;
+        }
+        return set;
+    }
+
+    /**
+     * @param id Animation set id
+     * @return The set with that id
+     */
+    public static AnimationSet set(int id) {
+        return setsById[id];
+    }
+
+    /**
+     * @return Number of animation sets built so far; valid set ids are 0 to setCount() - 1
+     */
+    public static int setCount() {
+        return setsById.length;
+    }
+
+    /**
+     * Advances one animation by a tick.
+     *
+     * @param clip Clip id
+     * @param time Ticks elapsed in the clip
+     * @return The new elapsed time
+     */
+    public static int advance(int clip, int time) {
+        int next = time + 1;
+        if (next >= lengths[clip]) {
+            next = repeats[clip] ? 0 : lengths[clip] - 1;
+        }
+        return next;
+    }
+
+    /**
+     * Advances the animations of many entities by a tick, in one pass over
+     * primitive arrays.
+     *
+     * @param clip Clip id per entity
+     * @param time Ticks elapsed per entity, updated in place
+     * @param count Number of entities
+     */
+    public static void advance(int[] clip, int[] time, int count) {
+        final int[] lengths = Animations.lengths;
+        final boolean[] repeats = Animations.repeats;
+        for (int i = 0; i < count; i++) {
+            int c = clip[i];
+            int next = time[i] + 1;
+            if (next >= lengths[c]) {
+                next = repeats[c] ? 0 : lengths[c] - 1;
+            }
+            time[i] = next;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package game.anim;
+
+/**
+ * What an animation clip does after its last frame.
+ */
+public enum LoopMode {
+    // Start over from the first frame
+    LOOP,
+    // Stay on the last frame
+    ONCE,
+    // Play backwards to the first frame, then forwards again
+    PING_PONG;
+
+    /**
+     * @param text "loop", "once" or "pingpong" (case-insensitive)
+     * @return The loop mode
+     * @throws IllegalArgumentException If the text names no mode
+     */
+    public static LoopMode parse(String text) {
+        switch (text.toLowerCase()) {
+            case "loop":     return LOOP;
+            case "once":     return ONCE;
+            case "pingpong":
+            case "ping_pong": return PING_PONG;
+            default: throw new IllegalArgumentException("Unknown loop mode: " + text);
+        }
+    }
+}
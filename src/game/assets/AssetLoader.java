@@ -0,0 +1,131 @@
+package game.assets;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import game.GameConfig;
+import game.log.Log;
+import game.log.LogCategory;
+
+/**
+ * AssetLoader is the single place the game loads images from.
+ *
+ * Each image is looked up by one or more candidate names: names starting
+ * with '/' are classpath resources, anything else is a file path. The asset
+ * pack (-Dgame.assets.pack, default assets.pack in the working directory)
+ * is tried first for every candidate; names it doesn't hold are decoded
+ * from PNG as before. If an AssetManager is installed as preloader and has
+ * already started loading an image, that load is joined instead.
+ */
+public final class AssetLoader {
+
+    // The pack, opened on first use (null if there is none)
+    private static AssetPack pack;
+    private static boolean packOpened;
+    // Background loads started before the game is built (null = none)
+    private static volatile AssetManager preloader;
+
+    private AssetLoader() {
+        // Static helpers only
+    }
+
+    /**
+     * @return The asset pack, or null if none is configured or it cannot be read
+     */
+    public static synchronized AssetPack pack() {
+        if (!packOpened) {
+            packOpened = true;
+            String path = GameConfig.ASSET_PACK;
+            if (path != null && !path.isEmpty() && Files.isRegularFile(Paths.get(path))) {
+                try {
+                    pack = new AssetPack(Paths.get(path));
+                    Log.info(LogCategory.ASSETS, "Asset pack opened: {} ({} images)", path, pack.names().size());
+                } catch (IOException e) {
+                    Log.warn(LogCategory.ASSETS, "Ignoring asset pack: {}", e.getMessage());
+                }
+            }
+        }
+        return pack;
+    }
+
+    /**
+     * Makes readImage() use the loads already started by an asset manager.
+     *
+     * @param assets The asset manager, or null to always load synchronously
+     */
+    public static void setPreloader(AssetManager assets) {
+        preloader = assets;
+    }
+
+    /**
+     * Loads an image from the first candidate found: a preloaded image
+     * if there is one, then the pack, then the PNG files.
+     *
+     * @param candidates Names to try, in order
+     * @return The image
+     * @throws IOException If no candidate exists or decoding fails
+     */
+    public static BufferedImage readImage(String... candidates) throws IOException {
+        AssetManager assets = preloader;
+        CompletableFuture<BufferedImage> pending = assets != null ? assets.take(candidates[0]) : null;
+        if (pending != null) {
+            try {
+                return pending.join();
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause() instanceof UncheckedIOException ? e.getCause().getCause() : e.getCause();
+                throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+            }
+        }
+        return readFromSource(candidates);
+    }
+
+    /**
+     * Loads an image from the pack or the PNG files, on the calling thread.
+     */
+    static BufferedImage readFromSource(String... candidates) throws IOException {
+        long start = System.nanoTime();
+        AssetPack assets = pack();
+        if (assets != null) {
+            for (String name : candidates) {
+                BufferedImage image = assets.image(name);
+                if (image != null) {
+                    Log.debug(LogCategory.ASSETS, "{} copied from the asset pack in {} us", name,
+                            (System.nanoTime() - start) / 1000);
+                    return image;
+                }
+            }
+        }
+        for (String name : candidates) {
+            BufferedImage image = decodePng(name);
+            if (image != null) {
+                Log.debug(LogCategory.ASSETS, "{} decoded in {} us", name, (System.nanoTime() - start) / 1000);
+                return image;
+            }
+        }
+        throw new IOException("Could not find any of: " + String.join(", ", candidates));
+    }
+
+    /**
+     * Decodes an image from the classpath ('/...') or the file system.
+     *
+     * @param name Resource or file name
+     * @return The image, or null if it does not exist
+     * @throws IOException If it exists but cannot be decoded
+     */
+    static BufferedImage decodePng(String name) throws IOException {
+        if (name.startsWith("/")) {
+            URL url = AssetLoader.class.getResource(name);
+            return url != null ? ImageIO.read(url) : null;
+        }
+        File file = new File(name);
+        return file.isFile() ? ImageIO.read(file) : null;
+    }
+}
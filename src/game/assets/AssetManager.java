@@ -0,0 +1,152 @@
+package game.assets;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import game.log.Log;
+import game.log.LogCategory;
+
+/**
+ * AssetManager starts asset loads concurrently on a small worker pool and
+ * hands out a CompletableFuture for each, so startup can show a loading
+ * screen and continue as soon as everything it needs is ready.
+ *
+ * Images requested here are picked up by {@link AssetLoader#readImage} once
+ * the manager is installed with {@link AssetLoader#setPreloader}: code that
+ * loads synchronously (MapManager, Player) then just joins the already
+ * running or finished load instead of decoding again.
+ */
+public class AssetManager {
+
+    private final ExecutorService executor;
+    // Image loads by their first candidate name, until taken
+    private final Map<String, CompletableFuture<BufferedImage>> images = new ConcurrentHashMap<>();
+    // Every load started, for allLoaded()
+    private final List<CompletableFuture<?>> loads = new ArrayList<>();
+
+    // Progress counters
+    private final AtomicInteger started = new AtomicInteger();
+    private final AtomicInteger finished = new AtomicInteger();
+    private volatile String lastFinished = "";
+
+    /**
+     * Creates a manager with its own pool of daemon worker threads.
+     *
+     * @param threads Number of worker threads
+     */
+    public AssetManager(int threads) {
+        AtomicInteger index = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(Math.max(1, threads), runnable -> {
+            Thread thread = new Thread(runnable, "Asset Loader-" + index.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @return The worker pool, for follow-up work that should stay off the EDT
+     */
+    public ExecutorService getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Starts loading an image (or returns the load already started for it).
+     *
+     * @param candidates Names to try, as for AssetLoader.readImage
+     * @return The pending image
+     */
+    public CompletableFuture<BufferedImage> loadImage(String... candidates) {
+        return images.computeIfAbsent(candidates[0], key -> load(key, () -> AssetLoader.readFromSource(candidates)));
+    }
+
+    /**
+     * Runs any loading task on the worker pool.
+     *
+     * @param name Name shown on the loading screen
+     * @param task The loading work
+     * @return The pending result
+     */
+    public <T> CompletableFuture<T> load(String name, Callable<T> task) {
+        started.incrementAndGet();
+        CompletableFuture<T> future = CompletableFuture.supplyAsync(() -> {
+            long start = System.nanoTime();
+            try {
+                T result = task.call();
+                Log.info(LogCategory.ASSETS, "Loaded {} in {} ms", name, (System.nanoTime() - start) / 1_000_000);
+                return result;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            } finally {
+                lastFinished = name;
+                finished.incrementAndGet();
+            }
+        }, executor);
+        synchronized (loads) {
+            loads.add(future);
+        }
+        return future;
+    }
+
+    /**
+     * Removes and returns the load of an image, so its pixels can be
+     * collected once the caller is done with them.
+     *
+     * @param name First candidate name the image was requested with
+     * @return The pending image, or null if it was never requested here
+     */
+    CompletableFuture<BufferedImage> take(String name) {
+        return images.remove(name);
+    }
+
+    /**
+     * @return A future completing when every load started so far has finished
+     *         (exceptionally if any of them failed)
+     */
+    public CompletableFuture<Void> allLoaded() {
+        synchronized (loads) {
+            return CompletableFuture.allOf(loads.toArray(new CompletableFuture<?>[0]));
+        }
+    }
+
+    /**
+     * @return Number of loads started
+     */
+    public int getStarted() {
+        return started.get();
+    }
+
+    /**
+     * @return Number of loads finished (successfully or not)
+     */
+    public int getFinished() {
+        return finished.get();
+    }
+
+    /**
+     * @return Name of the most recently finished load
+     */
+    public String getLastFinished() {
+        return lastFinished;
+    }
+
+    /**
+     * Stops the worker threads once the queued work is done.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,170 @@
+package game.assets;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * AssetPack reads the binary asset pack written by {@link AssetPacker}.
+ *
+ * The file is memory-mapped and every image is stored as raw 32-bit pixels,
+ * already premultiplied, in the byte order of the machine that packed it.
+ * Loading an image is a single bulk copy from the mapping into the int array
+ * of a new TYPE_INT_ARGB_PRE (or TYPE_INT_RGB for opaque images)
+ * BufferedImage: no inflate, no filtering, no color conversion. Pages are read
+ * by the OS on first touch, so opening even a large pack is instant.
+ *
+ * File layout (header and index big-endian):
+ * <pre>
+ *   int   magic 'GPAK'
+ *   int   version (1)
+ *   int   pixel byte order (0 = big-endian, 1 = little-endian)
+ *   int   entry count
+ *   entry count times:
+ *     short name length, name bytes (UTF-8)
+ *     int   width, int height
+ *     int   flags (1 = has alpha)
+ *     long  offset of the pixel data from the start of the file
+ *   pixel data, each entry starting on a 64-byte boundary
+ * </pre>
+ *
+ * Entries are named like the paths the game loads them from, e.g.
+ * "/game/res/map.png" for classpath resources and "Assets/map.png" for files.
+ * Images are read-only after open, so any thread may load from a pack.
+ */
+public class AssetPack implements Closeable {
+
+    static final int MAGIC = 0x4750414B; // "GPAK"
+    static final int VERSION = 1;
+    static final int FLAG_ALPHA = 1;
+    static final int ALIGNMENT = 64;
+
+    /**
+     * Location and format of one packed image.
+     */
+    static final class Entry {
+        final String name;
+        final int width, height, flags;
+        final long offset;
+
+        Entry(String name, int width, int height, int flags, long offset) {
+            this.name = name;
+            this.width = width;
+            this.height = height;
+            this.flags = flags;
+            this.offset = offset;
+        }
+    }
+
+    private final Path path;
+    private final FileChannel channel;
+    private final MappedByteBuffer data;
+    private final ByteOrder pixelOrder;
+    private final Map<String, Entry> entries = new HashMap<>();
+
+    /**
+     * Opens and maps a pack file.
+     *
+     * @param path The pack file
+     * @throws IOException If the file cannot be read or is not an asset pack
+     */
+    public AssetPack(Path path) throws IOException {
+        this.path = path;
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(path + ": packs larger than 2 GB are not supported");
+            }
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            ByteBuffer header = data.duplicate().order(ByteOrder.BIG_ENDIAN);
+            if (header.getInt() != MAGIC) {
+                throw new IOException(path + ": not an asset pack");
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException(path + ": unsupported asset pack version " + version);
+            }
+            pixelOrder = header.getInt() == 1 ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+            int count = header.getInt();
+            for (int i = 0; i < count; i++) {
+                byte[] name = new byte[header.getShort() & 0xFFFF];
+                header.get(name);
+                Entry entry = new Entry(new String(name, StandardCharsets.UTF_8),
+                        header.getInt(), header.getInt(), header.getInt(), header.getLong());
+                if (entry.offset + 4L * entry.width * entry.height > data.capacity()) {
+                    throw new IOException(path + ": truncated entry " + entry.name);
+                }
+                entries.put(entry.name, entry);
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e instanceof IOException ? (IOException) e : new IOException(path + ": corrupt asset pack", e);
+        }
+    }
+
+    /**
+     * @return The pack file
+     */
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * @return Names of all packed images
+     */
+    public Set<String> names() {
+        return Collections.unmodifiableSet(entries.keySet());
+    }
+
+    /**
+     * @param name Asset name
+     * @return true if the pack holds an image of that name
+     */
+    public boolean contains(String name) {
+        return entries.containsKey(name);
+    }
+
+    /**
+     * Loads an image. Returns a new image on every call; callers that draw
+     * it often should copy it into a compatible image (MapManager and
+     * SpriteCache already do).
+     *
+     * @param name Asset name
+     * @return The image, or null if the pack has no such entry
+     */
+    public BufferedImage image(String name) {
+        Entry entry = entries.get(name);
+        if (entry == null) {
+            return null;
+        }
+        boolean alpha = (entry.flags & FLAG_ALPHA) != 0;
+        BufferedImage image = new BufferedImage(entry.width, entry.height,
+                alpha ? BufferedImage.TYPE_INT_ARGB_PRE : BufferedImage.TYPE_INT_RGB);
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        // Own view per call, so concurrent loads don't share a position
+        ByteBuffer view = data.duplicate().order(pixelOrder);
+        view.position((int) entry.offset);
+        view.asIntBuffer().get(pixels);
+        return image;
+    }
+
+    /**
+     * Unmaps lazily (when the buffer is collected) and closes the file.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,216 @@
+package game.assets;
+
+import javax.imageio.ImageIO;
+import java.awt.Graphics2D;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Offline tool that packs every PNG below a set of directories into one
+ * {@link AssetPack}: decoded once, premultiplied, stored raw.
+ *
+ * Each directory is given as dir[=prefix]; entries are named prefix + the
+ * path relative to dir. Without arguments it packs src/game/res (as the
+ * classpath resources "/game/res/...") and Assets (as "Assets/...").
+ *
+ * Usage:
+ * <pre>
+ *   java game.assets.AssetPacker &lt;out.pack&gt; [dir[=prefix] ...]
+ *   java game.assets.AssetPacker --compare &lt;pack&gt;   (PNG vs pack load times)
+ * </pre>
+ * Re-run the packer after changing any image; the game falls back to the
+ * PNGs for names missing from the pack.
+ */
+public class AssetPacker {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 2 && args[0].equals("--compare")) {
+            compare(Paths.get(args[1]));
+            return;
+        }
+        if (args.length < 1) {
+            System.err.println("Usage: java game.assets.AssetPacker <out.pack> [dir[=prefix] ...]");
+            System.err.println("       java game.assets.AssetPacker --compare <pack>");
+            System.exit(1);
+        }
+        List<String> roots = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            roots.add(args[i]);
+        }
+        if (roots.isEmpty()) {
+            roots.add("src/game/res=/game/res/");
+            roots.add("Assets=Assets/");
+        }
+
+        long start = System.nanoTime();
+        List<Source> sources = new ArrayList<>();
+        for (String root : roots) {
+            int eq = root.indexOf('=');
+            Path dir = Paths.get(eq < 0 ? root : root.substring(0, eq));
+            String prefix = eq < 0 ? dir.getFileName() + "/" : root.substring(eq + 1);
+            sources.addAll(find(dir, prefix));
+        }
+        Path target = Paths.get(args[0]);
+        long bytes = write(sources, target);
+        System.out.printf("Packed %d images (%.1f MB) into %s in %.1f ms%n",
+                sources.size(), bytes / 1e6, target, (System.nanoTime() - start) / 1e6);
+    }
+
+    /**
+     * A PNG file and the name it is packed under.
+     */
+    static final class Source {
+        final Path file;
+        final String name;
+
+        Source(Path file, String name) {
+            this.file = file;
+            this.name = name;
+        }
+    }
+
+    /**
+     * Lists the PNG files below a directory, sorted by name.
+     */
+    static List<Source> find(Path dir, String prefix) throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            return files.filter(p -> p.toString().toLowerCase().endsWith(".png"))
+                    .sorted()
+                    .map(p -> new Source(p, prefix + dir.relativize(p).toString().replace('\\', '/')))
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Decodes the sources and writes the pack.
+     *
+     * @return Size of the pack in bytes
+     */
+    static long write(List<Source> sources, Path target) throws IOException {
+        // Decode everything first: the index needs every size up front
+        List<BufferedImage> images = new ArrayList<>();
+        for (Source source : sources) {
+            BufferedImage image = ImageIO.read(source.file.toFile());
+            if (image == null) {
+                throw new IOException("Cannot decode " + source.file);
+            }
+            images.add(toPackedFormat(image));
+        }
+
+        // Index size decides where the pixel data starts
+        long indexBytes = 16;
+        for (Source source : sources) {
+            indexBytes += 2 + source.name.getBytes(StandardCharsets.UTF_8).length + 4 + 4 + 4 + 8;
+        }
+        long[] offsets = new long[sources.size()];
+        long offset = align(indexBytes);
+        for (int i = 0; i < images.size(); i++) {
+            offsets[i] = offset;
+            offset = align(offset + 4L * images.get(i).getWidth() * images.get(i).getHeight());
+        }
+
+        try (FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            // Header and index (not closed here: closing would close the channel)
+            OutputStream stream = Channels.newOutputStream(out);
+            DataOutputStream header = new DataOutputStream(stream);
+            header.writeInt(AssetPack.MAGIC);
+            header.writeInt(AssetPack.VERSION);
+            header.writeInt(ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN ? 1 : 0);
+            header.writeInt(sources.size());
+            for (int i = 0; i < sources.size(); i++) {
+                BufferedImage image = images.get(i);
+                byte[] name = sources.get(i).name.getBytes(StandardCharsets.UTF_8);
+                header.writeShort(name.length);
+                header.write(name);
+                header.writeInt(image.getWidth());
+                header.writeInt(image.getHeight());
+                header.writeInt(image.getTransparency() != Transparency.OPAQUE ? AssetPack.FLAG_ALPHA : 0);
+                header.writeLong(offsets[i]);
+            }
+            header.flush();
+
+            // Pixels in native order, so loading is a plain memory copy
+            for (int i = 0; i < images.size(); i++) {
+                int[] pixels = ((DataBufferInt) images.get(i).getRaster().getDataBuffer()).getData();
+                ByteBuffer buffer = ByteBuffer.allocate(pixels.length * 4).order(ByteOrder.nativeOrder());
+                buffer.asIntBuffer().put(pixels);
+                out.position(offsets[i]);
+                while (buffer.hasRemaining()) {
+                    out.write(buffer);
+                }
+            }
+            // Pad the last entry to its aligned end
+            out.truncate(offset);
+            if (out.size() < offset) {
+                out.write(ByteBuffer.allocate(1), offset - 1);
+            }
+            return offset;
+        }
+    }
+
+    private static long align(long value) {
+        return (value + AssetPack.ALIGNMENT - 1) / AssetPack.ALIGNMENT * AssetPack.ALIGNMENT;
+    }
+
+    /**
+     * Converts a decoded image to premultiplied INT_ARGB_PRE, or INT_RGB if it is opaque.
+     */
+    static BufferedImage toPackedFormat(BufferedImage source) {
+        boolean alpha = source.getColorModel().hasAlpha();
+        BufferedImage target = new BufferedImage(source.getWidth(), source.getHeight(),
+                alpha ? BufferedImage.TYPE_INT_ARGB_PRE : BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2 = target.createGraphics();
+        g2.drawImage(source, 0, 0, null);
+        g2.dispose();
+        return target;
+    }
+
+    /**
+     * Loads every image of a pack both ways, PNG decode and pack copy,
+     * in a fresh JVM state, and prints the times.
+     */
+    static void compare(Path packPath) throws IOException {
+        long openStart = System.nanoTime();
+        try (AssetPack pack = new AssetPack(packPath)) {
+            long openNanos = System.nanoTime() - openStart;
+            System.out.printf("Opened %s (%d images) in %.2f ms%n", packPath, pack.names().size(), openNanos / 1e6);
+            System.out.printf("%-44s %10s %10s%n", "asset", "png ms", "pack ms");
+
+            long pngTotal = 0, packTotal = 0;
+            for (String name : new java.util.TreeSet<>(pack.names())) {
+                long t0 = System.nanoTime();
+                BufferedImage png = AssetLoader.decodePng(name);
+                long t1 = System.nanoTime();
+                BufferedImage packed = pack.image(name);
+                long t2 = System.nanoTime();
+                if (png == null || packed == null) {
+                    System.out.printf("%-44s %10s %10.2f%n", name, "missing", (t2 - t1) / 1e6);
+                    continue;
+                }
+                pngTotal += t1 - t0;
+                packTotal += t2 - t1;
+                System.out.printf("%-44s %10.2f %10.2f%n", name, (t1 - t0) / 1e6, (t2 - t1) / 1e6);
+            }
+            System.out.printf("%-44s %10.2f %10.2f  (%.1fx)%n", "total", pngTotal / 1e6,
+                    (packTotal + openNanos) / 1e6, pngTotal / (double) Math.max(1, packTotal + openNanos));
+        }
+    }
+}
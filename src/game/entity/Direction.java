@@ -0,0 +1,25 @@
+package game.entity;
+
+/**
+ * The four walking directions.
+ * The ordinal matches the row of the direction in the sprite sheet
+ * (up, down, left, right), so it can be stored in primitive arrays and
+ * used directly as a sprite row.
+ */
+public enum Direction {
+    UP(0, -1),
+    DOWN(0, 1),
+    LEFT(-1, 0),
+    RIGHT(1, 0);
+
+    // Shared copy of values() (values() allocates a new array on every call)
+    public static final Direction[] VALUES = values();
+
+    // Unit step in world space
+    public final int dx, dy;
+
+    Direction(int dx, int dy) {
+        this.dx = dx;
+        this.dy = dy;
+    }
+}
@@ -1,19 +1,18 @@
 package game.entity;
 
-import java.awt.image.BufferedImage;
-
 //Entity
 public class Entity {
 
     public int x, y;
+    // Position before the last update (used for render interpolation)
+    public int prevX, prevY;
     public int speed;
 
-    public BufferedImage[] up;
-    public BufferedImage[] down;
-    public BufferedImage[] left;
-    public BufferedImage[] right;
+    // Shared, pre-scaled frames of this entity's sprite sheet (rows: up, down, left, right)
+    public SpriteCache.SpriteSet sprites;
 
-    public String direction;
-    public int spriteCounter = 0;
-    public int spriteNum = 0;
+    public Direction direction;
+    // Animation clip being played (see game.anim.Animations) and ticks elapsed in it
+    public int clip;
+    public int animTime = 0;
 }
@@ -0,0 +1,366 @@
+package game.entity;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+
+import game.anim.AnimationClip;
+import game.anim.AnimationSet;
+import game.anim.Animations;
+import game.map.CollisionMap;
+import game.path.TilePath;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * EntityStore keeps large numbers of simple actors (wandering NPCs) in
+ * struct-of-arrays form: every attribute lives in its own primitive array,
+ * indexed by entity id. There is no object per entity, the update loop walks
+ * contiguous memory, and a tick allocates nothing.
+ *
+ * NPCs move like the player: one tile step at a time, pausing for a random
+ * number of ticks in between, or without pausing along a path given with
+ * {@link #setPath}. Once the entity count crosses
+ * PARALLEL_THRESHOLD the update is split into slices run on the
+ * fork/join common pool. Animations only switch clips here; they are
+ * advanced for all entities at once by {@link #advanceAnimations()}.
+ */
+public class EntityStore {
+
+    // Below this many entities the update runs on the calling thread
+    public static final int PARALLEL_THRESHOLD = 4096;
+
+    // Capacity and current number of entities
+    public final int capacity;
+    public int count;
+
+    // Position and position before the last update (for render interpolation)
+    public final int[] x, y, prevX, prevY;
+    // Velocity in pixels per tick while stepping
+    public final int[] vx, vy;
+    // Direction ordinal (see Direction), also the sprite row
+    public final byte[] direction;
+    // Pixels left in the current tile step (0 = standing)
+    public final int[] stepLeft;
+    // Ticks to wait before the next step
+    public final int[] idleTicks;
+    // Animation clip being played and ticks elapsed in it (see game.anim.Animations)
+    public final int[] clip, animTime;
+    // Idle and walking clips of each entity (AnimationSet id)
+    public final int[] animSet;
+    // Path being followed (null = wander) and the position of the next tile on it
+    public final TilePath[] path;
+    public final int[] pathStep;
+    // Per-entity xorshift random state
+    public final int[] seed;
+
+    // World rules
+    final int tileSize;
+    final int speed;
+    int worldWidth, worldHeight;
+    // Blocked tiles (null = only the world bounds apply); read-only, shared between slices
+    CollisionMap collision;
+
+    // Preallocated fork/join tasks, one per slice of the entity range
+    private final ForkJoinPool pool;
+    private final Slice[] slices;
+    private final ForkJoinTask<Void> root;
+    private int slicedCount = -1;
+
+    /**
+     * Creates an empty store.
+     *
+     * @param capacity Maximum number of entities
+     * @param tileSize Tile size in world pixels (length of one step)
+     * @param speed Movement speed in pixels per tick
+     * @param worldWidth Width of the walkable world in pixels
+     * @param worldHeight Height of the walkable world in pixels
+     */
+    public EntityStore(int capacity, int tileSize, int speed, int worldWidth, int worldHeight) {
+        this.capacity = capacity;
+        this.tileSize = tileSize;
+        this.speed = speed;
+        this.worldWidth = worldWidth;
+        this.worldHeight = worldHeight;
+
+        x = new int[capacity];
+        y = new int[capacity];
+        prevX = new int[capacity];
+        prevY = new int[capacity];
+        vx = new int[capacity];
+        vy = new int[capacity];
+        direction = new byte[capacity];
+        stepLeft = new int[capacity];
+        idleTicks = new int[capacity];
+        clip = new int[capacity];
+        animTime = new int[capacity];
+        animSet = new int[capacity];
+        path = new TilePath[capacity];
+        pathStep = new int[capacity];
+        seed = new int[capacity];
+
+        pool = ForkJoinPool.commonPool();
+        slices = new Slice[Math.max(1, pool.getParallelism()) * 4];
+        for (int i = 0; i < slices.length; i++) {
+            slices[i] = new Slice();
+        }
+        root = new RecursiveAction() {
+            @Override
+            protected void compute() {
+                invokeAll(slices);
+            }
+        };
+    }
+
+    /**
+     * Adds an entity standing at the given position.
+     *
+     * @param px X position in world space
+     * @param py Y position in world space
+     * @param animations Animation set id (see Animations.set)
+     * @param randomSeed Seed for the entity's wandering (must not be 0)
+     * @return The new entity id, or -1 if the store is full
+     */
+    public int add(int px, int py, int animations, int randomSeed) {
+        if (count == capacity) {
+            return -1;
+        }
+        int id = count++;
+        x[id] = prevX[id] = px;
+        y[id] = prevY[id] = py;
+        vx[id] = vy[id] = 0;
+        direction[id] = (byte) Direction.DOWN.ordinal();
+        stepLeft[id] = 0;
+        animSet[id] = animations;
+        clip[id] = Animations.set(animations).idle(direction[id]);
+        animTime[id] = 0;
+        path[id] = null;
+        seed[id] = randomSeed != 0 ? randomSeed : 0x9E3779B9;
+        idleTicks[id] = nextRandom(id) & 63;
+        return id;
+    }
+
+    /**
+     * Changes the bounds entities are kept inside of.
+     *
+     * @param width World width in pixels
+     * @param height World height in pixels
+     */
+    public void setWorldSize(int width, int height) {
+        worldWidth = width;
+        worldHeight = height;
+    }
+
+    /**
+     * Sets the collision layer checked before every step.
+     *
+     * @param collision The collision layer, or null to only respect the world bounds
+     */
+    public void setCollisionMap(CollisionMap collision) {
+        this.collision = collision;
+    }
+
+    /**
+     * Makes an entity walk a path. The path must start on the tile the
+     * entity stands on when it next picks a step, else it is dropped.
+     *
+     * @param id Entity id
+     * @param tiles The path, or null to go back to wandering
+     */
+    public void setPath(int id, TilePath tiles) {
+        path[id] = tiles;
+        pathStep[id] = 1;
+    }
+
+    /**
+     * @param id Entity id
+     * @return true if the entity stands still and follows no path
+     */
+    public boolean isWandering(int id) {
+        return stepLeft[id] == 0 && path[id] == null;
+    }
+
+    /**
+     * Advances every entity by one tick. Runs in parallel once
+     * count >= PARALLEL_THRESHOLD.
+     */
+    public void update() {
+        if (count < PARALLEL_THRESHOLD) {
+            updateRange(0, count);
+            return;
+        }
+        if (slicedCount != count) {
+            // Re-split the id range only when the entity count changed
+            int per = (count + slices.length - 1) / slices.length;
+            for (int i = 0; i < slices.length; i++) {
+                slices[i].from = Math.min(count, i * per);
+                slices[i].to = Math.min(count, (i + 1) * per);
+            }
+            slicedCount = count;
+        }
+        for (Slice slice : slices) {
+            slice.reinitialize();
+        }
+        root.reinitialize();
+        pool.invoke(root);
+    }
+
+    /**
+     * Advances the animation of every entity by one tick (one pass over
+     * the clip and time arrays).
+     */
+    public void advanceAnimations() {
+        Animations.advance(clip, animTime, count);
+    }
+
+    /**
+     * Updates entities [from, to). Touches only those indices, so slices
+     * can run concurrently.
+     */
+    void updateRange(int from, int to) {
+        final int maxX = worldWidth - tileSize;
+        final int maxY = worldHeight - tileSize;
+
+        for (int i = from; i < to; i++) {
+            prevX[i] = x[i];
+            prevY[i] = y[i];
+
+            if (stepLeft[i] == 0) {
+                // Standing: take the next step of the path, or wait, then pick a new direction
+                Direction dir = path[i] != null ? nextPathStep(i) : null;
+                if (dir == null) {
+                    if (idleTicks[i] > 0) {
+                        idleTicks[i]--;
+                        continue;
+                    }
+                    dir = Direction.VALUES[nextRandom(i) & 3];
+                }
+                // Turn around instead of leaving the world
+                int targetX = x[i] + dir.dx * tileSize;
+                int targetY = y[i] + dir.dy * tileSize;
+                if (targetX < 0 || targetY < 0 || targetX > maxX || targetY > maxY) {
+                    dir = opposite(dir);
+                    targetX = x[i] + dir.dx * tileSize;
+                    targetY = y[i] + dir.dy * tileSize;
+                }
+                AnimationSet animations = Animations.set(animSet[i]);
+                // Blocked tile (the map may have changed under a path): face that way and try again later
+                if (collision != null && collision.isBlockedAt(targetX + tileSize / 2, targetY + tileSize / 2)) {
+                    direction[i] = (byte) dir.ordinal();
+                    clip[i] = animations.idle(dir.ordinal());
+                    animTime[i] = 0;
+                    idleTicks[i] = 15 + (nextRandom(i) & 31);
+                    path[i] = null;
+                    continue;
+                }
+                direction[i] = (byte) dir.ordinal();
+                vx[i] = dir.dx * speed;
+                vy[i] = dir.dy * speed;
+                stepLeft[i] = tileSize;
+                // Keep the walk cycle going between the steps of a path
+                int walk = animations.walk(dir.ordinal());
+                if (clip[i] != walk) {
+                    clip[i] = walk;
+                    animTime[i] = 0;
+                }
+            }
+
+            // Stepping: advance position
+            x[i] += vx[i];
+            y[i] += vy[i];
+            stepLeft[i] -= speed;
+
+            // Stop when one tile is completed
+            if (stepLeft[i] <= 0) {
+                stepLeft[i] = 0;
+                vx[i] = vy[i] = 0;
+                if (path[i] != null && pathStep[i] < path[i].length()) {
+                    // Keep walking: the next step starts right away
+                    continue;
+                }
+                path[i] = null;
+                clip[i] = Animations.set(animSet[i]).idle(direction[i]);
+                animTime[i] = 0;
+                idleTicks[i] = 30 + (nextRandom(i) & 127);
+            }
+        }
+    }
+
+    /**
+     * @return The direction of the next tile of the entity's path, or null
+     *         (and the path dropped) at its end or if the entity is not on it
+     */
+    private Direction nextPathStep(int i) {
+        TilePath p = path[i];
+        int step = pathStep[i];
+        if (step < p.length()) {
+            int dx = p.col(step) - x[i] / tileSize;
+            int dy = p.row(step) - y[i] / tileSize;
+            // The previous tile must be the current one, which also rules out paths started elsewhere
+            if (p.col(step - 1) == x[i] / tileSize && p.row(step - 1) == y[i] / tileSize) {
+                pathStep[i] = step + 1;
+                if (dy < 0) return Direction.UP;
+                if (dy > 0) return Direction.DOWN;
+                if (dx < 0) return Direction.LEFT;
+                return Direction.RIGHT;
+            }
+        }
+        path[i] = null;
+        return null;
+    }
+
+    private static Direction opposite(Direction dir) {
+        switch (dir) {
+            case UP:   return Direction.DOWN;
+            case DOWN: return Direction.UP;
+            case LEFT: return Direction.RIGHT;
+            default:   return Direction.LEFT;
+        }
+    }
+
+    /**
+     * Xorshift32 step on the entity's own random state.
+     */
+    private int nextRandom(int i) {
+        int s = seed[i];
+        s ^= s << 13;
+        s ^= s >>> 17;
+        s ^= s << 5;
+        seed[i] = s;
+        return s >>> 1;
+    }
+
+    /**
+     * Draws one entity with camera offset, interpolated between its last two positions.
+     *
+     * @param g2 Graphics2D context for drawing
+     * @param i Entity id
+     * @param cameraX Camera's X position
+     * @param cameraY Camera's Y position
+     * @param alpha Render interpolation factor (0..1)
+     * @param scale Sprite scale factor
+     * @param originalTileSize Unscaled tile size (used to center the sprite like the player)
+     */
+    public void draw(Graphics2D g2, int i, int cameraX, int cameraY, double alpha, int scale, int originalTileSize) {
+        AnimationClip current = Animations.clip(clip[i]);
+        BufferedImage image = current.image(current.frameAt(animTime[i]), scale);
+        int offset = (originalTileSize * scale - originalTileSize) / 2;
+        int drawX = (int) Math.round(prevX[i] + (x[i] - prevX[i]) * alpha);
+        int drawY = (int) Math.round(prevY[i] + (y[i] - prevY[i]) * alpha);
+        g2.drawImage(image, drawX - cameraX - offset, drawY - cameraY - offset, null);
+    }
+
+    /**
+     * A contiguous range of entity ids updated by one fork/join task.
+     */
+    private final class Slice extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        int from, to;
+
+        @Override
+        protected void compute() {
+            updateRange(from, to);
+        }
+    }
+}
@@ -1,110 +1,86 @@
 package game.entity;
 
-import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
-import javax.imageio.ImageIO;
-
-import game.GamePanel;
+import java.util.Arrays;
+
+import game.World;
+import game.anim.AnimationSet;
+import game.anim.Animations;
+import game.assets.AssetLoader;
+import game.log.Log;
+import game.log.LogCategory;
 import game.KeyHandler;
+import game.map.CollisionMap;
 
 /**
  * Player class represents the main player character in the game.
- * Handles player movement, animation, and rendering.
+ * Handles player movement and animation; World draws it from render snapshots.
  * Extends the base Entity class for common entity functionality.
  */
 
 public class Player extends Entity {
-    // Reference to the main game panel for accessing game state and settings
-    GamePanel gp;
+    // Where the sprite sheet is looked up (resource path, then alternative path)
+    public static final String[] SPRITE_SHEET = {"/game/res/player/player_sheet.png", "/res/player/player_sheet.png"};
+
+    // Reference to the game world for accessing game state and settings
+    World world;
     // Reference to the key handler for processing player input
     KeyHandler keyH;
 
     // Player scale factor (1 = normal size, 2 = double size, etc.)
     public int scale = 1;
 
+    // Idle and walking clips per direction (see res/animations.txt)
+    public final AnimationSet animations = Animations.set("player");
+
     // Movement tracking variables
     private boolean isMoving = false;  // Flag to check if player is currently moving
     private int pixelsMoved = 0;       // Tracks how many pixels moved in current movement
 
-        /**
+    /**
      * Loads player sprites from the sprite sheet.
-     * Handles different sprite directions and animation frames.
-     * If loading fails, creates blank placeholder images to prevent crashes.
+     * Each row of the sheet is one direction (up, down, left, right).
+     * If loading fails, registers blank placeholder images to prevent crashes.
      */
     public void getPlayerImage() {
+        final int columns = 4;
+        final int rows = 4;
+        // Use original tile size (16x16 pixels)
+        int frameSize = world.originalTileSize;
+        BufferedImage[][] frames = new BufferedImage[rows][columns];
         try {
-            // Try to load the sprite sheet using different methods
-            java.net.URL imgUrl = getClass().getResource("/game/res/player/player_sheet.png");
-            if (imgUrl == null) {
-                // If not found, try alternative path
-                imgUrl = getClass().getResource("/res/player/player_sheet.png");
-            }
-            
-            if (imgUrl == null) {
-                throw new IOException("Could not find player_sheet.png. Tried:" +
-                    "\n- /game/res/player/player_sheet.png" +
-                    "\n- /res/player/player_sheet.png");
-            }
-            
-            BufferedImage spriteSheet = ImageIO.read(imgUrl);
-
-            final int columns = 4;
-            
-            // Use original tile size (16x16 pixels)
-            int frameSize = gp.originalTileSize; // Original tile size
-            
-            // Initialize arrays if they're null
-            if (up == null) up = new BufferedImage[columns];
-            if (down == null) down = new BufferedImage[columns];
-            if (left == null) left = new BufferedImage[columns];
-            if (right == null) right = new BufferedImage[columns];
-            
-            // Extract up frames (first row)
-            for (int i = 0; i < columns; i++) {
-                up[i] = spriteSheet.getSubimage(i * frameSize, 0, frameSize, frameSize);
+            // Load the sprite sheet from the asset pack or the resources
+            BufferedImage spriteSheet = AssetLoader.readImage(SPRITE_SHEET);
+            for (int row = 0; row < rows; row++) {
+                for (int i = 0; i < columns; i++) {
+                    frames[row][i] = spriteSheet.getSubimage(i * frameSize, row * frameSize, frameSize, frameSize);
+                }
             }
-            
-            // Extract down frames (second row)
-            for (int i = 0; i < columns; i++) {
-                down[i] = spriteSheet.getSubimage(i * frameSize, frameSize, frameSize, frameSize);
-            }
-            
-            // Extract left frames (third row)
-            for (int i = 0; i < columns; i++) {
-                left[i] = spriteSheet.getSubimage(i * frameSize, frameSize * 2, frameSize, frameSize);
-            }
-            
-            // Extract right frames (fourth row)
-            for (int i = 0; i < columns; i++) {
-                right[i] = spriteSheet.getSubimage(i * frameSize, frameSize * 3, frameSize, frameSize);
-            }
-            
-            System.out.println("Successfully loaded player sprites!");
-            
+            Log.info(LogCategory.ASSETS, "Successfully loaded player sprites!");
         } catch (IOException e) {
-            e.printStackTrace();
-            System.err.println("Error loading player sprites: " + e.getMessage());
-            // Initialize empty images to prevent NullPointerException
-            BufferedImage emptyImage = new BufferedImage(16, 16, BufferedImage.TYPE_INT_ARGB);
-            up = new BufferedImage[]{emptyImage, emptyImage, emptyImage};
-            down = new BufferedImage[]{emptyImage, emptyImage, emptyImage};
-            left = new BufferedImage[]{emptyImage, emptyImage, emptyImage};
-            right = new BufferedImage[]{emptyImage, emptyImage, emptyImage};
+            Log.error(LogCategory.ASSETS, "Error loading player sprites", e);
+            // Blank frames keep the clips drawable
+            BufferedImage emptyImage = new BufferedImage(frameSize, frameSize, BufferedImage.TYPE_INT_ARGB);
+            for (BufferedImage[] row : frames) {
+                Arrays.fill(row, emptyImage);
+            }
         }
+        // Standalone, pre-scaled copies shared by all entities using this sheet
+        sprites = SpriteCache.register("player", frames);
     }
 
     /**
      * Player constructor.
-     * @param gp Reference to the main GamePanel
+     * @param world Reference to the game World
      * @param keyH Reference to the KeyHandler for input processing
      */
-    public Player(GamePanel gp, KeyHandler keyH) {
-        this.gp = gp;
+    public Player(World world, KeyHandler keyH) {
+        this.world = world;
         this.keyH = keyH;
 
-        setDefaultValues();     // Initialize player's starting position and properties
         getPlayerImage();       // Load player sprites
+        setDefaultValues();     // Initialize player's starting position and properties
     }
 
     /**
@@ -114,104 +90,130 @@ public class Player extends Entity {
     void setDefaultValues() {
         x = 384;                // Starting X position (center of a 768x576 window)
         y = 288;                // Starting Y position
+        prevX = x;
+        prevY = y;
         speed = 2;              // Movement speed in pixels per frame
-        direction = "down";     // Initial facing direction
+        direction = Direction.DOWN; // Initial facing direction
+        clip = animations.idle(direction.ordinal());
+        animTime = 0;
         scale = 3;              // Scale factor for player size (3x original size)
     }
 
     /**
-     * Updates player state each frame.
-     * Handles movement input, animation, and position updates.
+     * Starts a one-tile move if the player is standing and either a move was
+     * buffered during the last step or a movement key is held.
      */
-    public void update() {
+    public void handleInput() {
         // If not already moving, check for new input
         if (!isMoving) {
-            if (keyH.upPressed) {
-                direction = "up";
-                isMoving = true;
-                pixelsMoved = 0;
-                spriteNum = 1; // show first step frame immediately
-            } else if (keyH.downPressed) {
-                direction = "down";
-                isMoving = true;
-                pixelsMoved = 0;
-                spriteNum = 1;
-            } else if (keyH.leftPressed) {
-                direction = "left";
-                isMoving = true;
-                pixelsMoved = 0;
-                spriteNum = 1;
-            } else if (keyH.rightPressed) {
-                direction = "right";
-                isMoving = true;
+            // A key pressed while walking wins over keys that are just held
+            Direction next = keyH.takeBufferedMove();
+            if (next == null) {
+                if (keyH.upPressed) next = Direction.UP;
+                else if (keyH.downPressed) next = Direction.DOWN;
+                else if (keyH.leftPressed) next = Direction.LEFT;
+                else if (keyH.rightPressed) next = Direction.RIGHT;
+            }
+            if (next != null) {
+                direction = next;
+                // Only face the direction if the destination tile is blocked
+                isMoving = canStep(direction);
                 pixelsMoved = 0;
-                spriteNum = 1;
+                play(isMoving ? animations.walk(direction.ordinal()) : animations.idle(direction.ordinal()));
             }
         }
+    }
+
+    /**
+     * Advances the current move by one tick. The walking animation is
+     * advanced with all other entities by World.update.
+     */
+    public void move() {
+        // Remember where we were for render interpolation
+        prevX = x;
+        prevY = y;
 
         // If currently moving, advance position
         if (isMoving) {
-            switch (direction) {
-                case "up":    y -= speed; break;
-                case "down":  y += speed; break;
-                case "left":  x -= speed; break;
-                case "right": x += speed; break;
-            }
+            x += direction.dx * speed;
+            y += direction.dy * speed;
 
-            // Print position every movement step
-            System.out.println("World Position - X: " + x + ", Y: " + y);
+            // Log position every movement step (-Dgame.log.player=debug)
+            Log.debug(LogCategory.PLAYER, "World Position - X: {}, Y: {}", x, y);
 
             pixelsMoved += speed;
 
-            // Animate while moving
-            spriteCounter++;
-            if (spriteCounter > 8) { // adjust for animation speed
-                spriteNum = (spriteNum + 1) % 4;
-                spriteCounter = 0;
-            }
-
             // Stop when one tile is completed
-            if (pixelsMoved >= gp.tileSize) {
+            if (pixelsMoved >= world.tileSize) {
                 isMoving = false;
-                spriteNum = 0; // back to idle frame
-                spriteCounter = 0;
+                play(animations.idle(direction.ordinal()));
             }
         }
     }
 
+    /**
+     * Starts a clip from its first frame.
+     *
+     * @param clipId The clip to play
+     */
+    private void play(int clipId) {
+        clip = clipId;
+        animTime = 0;
+    }
 
     /**
-     * Draws the player character on screen with camera offset.
-     * @param g2 Graphics2D context for drawing
-     * @param cameraX Camera's X position for viewport calculation
-     * @param cameraY Camera's Y position for viewport calculation
+     * Checks the collision layer for the tile one step away.
+     * The player's tile is the one containing the center of its sprite.
+     *
+     * @param dir Direction of the step
+     * @return true if the destination tile can be entered
      */
-    public void draw(Graphics2D g2, int cameraX, int cameraY) {
-        BufferedImage image = null;
-        switch (direction) {
-            case "up":    image = up[spriteNum]; break;
-            case "down":  image = down[spriteNum]; break;
-            case "left":  image = left[spriteNum]; break;
-            case "right": image = right[spriteNum]; break;
+    private boolean canStep(Direction dir) {
+        CollisionMap collision = world.collisionMap;
+        if (collision == null) {
+            return true;
         }
-        // Calculate scaled size using original tile size
-        int scaledSize = gp.originalTileSize * scale;
-        
-        // Calculate position to keep player centered when scaled
-        int offset = (scaledSize - gp.originalTileSize) / 2;
-        int screenX = x - cameraX - offset;
-        int screenY = y - cameraY - offset;
-        
-        // Draw player with camera offset and custom scale
-        g2.drawImage(image, screenX, screenY, scaledSize, scaledSize, null);
+        int centerX = x + world.originalTileSize / 2 + dir.dx * world.tileSize;
+        int centerY = y + world.originalTileSize / 2 + dir.dy * world.tileSize;
+        return !collision.isBlockedAt(centerX, centerY);
     }
-    
+
+    /**
+     * @return true while a one-tile move is in progress
+     */
+    public boolean isMoving() {
+        return isMoving;
+    }
+
+    /**
+     * @return Pixels walked so far in the current move
+     */
+    public int getPixelsMoved() {
+        return pixelsMoved;
+    }
+
+    /**
+     * Restores a move in progress (when loading a saved game).
+     *
+     * @param moving true if a one-tile move is in progress
+     * @param pixels Pixels already walked in it
+     */
+    public void setMovement(boolean moving, int pixels) {
+        isMoving = moving;
+        pixelsMoved = pixels;
+    }
+
+    /**
+     * @return Horizontal movement direction (-1 left, 1 right, 0 otherwise or when idle)
+     */
+    public int getDirectionX() {
+        return isMoving ? direction.dx : 0;
+    }
+
     /**
-     * Overloaded draw method for backward compatibility.
-     * Draws the player at screen coordinates (0,0) without camera offset.
-     * @param g2 Graphics2D context for drawing
+     * @return Vertical movement direction (-1 up, 1 down, 0 otherwise or when idle)
      */
-    public void draw(Graphics2D g2) {
-        draw(g2, 0, 0);
+    public int getDirectionY() {
+        return isMoving ? direction.dy : 0;
     }
 }
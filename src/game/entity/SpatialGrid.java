@@ -0,0 +1,260 @@
+package game.entity;
+
+import java.util.Arrays;
+
+/**
+ * SpatialGrid is a uniform grid over the world, one cell per tile, used to
+ * find entities near a point or inside a rectangle without scanning them all.
+ *
+ * Each cell holds an intrusive doubly linked list of entity ids stored in
+ * primitive arrays (head per cell, next/prev per entity), so moving an entity
+ * from one cell to another is O(1) and nothing is allocated. Entities are
+ * relinked only when their position crosses a cell boundary.
+ *
+ * Queries write ids into caller-supplied arrays and cost is proportional to
+ * the number of cells covered and the entities in them, not to the total
+ * entity count. The grid is written by the game thread only; queries from
+ * other threads see a consistent-enough view for culling (traversals are
+ * bounded so they can never loop on a concurrent relink).
+ */
+public class SpatialGrid {
+
+    public final int cellSize;
+    public final int cols, rows;
+    public final int capacity;
+
+    // First entity in each cell (-1 = empty)
+    private final int[] head;
+    // Links between entities of the same cell (-1 = none)
+    private final int[] next, prev;
+    // Cell of each entity (-1 = not in the grid)
+    private final int[] cellOf;
+    // Last known position of each entity
+    private final int[] px, py;
+
+    /**
+     * Creates an empty grid.
+     *
+     * @param cellSize Cell edge length in world pixels (normally GamePanel.tileSize)
+     * @param worldWidth World width in pixels
+     * @param worldHeight World height in pixels
+     * @param capacity Maximum entity id + 1
+     */
+    public SpatialGrid(int cellSize, int worldWidth, int worldHeight, int capacity) {
+        this.cellSize = cellSize;
+        this.cols = Math.max(1, (worldWidth + cellSize - 1) / cellSize);
+        this.rows = Math.max(1, (worldHeight + cellSize - 1) / cellSize);
+        this.capacity = capacity;
+
+        head = new int[cols * rows];
+        Arrays.fill(head, -1);
+        next = new int[capacity];
+        prev = new int[capacity];
+        cellOf = new int[capacity];
+        Arrays.fill(cellOf, -1);
+        px = new int[capacity];
+        py = new int[capacity];
+    }
+
+    /**
+     * Computes the cell of a world position, clamping to the grid.
+     */
+    private int cellAt(int x, int y) {
+        int col = Math.min(cols - 1, Math.max(0, Math.floorDiv(x, cellSize)));
+        int row = Math.min(rows - 1, Math.max(0, Math.floorDiv(y, cellSize)));
+        return row * cols + col;
+    }
+
+    /**
+     * Inserts an entity or moves it to a new position. The entity is
+     * relinked only if the position falls into a different cell.
+     *
+     * @param id Entity id
+     * @param x X position in world space
+     * @param y Y position in world space
+     */
+    public void move(int id, int x, int y) {
+        px[id] = x;
+        py[id] = y;
+        int cell = cellAt(x, y);
+        int old = cellOf[id];
+        if (cell == old) {
+            return;
+        }
+        if (old >= 0) {
+            unlink(id, old);
+        }
+        // Push to the front of the new cell's list
+        int first = head[cell];
+        prev[id] = -1;
+        next[id] = first;
+        if (first >= 0) prev[first] = id;
+        head[cell] = id;
+        cellOf[id] = cell;
+    }
+
+    /**
+     * Removes an entity from the grid.
+     *
+     * @param id Entity id
+     */
+    public void remove(int id) {
+        int cell = cellOf[id];
+        if (cell >= 0) {
+            unlink(id, cell);
+            cellOf[id] = -1;
+        }
+    }
+
+    private void unlink(int id, int cell) {
+        int p = prev[id];
+        int n = next[id];
+        if (p >= 0) next[p] = n; else head[cell] = n;
+        if (n >= 0) prev[n] = p;
+    }
+
+    /**
+     * Brings the grid up to date with the positions in an entity store.
+     * Called once per tick after the store has been updated.
+     *
+     * @param store The entity store (ids 0..count-1)
+     */
+    public void sync(EntityStore store) {
+        int[] xs = store.x, ys = store.y;
+        for (int i = 0, n = store.count; i < n; i++) {
+            // Cheap check first; move() relinks only on a cell boundary crossing
+            if (xs[i] != px[i] || ys[i] != py[i] || cellOf[i] < 0) {
+                move(i, xs[i], ys[i]);
+            }
+        }
+    }
+
+    /**
+     * Finds the entities whose position lies inside a rectangle.
+     *
+     * @param x Left edge in world space
+     * @param y Top edge in world space
+     * @param width Rectangle width
+     * @param height Rectangle height
+     * @param out Receives the ids found
+     * @return Number of ids written to out (at most out.length)
+     */
+    public int queryRect(int x, int y, int width, int height, int[] out) {
+        int x2 = x + width, y2 = y + height;
+        int firstCol = Math.max(0, Math.floorDiv(x, cellSize));
+        int firstRow = Math.max(0, Math.floorDiv(y, cellSize));
+        int lastCol = Math.min(cols - 1, Math.floorDiv(x2 - 1, cellSize));
+        int lastRow = Math.min(rows - 1, Math.floorDiv(y2 - 1, cellSize));
+
+        int found = 0;
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int col = firstCol; col <= lastCol; col++) {
+                int guard = capacity;
+                for (int id = head[row * cols + col]; id >= 0 && guard-- > 0; id = next[id]) {
+                    int ex = px[id], ey = py[id];
+                    if (ex >= x && ex < x2 && ey >= y && ey < y2) {
+                        if (found == out.length) return found;
+                        out[found++] = id;
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Finds the entities within a radius of a point.
+     *
+     * @param cx Center x in world space
+     * @param cy Center y in world space
+     * @param radius Search radius in pixels
+     * @param out Receives the ids found
+     * @return Number of ids written to out (at most out.length)
+     */
+    public int queryRadius(int cx, int cy, int radius, int[] out) {
+        long r2 = (long) radius * radius;
+        int firstCol = Math.max(0, Math.floorDiv(cx - radius, cellSize));
+        int firstRow = Math.max(0, Math.floorDiv(cy - radius, cellSize));
+        int lastCol = Math.min(cols - 1, Math.floorDiv(cx + radius, cellSize));
+        int lastRow = Math.min(rows - 1, Math.floorDiv(cy + radius, cellSize));
+
+        int found = 0;
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int col = firstCol; col <= lastCol; col++) {
+                int guard = capacity;
+                for (int id = head[row * cols + col]; id >= 0 && guard-- > 0; id = next[id]) {
+                    long dx = px[id] - cx, dy = py[id] - cy;
+                    if (dx * dx + dy * dy <= r2) {
+                        if (found == out.length) return found;
+                        out[found++] = id;
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Finds the k entities closest to a point, nearest first.
+     * Searches rings of cells outward from the point and stops as soon as
+     * no unvisited cell can contain anything closer than the current k-th hit.
+     *
+     * @param cx Center x in world space
+     * @param cy Center y in world space
+     * @param outIds Receives up to outIds.length ids, sorted by distance
+     * @param outDist2 Scratch for the squared distances (same length as outIds)
+     * @return Number of ids found
+     */
+    public int kNearest(int cx, int cy, int[] outIds, long[] outDist2) {
+        int k = Math.min(outIds.length, outDist2.length);
+        if (k == 0) return 0;
+        int found = 0;
+
+        int centerCol = Math.min(cols - 1, Math.max(0, Math.floorDiv(cx, cellSize)));
+        int centerRow = Math.min(rows - 1, Math.max(0, Math.floorDiv(cy, cellSize)));
+        int maxRing = Math.max(Math.max(centerCol, cols - 1 - centerCol), Math.max(centerRow, rows - 1 - centerRow));
+
+        for (int ring = 0; ring <= maxRing; ring++) {
+            // Anything in this ring is at least (ring - 1) cells away
+            if (found == k) {
+                long minDist = (long) Math.max(0, ring - 1) * cellSize;
+                if (minDist * minDist > outDist2[k - 1]) break;
+            }
+            int r0 = centerRow - ring, r1 = centerRow + ring;
+            int c0 = centerCol - ring, c1 = centerCol + ring;
+            for (int row = r0; row <= r1; row++) {
+                if (row < 0 || row >= rows) continue;
+                boolean edgeRow = row == r0 || row == r1;
+                // Inner rows only contribute their two border cells
+                int step = edgeRow ? 1 : Math.max(1, c1 - c0);
+                for (int col = c0; col <= c1; col += step) {
+                    if (col < 0 || col >= cols) continue;
+                    int guard = capacity;
+                    for (int id = head[row * cols + col]; id >= 0 && guard-- > 0; id = next[id]) {
+                        long dx = px[id] - cx, dy = py[id] - cy;
+                        found = insertSorted(id, dx * dx + dy * dy, outIds, outDist2, found, k);
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Inserts a candidate into the sorted result arrays, keeping at most k.
+     */
+    private static int insertSorted(int id, long dist2, int[] ids, long[] dists, int size, int k) {
+        if (size == k && dist2 >= dists[k - 1]) {
+            return size;
+        }
+        int i = size < k ? size++ : k - 1;
+        while (i > 0 && dists[i - 1] > dist2) {
+            ids[i] = ids[i - 1];
+            dists[i] = dists[i - 1];
+            i--;
+        }
+        ids[i] = id;
+        dists[i] = dist2;
+        return size;
+    }
+}
@@ -0,0 +1,166 @@
+package game.entity;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import game.ImageUtils;
+
+/**
+ * SpriteCache keeps every animation frame as a standalone, display-compatible
+ * image that is already scaled to its on-screen size.
+ *
+ * Frames cut from a sprite sheet with getSubimage share the sheet's raster,
+ * which can keep Java2D from caching them in video memory, and scaling them
+ * in every drawImage call costs a filtered blit per frame. Here each frame is
+ * copied once per scale, so drawing becomes a plain unscaled blit.
+ *
+ * Sprite sets are registered by name and shared by every Entity using them.
+ * Each set also gets a small integer id so that data-oriented code (see
+ * EntityStore) can refer to it from a primitive array.
+ */
+public final class SpriteCache {
+
+    // Largest supported scale factor
+    public static final int MAX_SCALE = 8;
+
+    // Registered sprite sets by name
+    private static final Map<String, SpriteSet> sets = new ConcurrentHashMap<>();
+    // Registered sprite sets by id
+    private static final List<SpriteSet> byId = new ArrayList<>();
+
+    private SpriteCache() {
+        // Static registry only
+    }
+
+    /**
+     * Registers a sprite set, or returns the existing one with that name.
+     * Each row is one animation (e.g. a walking direction), each column one frame.
+     *
+     * @param name Unique sprite name
+     * @param rows Source frames per row
+     * @return The shared sprite set
+     */
+    public static SpriteSet register(String name, BufferedImage[]... rows) {
+        return sets.computeIfAbsent(name, n -> {
+            synchronized (byId) {
+                SpriteSet set = new SpriteSet(n, byId.size(), rows);
+                byId.add(set);
+                return set;
+            }
+        });
+    }
+
+    /**
+     * @param name Sprite name
+     * @return The registered sprite set, or null
+     */
+    public static SpriteSet get(String name) {
+        return sets.get(name);
+    }
+
+    /**
+     * @param id Sprite set id
+     * @return The registered sprite set with that id
+     */
+    public static SpriteSet get(int id) {
+        synchronized (byId) {
+            return byId.get(id);
+        }
+    }
+
+    /**
+     * Frames of one sprite, cached per scale factor.
+     */
+    public static final class SpriteSet {
+
+        public final String name;
+        public final int id;
+        // Standalone copies of the source frames [row][frame]
+        private final BufferedImage[][] source;
+        // Scaled frames, indexed by scale factor, built on first use. Several threads
+        // draw (game, render, EDT), so a scale is only published once fully built.
+        private final AtomicReferenceArray<BufferedImage[][]> scaled = new AtomicReferenceArray<>(MAX_SCALE + 1);
+
+        SpriteSet(String name, int id, BufferedImage[][] rows) {
+            this.name = name;
+            this.id = id;
+            this.source = new BufferedImage[rows.length][];
+            for (int r = 0; r < rows.length; r++) {
+                source[r] = new BufferedImage[rows[r].length];
+                for (int f = 0; f < rows[r].length; f++) {
+                    source[r][f] = copy(rows[r][f], 1);
+                }
+            }
+            scaled.set(1, source);
+        }
+
+        /**
+         * Returns a frame at the requested scale, building that scale on first use.
+         *
+         * @param row Animation row
+         * @param frame Frame within the row
+         * @param scale Scale factor (1..MAX_SCALE)
+         * @return The scaled frame, ready to be drawn 1:1
+         */
+        public BufferedImage frame(int row, int frame, int scale) {
+            if (scale < 1 || scale > MAX_SCALE) {
+                throw new IllegalArgumentException("Unsupported sprite scale: " + scale);
+            }
+            BufferedImage[][] frames = scaled.get(scale);
+            if (frames == null) {
+                frames = buildScale(scale);
+            }
+            return frames[row][frame];
+        }
+
+        /**
+         * @return Number of animation rows
+         */
+        public int rows() {
+            return source.length;
+        }
+
+        /**
+         * @param row Animation row
+         * @return Number of frames in that row
+         */
+        public int frames(int row) {
+            return source[row].length;
+        }
+
+        private synchronized BufferedImage[][] buildScale(int scale) {
+            if (scaled.get(scale) == null) {
+                BufferedImage[][] frames = new BufferedImage[source.length][];
+                for (int r = 0; r < source.length; r++) {
+                    frames[r] = new BufferedImage[source[r].length];
+                    for (int f = 0; f < source[r].length; f++) {
+                        frames[r][f] = copy(source[r][f], scale);
+                    }
+                }
+                scaled.set(scale, frames);
+            }
+            return scaled.get(scale);
+        }
+
+        /**
+         * Copies an image into a new compatible image, scaled with nearest neighbour.
+         */
+        private static BufferedImage copy(BufferedImage image, int scale) {
+            int w = image.getWidth() * scale;
+            int h = image.getHeight() * scale;
+            BufferedImage copy = ImageUtils.createCompatibleImage(w, h, Transparency.TRANSLUCENT);
+            Graphics2D g = copy.createGraphics();
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+            g.drawImage(image, 0, 0, w, h, null);
+            g.dispose();
+            return copy;
+        }
+    }
+}
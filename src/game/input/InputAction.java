@@ -0,0 +1,27 @@
+package game.input;
+
+import game.entity.Direction;
+
+/**
+ * Game actions keys can be bound to (see KeyBindings).
+ */
+public enum InputAction {
+    MOVE_UP("up", Direction.UP),
+    MOVE_DOWN("down", Direction.DOWN),
+    MOVE_LEFT("left", Direction.LEFT),
+    MOVE_RIGHT("right", Direction.RIGHT),
+    TOGGLE_PROFILER("profiler", null);
+
+    // Cached copy of values() (values() allocates a new array each call)
+    public static final InputAction[] VALUES = values();
+
+    // Name used in the -Dgame.keys.<name> properties
+    public final String label;
+    // Walking direction for movement actions, null otherwise
+    public final Direction direction;
+
+    InputAction(String label, Direction direction) {
+        this.label = label;
+        this.direction = direction;
+    }
+}
@@ -0,0 +1,92 @@
+package game.input;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * InputQueue hands timestamped key events from the EDT to the game thread.
+ *
+ * It is a bounded single-producer/single-consumer ring: the EDT is the only
+ * writer, the game thread the only reader. Each side owns one counter and
+ * publishes it with a release store, which also makes the event fields written
+ * before it visible to the other side. No locks and no allocation; if the game
+ * thread stalls long enough for the ring to fill, further events are dropped
+ * and counted.
+ */
+public class InputQueue {
+
+    private final int capacity, mask;
+
+    // Event fields, indexed by slot
+    private final long[] times;
+    private final byte[] actions;
+    private final boolean[] pressed;
+
+    // Next slot to write (producer) and to read (consumer)
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * @param capacity Maximum number of queued events (rounded up to a power of two)
+     */
+    public InputQueue(int capacity) {
+        this.capacity = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.mask = this.capacity - 1;
+        times = new long[this.capacity];
+        actions = new byte[this.capacity];
+        pressed = new boolean[this.capacity];
+    }
+
+    /**
+     * Queues an event. Producer thread only.
+     *
+     * @param action The action
+     * @param down true for press, false for release
+     * @param nanoTime System.nanoTime() when the event arrived
+     * @return false if the queue was full and the event was dropped
+     */
+    public boolean offer(InputAction action, boolean down, long nanoTime) {
+        long t = tail.get();
+        if (t - head.get() >= capacity) {
+            dropped.incrementAndGet();
+            return false;
+        }
+        int slot = (int) (t & mask);
+        times[slot] = nanoTime;
+        actions[slot] = (byte) action.ordinal();
+        pressed[slot] = down;
+        tail.lazySet(t + 1);
+        return true;
+    }
+
+    /**
+     * Receives the events drained by {@link #drain}.
+     */
+    public interface Consumer {
+        void event(InputAction action, boolean down, long nanoTime);
+    }
+
+    /**
+     * Passes every queued event to the consumer, oldest first. Consumer thread only.
+     *
+     * @param consumer Receives the events
+     * @return Number of events drained
+     */
+    public int drain(Consumer consumer) {
+        long h = head.get();
+        long t = tail.get();
+        for (long i = h; i < t; i++) {
+            int slot = (int) (i & mask);
+            consumer.event(InputAction.VALUES[actions[slot]], pressed[slot], times[slot]);
+        }
+        head.lazySet(t);
+        return (int) (t - h);
+    }
+
+    /**
+     * @return Number of events dropped so far because the queue was full
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+}
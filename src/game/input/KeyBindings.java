@@ -0,0 +1,100 @@
+package game.input;
+
+import java.awt.event.KeyEvent;
+
+import game.log.Log;
+import game.log.LogCategory;
+
+/**
+ * KeyBindings maps AWT key codes to game actions.
+ *
+ * Defaults: arrow keys and WASD to move, F3 for the frame timing overlay.
+ * Each action can be rebound on the command line with a comma separated list
+ * of KeyEvent names (without the VK_ prefix), which replaces its defaults:
+ * <pre>
+ *   java -Dgame.keys.up=I -Dgame.keys.down=K -Dgame.keys.left=J -Dgame.keys.right=L game.Main
+ * </pre>
+ * Lookups are a single array access so they can run for every key event.
+ */
+public class KeyBindings {
+
+    // Key codes are 16 bit; action ordinal + 1 per key code (0 = unbound)
+    private final byte[] actionByKey = new byte[1 << 16];
+
+    /**
+     * Creates the default bindings, overridden by any -Dgame.keys.* properties.
+     */
+    public KeyBindings() {
+        bindDefaults();
+        for (InputAction action : InputAction.VALUES) {
+            String keys = System.getProperty("game.keys." + action.label);
+            if (keys != null) {
+                unbindAll(action);
+                for (String name : keys.split(",")) {
+                    int keyCode = keyCode(name.trim());
+                    if (keyCode == KeyEvent.VK_UNDEFINED) {
+                        Log.warn(LogCategory.INPUT, "Unknown key '{}' for {}", name, action.label);
+                    } else {
+                        bind(keyCode, action);
+                    }
+                }
+            }
+        }
+    }
+
+    private void bindDefaults() {
+        bind(KeyEvent.VK_UP, InputAction.MOVE_UP);
+        bind(KeyEvent.VK_W, InputAction.MOVE_UP);
+        bind(KeyEvent.VK_DOWN, InputAction.MOVE_DOWN);
+        bind(KeyEvent.VK_S, InputAction.MOVE_DOWN);
+        bind(KeyEvent.VK_LEFT, InputAction.MOVE_LEFT);
+        bind(KeyEvent.VK_A, InputAction.MOVE_LEFT);
+        bind(KeyEvent.VK_RIGHT, InputAction.MOVE_RIGHT);
+        bind(KeyEvent.VK_D, InputAction.MOVE_RIGHT);
+        bind(KeyEvent.VK_F3, InputAction.TOGGLE_PROFILER);
+    }
+
+    /**
+     * Binds a key to an action, replacing the key's previous binding.
+     *
+     * @param keyCode KeyEvent key code
+     * @param action The action
+     */
+    public void bind(int keyCode, InputAction action) {
+        actionByKey[keyCode & 0xFFFF] = (byte) (action.ordinal() + 1);
+    }
+
+    /**
+     * Removes every key bound to an action.
+     *
+     * @param action The action
+     */
+    public void unbindAll(InputAction action) {
+        byte value = (byte) (action.ordinal() + 1);
+        for (int i = 0; i < actionByKey.length; i++) {
+            if (actionByKey[i] == value) actionByKey[i] = 0;
+        }
+    }
+
+    /**
+     * @param keyCode KeyEvent key code
+     * @return The bound action, or null
+     */
+    public InputAction actionFor(int keyCode) {
+        int value = actionByKey[keyCode & 0xFFFF];
+        return value == 0 ? null : InputAction.VALUES[value - 1];
+    }
+
+    /**
+     * Resolves a key name such as "W", "UP" or "F3".
+     *
+     * @return The key code, or VK_UNDEFINED
+     */
+    static int keyCode(String name) {
+        try {
+            return KeyEvent.class.getField("VK_" + name.toUpperCase()).getInt(null);
+        } catch (ReflectiveOperationException e) {
+            return KeyEvent.VK_UNDEFINED;
+        }
+    }
+}
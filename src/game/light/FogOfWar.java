@@ -0,0 +1,194 @@
+package game.light;
+
+import java.util.Arrays;
+
+import game.map.CollisionMap;
+
+/**
+ * FogOfWar remembers which map tiles the player has seen.
+ *
+ * Every tile is UNSEEN, EXPLORED (seen before, drawn dimmed) or VISIBLE
+ * (within sight of the player's tile right now). Sight is a circle of
+ * {@link #radius} tiles; blocked tiles of the collision layer are seen but
+ * hide the tiles behind them.
+ *
+ * Visibility only changes when the player arrives on a new tile, so
+ * {@link #update} does nothing while the player stays on the same tile and
+ * otherwise only touches the tiles around the old and the new position,
+ * never the whole map. Game thread only; the renderer reads the tiles
+ * around the view from the render snapshot.
+ */
+public final class FogOfWar {
+
+    public static final byte UNSEEN = 0, EXPLORED = 1, VISIBLE = 2;
+
+    public final int cols, rows;
+    // Sight radius in tiles
+    public final int radius;
+    private final CollisionMap collision;
+    private final byte[] tiles;
+
+    // Tile the visible area was computed for (MIN_VALUE = none yet)
+    private int centerCol = Integer.MIN_VALUE, centerRow = Integer.MIN_VALUE;
+    // Indices of the tiles marked VISIBLE, to demote them on the next update
+    private final int[] visible;
+    private int visibleCount;
+
+    // Number of updates that changed the visible area, and the duration of the last one
+    private long updates;
+    private long lastUpdateNanos;
+
+    /**
+     * @param cols Map width in tiles
+     * @param rows Map height in tiles
+     * @param radius Sight radius in tiles
+     * @param collision Tiles that block sight, or null if nothing does
+     */
+    public FogOfWar(int cols, int rows, int radius, CollisionMap collision) {
+        this.cols = cols;
+        this.rows = rows;
+        this.radius = Math.max(0, radius);
+        this.collision = collision;
+        this.tiles = new byte[cols * rows];
+        int side = 2 * this.radius + 1;
+        this.visible = new int[side * side];
+    }
+
+    /**
+     * Moves the visible area to the player's tile. Tiles that drop out of
+     * sight become EXPLORED.
+     *
+     * @param col Tile column of the player
+     * @param row Tile row of the player
+     * @return true if the visible area changed (the player is on a new tile)
+     */
+    public boolean update(int col, int row) {
+        if (col == centerCol && row == centerRow) {
+            return false;
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < visibleCount; i++) {
+            tiles[visible[i]] = EXPLORED;
+        }
+        visibleCount = 0;
+        centerCol = col;
+        centerRow = row;
+
+        int r2 = radius * radius + radius; // Rounder circle than r*r
+        for (int dy = -radius; dy <= radius; dy++) {
+            for (int dx = -radius; dx <= radius; dx++) {
+                int c = col + dx, r = row + dy;
+                if (c < 0 || r < 0 || c >= cols || r >= rows || dx * dx + dy * dy > r2) {
+                    continue;
+                }
+                if (inSight(col, row, c, r)) {
+                    int index = r * cols + c;
+                    tiles[index] = VISIBLE;
+                    visible[visibleCount++] = index;
+                }
+            }
+        }
+        updates++;
+        lastUpdateNanos = System.nanoTime() - start;
+        return true;
+    }
+
+    /**
+     * Walks the line between two tiles (Bresenham) and checks that no tile
+     * strictly between them blocks sight.
+     */
+    private boolean inSight(int fromCol, int fromRow, int toCol, int toRow) {
+        if (collision == null || (fromCol == toCol && fromRow == toRow)) {
+            return true;
+        }
+        int dx = Math.abs(toCol - fromCol), dy = -Math.abs(toRow - fromRow);
+        int sx = fromCol < toCol ? 1 : -1, sy = fromRow < toRow ? 1 : -1;
+        int error = dx + dy;
+        int c = fromCol, r = fromRow;
+        while (true) {
+            int e2 = 2 * error;
+            if (e2 >= dy) {
+                error += dy;
+                c += sx;
+            }
+            if (e2 <= dx) {
+                error += dx;
+                r += sy;
+            }
+            if (c == toCol && r == toRow) {
+                return true;
+            }
+            if (collision.isBlocked(c, r)) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * @param col Tile column
+     * @param row Tile row
+     * @return UNSEEN, EXPLORED or VISIBLE (tiles outside the map are UNSEEN)
+     */
+    public byte get(int col, int row) {
+        if (col < 0 || row < 0 || col >= cols || row >= rows) {
+            return UNSEEN;
+        }
+        return tiles[row * cols + col];
+    }
+
+    /**
+     * Copies a rectangle of tiles, UNSEEN outside the map.
+     *
+     * @param col First column
+     * @param row First row
+     * @param width Columns to copy
+     * @param height Rows to copy
+     * @param out Receives width * height states, row by row
+     */
+    public void copyRegion(int col, int row, int width, int height, byte[] out) {
+        for (int y = 0; y < height; y++) {
+            int r = row + y;
+            if (r < 0 || r >= rows) {
+                Arrays.fill(out, y * width, (y + 1) * width, UNSEEN);
+                continue;
+            }
+            for (int x = 0; x < width; x++) {
+                int c = col + x;
+                out[y * width + x] = c < 0 || c >= cols ? UNSEEN : tiles[r * cols + c];
+            }
+        }
+    }
+
+    /**
+     * @param into Receives one state per tile, row by row (cols * rows bytes)
+     */
+    public void copyTiles(byte[] into) {
+        System.arraycopy(tiles, 0, into, 0, tiles.length);
+    }
+
+    /**
+     * Replaces every tile (loading a saved game). The visible area is
+     * recomputed on the next update.
+     *
+     * @param saved One state per tile, as written by {@link #copyTiles}
+     */
+    public void restore(byte[] saved) {
+        if (saved.length < tiles.length) {
+            throw new IllegalArgumentException("Expected " + tiles.length + " fog tiles, got " + saved.length);
+        }
+        for (int i = 0; i < tiles.length; i++) {
+            // Nothing is in sight until the next update
+            tiles[i] = saved[i] == UNSEEN ? UNSEEN : EXPLORED;
+        }
+        visibleCount = 0;
+        centerCol = centerRow = Integer.MIN_VALUE;
+    }
+
+    /**
+     * @return A single line such as "fog: 42 updates, last 3 us, 61 tiles visible"
+     */
+    public String statsLine() {
+        return "fog: " + updates + " updates, last " + lastUpdateNanos / 1000 + " us, "
+                + visibleCount + " tiles visible";
+    }
+}
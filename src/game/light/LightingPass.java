@@ -0,0 +1,275 @@
+package game.light;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import game.RenderSnapshot;
+
+/**
+ * LightingPass darkens a finished frame for lighting and fog of war,
+ * working directly on the int pixels of the frame.
+ *
+ * Brightness is computed once per tile, not per pixel: every tile in view
+ * gets a factor from 0 (black) to 256 (unchanged), the ambient light plus
+ * the player's light falling off with distance, times the fog state of the
+ * tile (unseen tiles are black, explored ones dimmed). Pixels are then
+ * scaled by the factor bilinearly interpolated between the tile centers,
+ * which gives soft light and fog edges. Per pixel this is one addition and
+ * two multiplications (red and blue are scaled together); spans where the
+ * factor is constant are left alone (full brightness) or filled (black).
+ *
+ * The frame is split into bands of rows shaded in parallel on a small
+ * fork/join pool, the calling thread shading the first band. Tasks and
+ * scratch arrays are reused, so a frame allocates nothing.
+ *
+ * The frame must be an INT_RGB or INT_ARGB image (a DataBufferInt). Grabbing
+ * its pixel array keeps Java2D from caching it in video memory, which costs
+ * nothing here since the frame is redrawn every time anyway.
+ */
+public final class LightingPass {
+
+    // Factor of an explored tile that is out of sight (0..256)
+    static final int EXPLORED_FACTOR = 96;
+
+    private final boolean lighting, fog;
+    // Brightness without any light source (0..256) and the player light's radius in world pixels
+    private final int ambient;
+    private final int lightRadius;
+
+    // Workers for all bands but the first (null = single-threaded)
+    private final ForkJoinPool pool;
+    private final Band[] bands;
+
+    // Per-tile factors of the current frame, grid of gridCols x gridRows tile centers
+    private int[] grid = new int[0];
+    private int gridCols, gridRows;
+    // Frame pixels, tile size and sample origin of the current frame (read by the bands)
+    private int[] pixels;
+    private int width, height;
+    private int tile;
+    private int originX, originY;
+
+    /**
+     * @param lighting Apply ambient and player light
+     * @param fog Darken unseen and explored tiles (needs the fog region in the snapshots)
+     * @param ambient Brightness without light (0..255)
+     * @param lightRadius Radius of the player's light in world pixels
+     * @param threads Threads shading bands of rows, the caller included
+     */
+    public LightingPass(boolean lighting, boolean fog, int ambient, int lightRadius, int threads) {
+        this.lighting = lighting;
+        this.fog = fog;
+        this.ambient = Math.max(0, Math.min(256, ambient));
+        this.lightRadius = Math.max(1, lightRadius);
+        int count = Math.max(1, threads);
+        if (count > 1) {
+            AtomicInteger index = new AtomicInteger();
+            pool = new ForkJoinPool(count - 1, p -> {
+                ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+                thread.setName("Lighting-" + index.incrementAndGet());
+                return thread;
+            }, null, false);
+        } else {
+            pool = null;
+        }
+        bands = new Band[count];
+        for (int i = 0; i < count; i++) {
+            bands[i] = new Band();
+        }
+    }
+
+    /**
+     * Shades a frame in place.
+     *
+     * @param frame The drawn frame (INT_RGB or INT_ARGB)
+     * @param snapshot The snapshot the frame was drawn from
+     * @param alpha Interpolation factor the frame was drawn with
+     * @param scale World pixels per frame pixel (the game scale for low-resolution frames, else 1)
+     * @param tileSize Tile size in world pixels
+     * @param lightOffset Offset from the player's position to the center of its light, in world pixels
+     */
+    public void apply(BufferedImage frame, RenderSnapshot snapshot, double alpha, int scale, int tileSize, int lightOffset) {
+        if (!(frame.getRaster().getDataBuffer() instanceof DataBufferInt)) {
+            throw new IllegalArgumentException("Lighting needs an int frame, got image type " + frame.getType());
+        }
+        pixels = ((DataBufferInt) frame.getRaster().getDataBuffer()).getData();
+        width = frame.getWidth();
+        height = frame.getHeight();
+        tile = tileSize / scale;
+
+        // Camera in frame pixels, snapped like World.drawNative
+        int camX = Math.floorDiv(RenderSnapshot.interpolate(snapshot.prevCameraX, snapshot.cameraX, alpha), scale);
+        int camY = Math.floorDiv(RenderSnapshot.interpolate(snapshot.prevCameraY, snapshot.cameraY, alpha), scale);
+        int lightX = RenderSnapshot.interpolate(snapshot.playerPrevX, snapshot.playerX, alpha) + lightOffset;
+        int lightY = RenderSnapshot.interpolate(snapshot.playerPrevY, snapshot.playerY, alpha) + lightOffset;
+        buildGrid(snapshot, camX, camY, scale, tileSize, lightX, lightY);
+
+        int count = bands.length;
+        int rowsPerBand = (height + count - 1) / count;
+        for (int i = 0; i < count; i++) {
+            bands[i].set(Math.min(height, i * rowsPerBand), Math.min(height, (i + 1) * rowsPerBand));
+        }
+        for (int i = 1; i < count; i++) {
+            bands[i].reinitialize();
+            pool.execute(bands[i]);
+        }
+        bands[0].shade();
+        for (int i = 1; i < count; i++) {
+            bands[i].join();
+        }
+        pixels = null;
+    }
+
+    /**
+     * Computes the factor of every tile center around the view. Sample
+     * (0, 0) is the center of the tile just left of and above the first
+     * pixel, so every pixel lies between four samples.
+     */
+    private void buildGrid(RenderSnapshot snapshot, int camX, int camY, int scale, int tileSize,
+                           int lightX, int lightY) {
+        int half = tile / 2;
+        int firstCol = Math.floorDiv(camX - half, tile), firstRow = Math.floorDiv(camY - half, tile);
+        gridCols = Math.floorDiv(camX + width - 1 - half, tile) - firstCol + 2;
+        gridRows = Math.floorDiv(camY + height - 1 - half, tile) - firstRow + 2;
+        if (grid.length < gridCols * gridRows) {
+            grid = new int[gridCols * gridRows];
+        }
+        // Frame position of the first sample, relative to which pixels are interpolated
+        originX = firstCol * tile + half - camX;
+        originY = firstRow * tile + half - camY;
+
+        double radius = lightRadius;
+        for (int j = 0; j < gridRows; j++) {
+            for (int i = 0; i < gridCols; i++) {
+                int factor = 256;
+                if (lighting) {
+                    // Distance from the tile center to the light, in world pixels
+                    double dx = (firstCol + i) * tileSize + tileSize / 2.0 - lightX;
+                    double dy = (firstRow + j) * tileSize + tileSize / 2.0 - lightY;
+                    double falloff = Math.max(0.0, 1.0 - Math.sqrt(dx * dx + dy * dy) / radius);
+                    factor = ambient + (int) ((256 - ambient) * falloff * falloff);
+                }
+                if (fog) {
+                    factor = factor * fogFactor(snapshot, firstCol + i, firstRow + j) >> 8;
+                }
+                grid[j * gridCols + i] = factor;
+            }
+        }
+    }
+
+    /**
+     * @return 0..256 for a tile's fog state in the snapshot (UNSEEN outside its fog region)
+     */
+    private static int fogFactor(RenderSnapshot snapshot, int col, int row) {
+        int c = col - snapshot.fogCol, r = row - snapshot.fogRow;
+        if (c < 0 || r < 0 || c >= snapshot.fogCols || r >= snapshot.fogRows) {
+            return 0;
+        }
+        switch (snapshot.fog[r * snapshot.fogCols + c]) {
+            case FogOfWar.VISIBLE:  return 256;
+            case FogOfWar.EXPLORED: return EXPLORED_FACTOR;
+            default:                return 0;
+        }
+    }
+
+    /**
+     * Shades rows [y0, y1) of the current frame.
+     *
+     * @param rowFactors Scratch of at least gridCols ints
+     */
+    private void shadeRows(int y0, int y1, int[] rowFactors) {
+        int[] pixels = this.pixels;
+        int[] grid = this.grid;
+        int width = this.width, tile = this.tile, cols = gridCols;
+        for (int y = y0; y < y1; y++) {
+            // Vertical interpolation between two rows of samples, 8 fraction bits
+            int ty = y - originY;
+            int j = ty / tile, fy = ty - j * tile;
+            int top = j * cols, bottom = top + cols;
+            for (int i = 0; i < cols; i++) {
+                rowFactors[i] = ((grid[top + i] * (tile - fy) + grid[bottom + i] * fy) << 8) / tile;
+            }
+
+            // Horizontal interpolation, one span per pair of samples
+            int rowStart = y * width;
+            int x = 0;
+            int tx = -originX;
+            int i = tx / tile, fx = tx - i * tile;
+            while (x < width) {
+                int span = Math.min(tile - fx, width - x);
+                int f0 = rowFactors[i], f1 = rowFactors[i + 1];
+                int start = rowStart + x, end = start + span;
+                if (f0 == f1) {
+                    int factor = f0 >> 8;
+                    if (factor == 0) {
+                        Arrays.fill(pixels, start, end, 0);
+                    } else if (factor < 256) {
+                        for (int p = start; p < end; p++) {
+                            pixels[p] = scale(pixels[p], factor);
+                        }
+                    }
+                } else {
+                    // 16 fraction bits, stepped per pixel
+                    int step = ((f1 - f0) << 8) / tile;
+                    int current = (f0 << 8) + step * fx;
+                    for (int p = start; p < end; p++) {
+                        pixels[p] = scale(pixels[p], current >> 16);
+                        current += step;
+                    }
+                }
+                x += span;
+                fx = 0;
+                i++;
+            }
+        }
+    }
+
+    /**
+     * @return The pixel with its color channels scaled by factor / 256
+     */
+    private static int scale(int pixel, int factor) {
+        int redBlue = ((pixel & 0xFF00FF) * factor >>> 8) & 0xFF00FF;
+        int green = ((pixel & 0x00FF00) * factor >>> 8) & 0x00FF00;
+        return (pixel & 0xFF000000) | redBlue | green;
+    }
+
+    /**
+     * Stops the worker threads.
+     */
+    public void shutdown() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * A band of rows, reused every frame.
+     */
+    private final class Band extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private int y0, y1;
+        private int[] rowFactors = new int[0];
+
+        void set(int y0, int y1) {
+            this.y0 = y0;
+            this.y1 = y1;
+            if (rowFactors.length < gridCols) {
+                rowFactors = new int[gridCols];
+            }
+        }
+
+        void shade() {
+            shadeRows(y0, y1, rowFactors);
+        }
+
+        @Override
+        protected void compute() {
+            shade();
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package game.log;
+
+import java.io.PrintStream;
+import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Log is the engine's asynchronous logger.
+ *
+ * Callers never format or print: a log call checks the category's level,
+ * claims a slot in a preallocated ring buffer, copies the message template
+ * and its arguments into it and returns. A daemon thread drains the ring,
+ * fills in the "{}" placeholders and writes the lines to stdout (INFO and
+ * below) or stderr (WARN and ERROR).
+ *
+ * <pre>
+ *   Log.debug(LogCategory.PLAYER, "World Position - X: {}, Y: {}", x, y);
+ * </pre>
+ *
+ * A disabled call costs one volatile read. An enabled call with primitive
+ * arguments allocates nothing; use the long/double overloads on hot paths
+ * so numbers are not boxed. Any number of threads may log (the ring is a
+ * bounded multi-producer queue with a sequence number per slot). When the
+ * ring is full new messages are dropped and counted rather than blocking the
+ * game loop.
+ *
+ * Ring size: -Dgame.log.buffer (default 8192 messages, rounded up to a power of two).
+ */
+public final class Log {
+
+    // Argument kinds, 2 bits per argument
+    private static final int NONE = 0, LONG = 1, DOUBLE = 2, OBJECT = 3;
+    private static final int MAX_ARGS = 4, MAX_OBJECTS = 2;
+
+    // How long the writer sleeps when the ring is empty
+    private static final long IDLE_PARK_NANOS = 1_000_000L;
+
+    private static final int capacity = Integer.highestOneBit(Math.max(16,
+            Integer.getInteger("game.log.buffer", 8192) - 1)) << 1;
+    private static final int mask = capacity - 1;
+
+    // Slot sequence numbers: pos = free for the producer claiming pos,
+    // pos + 1 = filled, ready for the writer
+    private static final AtomicLongArray sequences = new AtomicLongArray(capacity);
+    // Next position to claim (producers) and to drain (writer)
+    private static final AtomicLong tail = new AtomicLong();
+    private static long head;
+    // Messages lost because the ring was full
+    private static final AtomicLong dropped = new AtomicLong();
+
+    // Slot contents, struct-of-arrays
+    private static final long[] times = new long[capacity];
+    private static final byte[] levels = new byte[capacity];
+    private static final byte[] categories = new byte[capacity];
+    private static final String[] templates = new String[capacity];
+    private static final int[] kinds = new int[capacity];
+    private static final long[] numbers = new long[capacity * MAX_ARGS];
+    private static final Object[] objects = new Object[capacity * MAX_OBJECTS];
+    private static final Throwable[] errors = new Throwable[capacity];
+
+    // Writer state (only touched while holding the writer lock)
+    private static final Object writerLock = new Object();
+    private static final StringBuilder line = new StringBuilder(256);
+    private static final LogCategory[] CATEGORIES = LogCategory.values();
+    private static volatile boolean closed;
+
+    static {
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i);
+        }
+        Thread writer = new Thread(Log::drainLoop, "Log Writer");
+        writer.setDaemon(true);
+        writer.start();
+        // Write whatever is still queued when the JVM exits
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            closed = true;
+            flush();
+        }, "Log Flush"));
+    }
+
+    private Log() {
+        // Static API only
+    }
+
+    /**
+     * @return true if messages of the level are logged in the category
+     */
+    public static boolean isEnabled(LogCategory category, LogLevel level) {
+        return category.isEnabled(level);
+    }
+
+    // ERROR
+    public static void error(LogCategory c, String msg) { log(LogLevel.ERROR, c, msg, NONE, 0, 0, 0, 0, null, null, null); }
+    public static void error(LogCategory c, String msg, Object a) { log(LogLevel.ERROR, c, msg, OBJECT, 0, 0, 0, 0, a, null, null); }
+    public static void error(LogCategory c, String msg, Object a, Object b) { log(LogLevel.ERROR, c, msg, OBJECT | OBJECT << 2, 0, 0, 0, 0, a, b, null); }
+    public static void error(LogCategory c, String msg, Throwable t) { log(LogLevel.ERROR, c, msg, NONE, 0, 0, 0, 0, null, null, t); }
+    public static void error(LogCategory c, String msg, Object a, Throwable t) { log(LogLevel.ERROR, c, msg, OBJECT, 0, 0, 0, 0, a, null, t); }
+
+    // WARN
+    public static void warn(LogCategory c, String msg) { log(LogLevel.WARN, c, msg, NONE, 0, 0, 0, 0, null, null, null); }
+    public static void warn(LogCategory c, String msg, long a) { log(LogLevel.WARN, c, msg, LONG, a, 0, 0, 0, null, null, null); }
+    public static void warn(LogCategory c, String msg, Object a) { log(LogLevel.WARN, c, msg, OBJECT, 0, 0, 0, 0, a, null, null); }
+    public static void warn(LogCategory c, String msg, Object a, Object b) { log(LogLevel.WARN, c, msg, OBJECT | OBJECT << 2, 0, 0, 0, 0, a, b, null); }
+    public static void warn(LogCategory c, String msg, Throwable t) { log(LogLevel.WARN, c, msg, NONE, 0, 0, 0, 0, null, null, t); }
+
+    // INFO
+    public static void info(LogCategory c, String msg) { log(LogLevel.INFO, c, msg, NONE, 0, 0, 0, 0, null, null, null); }
+    public static void info(LogCategory c, String msg, long a) { log(LogLevel.INFO, c, msg, LONG, a, 0, 0, 0, null, null, null); }
+    public static void info(LogCategory c, String msg, long a, long b) { log(LogLevel.INFO, c, msg, LONG | LONG << 2, a, b, 0, 0, null, null, null); }
+    public static void info(LogCategory c, String msg, long a, long b, long d) { log(LogLevel.INFO, c, msg, LONG | LONG << 2 | LONG << 4, a, b, d, 0, null, null, null); }
+    public static void info(LogCategory c, String msg, long a, long b, long d, long e) { log(LogLevel.INFO, c, msg, LONG | LONG << 2 | LONG << 4 | LONG << 6, a, b, d, e, null, null, null); }
+    public static void info(LogCategory c, String msg, double a) { log(LogLevel.INFO, c, msg, DOUBLE, Double.doubleToRawLongBits(a), 0, 0, 0, null, null, null); }
+    public static void info(LogCategory c, String msg, Object a) { log(LogLevel.INFO, c, msg, OBJECT, 0, 0, 0, 0, a, null, null); }
+    public static void info(LogCategory c, String msg, Object a, Object b) { log(LogLevel.INFO, c, msg, OBJECT | OBJECT << 2, 0, 0, 0, 0, a, b, null); }
+
+    // DEBUG
+    public static void debug(LogCategory c, String msg) { log(LogLevel.DEBUG, c, msg, NONE, 0, 0, 0, 0, null, null, null); }
+    public static void debug(LogCategory c, String msg, long a) { log(LogLevel.DEBUG, c, msg, LONG, a, 0, 0, 0, null, null, null); }
+    public static void debug(LogCategory c, String msg, long a, long b) { log(LogLevel.DEBUG, c, msg, LONG | LONG << 2, a, b, 0, 0, null, null, null); }
+    public static void debug(LogCategory c, String msg, long a, long b, long d) { log(LogLevel.DEBUG, c, msg, LONG | LONG << 2 | LONG << 4, a, b, d, 0, null, null, null); }
+    public static void debug(LogCategory c, String msg, double a) { log(LogLevel.DEBUG, c, msg, DOUBLE, Double.doubleToRawLongBits(a), 0, 0, 0, null, null, null); }
+    public static void debug(LogCategory c, String msg, Object a) { log(LogLevel.DEBUG, c, msg, OBJECT, 0, 0, 0, 0, a, null, null); }
+    public static void debug(LogCategory c, String msg, Object a, long b) { log(LogLevel.DEBUG, c, msg, OBJECT | LONG << 2, b, 0, 0, 0, a, null, null); }
+
+    // TRACE
+    public static void trace(LogCategory c, String msg) { log(LogLevel.TRACE, c, msg, NONE, 0, 0, 0, 0, null, null, null); }
+    public static void trace(LogCategory c, String msg, long a) { log(LogLevel.TRACE, c, msg, LONG, a, 0, 0, 0, null, null, null); }
+    public static void trace(LogCategory c, String msg, long a, long b) { log(LogLevel.TRACE, c, msg, LONG | LONG << 2, a, b, 0, 0, null, null, null); }
+    public static void trace(LogCategory c, String msg, long a, long b, long d) { log(LogLevel.TRACE, c, msg, LONG | LONG << 2 | LONG << 4, a, b, d, 0, null, null, null); }
+
+    /**
+     * Queues one message. Numbers are taken in order from n0..n3 and objects
+     * from o0, o1, as described by the 2-bit kinds of each argument.
+     */
+    private static void log(LogLevel level, LogCategory category, String template, int argKinds,
+                            long n0, long n1, long n2, long n3, Object o0, Object o1, Throwable error) {
+        if (!category.isEnabled(level)) {
+            return;
+        }
+        // Claim a slot
+        long pos = tail.get();
+        int slot;
+        for (;;) {
+            slot = (int) (pos & mask);
+            long diff = sequences.getAcquire(slot) - pos;
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) break;
+                pos = tail.get();
+            } else if (diff < 0) {
+                // Full: the writer has not freed this slot yet
+                dropped.incrementAndGet();
+                return;
+            } else {
+                // Another producer took it
+                pos = tail.get();
+            }
+        }
+
+        times[slot] = System.currentTimeMillis();
+        levels[slot] = (byte) level.ordinal();
+        categories[slot] = (byte) category.ordinal();
+        templates[slot] = template;
+        kinds[slot] = argKinds;
+        int n = slot * MAX_ARGS;
+        numbers[n] = n0;
+        numbers[n + 1] = n1;
+        numbers[n + 2] = n2;
+        numbers[n + 3] = n3;
+        objects[slot * MAX_OBJECTS] = o0;
+        objects[slot * MAX_OBJECTS + 1] = o1;
+        errors[slot] = error;
+
+        // Publish to the writer
+        sequences.setRelease(slot, pos + 1);
+    }
+
+    /**
+     * Writes every queued message now. Called on exit; can also be called
+     * before printing directly to the console, to keep the output in order.
+     */
+    public static void flush() {
+        synchronized (writerLock) {
+            drain();
+        }
+    }
+
+    /**
+     * Body of the writer thread.
+     */
+    private static void drainLoop() {
+        while (!closed) {
+            int written;
+            synchronized (writerLock) {
+                written = drain();
+            }
+            if (written == 0) {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+        }
+    }
+
+    /**
+     * Writes all filled slots. Caller holds the writer lock.
+     *
+     * @return Number of messages written
+     */
+    private static int drain() {
+        int written = 0;
+        boolean usedOut = false, usedErr = false;
+        for (;;) {
+            int slot = (int) (head & mask);
+            if (sequences.getAcquire(slot) != head + 1) {
+                break;
+            }
+            LogLevel level = LogLevel.VALUES[levels[slot]];
+            PrintStream out = level.ordinal() <= LogLevel.WARN.ordinal() ? System.err : System.out;
+            format(slot, level);
+            out.append(line);
+            Throwable error = errors[slot];
+            if (error != null) {
+                error.printStackTrace(out);
+            }
+            usedOut |= out == System.out;
+            usedErr |= out == System.err;
+
+            // Release references and hand the slot back to the producers
+            objects[slot * MAX_OBJECTS] = null;
+            objects[slot * MAX_OBJECTS + 1] = null;
+            errors[slot] = null;
+            sequences.setRelease(slot, head + capacity);
+            head++;
+            written++;
+        }
+
+        long lost = dropped.getAndSet(0);
+        if (lost > 0) {
+            System.err.println("[log] " + lost + " messages dropped (ring buffer full)");
+        }
+        if (usedOut) System.out.flush();
+        if (usedErr) System.err.flush();
+        return written;
+    }
+
+    /**
+     * Formats the message in a slot into the shared line buffer:
+     * "HH:mm:ss.SSS LEVEL [category] message\n".
+     */
+    private static void format(int slot, LogLevel level) {
+        line.setLength(0);
+        long time = times[slot];
+        long local = time + TimeZone.getDefault().getOffset(time);
+        long millisOfDay = Math.floorMod(local, 86_400_000L);
+        appendPadded((int) (millisOfDay / 3_600_000L), 2).append(':');
+        appendPadded((int) (millisOfDay / 60_000L % 60), 2).append(':');
+        appendPadded((int) (millisOfDay / 1000L % 60), 2).append('.');
+        appendPadded((int) (millisOfDay % 1000L), 3).append(' ');
+        line.append(level.name());
+        for (int i = level.name().length(); i < 5; i++) line.append(' ');
+        line.append(" [").append(CATEGORIES[categories[slot]].label).append("] ");
+
+        // Replace each "{}" with the next argument
+        String template = templates[slot];
+        int argKinds = kinds[slot];
+        int nextNumber = slot * MAX_ARGS, nextObject = slot * MAX_OBJECTS;
+        int from = 0;
+        for (int arg = 0; arg < MAX_ARGS; arg++) {
+            int kind = (argKinds >>> (arg * 2)) & 3;
+            if (kind == NONE) break;
+            int at = template.indexOf("{}", from);
+            if (at < 0) break;
+            line.append(template, from, at);
+            switch (kind) {
+                case LONG:   line.append(numbers[nextNumber++]); break;
+                case DOUBLE: line.append(Double.longBitsToDouble(numbers[nextNumber++])); break;
+                default:     line.append(objects[nextObject++]); break;
+            }
+            from = at + 2;
+        }
+        line.append(template, from, template.length()).append('\n');
+    }
+
+    private static StringBuilder appendPadded(int value, int digits) {
+        for (int limit = 10, i = 1; i < digits; i++, limit *= 10) {
+            if (value < limit) line.append('0');
+        }
+        return line.append(value);
+    }
+}
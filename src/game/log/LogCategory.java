@@ -0,0 +1,47 @@
+package game.log;
+
+/**
+ * Engine subsystems that can be logged separately.
+ *
+ * Each category's level comes from -Dgame.log.&lt;name&gt; (e.g.
+ * -Dgame.log.player=debug) and defaults to the global -Dgame.log level
+ * (INFO if not set). It can also be changed at runtime with {@link #setLevel}.
+ */
+public enum LogCategory {
+    GAME("game"),
+    LOOP("loop"),
+    RENDER("render"),
+    MAP("map"),
+    PLAYER("player"),
+    INPUT("input"),
+    ASSETS("assets"),
+    PATH("path"),
+    SAVE("save"),
+    NET("net");
+
+    public final String label;
+    // Most verbose level still logged; read on every log call
+    private volatile LogLevel level;
+
+    LogCategory(String label) {
+        this.label = label;
+        LogLevel global = LogLevel.parse(System.getProperty("game.log"), LogLevel.INFO);
+        this.level = LogLevel.parse(System.getProperty("game.log." + label), global);
+    }
+
+    /**
+     * @param messageLevel Level of a message
+     * @return true if messages of that level are logged in this category
+     */
+    public boolean isEnabled(LogLevel messageLevel) {
+        return messageLevel.ordinal() <= level.ordinal();
+    }
+
+    public LogLevel getLevel() {
+        return level;
+    }
+
+    public void setLevel(LogLevel level) {
+        this.level = level;
+    }
+}
@@ -0,0 +1,30 @@
+package game.log;
+
+/**
+ * Severity of a log message, most severe first.
+ * A category logs every message at or above its configured level.
+ */
+public enum LogLevel {
+    ERROR, WARN, INFO, DEBUG, TRACE;
+
+    // Cached copy of values() (values() allocates a new array each call)
+    static final LogLevel[] VALUES = values();
+
+    /**
+     * Parses a level name, case-insensitive.
+     *
+     * @param name Level name, e.g. "debug"
+     * @param fallback Returned when name is null or unknown
+     * @return The level
+     */
+    public static LogLevel parse(String name, LogLevel fallback) {
+        if (name != null) {
+            for (LogLevel level : VALUES) {
+                if (level.name().equalsIgnoreCase(name.trim())) {
+                    return level;
+                }
+            }
+        }
+        return fallback;
+    }
+}
@@ -0,0 +1,87 @@
+package game.map;
+
+import java.awt.image.BufferedImage;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Size-bounded LRU cache of decoded map chunks.
+ * The render side looks chunks up while loader threads insert them,
+ * so all access is synchronized. Hit, miss and eviction counters are
+ * kept for monitoring.
+ */
+public class ChunkCache {
+
+    private final int capacity;
+    private final LinkedHashMap<Integer, BufferedImage> chunks;
+
+    private long hits, misses, evictions;
+
+    /**
+     * @param capacity Maximum number of chunks kept in memory
+     */
+    public ChunkCache(int capacity) {
+        this.capacity = Math.max(1, capacity);
+        // Access order: iteration starts at the least recently used chunk
+        this.chunks = new LinkedHashMap<Integer, BufferedImage>(this.capacity * 4 / 3 + 1, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, BufferedImage> eldest) {
+                if (size() > ChunkCache.this.capacity) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Looks up a chunk and counts the result as a hit or a miss.
+     *
+     * @param index Chunk index
+     * @return The chunk image, or null if it is not loaded
+     */
+    public synchronized BufferedImage get(int index) {
+        BufferedImage chunk = chunks.get(index);
+        if (chunk != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return chunk;
+    }
+
+    /**
+     * Checks for a chunk without touching the counters or the LRU order.
+     *
+     * @param index Chunk index
+     * @return true if the chunk is cached
+     */
+    public synchronized boolean contains(int index) {
+        return chunks.containsKey(index);
+    }
+
+    /**
+     * Inserts a chunk, evicting the least recently used one if the cache is full.
+     *
+     * @param index Chunk index
+     * @param chunk The decoded chunk
+     */
+    public synchronized void put(int index, BufferedImage chunk) {
+        chunks.put(index, chunk);
+    }
+
+    public int getCapacity() { return capacity; }
+    public synchronized int size() { return chunks.size(); }
+    public synchronized long getHits() { return hits; }
+    public synchronized long getMisses() { return misses; }
+    public synchronized long getEvictions() { return evictions; }
+
+    /**
+     * @return A single line such as "chunks: 24/256, hits: 1200, misses: 3, evictions: 0"
+     */
+    public synchronized String statsLine() {
+        return "chunks: " + chunks.size() + "/" + capacity + ", hits: " + hits
+                + ", misses: " + misses + ", evictions: " + evictions;
+    }
+}
@@ -0,0 +1,103 @@
+package game.map;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * On-disk chunked map layout used for streaming maps.
+ *
+ * Layout (big-endian):
+ * <pre>
+ *   int magic        'GMAP'
+ *   int version      1
+ *   int mapWidth     in pixels
+ *   int mapHeight    in pixels
+ *   int chunkSize    edge length of a chunk in pixels
+ *   int chunkCols
+ *   int chunkRows
+ *   int hasAlpha     1 if pixels carry alpha, 0 if opaque
+ *   chunk data       chunkCols * chunkRows blocks of chunkSize * chunkSize ARGB ints,
+ *                    row-major; edge chunks are padded to the full size
+ * </pre>
+ * Every chunk has the same size on disk, so its offset is computed directly
+ * from its index and no table has to be read at startup.
+ */
+public class ChunkedMapFile implements Closeable {
+
+    public static final int MAGIC = 0x474D4150; // "GMAP"
+    public static final int VERSION = 1;
+    public static final int HEADER_BYTES = 8 * Integer.BYTES;
+
+    public final int mapWidth, mapHeight;
+    public final int chunkSize, chunkCols, chunkRows;
+    public final boolean hasAlpha;
+
+    private final FileChannel channel;
+
+    /**
+     * Opens a chunked map file and reads its header.
+     *
+     * @param path The file to open
+     * @throws IOException If the file cannot be read or is not a chunked map
+     */
+    public ChunkedMapFile(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        while (header.hasRemaining()) {
+            if (channel.read(header, header.position()) < 0) {
+                channel.close();
+                throw new IOException("Truncated map header: " + path);
+            }
+        }
+        header.flip();
+        if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+            channel.close();
+            throw new IOException("Not a chunked map (or unsupported version): " + path);
+        }
+        mapWidth = header.getInt();
+        mapHeight = header.getInt();
+        chunkSize = header.getInt();
+        chunkCols = header.getInt();
+        chunkRows = header.getInt();
+        hasAlpha = header.getInt() != 0;
+    }
+
+    /**
+     * @return Number of bytes one chunk occupies on disk
+     */
+    public int chunkBytes() {
+        return chunkSize * chunkSize * Integer.BYTES;
+    }
+
+    /**
+     * Reads one chunk into the given buffers. Safe to call from several
+     * threads at once since it only uses positional reads.
+     *
+     * @param index Chunk index (row * chunkCols + col)
+     * @param buffer Scratch byte buffer of at least chunkBytes() capacity
+     * @param pixels Destination for chunkSize * chunkSize ARGB values
+     * @throws IOException If the read fails
+     */
+    public void readChunk(int index, ByteBuffer buffer, int[] pixels) throws IOException {
+        long position = HEADER_BYTES + (long) index * chunkBytes();
+        buffer.clear().limit(chunkBytes());
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Truncated chunk " + index);
+            }
+        }
+        buffer.flip();
+        IntBuffer ints = buffer.asIntBuffer();
+        ints.get(pixels, 0, chunkSize * chunkSize);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
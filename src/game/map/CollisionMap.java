@@ -0,0 +1,313 @@
+package game.map;
+
+import game.log.Log;
+import game.log.LogCategory;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * CollisionMap stores one "blocked" bit per map tile, packed 64 tiles per long.
+ * Even a 16k x 16k pixel map with 48 px tiles needs only about 14 KB.
+ *
+ * Readers never lock: changes at runtime ({@link #setBlocked}) copy the bit
+ * array, modify the copy and publish it through a volatile field, so any
+ * number of entities and path searches can read from any thread and always
+ * see a complete state. Every change bumps {@link #version()} and is
+ * reported to the registered listeners.
+ * Tiles outside the map count as blocked, which keeps entities on the map.
+ *
+ * Sources, tried in order by {@link #load}:
+ * 1. /game/res/map_collision.png - mask image; dark opaque pixels are blocked.
+ *    Either one pixel per tile, or map-sized (the tile center is sampled).
+ * 2. /game/res/map_collision.txt - one line per tile row, '#' = blocked, anything else walkable.
+ * 3. Neither found: every tile inside the map is walkable.
+ */
+public class CollisionMap {
+
+    public final int tileSize;
+    public final int cols, rows;
+    // Replaced as a whole on every change (copy-on-write)
+    private volatile long[] bits;
+    // Number of changes made with setBlocked
+    private volatile long version;
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Notified after tiles changed, on the thread that changed them.
+     */
+    public interface Listener {
+        /**
+         * @param minCol First changed column
+         * @param minRow First changed row
+         * @param maxCol Last changed column (inclusive)
+         * @param maxRow Last changed row (inclusive)
+         */
+        void tilesChanged(int minCol, int minRow, int maxCol, int maxRow);
+    }
+
+    /**
+     * Decides whether a tile is blocked, for {@link #build}.
+     */
+    public interface TileTest {
+        boolean isBlocked(int col, int row);
+    }
+
+    /**
+     * Creates a layer with every tile walkable.
+     *
+     * @param tileSize Tile size in world pixels
+     * @param cols Number of tile columns
+     * @param rows Number of tile rows
+     */
+    public CollisionMap(int tileSize, int cols, int rows) {
+        this.tileSize = tileSize;
+        this.cols = cols;
+        this.rows = rows;
+        this.bits = new long[(cols * rows + 63) >>> 6];
+    }
+
+    /**
+     * Checks whether a tile can be walked on. Tiles outside the map are blocked.
+     *
+     * @param col Tile column
+     * @param row Tile row
+     * @return true if the tile is blocked
+     */
+    public boolean isBlocked(int col, int row) {
+        if (col < 0 || row < 0 || col >= cols || row >= rows) {
+            return true;
+        }
+        int index = row * cols + col;
+        return (bits[index >>> 6] & (1L << index)) != 0;
+    }
+
+    /**
+     * Checks the tile containing a world position.
+     *
+     * @param worldX X position in world space
+     * @param worldY Y position in world space
+     * @return true if the tile is blocked
+     */
+    public boolean isBlockedAt(int worldX, int worldY) {
+        return isBlocked(Math.floorDiv(worldX, tileSize), Math.floorDiv(worldY, tileSize));
+    }
+
+    /**
+     * Marks a tile as blocked. Only used while building the layer.
+     */
+    void block(int col, int row) {
+        int index = row * cols + col;
+        bits[index >>> 6] |= 1L << index;
+    }
+
+    /**
+     * Blocks or frees one tile at runtime (a door, a wall being built).
+     *
+     * @param col Tile column
+     * @param row Tile row
+     * @param blocked true to block the tile
+     */
+    public void setBlocked(int col, int row, boolean blocked) {
+        setBlocked(col, row, col, row, blocked);
+    }
+
+    /**
+     * Blocks or frees a rectangle of tiles at runtime. Copies the bit array
+     * once, so changes should be batched into rectangles where possible.
+     *
+     * @param minCol First column
+     * @param minRow First row
+     * @param maxCol Last column (inclusive)
+     * @param maxRow Last row (inclusive)
+     * @param blocked true to block the tiles
+     */
+    public void setBlocked(int minCol, int minRow, int maxCol, int maxRow, boolean blocked) {
+        minCol = Math.max(0, minCol);
+        minRow = Math.max(0, minRow);
+        maxCol = Math.min(cols - 1, maxCol);
+        maxRow = Math.min(rows - 1, maxRow);
+        if (minCol > maxCol || minRow > maxRow) {
+            return;
+        }
+        synchronized (this) {
+            long[] copy = Arrays.copyOf(bits, bits.length);
+            for (int row = minRow; row <= maxRow; row++) {
+                for (int col = minCol; col <= maxCol; col++) {
+                    int index = row * cols + col;
+                    if (blocked) {
+                        copy[index >>> 6] |= 1L << index;
+                    } else {
+                        copy[index >>> 6] &= ~(1L << index);
+                    }
+                }
+            }
+            bits = copy;
+            version++;
+        }
+        for (Listener listener : listeners) {
+            listener.tilesChanged(minCol, minRow, maxCol, maxRow);
+        }
+    }
+
+    /**
+     * @return The current bits, 64 tiles per long (bit row * cols + col).
+     *         Never modified: every change replaces the array, so it can be
+     *         kept as a snapshot of the layer without copying
+     */
+    public long[] bits() {
+        return bits;
+    }
+
+    /**
+     * Replaces every tile at once (restoring a saved layer), reported to the
+     * listeners as a change of the whole map.
+     *
+     * @param saved Bits as returned by {@link #bits()} for a layer of the same size
+     */
+    public void setBits(long[] saved) {
+        if (saved.length != bits.length) {
+            throw new IllegalArgumentException("Expected " + bits.length + " longs of tiles, got " + saved.length);
+        }
+        synchronized (this) {
+            bits = saved.clone();
+            version++;
+        }
+        for (Listener listener : listeners) {
+            listener.tilesChanged(0, 0, cols - 1, rows - 1);
+        }
+    }
+
+    /**
+     * @return Number of runtime changes so far; anything derived from the
+     *         layer (cached paths) is stale once this moves on
+     */
+    public long version() {
+        return version;
+    }
+
+    /**
+     * @param listener Called after every runtime change
+     */
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * @param listener A listener added before
+     */
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * @return Number of blocked tiles inside the map
+     */
+    public int blockedCount() {
+        int count = 0;
+        for (long word : bits) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    /**
+     * Builds a layer from a function, e.g. a generated map.
+     *
+     * @param tileSize Tile size in world pixels
+     * @param cols Number of tile columns
+     * @param rows Number of tile rows
+     * @param test Returns true for blocked tiles
+     * @return The collision layer
+     */
+    public static CollisionMap build(int tileSize, int cols, int rows, TileTest test) {
+        CollisionMap map = new CollisionMap(tileSize, cols, rows);
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < cols; col++) {
+                if (test.isBlocked(col, row)) {
+                    map.block(col, row);
+                }
+            }
+        }
+        return map;
+    }
+
+    /**
+     * Builds the collision layer for a map from the first source found.
+     *
+     * @param tileSize Tile size in world pixels
+     * @param mapWidth Map width in pixels
+     * @param mapHeight Map height in pixels
+     * @return The collision layer (all walkable if no source exists)
+     */
+    public static CollisionMap load(int tileSize, int mapWidth, int mapHeight) {
+        int cols = Math.max(1, mapWidth / tileSize);
+        int rows = Math.max(1, mapHeight / tileSize);
+        CollisionMap map = new CollisionMap(tileSize, cols, rows);
+
+        try {
+            URL mask = CollisionMap.class.getResource("/game/res/map_collision.png");
+            URL text = CollisionMap.class.getResource("/game/res/map_collision.txt");
+            if (mask != null) {
+                map.readMask(ImageIO.read(mask));
+            } else if (text != null) {
+                try (InputStream in = text.openStream()) {
+                    map.readText(in);
+                }
+            } else {
+                Log.info(LogCategory.MAP, "No collision data found, only the map edges block movement");
+                return map;
+            }
+            Log.info(LogCategory.MAP, "Collision layer loaded: {}x{} tiles, {} blocked",
+                    cols, rows, map.blockedCount());
+        } catch (IOException e) {
+            Log.error(LogCategory.MAP, "Error loading collision layer: {}", e.getMessage());
+        }
+        return map;
+    }
+
+    /**
+     * Fills the layer from a mask image (dark, opaque = blocked).
+     */
+    void readMask(BufferedImage mask) {
+        boolean perTile = mask.getWidth() == cols && mask.getHeight() == rows;
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < cols; col++) {
+                // Per-tile masks map 1:1, map-sized masks are sampled at the tile center
+                int px = perTile ? col : Math.min(mask.getWidth() - 1, col * tileSize + tileSize / 2);
+                int py = perTile ? row : Math.min(mask.getHeight() - 1, row * tileSize + tileSize / 2);
+                int argb = mask.getRGB(px, py);
+                int alpha = argb >>> 24;
+                int luminance = (((argb >> 16) & 0xFF) + ((argb >> 8) & 0xFF) + (argb & 0xFF)) / 3;
+                if (alpha > 127 && luminance < 128) {
+                    block(col, row);
+                }
+            }
+        }
+    }
+
+    /**
+     * Fills the layer from text lines ('#' = blocked).
+     */
+    void readText(InputStream in) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        String line;
+        int row = 0;
+        while ((line = reader.readLine()) != null && row < rows) {
+            for (int col = 0; col < Math.min(cols, line.length()); col++) {
+                if (line.charAt(col) == '#') {
+                    block(col, row);
+                }
+            }
+            row++;
+        }
+    }
+}
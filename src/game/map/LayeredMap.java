@@ -0,0 +1,565 @@
+package game.map;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import javax.imageio.ImageIO;
+
+import game.ImageUtils;
+import game.assets.AssetLoader;
+
+/**
+ * LayeredMap draws tile layers built from tileset indices on top of (or
+ * instead of) the map image.
+ *
+ * Layers are never drawn tile by tile per frame. All BELOW layers are
+ * composited once, together with the map image, into chunk images of the
+ * same size and grid as MapManager's, so the map costs the same draw calls
+ * whatever the number of layers. OVERHEAD layers are baked the same way
+ * into one set of translucent chunks drawn after the entities, and each
+ * PARALLAX layer into its own set, offset by its scroll factor. Chunks
+ * without any tile are not kept and cost nothing to draw.
+ *
+ * Changing tiles ({@link #setTiles}) re-bakes only the chunks they touch,
+ * redrawing just the changed rectangle over a copy of the old chunk, and
+ * publishes the new images by replacing the chunk array (copy-on-write),
+ * so a frame drawn at the same time sees either the old or the new chunk.
+ * The map image chunks are kept to bake from, which doubles the memory
+ * the map image takes when there are BELOW layers.
+ *
+ * Layer file format (GameConfig.MAP_LAYERS, else the first of LAYERS_FILE found):
+ * <pre>
+ *   # comment
+ *   tileset tileset.png 16 3      image (in game/res, res, Assets or next to the file), tile size,
+ *                                 optionally world pixels per tileset pixel (default: the game scale)
+ *   size 35 20                    columns and rows of every layer
+ *   layer paths below             name, then below, overhead or parallax &lt;factor&gt;
+ *   . . 145 146 . ...             one line per row: tile indices, '.' = empty
+ *   layer roofs overhead
+ *   ...
+ * </pre>
+ * Rows not listed stay empty. Tiles are numbered row by row in the tileset.
+ */
+public final class LayeredMap {
+
+    // Where the layer file is looked up when GameConfig.MAP_LAYERS is not set
+    public static final String[] LAYERS_FILE = {"/game/res/map_layers.txt", "/res/map_layers.txt", "Assets/map_layers.txt"};
+
+    public final Tileset tileset;
+    public final int cols, rows;
+    // Edge length of a tile in world pixels (tileset tile size times the scale)
+    public final int tilePixels;
+    private final List<TileLayer> layers;
+    private final int chunkSize;
+
+    // Baked chunks: under the entities (null if no BELOW layers), over them, one set per parallax layer
+    private ChunkSet below, overhead;
+    private ChunkSet[] parallax = new ChunkSet[0];
+    // The map image chunks, or null when the map is made of tile layers only
+    private BufferedImage[] base;
+
+    /**
+     * @param tileset Tiles the layers refer to
+     * @param scale World pixels per tileset pixel (usually the game scale)
+     * @param cols Columns of every layer
+     * @param rows Rows of every layer
+     * @param layers Layers from bottom to top
+     * @param chunkSize Edge length of a baked chunk in world pixels
+     */
+    public LayeredMap(Tileset tileset, int scale, int cols, int rows, List<TileLayer> layers, int chunkSize) {
+        for (TileLayer layer : layers) {
+            if (layer.cols != cols || layer.rows != rows) {
+                throw new IllegalArgumentException("Layer " + layer.name + " is " + layer.cols + "x" + layer.rows
+                        + " tiles, the map " + cols + "x" + rows);
+            }
+        }
+        this.tileset = tileset;
+        this.cols = cols;
+        this.rows = rows;
+        this.tilePixels = tileset.tileSize * scale;
+        this.layers = new ArrayList<>(layers);
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * @return Width of the layers in world pixels
+     */
+    public int getWidth() {
+        return cols * tilePixels;
+    }
+
+    /**
+     * @return Height of the layers in world pixels
+     */
+    public int getHeight() {
+        return rows * tilePixels;
+    }
+
+    /**
+     * @return The layers from bottom to top
+     */
+    public List<TileLayer> getLayers() {
+        return layers;
+    }
+
+    /**
+     * @param name Layer name
+     * @return The layer
+     * @throws IllegalArgumentException If the map has no layer of that name
+     */
+    public TileLayer layer(String name) {
+        for (TileLayer layer : layers) {
+            if (layer.name.equals(name)) {
+                return layer;
+            }
+        }
+        throw new IllegalArgumentException("Unknown map layer: " + name);
+    }
+
+    /**
+     * Bakes every layer into chunks.
+     *
+     * @param mapChunks Chunks of the map image (row-major, chunkSize grid), or null
+     * @param width Map width in world pixels (the grid the chunks cover)
+     * @param height Map height in world pixels
+     * @return The chunks to draw under the entities: the map image chunks
+     *         with the BELOW layers baked in (the map image chunks themselves
+     *         if there are none)
+     */
+    public BufferedImage[] bake(BufferedImage[] mapChunks, int width, int height) {
+        base = mapChunks;
+        List<TileLayer> belowLayers = new ArrayList<>(), overheadLayers = new ArrayList<>();
+        List<ChunkSet> parallaxSets = new ArrayList<>();
+        for (TileLayer layer : layers) {
+            switch (layer.kind) {
+                case BELOW:    belowLayers.add(layer); break;
+                case OVERHEAD: overheadLayers.add(layer); break;
+                case PARALLAX: parallaxSets.add(new ChunkSet(new TileLayer[] {layer}, null, layer.parallax, getWidth(), getHeight())); break;
+            }
+        }
+        below = !belowLayers.isEmpty() || mapChunks == null
+                ? new ChunkSet(belowLayers.toArray(new TileLayer[0]), mapChunks, 1.0, width, height) : null;
+        overhead = !overheadLayers.isEmpty()
+                ? new ChunkSet(overheadLayers.toArray(new TileLayer[0]), null, 1.0, getWidth(), getHeight()) : null;
+        parallax = parallaxSets.toArray(new ChunkSet[0]);
+        return below != null ? below.images : base;
+    }
+
+    /**
+     * @return The current chunks to draw under the entities (replaced after every tile change)
+     */
+    public BufferedImage[] belowChunks() {
+        return below != null ? below.images : base;
+    }
+
+    /**
+     * Sets a rectangle of tiles and re-bakes the chunks it touches. Call on
+     * the game thread; batch changes into rectangles where possible.
+     *
+     * @param layer Layer to change
+     * @param minCol First column
+     * @param minRow First row
+     * @param maxCol Last column (inclusive)
+     * @param maxRow Last row (inclusive)
+     * @param tile Tile index, -1 to clear
+     * @return true if any tile changed
+     */
+    public boolean setTiles(TileLayer layer, int minCol, int minRow, int maxCol, int maxRow, int tile) {
+        if (tile < -1 || tile >= tileset.count) {
+            throw new IllegalArgumentException("Tile " + tile + " is not in the tileset (" + tileset.count + " tiles)");
+        }
+        minCol = Math.max(0, minCol);
+        minRow = Math.max(0, minRow);
+        maxCol = Math.min(cols - 1, maxCol);
+        maxRow = Math.min(rows - 1, maxRow);
+        boolean changed = false;
+        for (int row = minRow; row <= maxRow; row++) {
+            for (int col = minCol; col <= maxCol; col++) {
+                if (layer.get(col, row) != tile) {
+                    layer.set(col, row, tile);
+                    changed = true;
+                }
+            }
+        }
+        ChunkSet set = chunksOf(layer);
+        if (changed && set != null) {
+            set.rebake(minCol * tilePixels, minRow * tilePixels,
+                    (maxCol + 1) * tilePixels - 1, (maxRow + 1) * tilePixels - 1);
+        }
+        return changed;
+    }
+
+    /**
+     * @return The chunk set a layer is baked into (null before baking)
+     */
+    private ChunkSet chunksOf(TileLayer layer) {
+        switch (layer.kind) {
+            case BELOW:    return below;
+            case OVERHEAD: return overhead;
+            default:
+                for (ChunkSet set : parallax) {
+                    if (set.layers[0] == layer) {
+                        return set;
+                    }
+                }
+                return null;
+        }
+    }
+
+    /**
+     * Draws the overhead and parallax chunks overlapping the view, after the entities.
+     *
+     * @param g2 The Graphics2D context to draw on
+     * @param cameraX Camera x in world space
+     * @param cameraY Camera y in world space
+     * @param viewWidth Viewport width in pixels
+     * @param viewHeight Viewport height in pixels
+     * @return Number of chunks drawn
+     */
+    public int drawAbove(Graphics2D g2, int cameraX, int cameraY, int viewWidth, int viewHeight) {
+        int drawn = 0;
+        if (overhead != null) {
+            drawn += overhead.draw(g2, cameraX, cameraY, viewWidth, viewHeight);
+        }
+        for (ChunkSet set : parallax) {
+            drawn += set.draw(g2, cameraX, cameraY, viewWidth, viewHeight);
+        }
+        return drawn;
+    }
+
+    /**
+     * @return Number of chunks holding any tile, under and over the entities
+     */
+    public int bakedChunks() {
+        int count = 0;
+        for (ChunkSet set : new ChunkSet[] {below, overhead}) {
+            count += set != null ? set.nonEmpty() : 0;
+        }
+        for (ChunkSet set : parallax) {
+            count += set.nonEmpty();
+        }
+        return count;
+    }
+
+    /**
+     * Chunks one group of layers is baked into.
+     */
+    private final class ChunkSet {
+        final TileLayer[] layers;
+        // Map image chunks drawn first (below the entities only), else null
+        final BufferedImage[] base;
+        // Scroll speed relative to the camera
+        final double factor;
+        final int width, height;
+        final int chunkCols, chunkRows;
+        // Replaced as a whole when chunks are re-baked; null entries are empty chunks
+        volatile BufferedImage[] images;
+
+        ChunkSet(TileLayer[] layers, BufferedImage[] base, double factor, int width, int height) {
+            this.layers = layers;
+            this.base = base;
+            this.factor = factor;
+            this.width = width;
+            this.height = height;
+            this.chunkCols = (width + chunkSize - 1) / chunkSize;
+            this.chunkRows = (height + chunkSize - 1) / chunkSize;
+            BufferedImage[] baked = new BufferedImage[chunkCols * chunkRows];
+            for (int i = 0; i < baked.length; i++) {
+                baked[i] = bake(i);
+            }
+            images = baked;
+        }
+
+        /**
+         * Composites the base chunk and every layer into a new chunk image.
+         *
+         * @return The chunk, or null if it has no base and no tile
+         */
+        BufferedImage bake(int index) {
+            return bake(index, null, 0, 0, chunkSize, chunkSize);
+        }
+
+        /**
+         * Bakes a chunk into a new image. With a previous image only a
+         * rectangle is redrawn on top of a copy of it, so the cost of a tile
+         * change does not depend on the size of the chunk.
+         *
+         * @param previous The chunk before the change, or null to bake all of it
+         * @param clipX Left edge of the rectangle to redraw, in chunk pixels
+         * @param clipY Top edge of the rectangle to redraw, in chunk pixels
+         * @param clipWidth Width of the rectangle
+         * @param clipHeight Height of the rectangle
+         * @return The chunk, or null if it has no base and no tile
+         */
+        BufferedImage bake(int index, BufferedImage previous, int clipX, int clipY, int clipWidth, int clipHeight) {
+            int x0 = (index % chunkCols) * chunkSize;
+            int y0 = (index / chunkCols) * chunkSize;
+            int w = Math.min(chunkSize, width - x0);
+            int h = Math.min(chunkSize, height - y0);
+            BufferedImage baseChunk = base != null ? base[index] : null;
+            if (baseChunk == null && isEmpty(x0 / tilePixels, y0 / tilePixels,
+                    (x0 + w - 1) / tilePixels, (y0 + h - 1) / tilePixels)) {
+                return null;
+            }
+            // Tiles overlapping the redrawn rectangle (tiles need not line up with chunks)
+            int firstCol = (x0 + clipX) / tilePixels, lastCol = Math.min(cols - 1, (x0 + clipX + clipWidth - 1) / tilePixels);
+            int firstRow = (y0 + clipY) / tilePixels, lastRow = Math.min(rows - 1, (y0 + clipY + clipHeight - 1) / tilePixels);
+
+            BufferedImage chunk = ImageUtils.createCompatibleImage(w, h,
+                    baseChunk != null ? baseChunk.getTransparency() : Transparency.TRANSLUCENT);
+            Graphics2D g = chunk.createGraphics();
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+            if (previous != null) {
+                g.drawImage(previous, 0, 0, null);
+                // Clear the rectangle: a removed tile must not leave its pixels behind
+                g.setClip(clipX, clipY, clipWidth, clipHeight);
+                g.setComposite(AlphaComposite.Clear);
+                g.fillRect(clipX, clipY, clipWidth, clipHeight);
+                g.setComposite(AlphaComposite.SrcOver);
+            }
+            if (baseChunk != null) {
+                g.drawImage(baseChunk, 0, 0, null);
+            }
+            for (TileLayer layer : layers) {
+                for (int row = firstRow; row <= lastRow; row++) {
+                    for (int col = firstCol; col <= lastCol; col++) {
+                        int tile = layer.get(col, row);
+                        if (tile >= 0) {
+                            tileset.draw(g, tile, col * tilePixels - x0, row * tilePixels - y0, tilePixels);
+                        }
+                    }
+                }
+            }
+            g.dispose();
+            return chunk;
+        }
+
+        private boolean isEmpty(int firstCol, int firstRow, int lastCol, int lastRow) {
+            for (TileLayer layer : layers) {
+                for (int row = firstRow; row <= lastRow; row++) {
+                    for (int col = firstCol; col <= lastCol; col++) {
+                        if (layer.get(col, row) >= 0) {
+                            return false;
+                        }
+                    }
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Re-bakes the part of the chunks overlapping a rectangle and publishes them.
+         *
+         * @param minX Left edge in layer pixels
+         * @param minY Top edge in layer pixels
+         * @param maxX Right edge in layer pixels (inclusive)
+         * @param maxY Bottom edge in layer pixels (inclusive)
+         */
+        void rebake(int minX, int minY, int maxX, int maxY) {
+            BufferedImage[] copy = images.clone();
+            for (int row = minY / chunkSize; row <= Math.min(chunkRows - 1, maxY / chunkSize); row++) {
+                for (int col = minX / chunkSize; col <= Math.min(chunkCols - 1, maxX / chunkSize); col++) {
+                    int index = row * chunkCols + col;
+                    int x0 = col * chunkSize, y0 = row * chunkSize;
+                    int clipX = Math.max(0, minX - x0), clipY = Math.max(0, minY - y0);
+                    int clipWidth = Math.min(chunkSize, maxX - x0 + 1) - clipX;
+                    int clipHeight = Math.min(chunkSize, maxY - y0 + 1) - clipY;
+                    copy[index] = bake(index, copy[index], clipX, clipY, clipWidth, clipHeight);
+                }
+            }
+            images = copy;
+        }
+
+        /**
+         * Draws the non-empty chunks overlapping the view.
+         *
+         * @return Number of chunks drawn
+         */
+        int draw(Graphics2D g2, int cameraX, int cameraY, int viewWidth, int viewHeight) {
+            BufferedImage[] chunks = images;
+            int originX = (int) Math.floor(cameraX * factor);
+            int originY = (int) Math.floor(cameraY * factor);
+            int firstCol = Math.max(0, Math.floorDiv(originX, chunkSize));
+            int firstRow = Math.max(0, Math.floorDiv(originY, chunkSize));
+            int lastCol = Math.min(chunkCols - 1, Math.floorDiv(originX + viewWidth - 1, chunkSize));
+            int lastRow = Math.min(chunkRows - 1, Math.floorDiv(originY + viewHeight - 1, chunkSize));
+            int drawn = 0;
+            for (int row = firstRow; row <= lastRow; row++) {
+                for (int col = firstCol; col <= lastCol; col++) {
+                    BufferedImage chunk = chunks[row * chunkCols + col];
+                    if (chunk != null) {
+                        g2.drawImage(chunk, col * chunkSize - originX, row * chunkSize - originY, null);
+                        drawn++;
+                    }
+                }
+            }
+            return drawn;
+        }
+
+        int nonEmpty() {
+            int count = 0;
+            for (BufferedImage chunk : images) {
+                count += chunk != null ? 1 : 0;
+            }
+            return count;
+        }
+    }
+
+    /**
+     * Loads the layer file.
+     *
+     * @param path Layer file on the file system, or null to look up LAYERS_FILE
+     * @param scale Game scale (world pixels per tileset pixel)
+     * @param chunkSize Edge length of a baked chunk in world pixels
+     * @return The map, not baked yet, or null if path is null and no layer file exists
+     * @throws IOException If the file or its tileset cannot be read or is invalid
+     */
+    public static LayeredMap load(String path, int scale, int chunkSize) throws IOException {
+        String[] candidates = path != null ? new String[] {path} : LAYERS_FILE;
+        for (String candidate : candidates) {
+            try (InputStream in = open(candidate, path != null)) {
+                if (in != null) {
+                    BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+                    Path directory = path != null ? Paths.get(path).toAbsolutePath().getParent() : null;
+                    return parse(reader, candidate, directory, scale, chunkSize);
+                }
+            }
+        }
+        if (path != null) {
+            throw new IOException("Map layers not found: " + path);
+        }
+        return null;
+    }
+
+    private static InputStream open(String name, boolean fileOnly) throws IOException {
+        if (!fileOnly && name.startsWith("/")) {
+            return LayeredMap.class.getResourceAsStream(name);
+        }
+        Path file = Paths.get(name);
+        return Files.isRegularFile(file) ? Files.newInputStream(file) : null;
+    }
+
+    /**
+     * Loads a tileset image from the asset locations, then from the
+     * directory of the layer file.
+     */
+    private static BufferedImage readTileset(String name, Path directory) throws IOException {
+        String[] names = new String[Tileset.LOCATIONS.length];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = Tileset.LOCATIONS[i] + name;
+        }
+        try {
+            return AssetLoader.readImage(names);
+        } catch (IOException e) {
+            Path file = directory != null ? directory.resolve(name) : null;
+            if (file == null || !Files.isRegularFile(file)) {
+                throw e;
+            }
+            BufferedImage image = ImageIO.read(file.toFile());
+            if (image == null) {
+                throw new IOException(file + ": not an image");
+            }
+            return image;
+        }
+    }
+
+    /**
+     * Parses a layer file (see the class comment) and loads its tileset.
+     *
+     * @param directory Directory of the layer file, or null if it is a resource
+     */
+    static LayeredMap parse(BufferedReader reader, String source, Path directory, int scale, int chunkSize) throws IOException {
+        Tileset tileset = null;
+        // World pixels per tileset pixel, the game scale unless the file sets one (art drawn at another scale)
+        int tileScale = scale;
+        int cols = 0, rows = 0;
+        List<TileLayer> layers = new ArrayList<>();
+        TileLayer layer = null;
+        int row = 0;
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] parts = line.split("\\s+");
+            try {
+                switch (parts[0]) {
+                    case "tileset":
+                        if (parts.length != 3 && parts.length != 4) {
+                            throw new IllegalArgumentException("expected 'tileset <image> <tile size> [scale]'");
+                        }
+                        tileset = new Tileset(readTileset(parts[1], directory), Integer.parseInt(parts[2]));
+                        if (parts.length == 4) {
+                            tileScale = Integer.parseInt(parts[3]);
+                            if (tileScale < 1) {
+                                throw new IllegalArgumentException("the scale must be at least 1");
+                            }
+                        }
+                        break;
+                    case "size":
+                        if (parts.length != 3) {
+                            throw new IllegalArgumentException("expected 'size <columns> <rows>'");
+                        }
+                        cols = Integer.parseInt(parts[1]);
+                        rows = Integer.parseInt(parts[2]);
+                        if (cols < 1 || rows < 1) {
+                            throw new IllegalArgumentException("the map needs at least one tile");
+                        }
+                        break;
+                    case "layer":
+                        if (tileset == null || cols == 0) {
+                            throw new IllegalArgumentException("'tileset' and 'size' must come before the layers");
+                        }
+                        if (parts.length < 3) {
+                            throw new IllegalArgumentException("expected 'layer <name> below|overhead|parallax <factor>'");
+                        }
+                        TileLayer.Kind kind = TileLayer.Kind.parse(parts[2]);
+                        double factor = kind == TileLayer.Kind.PARALLAX && parts.length > 3 ? Double.parseDouble(parts[3]) : 1.0;
+                        layer = new TileLayer(parts[1], kind, factor, cols, rows);
+                        layers.add(layer);
+                        row = 0;
+                        break;
+                    default:
+                        if (layer == null) {
+                            throw new IllegalArgumentException("tile row outside of a layer");
+                        }
+                        if (row >= rows) {
+                            throw new IllegalArgumentException("layer " + layer.name + " has more than " + rows + " rows");
+                        }
+                        if (parts.length != cols) {
+                            throw new IllegalArgumentException("expected " + cols + " tiles, found " + parts.length);
+                        }
+                        for (int col = 0; col < cols; col++) {
+                            int tile = parts[col].equals(".") ? -1 : Integer.parseInt(parts[col]);
+                            if (tile < -1 || tile >= tileset.count) {
+                                throw new IllegalArgumentException("tile " + tile + " is not in the tileset (" + tileset.count + " tiles)");
+                            }
+                            layer.set(col, row, tile);
+                        }
+                        row++;
+                }
+            } catch (IllegalArgumentException e) {
+                throw new IOException(source + ":" + lineNumber + ": " + e.getMessage(), e);
+            }
+        }
+        if (tileset == null || cols == 0) {
+            throw new IOException(source + ": 'tileset' and 'size' are required");
+        }
+        return new LayeredMap(tileset, tileScale, cols, rows, layers, chunkSize);
+    }
+}
@@ -0,0 +1,175 @@
+package game.map;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * Offline tool that converts a map image into the chunked layout read by
+ * {@link ChunkedMapFile}.
+ *
+ * The source is decoded one band of chunk rows at a time, so maps far
+ * larger than the heap can be converted. PNG files are decoded in a single
+ * pass from top to bottom ({@link PngRowReader}); other formats are read
+ * band by band through ImageIO, which for most of them decodes the image
+ * from the top again for every band.
+ *
+ * Usage: java game.map.MapChunker &lt;map.png&gt; &lt;map.chunks&gt; [chunkSize]
+ */
+public class MapChunker {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: java game.map.MapChunker <map.png> <map.chunks> [chunkSize]");
+            System.exit(1);
+        }
+        int chunkSize = args.length > 2 ? Integer.parseInt(args[2]) : 256;
+
+        long start = System.nanoTime();
+        convert(new File(args[0]), Paths.get(args[1]), chunkSize);
+        System.out.printf("Converted %s in %.1f ms%n", args[0], (System.nanoTime() - start) / 1e6);
+    }
+
+    /**
+     * Converts an image file to a chunked map file.
+     *
+     * @param source The source image (any format ImageIO can read)
+     * @param target The chunked map file to write
+     * @param chunkSize Edge length of a chunk in pixels
+     * @throws IOException If reading or writing fails
+     */
+    public static void convert(File source, Path target, int chunkSize) throws IOException {
+        try (PngRowReader png = PngRowReader.open(source)) {
+            if (png != null) {
+                write(png, target, chunkSize);
+                return;
+            }
+        }
+        try (ImageInputStream in = ImageIO.createImageInputStream(source)) {
+            if (in == null) {
+                throw new IOException("Cannot open " + source);
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) {
+                throw new IOException("No image reader for " + source);
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, false, true);
+                write(reader, target, chunkSize);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Writes the chunks of a PNG, decoding each band of rows once as the
+     * file is read.
+     */
+    private static void write(PngRowReader png, Path target, int chunkSize) throws IOException {
+        int width = png.width, height = png.height;
+        int cols = (width + chunkSize - 1) / chunkSize;
+        int rows = (height + chunkSize - 1) / chunkSize;
+        try (FileChannel out = open(target, width, height, chunkSize, cols, rows, png.hasAlpha)) {
+            int[] band = new int[width * Math.min(chunkSize, height)];
+            int[] pixels = new int[chunkSize * chunkSize];
+            ByteBuffer chunk = ByteBuffer.allocateDirect(pixels.length * Integer.BYTES);
+
+            for (int row = 0; row < rows; row++) {
+                int bandHeight = Math.min(chunkSize, height - row * chunkSize);
+                for (int y = 0; y < bandHeight; y++) {
+                    png.readRow(band, y * width);
+                }
+                for (int col = 0; col < cols; col++) {
+                    int x = col * chunkSize;
+                    int w = Math.min(chunkSize, width - x);
+                    // Padding pixels stay transparent black
+                    Arrays.fill(pixels, 0);
+                    for (int y = 0; y < bandHeight; y++) {
+                        System.arraycopy(band, y * width + x, pixels, y * chunkSize, w);
+                    }
+                    chunk.clear();
+                    chunk.asIntBuffer().put(pixels);
+                    writeFully(out, chunk);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the chunks of any image ImageIO can read, one band at a time.
+     */
+    private static void write(ImageReader reader, Path target, int chunkSize) throws IOException {
+        int width = reader.getWidth(0);
+        int height = reader.getHeight(0);
+        int cols = (width + chunkSize - 1) / chunkSize;
+        int rows = (height + chunkSize - 1) / chunkSize;
+        boolean hasAlpha = reader.getRawImageType(0) == null
+                || reader.getRawImageType(0).getColorModel().hasAlpha();
+
+        try (FileChannel out = open(target, width, height, chunkSize, cols, rows, hasAlpha)) {
+            int[] pixels = new int[chunkSize * chunkSize];
+            ByteBuffer chunk = ByteBuffer.allocateDirect(pixels.length * Integer.BYTES);
+            ImageReadParam param = reader.getDefaultReadParam();
+
+            for (int row = 0; row < rows; row++) {
+                // Decode one horizontal band of chunks
+                int bandY = row * chunkSize;
+                int bandHeight = Math.min(chunkSize, height - bandY);
+                param.setSourceRegion(new Rectangle(0, bandY, width, bandHeight));
+                BufferedImage band = reader.read(0, param);
+
+                for (int col = 0; col < cols; col++) {
+                    int x = col * chunkSize;
+                    int w = Math.min(chunkSize, width - x);
+                    // Padding pixels stay transparent black
+                    Arrays.fill(pixels, 0);
+                    band.getRGB(x, 0, w, bandHeight, pixels, 0, chunkSize);
+
+                    chunk.clear();
+                    chunk.asIntBuffer().put(pixels);
+                    writeFully(out, chunk);
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates the chunked map file and writes its header.
+     */
+    private static FileChannel open(Path target, int width, int height, int chunkSize,
+                                    int cols, int rows, boolean hasAlpha) throws IOException {
+        FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(ChunkedMapFile.HEADER_BYTES);
+            header.putInt(ChunkedMapFile.MAGIC).putInt(ChunkedMapFile.VERSION)
+                    .putInt(width).putInt(height).putInt(chunkSize)
+                    .putInt(cols).putInt(rows).putInt(hasAlpha ? 1 : 0).flip();
+            writeFully(out, header);
+            return out;
+        } catch (IOException e) {
+            out.close();
+            throw e;
+        }
+    }
+
+    private static void writeFully(FileChannel out, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+}
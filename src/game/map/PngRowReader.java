@@ -0,0 +1,400 @@
+package game.map;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Decodes a PNG file one row of pixels at a time, from top to bottom, in a
+ * single pass over the file.
+ *
+ * ImageIO can only read a region of a PNG by decoding everything above it
+ * again, which makes converting a tall map band by band quadratic. This
+ * reader keeps only two rows in memory, whatever the size of the image.
+ * Non-interlaced images of every color type are supported; 16-bit samples
+ * are reduced to 8 bits and gamma or color profiles are ignored. Gray
+ * levels are converted like ImageIO and Java2D do (as linear gray), so a
+ * converted map looks the same as the decoded one.
+ */
+final class PngRowReader implements Closeable {
+
+    private static final long SIGNATURE = 0x89504E470D0A1A0AL;
+    private static final int IHDR = 0x49484452, PLTE = 0x504C5445, TRNS = 0x74524E53, IDAT = 0x49444154;
+
+    public final int width, height;
+    // True if some pixels can be (partly) transparent
+    public final boolean hasAlpha;
+
+    private final DataInputStream in;
+    private final InputStream pixels;
+    private final int colorType, bitDepth;
+    // Bytes per complete pixel (at least 1) and per row, without the filter byte
+    private final int pixelBytes, rowBytes;
+    private byte[] row, previous;
+    private int rowsRead;
+
+    // Palette as ARGB, and the transparent sample of gray or RGB images (-1 = none)
+    private int[] palette;
+    private int transparentGray = -1, transparentRed = -1, transparentGreen = -1, transparentBlue = -1;
+    // RGB of every gray level of gray images, as BufferedImage.getRGB returns it for ImageIO's result
+    private int[] grayLevels;
+
+    /**
+     * Opens a PNG file and reads its header.
+     *
+     * @param file The PNG file
+     * @return The reader, or null if the file is not a PNG this reader can decode (interlaced)
+     * @throws IOException if the file cannot be read or is not a valid PNG
+     */
+    static PngRowReader open(File file) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+        try {
+            if (in.readLong() != SIGNATURE) {
+                in.close();
+                return null;
+            }
+            PngRowReader reader = new PngRowReader(in);
+            if (reader.pixels == null) {
+                in.close();
+                return null;
+            }
+            return reader;
+        } catch (IOException | RuntimeException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    private PngRowReader(DataInputStream in) throws IOException {
+        this.in = in;
+        int length = in.readInt();
+        if (in.readInt() != IHDR || length != 13) {
+            throw new IOException("PNG does not start with a header chunk");
+        }
+        width = in.readInt();
+        height = in.readInt();
+        bitDepth = in.readUnsignedByte();
+        colorType = in.readUnsignedByte();
+        in.readUnsignedByte(); // Compression method (always deflate)
+        in.readUnsignedByte(); // Filter method (always adaptive)
+        int interlace = in.readUnsignedByte();
+        in.readInt(); // CRC
+        int channels;
+        switch (colorType) {
+            case 0:  channels = 1; break; // Gray
+            case 2:  channels = 3; break; // RGB
+            case 3:  channels = 1; break; // Palette
+            case 4:  channels = 2; break; // Gray and alpha
+            case 6:  channels = 4; break; // RGBA
+            default: throw new IOException("Bad PNG color type " + colorType);
+        }
+        if (width <= 0 || height <= 0) {
+            throw new IOException("Bad PNG size " + width + "x" + height);
+        }
+        int bitsPerPixel = channels * bitDepth;
+        pixelBytes = Math.max(1, bitsPerPixel / 8);
+        rowBytes = (int) (((long) width * bitsPerPixel + 7) / 8);
+
+        // Chunks up to the first IDAT: palette and transparency
+        boolean transparency = false;
+        while (true) {
+            length = in.readInt();
+            int type = in.readInt();
+            if (type == IDAT) {
+                break;
+            }
+            if (type == PLTE) {
+                palette = new int[length / 3];
+                for (int i = 0; i < palette.length; i++) {
+                    palette[i] = 0xFF000000 | in.readUnsignedByte() << 16 | in.readUnsignedByte() << 8 | in.readUnsignedByte();
+                }
+                skipFully(in, length - palette.length * 3);
+            } else if (type == TRNS) {
+                transparency = true;
+                if (colorType == 3 && palette != null) {
+                    for (int i = 0; i < length; i++) {
+                        int alpha = in.readUnsignedByte();
+                        if (i < palette.length) {
+                            palette[i] = alpha << 24 | (palette[i] & 0xFFFFFF);
+                        }
+                    }
+                    length = 0;
+                } else if (colorType == 0 && length >= 2) {
+                    transparentGray = in.readUnsignedShort();
+                    length -= 2;
+                } else if (colorType == 2 && length >= 6) {
+                    transparentRed = in.readUnsignedShort();
+                    transparentGreen = in.readUnsignedShort();
+                    transparentBlue = in.readUnsignedShort();
+                    length -= 6;
+                }
+                skipFully(in, length);
+            } else {
+                skipFully(in, length);
+            }
+            in.readInt(); // CRC
+        }
+        if (colorType == 3 && palette == null) {
+            throw new IOException("PNG palette image without a palette");
+        }
+        hasAlpha = colorType == 4 || colorType == 6 || transparency;
+        if (colorType == 0 || colorType == 4) {
+            grayLevels = grayLevels(bitDepth);
+        }
+        row = new byte[rowBytes];
+        previous = new byte[rowBytes];
+        // Interlaced images store the rows in seven passes, not top to bottom
+        pixels = interlace == 0 ? new InflaterInputStream(new IdatStream(length), new Inflater(), 1 << 16) : null;
+    }
+
+    /**
+     * Decodes the next row of the image.
+     *
+     * @param argb Receives width pixels
+     * @param offset Index of the first pixel in argb
+     * @throws IOException if the file is truncated or damaged
+     */
+    void readRow(int[] argb, int offset) throws IOException {
+        if (rowsRead == height) {
+            throw new IOException("All " + height + " rows were read");
+        }
+        byte[] swap = previous;
+        previous = row;
+        row = swap;
+        int filter = pixels.read();
+        if (filter < 0) {
+            throw new EOFException("PNG ends after " + rowsRead + " of " + height + " rows");
+        }
+        readFully(pixels, row);
+        unfilter(filter);
+        convert(argb, offset);
+        rowsRead++;
+    }
+
+    /**
+     * Undoes the filter of the current row (PNG specification, section 9).
+     */
+    private void unfilter(int filter) throws IOException {
+        byte[] row = this.row, up = this.previous;
+        int bpp = pixelBytes;
+        switch (filter) {
+            case 0: // None
+                break;
+            case 1: // Sub
+                for (int i = bpp; i < rowBytes; i++) {
+                    row[i] += row[i - bpp];
+                }
+                break;
+            case 2: // Up
+                for (int i = 0; i < rowBytes; i++) {
+                    row[i] += up[i];
+                }
+                break;
+            case 3: // Average
+                for (int i = 0; i < rowBytes; i++) {
+                    int left = i >= bpp ? row[i - bpp] & 0xFF : 0;
+                    row[i] += (byte) ((left + (up[i] & 0xFF)) >>> 1);
+                }
+                break;
+            case 4: // Paeth
+                for (int i = 0; i < rowBytes; i++) {
+                    int a = i >= bpp ? row[i - bpp] & 0xFF : 0;
+                    int b = up[i] & 0xFF;
+                    int c = i >= bpp ? up[i - bpp] & 0xFF : 0;
+                    int p = a + b - c;
+                    int pa = Math.abs(p - a), pb = Math.abs(p - b), pc = Math.abs(p - c);
+                    row[i] += (byte) (pa <= pb && pa <= pc ? a : pb <= pc ? b : c);
+                }
+                break;
+            default:
+                throw new IOException("Bad PNG filter " + filter + " in row " + rowsRead);
+        }
+    }
+
+    /**
+     * Converts the current row to ARGB pixels.
+     */
+    private void convert(int[] argb, int offset) {
+        byte[] row = this.row;
+        // Bytes per channel of multi-channel pixels
+        int step = bitDepth == 16 ? 2 : 1;
+        for (int x = 0; x < width; x++) {
+            int i = x * pixelBytes;
+            int pixel;
+            switch (colorType) {
+                case 0: {
+                    int gray = sample(row, x);
+                    pixel = (gray == transparentGray ? 0 : 0xFF000000) | grayLevels[gray];
+                    break;
+                }
+                case 2: {
+                    int r = channel(row, i), g = channel(row, i + step), b = channel(row, i + 2 * step);
+                    boolean clear = r == transparentRed && g == transparentGreen && b == transparentBlue;
+                    pixel = (clear ? 0 : 0xFF000000) | scaleTo8(r) << 16 | scaleTo8(g) << 8 | scaleTo8(b);
+                    break;
+                }
+                case 3: {
+                    int index = sample(row, x);
+                    pixel = index < palette.length ? palette[index] : 0xFF000000;
+                    break;
+                }
+                case 4:
+                    pixel = scaleTo8(channel(row, i + step)) << 24 | grayLevels[channel(row, i)];
+                    break;
+                default:
+                    pixel = scaleTo8(channel(row, i + 3 * step)) << 24 | scaleTo8(channel(row, i)) << 16
+                            | scaleTo8(channel(row, i + step)) << 8 | scaleTo8(channel(row, i + 2 * step));
+                    break;
+            }
+            argb[offset + x] = pixel;
+        }
+    }
+
+    /**
+     * @return The 8 or 16-bit channel value starting at a byte of the row
+     */
+    private int channel(byte[] row, int i) {
+        return bitDepth == 16 ? (row[i] & 0xFF) << 8 | row[i + 1] & 0xFF : row[i] & 0xFF;
+    }
+
+    /**
+     * @return The single sample of a gray or palette pixel, at its bit depth
+     */
+    private int sample(byte[] row, int x) {
+        switch (bitDepth) {
+            case 16: return (row[2 * x] & 0xFF) << 8 | row[2 * x + 1] & 0xFF;
+            case 8:  return row[x] & 0xFF;
+            default: {
+                int perByte = 8 / bitDepth;
+                int shift = 8 - bitDepth * (x % perByte + 1);
+                return (row[x / perByte] & 0xFF) >>> shift & (1 << bitDepth) - 1;
+            }
+        }
+    }
+
+    /**
+     * @return A sample of the image's bit depth scaled to 0..255
+     */
+    private int scaleTo8(int sample) {
+        switch (bitDepth) {
+            case 16: return (sample * 255 + 32767) / 65535;
+            case 8:  return sample;
+            default: return sample * 255 / ((1 << bitDepth) - 1);
+        }
+    }
+
+    /**
+     * @return RGB of every gray sample of the given bit depth. ImageIO reads
+     *         8 and 16-bit gray into linear gray images, which getRGB converts
+     *         to sRGB; lower depths become plain gray palettes.
+     */
+    private static int[] grayLevels(int bitDepth) {
+        int count = 1 << bitDepth;
+        int[] rgb;
+        if (bitDepth >= 8) {
+            BufferedImage levels = new BufferedImage(count, 1,
+                    bitDepth == 16 ? BufferedImage.TYPE_USHORT_GRAY : BufferedImage.TYPE_BYTE_GRAY);
+            WritableRaster raster = levels.getRaster();
+            for (int i = 0; i < count; i++) {
+                raster.setSample(i, 0, 0, i);
+            }
+            rgb = levels.getRGB(0, 0, count, 1, null, 0, count);
+        } else {
+            rgb = new int[count];
+            for (int i = 0; i < count; i++) {
+                rgb[i] = (i * 255 / (count - 1)) * 0x010101;
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            rgb[i] &= 0xFFFFFF;
+        }
+        return rgb;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private static void skipFully(DataInputStream in, int count) throws IOException {
+        if (count < 0) {
+            throw new IOException("Bad PNG chunk length");
+        }
+        in.skipNBytes(count);
+    }
+
+    private static void readFully(InputStream in, byte[] buffer) throws IOException {
+        int read = 0;
+        while (read < buffer.length) {
+            int n = in.read(buffer, read, buffer.length - read);
+            if (n < 0) {
+                throw new EOFException("PNG image data ends early");
+            }
+            read += n;
+        }
+    }
+
+    /**
+     * The compressed pixel data: the payloads of consecutive IDAT chunks.
+     */
+    private final class IdatStream extends InputStream {
+        // Bytes left in the current IDAT chunk (-1 = past the last one)
+        private int left;
+
+        IdatStream(int firstLength) {
+            left = firstLength;
+        }
+
+        /**
+         * Moves to the next IDAT chunk once the current one is used up.
+         *
+         * @return false at the end of the pixel data
+         */
+        private boolean nextChunk() throws IOException {
+            while (left == 0) {
+                in.readInt(); // CRC of the chunk just read
+                int length = in.readInt();
+                if (in.readInt() != IDAT) {
+                    left = -1;
+                    return false;
+                }
+                left = length;
+            }
+            return left > 0;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!nextChunk()) {
+                return -1;
+            }
+            left--;
+            return in.read();
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            if (!nextChunk()) {
+                return -1;
+            }
+            int n = in.read(buffer, offset, Math.min(length, left));
+            if (n < 0) {
+                throw new EOFException("PNG ends inside an image data chunk");
+            }
+            left -= n;
+            return n;
+        }
+    }
+}
@@ -0,0 +1,284 @@
+package game.map;
+
+import game.log.Log;
+import game.log.LogCategory;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * StreamingMap draws a map that is never fully loaded into memory.
+ *
+ * Chunks are read from a {@link ChunkedMapFile} by background loader threads
+ * and kept in a size-bounded {@link ChunkCache}. Every tick the game calls
+ * {@link #update} with the camera rectangle and the direction the player is
+ * heading; chunks in view are requested first, then a ring around the view
+ * and a few extra chunks ahead of the player (prefetch).
+ * Chunks that are not loaded yet are drawn as a placeholder.
+ *
+ * The cache always holds at least that whole window, so prefetching can
+ * never evict a visible chunk, and visible chunks missing from the cache
+ * are requested again on every tick.
+ */
+public class StreamingMap {
+
+    // Extra chunks loaded around the view
+    private static final int MARGIN = 1;
+    // Extra chunks loaded ahead of the player's movement direction
+    private static final int PREFETCH = 2;
+    // Placeholder color for chunks still loading
+    private static final Color LOADING_COLOR = new Color(24, 24, 24);
+
+    private final ChunkedMapFile file;
+    private final ChunkCache cache;
+
+    // Chunk requests: visible chunks go to the front, prefetches to the back
+    private final LinkedBlockingDeque<Integer> queue = new LinkedBlockingDeque<>();
+    // Chunks queued or being loaded, to avoid duplicate requests
+    private final Set<Integer> pending = ConcurrentHashMap.newKeySet();
+
+    private final Thread[] loaders;
+    private volatile boolean running = true;
+
+    // Chunk containing the camera at the last update; requests are recomputed when it changes
+    private int lastCameraChunk = -1, lastDirX, lastDirY;
+
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong loadNanos = new AtomicLong();
+
+    /**
+     * Opens a streaming map and starts its loader threads.
+     *
+     * @param path The chunked map file
+     * @param cacheBytes Memory budget for decoded chunks
+     * @param loaderThreads Number of background loader threads
+     * @param viewWidth Viewport width in pixels
+     * @param viewHeight Viewport height in pixels
+     * @throws IOException If the file cannot be opened
+     */
+    public StreamingMap(Path path, long cacheBytes, int loaderThreads, int viewWidth, int viewHeight) throws IOException {
+        file = new ChunkedMapFile(path);
+        int budget = (int) Math.min(Integer.MAX_VALUE, Math.max(1, cacheBytes / file.chunkBytes()));
+        int window = windowChunks(file.chunkSize, viewWidth, viewHeight);
+        if (budget < window) {
+            Log.warn(LogCategory.MAP, "Map cache of {} chunks is smaller than the {} chunks around the view, enlarged to fit",
+                    budget, window);
+        }
+        cache = new ChunkCache(Math.max(budget, window));
+
+        loaders = new Thread[Math.max(1, loaderThreads)];
+        for (int i = 0; i < loaders.length; i++) {
+            loaders[i] = new Thread(this::loaderLoop, "Map Loader " + i);
+            loaders[i].setDaemon(true);
+            loaders[i].start();
+        }
+    }
+
+    /**
+     * @return The most chunks requested for one camera position: the view
+     *         (not aligned to chunks), the ring around it and the prefetch
+     *         in both directions of a diagonal move
+     */
+    static int windowChunks(int chunkSize, int viewWidth, int viewHeight) {
+        int cols = (viewWidth - 1) / chunkSize + 2;
+        int rows = (viewHeight - 1) / chunkSize + 2;
+        return (cols + 2 * MARGIN) * (rows + 2 * MARGIN) + PREFETCH * (cols + rows);
+    }
+
+    public int getMapWidth() { return file.mapWidth; }
+    public int getMapHeight() { return file.mapHeight; }
+    public ChunkCache getCache() { return cache; }
+    public long getLoads() { return loads.get(); }
+
+    /**
+     * Requests the chunks around the camera. Called once per tick on the game thread.
+     *
+     * @param cameraX Camera x in world space
+     * @param cameraY Camera y in world space
+     * @param viewWidth Viewport width in pixels
+     * @param viewHeight Viewport height in pixels
+     * @param dirX Horizontal movement direction of the player (-1, 0, 1)
+     * @param dirY Vertical movement direction of the player (-1, 0, 1)
+     */
+    public void update(int cameraX, int cameraY, int viewWidth, int viewHeight, int dirX, int dirY) {
+        int size = file.chunkSize;
+        int firstCol = Math.floorDiv(cameraX, size);
+        int firstRow = Math.floorDiv(cameraY, size);
+        int lastCol = Math.floorDiv(cameraX + viewWidth - 1, size);
+        int lastRow = Math.floorDiv(cameraY + viewHeight - 1, size);
+
+        // Nothing new to request while the camera stays in the same chunk,
+        // except visible chunks that are missing (failed or evicted)
+        int cameraChunk = firstRow * file.chunkCols + firstCol;
+        if (cameraChunk == lastCameraChunk && dirX == lastDirX && dirY == lastDirY) {
+            for (int row = firstRow; row <= lastRow; row++) {
+                for (int col = firstCol; col <= lastCol; col++) {
+                    request(col, row, true);
+                }
+            }
+            return;
+        }
+        lastCameraChunk = cameraChunk;
+        lastDirX = dirX;
+        lastDirY = dirY;
+
+        // Old prefetches are no longer relevant
+        queue.clear();
+        pending.clear();
+
+        // 1. Visible chunks (urgent, front of the queue)
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int col = firstCol; col <= lastCol; col++) {
+                request(col, row, true);
+            }
+        }
+        // 2. Ring around the view
+        for (int row = firstRow - MARGIN; row <= lastRow + MARGIN; row++) {
+            for (int col = firstCol - MARGIN; col <= lastCol + MARGIN; col++) {
+                request(col, row, false);
+            }
+        }
+        // 3. Chunks ahead of the player
+        for (int step = MARGIN + 1; step <= MARGIN + PREFETCH; step++) {
+            if (dirX != 0) {
+                int col = dirX > 0 ? lastCol + step : firstCol - step;
+                for (int row = firstRow; row <= lastRow; row++) request(col, row, false);
+            }
+            if (dirY != 0) {
+                int row = dirY > 0 ? lastRow + step : firstRow - step;
+                for (int col = firstCol; col <= lastCol; col++) request(col, row, false);
+            }
+        }
+    }
+
+    private void request(int col, int row, boolean urgent) {
+        if (col < 0 || row < 0 || col >= file.chunkCols || row >= file.chunkRows) {
+            return;
+        }
+        int index = row * file.chunkCols + col;
+        if (cache.contains(index) || !pending.add(index)) {
+            return;
+        }
+        if (urgent) {
+            queue.offerFirst(index);
+        } else {
+            queue.offerLast(index);
+        }
+    }
+
+    /**
+     * Body of each loader thread: takes chunk requests and decodes them into the cache.
+     */
+    private void loaderLoop() {
+        // Per-thread scratch buffers, reused for every chunk
+        ByteBuffer buffer = ByteBuffer.allocateDirect(file.chunkBytes());
+        int[] pixels = new int[file.chunkSize * file.chunkSize];
+        int type = file.hasAlpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+
+        while (running) {
+            Integer index;
+            try {
+                index = queue.takeFirst();
+            } catch (InterruptedException e) {
+                return;
+            }
+            try {
+                if (cache.contains(index)) {
+                    continue;
+                }
+                long start = System.nanoTime();
+                file.readChunk(index, buffer, pixels);
+
+                int col = index % file.chunkCols;
+                int row = index / file.chunkCols;
+                int w = Math.min(file.chunkSize, file.mapWidth - col * file.chunkSize);
+                int h = Math.min(file.chunkSize, file.mapHeight - row * file.chunkSize);
+                BufferedImage chunk = new BufferedImage(w, h, type);
+                // Edge chunks are padded on disk: pack their rows tightly first
+                if (w < file.chunkSize) {
+                    for (int y = 1; y < h; y++) {
+                        System.arraycopy(pixels, y * file.chunkSize, pixels, y * w, w);
+                    }
+                }
+                // setDataElements keeps the image eligible for acceleration
+                // (grabbing the DataBuffer array would not)
+                chunk.getRaster().setDataElements(0, 0, w, h, pixels);
+                cache.put(index, chunk);
+
+                loads.incrementAndGet();
+                loadNanos.addAndGet(System.nanoTime() - start);
+            } catch (IOException e) {
+                Log.error(LogCategory.MAP, "Error loading map chunk {}: {}", index, e.getMessage());
+            } finally {
+                pending.remove(index);
+            }
+        }
+    }
+
+    /**
+     * Draws the chunks that overlap the camera rectangle.
+     *
+     * @param g2 The Graphics2D context to draw on
+     * @param cameraX Camera x in world space
+     * @param cameraY Camera y in world space
+     * @param viewWidth Viewport width in pixels
+     * @param viewHeight Viewport height in pixels
+     * @return Number of chunks drawn
+     */
+    public int draw(Graphics2D g2, int cameraX, int cameraY, int viewWidth, int viewHeight) {
+        int size = file.chunkSize;
+        int firstCol = Math.max(0, Math.floorDiv(cameraX, size));
+        int firstRow = Math.max(0, Math.floorDiv(cameraY, size));
+        int lastCol = Math.min(file.chunkCols - 1, Math.floorDiv(cameraX + viewWidth - 1, size));
+        int lastRow = Math.min(file.chunkRows - 1, Math.floorDiv(cameraY + viewHeight - 1, size));
+
+        int drawn = 0;
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int col = firstCol; col <= lastCol; col++) {
+                BufferedImage chunk = cache.get(row * file.chunkCols + col);
+                int screenX = col * size - cameraX;
+                int screenY = row * size - cameraY;
+                if (chunk != null) {
+                    g2.drawImage(chunk, screenX, screenY, null);
+                    drawn++;
+                } else {
+                    // Still loading
+                    g2.setColor(LOADING_COLOR);
+                    g2.fillRect(screenX, screenY, size, size);
+                }
+            }
+        }
+        return drawn;
+    }
+
+    /**
+     * @return Cache counters plus the number of chunks loaded and their average load time
+     */
+    public String statsLine() {
+        long count = loads.get();
+        double avg = count > 0 ? loadNanos.get() / 1e6 / count : 0;
+        return cache.statsLine() + String.format(", loads: %d (avg %.2f ms)", count, avg);
+    }
+
+    /**
+     * Stops the loader threads and closes the file.
+     */
+    public void close() {
+        running = false;
+        for (Thread loader : loaders) {
+            loader.interrupt();
+        }
+        try {
+            file.close();
+        } catch (IOException e) {
+            Log.warn(LogCategory.MAP, "Error closing streaming map: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package game.map;
+
+import java.util.Arrays;
+
+/**
+ * One layer of a {@link LayeredMap}: a grid of tile indices into the
+ * map's {@link Tileset}, -1 where the layer is empty.
+ *
+ * The kind decides when the layer is drawn: BELOW layers are baked into the
+ * map chunks under the entities, OVERHEAD layers (roofs, tree tops) are
+ * drawn over the entities, and PARALLAX layers are drawn over everything,
+ * scrolling at their own speed relative to the camera.
+ *
+ * Tiles are changed through {@link LayeredMap#setTiles}, which re-bakes the
+ * chunks they are drawn into.
+ */
+public final class TileLayer {
+
+    public enum Kind {
+        BELOW, OVERHEAD, PARALLAX;
+
+        static Kind parse(String name) {
+            return valueOf(name.toUpperCase());
+        }
+    }
+
+    public final String name;
+    public final Kind kind;
+    // Scroll speed relative to the camera (1 = moves with the map); only used by PARALLAX layers
+    public final double parallax;
+    public final int cols, rows;
+    // Tile index per cell in row-major order, -1 = empty
+    final short[] tiles;
+
+    /**
+     * Creates an empty layer.
+     *
+     * @param name Layer name, unique within its map
+     * @param kind When the layer is drawn
+     * @param parallax Scroll speed relative to the camera (parallax layers)
+     * @param cols Number of tile columns
+     * @param rows Number of tile rows
+     */
+    public TileLayer(String name, Kind kind, double parallax, int cols, int rows) {
+        this.name = name;
+        this.kind = kind;
+        this.parallax = kind == Kind.PARALLAX ? parallax : 1.0;
+        this.cols = cols;
+        this.rows = rows;
+        this.tiles = new short[cols * rows];
+        Arrays.fill(tiles, (short) -1);
+    }
+
+    /**
+     * @param col Tile column
+     * @param row Tile row
+     * @return The tile index, -1 if the cell is empty or outside the layer
+     */
+    public int get(int col, int row) {
+        if (col < 0 || row < 0 || col >= cols || row >= rows) {
+            return -1;
+        }
+        return tiles[row * cols + col];
+    }
+
+    /**
+     * Sets one cell. Only used while building the layer; at runtime tiles
+     * are changed through the map so the chunks get re-baked.
+     */
+    void set(int col, int row, int tile) {
+        tiles[row * cols + col] = (short) tile;
+    }
+}
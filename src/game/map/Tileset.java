@@ -0,0 +1,62 @@
+package game.map;
+
+import java.awt.Graphics2D;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+
+import game.ImageUtils;
+
+/**
+ * A tileset image cut into square tiles, numbered row by row from the top
+ * left (game/res/tileset.png, a copy of Assets/tileset.png, has 24 x 24 tiles
+ * of 16 pixels).
+ *
+ * Tiles are only drawn while baking map chunks, never per frame, so the
+ * tileset is kept as a single image and tiles are drawn from sub-rectangles
+ * of it.
+ */
+public final class Tileset {
+
+    // Where tileset images named in a layer file are looked up (prefixes of the name)
+    static final String[] LOCATIONS = {"/game/res/", "/res/", "Assets/"};
+
+    public final BufferedImage image;
+    // Edge length of a tile in tileset pixels
+    public final int tileSize;
+    public final int columns, count;
+
+    /**
+     * @param source The tileset image
+     * @param tileSize Edge length of a tile in pixels
+     */
+    public Tileset(BufferedImage source, int tileSize) {
+        if (tileSize < 1 || source.getWidth() < tileSize || source.getHeight() < tileSize) {
+            throw new IllegalArgumentException("Tile size " + tileSize + " does not fit a "
+                    + source.getWidth() + "x" + source.getHeight() + " tileset");
+        }
+        this.tileSize = tileSize;
+        this.columns = source.getWidth() / tileSize;
+        this.count = columns * (source.getHeight() / tileSize);
+        // Same pixel layout as the chunks it is drawn into
+        this.image = ImageUtils.createCompatibleImage(source.getWidth(), source.getHeight(), Transparency.TRANSLUCENT);
+        Graphics2D g = image.createGraphics();
+        g.drawImage(source, 0, 0, null);
+        g.dispose();
+    }
+
+    /**
+     * Draws one tile, scaled to the given size. Callers set nearest-neighbour
+     * interpolation so the pixel art stays sharp.
+     *
+     * @param g Target graphics
+     * @param tile Tile index
+     * @param x Left edge on the target
+     * @param y Top edge on the target
+     * @param size Edge length on the target
+     */
+    void draw(Graphics2D g, int tile, int x, int y, int size) {
+        int sx = (tile % columns) * tileSize;
+        int sy = (tile / columns) * tileSize;
+        g.drawImage(image, x, y, x + size, y + size, sx, sy, sx + tileSize, sy + tileSize, null);
+    }
+}
@@ -0,0 +1,31 @@
+package game.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * JFR event for one timed frame phase, so game phases line up with GC pauses,
+ * safepoints and JIT activity in JDK Mission Control.
+ * Only committed while a flight recording is running (see FrameProfiler).
+ *
+ * Record with: java -XX:StartFlightRecording=filename=game.jfr game.Main
+ */
+@Name("game.FramePhase")
+@Label("Frame Phase")
+@Category({"Game", "Frame"})
+@Description("Duration of one phase of a game frame")
+@StackTrace(false)
+class FramePhaseEvent extends Event {
+
+    @Label("Phase")
+    String phase;
+
+    @Label("Duration")
+    @Timespan(Timespan.NANOSECONDS)
+    long nanos;
+}
@@ -0,0 +1,264 @@
+package game.metrics;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Locale;
+
+import game.log.Log;
+import game.log.LogCategory;
+
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.FlightRecorderListener;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+
+/**
+ * FrameProfiler times the phases of every tick and frame separately
+ * (input, update, map/NPC/player drawing, present) into one
+ * LatencyHistogram per phase.
+ *
+ * Timing is chained so each phase costs a single System.nanoTime() call:
+ * <pre>
+ *   long t = profiler.begin();
+ *   drawMap();     t = profiler.end(Phase.MAP_DRAW, t);
+ *   drawPlayer();  t = profiler.end(Phase.PLAYER_DRAW, t);
+ * </pre>
+ *
+ * Recording allocates nothing. Once per second {@link #roll()} publishes
+ * p50/p99/max per phase, refreshes the overlay text and keeps a row of history
+ * for the CSV written on exit. While a JFR recording is running every
+ * measurement is also committed as a FramePhaseEvent.
+ */
+public class FrameProfiler {
+
+    /**
+     * The timed phases, in the order they happen. KEY_LATENCY is not a phase
+     * but the time from a key event to the update that applies it.
+     */
+    public enum Phase {
+        KEY_LATENCY("key latency"),
+        INPUT("input"),
+        UPDATE("update"),
+        MAP_DRAW("map draw"),
+        NPC_DRAW("npc draw"),
+        PLAYER_DRAW("player draw"),
+        OVERHEAD_DRAW("overhead draw"),
+        LIGHTING("lighting"),
+        PRESENT("present");
+
+        // Cached copy of values() (values() allocates a new array each call)
+        public static final Phase[] VALUES = values();
+
+        public final String label;
+
+        Phase(String label) {
+            this.label = label;
+        }
+    }
+
+    // Seconds of per-phase history kept for the CSV dump
+    static final int HISTORY_SECONDS = 3600;
+
+    private final boolean enabled;
+    private final LatencyHistogram[] histograms = new LatencyHistogram[Phase.VALUES.length];
+
+    // Per-second history: [phase][second % HISTORY_SECONDS]
+    private final long[][] historyCount, historyP50, historyP99, historyMax;
+    private int seconds;
+
+    // Text shown by the overlay, rebuilt once per second
+    private volatile String[] overlayLines = new String[0];
+
+    // True while any JFR recording is running
+    private static volatile boolean jfrRecording;
+
+    static {
+        try {
+            // Recordings started on the command line are already running
+            if (FlightRecorder.isInitialized()) {
+                jfrRecording = anyRecordingRunning();
+            }
+            FlightRecorder.addListener(new FlightRecorderListener() {
+                @Override
+                public void recordingStateChanged(Recording recording) {
+                    jfrRecording = anyRecordingRunning();
+                }
+            });
+        } catch (Throwable t) {
+            // JFR not available in this runtime; histograms still work
+            Log.warn(LogCategory.GAME, "JFR events disabled: {}", t.toString());
+        }
+    }
+
+    private static boolean anyRecordingRunning() {
+        for (Recording r : FlightRecorder.getFlightRecorder().getRecordings()) {
+            if (r.getState() == RecordingState.RUNNING) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Creates a profiler.
+     *
+     * @param enabled false turns every call into a no-op
+     */
+    public FrameProfiler(boolean enabled) {
+        this.enabled = enabled;
+        int phases = Phase.VALUES.length;
+        for (int i = 0; i < phases; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+        historyCount = new long[phases][enabled ? HISTORY_SECONDS : 0];
+        historyP50 = new long[phases][enabled ? HISTORY_SECONDS : 0];
+        historyP99 = new long[phases][enabled ? HISTORY_SECONDS : 0];
+        historyMax = new long[phases][enabled ? HISTORY_SECONDS : 0];
+    }
+
+    /**
+     * @return true if measurements are recorded
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Starts timing.
+     *
+     * @return The current time, to pass to {@link #end}
+     */
+    public long begin() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Records the time since start for a phase.
+     *
+     * @param phase The phase that just finished
+     * @param start Value returned by begin() or the previous end()
+     * @return The current time, usable as the start of the next phase
+     */
+    public long end(Phase phase, long start) {
+        if (!enabled) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        record(phase, now - start);
+        return now;
+    }
+
+    /**
+     * Records a duration measured elsewhere.
+     *
+     * @param phase The phase
+     * @param nanos Duration in nanoseconds
+     */
+    public void record(Phase phase, long nanos) {
+        if (!enabled) {
+            return;
+        }
+        histograms[phase.ordinal()].record(nanos);
+        if (jfrRecording) {
+            // Short-lived and never escapes, so the JIT normally removes the allocation
+            FramePhaseEvent event = new FramePhaseEvent();
+            event.phase = phase.label;
+            event.nanos = nanos;
+            event.commit();
+        }
+    }
+
+    /**
+     * @param phase A phase
+     * @return Its histogram
+     */
+    public LatencyHistogram histogram(Phase phase) {
+        return histograms[phase.ordinal()];
+    }
+
+    /**
+     * Closes the one-second window of every phase. Called once per second.
+     */
+    public synchronized void roll() {
+        if (!enabled) {
+            return;
+        }
+        int slot = seconds % HISTORY_SECONDS;
+        String[] lines = new String[Phase.VALUES.length + 1];
+        lines[0] = String.format(Locale.ROOT, "%-12s %6s %8s %8s %8s", "phase (ms)", "n", "p50", "p99", "max");
+        for (Phase phase : Phase.VALUES) {
+            LatencyHistogram h = histograms[phase.ordinal()];
+            h.roll();
+            int p = phase.ordinal();
+            historyCount[p][slot] = h.getLastCount();
+            historyP50[p][slot] = h.getLastP50();
+            historyP99[p][slot] = h.getLastP99();
+            historyMax[p][slot] = h.getLastMax();
+            lines[p + 1] = String.format(Locale.ROOT, "%-12s %6d %8.3f %8.3f %8.3f", phase.label,
+                    h.getLastCount(), h.getLastP50() / 1e6, h.getLastP99() / 1e6, h.getLastMax() / 1e6);
+        }
+        seconds++;
+        overlayLines = lines;
+    }
+
+    /**
+     * @return The overlay text of the last closed window (header line first)
+     */
+    public String[] overlayLines() {
+        return overlayLines;
+    }
+
+    /**
+     * Writes the per-second history (up to the last HISTORY_SECONDS) and the
+     * whole-run summary of every phase to a CSV file. Times are in microseconds.
+     *
+     * @param path Output file
+     * @throws IOException If the file cannot be written
+     */
+    public synchronized void writeCsv(String path) throws IOException {
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(Paths.get(path), StandardCharsets.UTF_8))) {
+            out.println("second,phase,count,mean_us,p50_us,p99_us,p999_us,max_us");
+            int first = Math.max(0, seconds - HISTORY_SECONDS);
+            for (int s = first; s < seconds; s++) {
+                int slot = s % HISTORY_SECONDS;
+                for (Phase phase : Phase.VALUES) {
+                    int p = phase.ordinal();
+                    out.printf(Locale.ROOT, "%d,%s,%d,,%.3f,%.3f,,%.3f%n", s, phase.label, historyCount[p][slot],
+                            historyP50[p][slot] / 1e3, historyP99[p][slot] / 1e3, historyMax[p][slot] / 1e3);
+                }
+            }
+            for (Phase phase : Phase.VALUES) {
+                LatencyHistogram h = histograms[phase.ordinal()];
+                out.printf(Locale.ROOT, "all,%s,%d,%.3f,%.3f,%.3f,%.3f,%.3f%n", phase.label, h.getTotalCount(),
+                        h.getTotalMean() / 1e3, h.getTotalPercentile(0.50) / 1e3, h.getTotalPercentile(0.99) / 1e3,
+                        h.getTotalPercentile(0.999) / 1e3, h.getTotalMax() / 1e3);
+            }
+        }
+    }
+
+    /**
+     * Writes the CSV when the JVM exits (window closed, Ctrl+C, System.exit).
+     *
+     * @param path Output file
+     */
+    public void writeCsvOnExit(String path) {
+        if (!enabled || path == null || path.isEmpty()) {
+            return;
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                // Include the partial last second
+                roll();
+                writeCsv(path);
+                Log.info(LogCategory.LOOP, "Frame timings written to {}", path);
+            } catch (IOException e) {
+                Log.error(LogCategory.LOOP, "Error writing frame timings", e);
+            } finally {
+                Log.flush();
+            }
+        }, "Frame Profiler CSV"));
+    }
+}
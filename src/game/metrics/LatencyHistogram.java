@@ -0,0 +1,129 @@
+package game.metrics;
+
+/**
+ * LatencyHistogram counts durations in log-linear buckets: every power of two
+ * is split into 32 equal sub-buckets, so any value is reported within about 3%
+ * of its true size, from nanoseconds up to hours, in a fixed array of counters.
+ *
+ * Recording is a few shifts and an increment and never allocates.
+ * Values are collected in a window that {@link #roll()} closes once per second:
+ * the window's p50/p99/max are published and its counts are merged into the
+ * totals kept for the whole run.
+ *
+ * Durations may be recorded on one thread (game thread or EDT) and read on
+ * another, so all methods are synchronized (uncontended in practice).
+ */
+public class LatencyHistogram {
+
+    // log2 of the number of linear sub-buckets per power of two
+    static final int SUB_BITS = 5;
+    static final int SUB_COUNT = 1 << SUB_BITS;
+    // Enough buckets for any positive long
+    static final int BUCKETS = (64 - SUB_BITS) * SUB_COUNT;
+
+    private final long[] window = new long[BUCKETS];
+    private final long[] total = new long[BUCKETS];
+    private long windowCount, windowMax;
+    private long totalCount, totalMax, totalSum;
+
+    // Results of the last closed window, in nanoseconds
+    private long lastCount, lastP50, lastP99, lastMax;
+
+    /**
+     * Maps a value to its bucket.
+     */
+    static int bucketOf(long value) {
+        if (value < SUB_COUNT) {
+            return (int) Math.max(0, value);
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        return (shift + 1) * SUB_COUNT + (int) ((value >>> shift) - SUB_COUNT);
+    }
+
+    /**
+     * @return The value in the middle of a bucket
+     */
+    static long valueOf(int bucket) {
+        if (bucket < SUB_COUNT) {
+            return bucket;
+        }
+        int shift = bucket / SUB_COUNT - 1;
+        long lower = (long) (bucket % SUB_COUNT + SUB_COUNT) << shift;
+        return lower + ((1L << shift) >>> 1);
+    }
+
+    /**
+     * Records one duration.
+     *
+     * @param nanos Duration in nanoseconds
+     */
+    public synchronized void record(long nanos) {
+        window[bucketOf(nanos)]++;
+        windowCount++;
+        if (nanos > windowMax) windowMax = nanos;
+        totalSum += nanos;
+    }
+
+    /**
+     * Closes the current window: publishes its statistics and adds it to the totals.
+     */
+    public synchronized void roll() {
+        lastCount = windowCount;
+        lastP50 = percentile(window, windowCount, 0.50);
+        lastP99 = percentile(window, windowCount, 0.99);
+        lastMax = windowMax;
+
+        for (int i = 0; i < BUCKETS; i++) {
+            if (window[i] != 0) {
+                total[i] += window[i];
+                window[i] = 0;
+            }
+        }
+        totalCount += windowCount;
+        if (windowMax > totalMax) totalMax = windowMax;
+        windowCount = 0;
+        windowMax = 0;
+    }
+
+    /**
+     * Finds the value below which the given fraction of the counts lies.
+     */
+    private static long percentile(long[] counts, long count, double fraction) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(count * fraction));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return valueOf(i);
+            }
+        }
+        return valueOf(BUCKETS - 1);
+    }
+
+    public synchronized long getLastCount() { return lastCount; }
+    public synchronized long getLastP50() { return lastP50; }
+    public synchronized long getLastP99() { return lastP99; }
+    public synchronized long getLastMax() { return lastMax; }
+
+    public synchronized long getTotalCount() { return totalCount; }
+    public synchronized long getTotalMax() { return totalMax; }
+
+    /**
+     * @return Mean of every recorded value (including the open window), in nanoseconds
+     */
+    public synchronized double getTotalMean() {
+        long count = totalCount + windowCount;
+        return count == 0 ? 0 : (double) totalSum / count;
+    }
+
+    /**
+     * @param fraction Percentile as a fraction, e.g. 0.999
+     * @return The percentile over all closed windows, in nanoseconds
+     */
+    public synchronized long getTotalPercentile(double fraction) {
+        return percentile(total, totalCount, fraction);
+    }
+}
@@ -0,0 +1,251 @@
+package game.net;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * DeltaCodec encodes an {@link EntityFrame} as the difference to an older
+ * frame the receiver already has (its baseline), or as a full frame.
+ *
+ * SNAPSHOT payload, after the type byte:
+ * <pre>
+ *   varlong tick
+ *   varint  ticks since the baseline (0 = full frame, no baseline)
+ *   signed  camera x, camera y (difference to the baseline)
+ *   varint  removed count, then per entity: id gap
+ *   varint  changed count, then per entity: id gap, flags byte, and the
+ *           fields named by the flags:
+ *             X, Y       signed difference to the baseline
+ *             DIRECTION  one byte
+ *             CLIP       varint
+ *             FRAME      varint
+ * </pre>
+ * Ids are ascending and sent as the gap to the previous one minus one.
+ * An entity missing from the baseline counts as all zeros, so a new entity
+ * is a change like any other. A walking NPC typically costs 3 or 4 bytes,
+ * one standing still costs nothing.
+ *
+ * A codec keeps scratch arrays between calls, so each thread needs its own.
+ */
+public final class DeltaCodec {
+
+    // Changed field flags
+    static final int X = 1;
+    static final int Y = 2;
+    static final int DIRECTION = 4;
+    static final int CLIP = 8;
+    static final int FRAME = 16;
+
+    // Encoding: removed ids, and changed entities as index in the frame and in the baseline (-1 = new)
+    // Decoding: removed ids, and changed entities as id, flags and values
+    private int[] removed = new int[64];
+    private int[] changed = new int[64], changedBase = new int[64];
+    private int[] flags = new int[64], values = new int[64 * 5];
+
+    /**
+     * Writes a SNAPSHOT payload.
+     *
+     * @param base Frame the receiver has, or null for a full frame
+     * @param frame Frame to send
+     * @param out Receives the payload, type byte included
+     * @throws java.nio.BufferOverflowException if the payload does not fit
+     */
+    public void encode(EntityFrame base, EntityFrame frame, ByteBuffer out) {
+        out.put((byte) NetProtocol.SNAPSHOT);
+        NetProtocol.writeVarLong(out, frame.tick);
+        NetProtocol.writeVarInt(out, base == null ? 0 : (int) (frame.tick - base.tick));
+        NetProtocol.writeSigned(out, frame.cameraX - (base == null ? 0 : base.cameraX));
+        NetProtocol.writeSigned(out, frame.cameraY - (base == null ? 0 : base.cameraY));
+
+        // Merge the two id lists
+        int baseCount = base == null ? 0 : base.count;
+        int removedCount = 0, changedCount = 0;
+        ensureScratch(baseCount + frame.count);
+        int i = 0, j = 0;
+        while (i < baseCount || j < frame.count) {
+            int baseId = i < baseCount ? base.id[i] : Integer.MAX_VALUE;
+            int id = j < frame.count ? frame.id[j] : Integer.MAX_VALUE;
+            if (baseId < id) {
+                removed[removedCount++] = baseId;
+                i++;
+            } else if (id < baseId) {
+                changed[changedCount] = j++;
+                changedBase[changedCount++] = -1;
+            } else {
+                if (fieldFlags(base, i, frame, j) != 0) {
+                    changed[changedCount] = j;
+                    changedBase[changedCount++] = i;
+                }
+                i++;
+                j++;
+            }
+        }
+
+        NetProtocol.writeVarInt(out, removedCount);
+        int previous = -1;
+        for (int k = 0; k < removedCount; k++) {
+            NetProtocol.writeVarInt(out, removed[k] - previous - 1);
+            previous = removed[k];
+        }
+
+        NetProtocol.writeVarInt(out, changedCount);
+        previous = -1;
+        for (int k = 0; k < changedCount; k++) {
+            int e = changed[k];
+            int b = changedBase[k];
+            int f = fieldFlags(b < 0 ? null : base, b, frame, e);
+            NetProtocol.writeVarInt(out, frame.id[e] - previous - 1);
+            previous = frame.id[e];
+            out.put((byte) f);
+            if ((f & X) != 0) {
+                NetProtocol.writeSigned(out, frame.x[e] - (b < 0 ? 0 : base.x[b]));
+            }
+            if ((f & Y) != 0) {
+                NetProtocol.writeSigned(out, frame.y[e] - (b < 0 ? 0 : base.y[b]));
+            }
+            if ((f & DIRECTION) != 0) {
+                out.put(frame.direction[e]);
+            }
+            if ((f & CLIP) != 0) {
+                NetProtocol.writeVarInt(out, frame.clip[e]);
+            }
+            if ((f & FRAME) != 0) {
+                NetProtocol.writeVarInt(out, frame.frame[e]);
+            }
+        }
+    }
+
+    /**
+     * @return Flags of the fields of entity e of the frame that differ from
+     *         entity b of the baseline (or from zero if base is null)
+     */
+    private static int fieldFlags(EntityFrame base, int b, EntityFrame frame, int e) {
+        int f = 0;
+        if (frame.x[e] != (base == null ? 0 : base.x[b])) f |= X;
+        if (frame.y[e] != (base == null ? 0 : base.y[b])) f |= Y;
+        if (frame.direction[e] != (base == null ? 0 : base.direction[b])) f |= DIRECTION;
+        if (frame.clip[e] != (base == null ? 0 : base.clip[b])) f |= CLIP;
+        if (frame.frame[e] != (base == null ? 0 : base.frame[b])) f |= FRAME;
+        return f;
+    }
+
+    /**
+     * Reads a SNAPSHOT payload. The server always diffs against the last
+     * frame it sent to a client, so the baseline is the latest decoded frame.
+     *
+     * @param in Payload, positioned after the type byte
+     * @param latest Latest decoded frame (null before the first one)
+     * @param into Receives the new frame (not the same object as latest)
+     * @return true if the payload was a full frame
+     * @throws IllegalStateException if the payload needs a baseline other than latest
+     * @throws RuntimeException if the payload is malformed
+     */
+    public boolean decode(ByteBuffer in, EntityFrame latest, EntityFrame into) {
+        long tick = NetProtocol.readVarLong(in);
+        int sinceBase = NetProtocol.readVarInt(in);
+        EntityFrame base = null;
+        if (sinceBase != 0) {
+            if (latest == null || latest.tick != tick - sinceBase) {
+                throw new IllegalStateException("Snapshot " + tick + " needs baseline " + (tick - sinceBase)
+                        + ", have " + (latest == null ? "none" : String.valueOf(latest.tick)));
+            }
+            base = latest;
+        }
+        into.tick = tick;
+        into.cameraX = NetProtocol.readSigned(in) + (base == null ? 0 : base.cameraX);
+        into.cameraY = NetProtocol.readSigned(in) + (base == null ? 0 : base.cameraY);
+
+        int removedCount = count(in);
+        ensureScratch(removedCount);
+        int previous = -1;
+        for (int k = 0; k < removedCount; k++) {
+            previous += NetProtocol.readVarInt(in) + 1;
+            removed[k] = previous;
+        }
+
+        int changedCount = count(in);
+        ensureScratch(changedCount);
+        previous = -1;
+        for (int k = 0; k < changedCount; k++) {
+            previous += NetProtocol.readVarInt(in) + 1;
+            changed[k] = previous;
+            int f = in.get() & 0xFF;
+            flags[k] = f;
+            int v = k * 5;
+            values[v] = (f & X) != 0 ? NetProtocol.readSigned(in) : 0;
+            values[v + 1] = (f & Y) != 0 ? NetProtocol.readSigned(in) : 0;
+            values[v + 2] = (f & DIRECTION) != 0 ? in.get() : 0;
+            values[v + 3] = (f & CLIP) != 0 ? NetProtocol.readVarInt(in) : 0;
+            values[v + 4] = (f & FRAME) != 0 ? NetProtocol.readVarInt(in) : 0;
+        }
+
+        // Merge: baseline entities minus the removed ones, with the changes applied
+        int baseCount = base == null ? 0 : base.count;
+        into.ensureCapacity(baseCount + changedCount);
+        int n = 0, i = 0, k = 0, r = 0;
+        while (i < baseCount || k < changedCount) {
+            int baseId = i < baseCount ? base.id[i] : Integer.MAX_VALUE;
+            if (r < removedCount && removed[r] == baseId) {
+                r++;
+                i++;
+                continue;
+            }
+            int id = k < changedCount ? changed[k] : Integer.MAX_VALUE;
+            if (baseId < id) {
+                into.id[n] = baseId;
+                into.x[n] = base.x[i];
+                into.y[n] = base.y[i];
+                into.direction[n] = base.direction[i];
+                into.clip[n] = base.clip[i];
+                into.frame[n] = base.frame[i];
+                i++;
+            } else {
+                // A change, to a baseline entity (same id) or a new one (all zeros)
+                boolean known = baseId == id;
+                int f = flags[k];
+                int v = k * 5;
+                into.id[n] = id;
+                into.x[n] = (known ? base.x[i] : 0) + values[v];
+                into.y[n] = (known ? base.y[i] : 0) + values[v + 1];
+                into.direction[n] = (f & DIRECTION) != 0 ? (byte) values[v + 2] : known ? base.direction[i] : 0;
+                into.clip[n] = (f & CLIP) != 0 ? values[v + 3] : known ? base.clip[i] : 0;
+                into.frame[n] = (f & FRAME) != 0 ? values[v + 4] : known ? base.frame[i] : 0;
+                if (known) {
+                    i++;
+                }
+                k++;
+            }
+            n++;
+        }
+        if (r != removedCount) {
+            throw new IllegalArgumentException("Snapshot " + tick + " removes entities not in its baseline");
+        }
+        into.count = n;
+        return base == null;
+    }
+
+    /**
+     * Reads an entity count; every entity takes at least a byte, which
+     * bounds the scratch arrays a malformed payload can make us allocate.
+     */
+    private static int count(ByteBuffer in) {
+        int count = NetProtocol.readVarInt(in);
+        if (count < 0 || count > in.remaining()) {
+            throw new IllegalArgumentException("Bad entity count: " + count);
+        }
+        return count;
+    }
+
+    // Keeps the content: decoding grows the arrays again after reading the removed ids
+    private void ensureScratch(int count) {
+        if (removed.length >= count) {
+            return;
+        }
+        int size = Math.max(count, removed.length * 2);
+        removed = Arrays.copyOf(removed, size);
+        changed = Arrays.copyOf(changed, size);
+        changedBase = Arrays.copyOf(changedBase, size);
+        flags = Arrays.copyOf(flags, size);
+        values = Arrays.copyOf(values, size * 5);
+    }
+}
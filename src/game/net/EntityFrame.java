@@ -0,0 +1,141 @@
+package game.net;
+
+import java.util.Arrays;
+
+import game.RenderSnapshot;
+import game.World;
+import game.anim.Animations;
+import game.entity.EntityStore;
+
+/**
+ * EntityFrame is the state the server shares with its clients after one
+ * tick: the camera, and for every entity near the view its position,
+ * direction, animation clip and frame. Entities are sorted by id so two
+ * frames can be diffed in one merge pass (see {@link DeltaCodec}).
+ *
+ * Entity ids: 0 is the player, NPC n of the world's store is n + 1.
+ */
+public final class EntityFrame {
+
+    public static final int PLAYER_ID = 0;
+
+    public long tick;
+    public int cameraX, cameraY;
+
+    // Entities, struct-of-arrays, ascending ids
+    public int count;
+    public int[] id = new int[0];
+    public int[] x = new int[0], y = new int[0];
+    public byte[] direction = new byte[0];
+    public int[] clip = new int[0], frame = new int[0];
+
+    // Sorted NPC ids (capture only)
+    private int[] sorted = new int[0];
+
+    /**
+     * Copies the entities of the world's latest render snapshot, whose NPC
+     * set is already limited to the view. Game thread only.
+     *
+     * @param world The world, after an update
+     * @return This frame
+     */
+    public EntityFrame capture(World world) {
+        RenderSnapshot snapshot = world.snapshots.published();
+        int npcCount = snapshot != null ? snapshot.npcCount : 0;
+        ensureCapacity(npcCount + 1);
+        if (sorted.length < npcCount) {
+            sorted = new int[Math.max(npcCount, sorted.length * 2)];
+        }
+        if (npcCount > 0) {
+            System.arraycopy(snapshot.npcId, 0, sorted, 0, npcCount);
+            Arrays.sort(sorted, 0, npcCount);
+        }
+
+        tick = world.tick;
+        cameraX = world.cameraX;
+        cameraY = world.cameraY;
+
+        id[0] = PLAYER_ID;
+        x[0] = world.player.x;
+        y[0] = world.player.y;
+        direction[0] = (byte) world.player.direction.ordinal();
+        clip[0] = world.player.clip;
+        frame[0] = Animations.clip(world.player.clip).frameAt(world.player.animTime);
+
+        EntityStore store = world.npcs;
+        for (int k = 0; k < npcCount; k++) {
+            int n = sorted[k];
+            int i = k + 1;
+            id[i] = n + 1;
+            x[i] = store.x[n];
+            y[i] = store.y[n];
+            direction[i] = store.direction[n];
+            clip[i] = store.clip[n];
+            frame[i] = Animations.clip(store.clip[n]).frameAt(store.animTime[n]);
+        }
+        count = npcCount + 1;
+        return this;
+    }
+
+    /**
+     * Makes this frame a copy of another one.
+     *
+     * @param other Frame to copy
+     * @return This frame
+     */
+    public EntityFrame copyFrom(EntityFrame other) {
+        ensureCapacity(other.count);
+        tick = other.tick;
+        cameraX = other.cameraX;
+        cameraY = other.cameraY;
+        count = other.count;
+        System.arraycopy(other.id, 0, id, 0, count);
+        System.arraycopy(other.x, 0, x, 0, count);
+        System.arraycopy(other.y, 0, y, 0, count);
+        System.arraycopy(other.direction, 0, direction, 0, count);
+        System.arraycopy(other.clip, 0, clip, 0, count);
+        System.arraycopy(other.frame, 0, frame, 0, count);
+        return this;
+    }
+
+    /**
+     * @param entityId Entity id
+     * @return Index of the entity in this frame, or -1 if it is not in it
+     */
+    public int indexOf(int entityId) {
+        int i = Arrays.binarySearch(id, 0, count, entityId);
+        return i >= 0 ? i : -1;
+    }
+
+    /**
+     * Grows the arrays to hold at least the given number of entities,
+     * keeping their content.
+     */
+    public void ensureCapacity(int capacity) {
+        if (id.length >= capacity) {
+            return;
+        }
+        int size = Math.max(capacity, id.length * 2);
+        id = Arrays.copyOf(id, size);
+        x = Arrays.copyOf(x, size);
+        y = Arrays.copyOf(y, size);
+        direction = Arrays.copyOf(direction, size);
+        clip = Arrays.copyOf(clip, size);
+        frame = Arrays.copyOf(frame, size);
+    }
+
+    /**
+     * @return true if both frames hold the same tick, camera and entities
+     */
+    public boolean sameAs(EntityFrame other) {
+        if (tick != other.tick || cameraX != other.cameraX || cameraY != other.cameraY || count != other.count) {
+            return false;
+        }
+        return Arrays.equals(id, 0, count, other.id, 0, count)
+                && Arrays.equals(x, 0, count, other.x, 0, count)
+                && Arrays.equals(y, 0, count, other.y, 0, count)
+                && Arrays.equals(direction, 0, count, other.direction, 0, count)
+                && Arrays.equals(clip, 0, count, other.clip, 0, count)
+                && Arrays.equals(frame, 0, count, other.frame, 0, count);
+    }
+}
@@ -0,0 +1,325 @@
+package game.net;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+
+import game.RenderSnapshot;
+
+/**
+ * GameClient is one connection to a {@link GameServer}: it decodes the
+ * state snapshots the server streams and sends the local input.
+ *
+ * The client draws slightly in the past: it keeps the last few frames and
+ * renders the state of a moment INTERPOLATION_SNAPSHOTS snapshots behind
+ * its estimate of the server's current tick, interpolating between the two
+ * frames around that moment. Positions then move smoothly at any frame
+ * rate, whatever the server's tick and snapshot rates, as long as the next
+ * snapshot arrives within that delay.
+ *
+ * Non-blocking: the owner registers the client with a selector (see
+ * {@link #open}) and calls {@link #onReadable} and {@link #onWritable}
+ * when the selector says so. Not thread-safe: one thread drives a client.
+ */
+public class GameClient {
+
+    // Snapshots the rendered state lags behind the server
+    public static final int INTERPOLATION_SNAPSHOTS = 2;
+    // Frames kept for interpolation
+    static final int FRAMES = 16;
+    static final int RECEIVE_BUFFER = 256 * 1024;
+
+    private final SocketChannel channel;
+    private final SelectionKey key;
+    private final ByteBuffer in = ByteBuffer.allocate(RECEIVE_BUFFER);
+    // Queued input, in write mode
+    private final ByteBuffer out = ByteBuffer.allocate(256);
+    private final ByteBuffer message = ByteBuffer.allocate(8);
+    private final DeltaCodec codec = new DeltaCodec();
+
+    // Session parameters from WELCOME (0 = not received yet)
+    public int updatesPerSecond, snapshotInterval, tileSize, mapWidth, mapHeight;
+    private long tickNanos;
+
+    // Received frames, newest at index latest
+    private final EntityFrame[] frames = new EntityFrame[FRAMES];
+    private int latest = -1;
+
+    // Local time of server tick 0 (nanoTime), estimated from arrivals
+    private long clockOffset;
+    private boolean clockSet;
+
+    // Statistics
+    private long bytesReceived, snapshots, fullSnapshots;
+    private long samples, starvedSamples;
+
+    /**
+     * Connects to a server and registers with a selector for reading.
+     *
+     * @param address Server address
+     * @param selector Selector the owner polls
+     * @return The connected client
+     * @throws IOException if the connection fails
+     */
+    public static GameClient open(InetSocketAddress address, Selector selector) throws IOException {
+        SocketChannel channel = SocketChannel.open(address);
+        try {
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            channel.configureBlocking(false);
+            return new GameClient(channel, selector);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private GameClient(SocketChannel channel, Selector selector) throws IOException {
+        this.channel = channel;
+        for (int i = 0; i < FRAMES; i++) {
+            frames[i] = new EntityFrame();
+        }
+        this.key = channel.register(selector, SelectionKey.OP_READ, this);
+    }
+
+    /**
+     * Reads and decodes what the server sent.
+     *
+     * @param now Current time (System.nanoTime)
+     * @throws IOException if the connection failed or the server sent bad data
+     */
+    public void onReadable(long now) throws IOException {
+        int read = channel.read(in);
+        if (read < 0) {
+            throw new IOException("Server closed the connection");
+        }
+        bytesReceived += read;
+        in.flip();
+        try {
+            int length;
+            while ((length = NetProtocol.nextFrame(in)) >= 0) {
+                int end = in.position() + length;
+                ByteBuffer payload = in.duplicate();
+                payload.limit(end);
+                handle(payload, now);
+                in.position(end);
+            }
+        } catch (RuntimeException e) {
+            throw new IOException("Bad message from the server", e);
+        } finally {
+            in.compact();
+        }
+        if (!in.hasRemaining()) {
+            throw new IOException("Message larger than " + RECEIVE_BUFFER + " bytes");
+        }
+    }
+
+    private void handle(ByteBuffer payload, long now) {
+        int type = payload.get();
+        if (type == NetProtocol.WELCOME) {
+            int version = NetProtocol.readVarInt(payload);
+            if (version != NetProtocol.VERSION) {
+                throw new IllegalStateException("Server speaks protocol " + version + ", expected " + NetProtocol.VERSION);
+            }
+            updatesPerSecond = NetProtocol.readVarInt(payload);
+            snapshotInterval = NetProtocol.readVarInt(payload);
+            tileSize = NetProtocol.readVarInt(payload);
+            mapWidth = NetProtocol.readVarInt(payload);
+            mapHeight = NetProtocol.readVarInt(payload);
+            tickNanos = 1_000_000_000L / Math.max(1, updatesPerSecond);
+        } else if (type == NetProtocol.SNAPSHOT) {
+            int next = (latest + 1) % FRAMES;
+            boolean full = codec.decode(payload, latest < 0 ? null : frames[latest], frames[next]);
+            latest = next;
+            snapshots++;
+            if (full) {
+                fullSnapshots++;
+            }
+            syncClock(frames[next].tick, now);
+        }
+        // Unknown types are skipped, for newer servers
+    }
+
+    /**
+     * Estimates when server tick 0 happened in local time. A snapshot
+     * arriving early lowers the estimate at once; late ones (delayed by
+     * the network or the scheduler) only raise it slowly, so jitter does
+     * not shake the rendered time.
+     */
+    private void syncClock(long tick, long now) {
+        long offset = now - tick * tickNanos;
+        if (!clockSet || offset < clockOffset) {
+            clockOffset = offset;
+            clockSet = true;
+        } else {
+            clockOffset += (offset - clockOffset) >> 6;
+        }
+    }
+
+    /**
+     * Queues the input to send to the server.
+     *
+     * @param mask Held keys and buffered move (see game.InputRecorder.mask)
+     * @throws IOException if sending failed
+     */
+    public void sendInput(int mask) throws IOException {
+        message.clear();
+        message.put((byte) NetProtocol.INPUT).put((byte) mask).flip();
+        if (out.remaining() < NetProtocol.frameSize(message.remaining())) {
+            // The server is not reading: drop the input rather than queue without bound
+            return;
+        }
+        NetProtocol.writeFrame(out, message);
+        onWritable();
+    }
+
+    /**
+     * Writes queued input.
+     *
+     * @throws IOException if sending failed
+     */
+    public void onWritable() throws IOException {
+        out.flip();
+        try {
+            channel.write(out);
+        } finally {
+            out.compact();
+        }
+        int ops = out.position() > 0 ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ;
+        if (key.interestOps() != ops) {
+            key.interestOps(ops);
+        }
+    }
+
+    /**
+     * Fills a render snapshot with the interpolated state to draw now.
+     * Draw it with World.draw(g2, snapshot, alpha) using the returned alpha;
+     * npcStore is left null, so the dirty-rectangle path does not apply.
+     *
+     * @param now Current time (System.nanoTime)
+     * @param into Snapshot to fill
+     * @return The interpolation factor to draw with, or -1 if no snapshot arrived yet
+     */
+    public double sample(long now, RenderSnapshot into) {
+        if (latest < 0) {
+            return -1;
+        }
+        samples++;
+        int available = (int) Math.min(snapshots, FRAMES);
+        double renderTick = (double) (now - clockOffset) / tickNanos
+                - INTERPOLATION_SNAPSHOTS * snapshotInterval;
+
+        // Newest frame at or before the render time, and the one after it
+        EntityFrame from = frames[latest], to = from;
+        if (renderTick >= from.tick) {
+            // Nothing newer to move toward: hold the latest state
+            starvedSamples++;
+        } else {
+            for (int k = 1; k < available; k++) {
+                EntityFrame older = frames[(latest - k + FRAMES) % FRAMES];
+                to = from;
+                from = older;
+                if (older.tick <= renderTick) {
+                    break;
+                }
+            }
+        }
+        double alpha = to.tick == from.tick ? 1.0
+                : Math.max(0, Math.min(1, (renderTick - from.tick) / (to.tick - from.tick)));
+        fill(from, to, alpha, into);
+        return alpha;
+    }
+
+    /**
+     * Copies two frames into the before and after fields of a snapshot.
+     * Entities only in the newer frame do not move; animations are taken
+     * from the nearer frame.
+     */
+    private static void fill(EntityFrame from, EntityFrame to, double alpha, RenderSnapshot into) {
+        EntityFrame near = alpha < 0.5 ? from : to;
+        into.tick = to.tick;
+        into.publishNanos = System.nanoTime();
+        into.prevCameraX = from.cameraX;
+        into.prevCameraY = from.cameraY;
+        into.cameraX = to.cameraX;
+        into.cameraY = to.cameraY;
+
+        into.ensureCapacity(to.count);
+        int n = 0;
+        int j = 0;
+        for (int i = 0; i < to.count; i++) {
+            int id = to.id[i];
+            while (j < from.count && from.id[j] < id) {
+                j++;
+            }
+            int prev = j < from.count && from.id[j] == id ? j : -1;
+            int k = near == to ? i : near.indexOf(id);
+            int clip = k >= 0 ? near.clip[k] : to.clip[i];
+            int frame = k >= 0 ? near.frame[k] : to.frame[i];
+            if (id == EntityFrame.PLAYER_ID) {
+                into.playerX = to.x[i];
+                into.playerY = to.y[i];
+                into.playerPrevX = prev >= 0 ? from.x[prev] : to.x[i];
+                into.playerPrevY = prev >= 0 ? from.y[prev] : to.y[i];
+                into.playerClip = clip;
+                into.playerFrame = frame;
+                continue;
+            }
+            into.npcId[n] = id - 1;
+            into.npcX[n] = to.x[i];
+            into.npcY[n] = to.y[i];
+            into.npcPrevX[n] = prev >= 0 ? from.x[prev] : to.x[i];
+            into.npcPrevY[n] = prev >= 0 ? from.y[prev] : to.y[i];
+            into.npcClip[n] = clip;
+            into.npcFrame[n] = frame;
+            n++;
+        }
+        into.npcCount = n;
+        into.npcStore = null;
+    }
+
+    /**
+     * @return The latest decoded frame, or null before the first snapshot
+     */
+    public EntityFrame latestFrame() {
+        return latest < 0 ? null : frames[latest];
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    public long getSnapshots() {
+        return snapshots;
+    }
+
+    public long getFullSnapshots() {
+        return fullSnapshots;
+    }
+
+    public long getSamples() {
+        return samples;
+    }
+
+    /**
+     * @return Samples that found no newer snapshot to interpolate toward
+     */
+    public long getStarvedSamples() {
+        return starvedSamples;
+    }
+
+    /**
+     * Closes the connection.
+     */
+    public void close() {
+        key.cancel();
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+            // Closing anyway
+        }
+    }
+}
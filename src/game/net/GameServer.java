@@ -0,0 +1,502 @@
+package game.net;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import game.GameConfig;
+import game.InputRecorder;
+import game.KeyHandler;
+import game.World;
+import game.log.Log;
+import game.log.LogCategory;
+
+/**
+ * GameServer runs the authoritative simulation and streams its state to
+ * any number of clients over TCP.
+ *
+ * One thread does everything: it ticks the World at a fixed rate and, in
+ * between, waits on a non-blocking NIO selector for connections, input
+ * and sockets ready to take more output. After every snapshot tick (every
+ * tick by default, see -Dgame.net.sendEvery) it captures an
+ * {@link EntityFrame} and queues it to every client, delta-encoded against
+ * the last frame queued to that client. TCP delivers in order, so that
+ * frame is always the client's latest one and no acknowledgements are
+ * needed. Clients sharing a baseline (all the ones keeping up) share one
+ * encoding, so a tick costs one encode plus a copy per client.
+ *
+ * A client whose send buffer is full skips snapshots until it drains; its
+ * next one is diffed against its older baseline, or sent in full if that
+ * has left the history.
+ *
+ * There is one player: the client that sent input last controls it, the
+ * others watch.
+ *
+ * Usage:
+ * <pre>
+ *   java game.net.GameServer [--port P] [--bind host] [--npcs N] [--seconds S]
+ * </pre>
+ */
+public class GameServer implements Runnable {
+
+    // Frames kept as delta baselines; a client further behind gets a full frame
+    public static final int HISTORY = 64;
+    // Queued output per client; a client this far behind skips snapshots
+    static final int SEND_BUFFER = 256 * 1024;
+    static final int RECEIVE_BUFFER = 1024;
+    // Distinct baselines encoded per tick before encodings stop being shared
+    static final int ENCODINGS = 8;
+    // Seconds between two statistics log lines
+    static final int STATS_INTERVAL_SECONDS = 10;
+
+    public final World world;
+    private final KeyHandler keys;
+    public final int updatesPerSecond;
+    public final int snapshotInterval;
+
+    private final Selector selector;
+    private final ServerSocketChannel listener;
+    private final int port;
+    private final List<Connection> clients = new ArrayList<>();
+    private volatile boolean running = true;
+
+    // Input received since the last tick (-1 = none)
+    private int pendingInput = -1;
+
+    // Frames sent, by sequence number % HISTORY
+    private final EntityFrame[] history = new EntityFrame[HISTORY];
+    private long frameSeq = -1;
+    private final DeltaCodec codec = new DeltaCodec();
+    // Payloads encoded for the current frame, by the baseline sequence (-1 = full)
+    private final long[] encodedBase = new long[ENCODINGS];
+    private final ByteBuffer[] encoded = new ByteBuffer[ENCODINGS];
+    private int encodedCount;
+
+    // Statistics, written by the server thread
+    private final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+    private long ticks, snapshotTicks, clientSnapshots, fullSnapshots, skipped, bytesQueued;
+    private long cpuNanos, simNanos;
+    private int peakClients;
+    private volatile String stats = "net: not started";
+
+    /**
+     * One connected client.
+     */
+    static final class Connection {
+        final SocketChannel channel;
+        final SelectionKey key;
+        final ByteBuffer in = ByteBuffer.allocate(RECEIVE_BUFFER);
+        // Queued output, in write mode
+        final ByteBuffer out = ByteBuffer.allocate(SEND_BUFFER);
+        // Sequence of the last frame queued (-1 = none yet)
+        long baseSeq = -1;
+        boolean closed;
+
+        Connection(SocketChannel channel, SelectionKey key) {
+            this.channel = channel;
+            this.key = key;
+        }
+    }
+
+    /**
+     * Opens the listening socket.
+     *
+     * @param world The world to run (not ticked by anything else)
+     * @param keys Key state the world's player reads
+     * @param address Address to listen on (port 0 = any free port)
+     * @param updatesPerSecond Tick rate
+     * @param snapshotInterval Ticks between two snapshots
+     * @throws IOException if the socket cannot be opened
+     */
+    public GameServer(World world, KeyHandler keys, InetSocketAddress address,
+                      int updatesPerSecond, int snapshotInterval) throws IOException {
+        this.world = world;
+        this.keys = keys;
+        this.updatesPerSecond = updatesPerSecond;
+        this.snapshotInterval = Math.max(1, snapshotInterval);
+        for (int i = 0; i < HISTORY; i++) {
+            history[i] = new EntityFrame();
+        }
+        for (int i = 0; i < ENCODINGS; i++) {
+            encoded[i] = ByteBuffer.allocate(16 * 1024);
+        }
+        this.selector = Selector.open();
+        this.listener = ServerSocketChannel.open();
+        listener.bind(address);
+        listener.configureBlocking(false);
+        listener.register(selector, SelectionKey.OP_ACCEPT);
+        this.port = ((InetSocketAddress) listener.getLocalAddress()).getPort();
+        if (threadBean.isCurrentThreadCpuTimeSupported() && !threadBean.isThreadCpuTimeEnabled()) {
+            threadBean.setThreadCpuTimeEnabled(true);
+        }
+        Log.info(LogCategory.NET, "Server listening on {} ({} updates/s)", listener.getLocalAddress(), updatesPerSecond);
+    }
+
+    /**
+     * @return The port the server listens on
+     */
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * Runs the tick and network loop until {@link #stop()} is called.
+     */
+    @Override
+    public void run() {
+        long tickNanos = 1_000_000_000L / updatesPerSecond;
+        long nextTick = System.nanoTime();
+        long cpuStart = cpuTime();
+        long lastStats = nextTick;
+        try {
+            while (running) {
+                long wait = nextTick - System.nanoTime();
+                if (wait > 0) {
+                    selector.select(Math.max(1, wait / 1_000_000));
+                } else {
+                    selector.selectNow();
+                }
+                handleSelected();
+
+                // Run the ticks that are due, dropping them if far behind (like GameLoop)
+                long now = System.nanoTime();
+                int updates = 0;
+                while (now - nextTick >= 0 && updates < GameConfig.MAX_CATCH_UP_UPDATES) {
+                    tick();
+                    nextTick += tickNanos;
+                    updates++;
+                }
+                if (now - nextTick >= 0) {
+                    nextTick = now + tickNanos;
+                }
+                cpuNanos = cpuTime() - cpuStart;
+
+                if (now - lastStats >= STATS_INTERVAL_SECONDS * 1_000_000_000L) {
+                    lastStats = now;
+                    Log.info(LogCategory.NET, "{}", stats);
+                }
+            }
+        } catch (IOException e) {
+            Log.error(LogCategory.NET, "Server loop failed", e);
+        } finally {
+            for (Connection c : new ArrayList<>(clients)) {
+                disconnect(c, null);
+            }
+            try {
+                listener.close();
+                selector.close();
+            } catch (IOException e) {
+                Log.warn(LogCategory.NET, "Closing the server failed", e);
+            }
+            stats = buildStatsLine();
+        }
+    }
+
+    /**
+     * Stops the loop; run() returns after closing all connections.
+     * Any thread.
+     */
+    public void stop() {
+        running = false;
+        selector.wakeup();
+    }
+
+    private void handleSelected() {
+        Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+        while (it.hasNext()) {
+            SelectionKey key = it.next();
+            it.remove();
+            if (!key.isValid()) {
+                continue;
+            }
+            if (key.isAcceptable()) {
+                accept();
+                continue;
+            }
+            Connection c = (Connection) key.attachment();
+            try {
+                if (key.isReadable()) {
+                    read(c);
+                }
+                if (!c.closed && key.isWritable()) {
+                    flush(c);
+                }
+            } catch (IOException | RuntimeException e) {
+                disconnect(c, e);
+            }
+        }
+    }
+
+    private void accept() {
+        SocketChannel channel = null;
+        Connection c = null;
+        try {
+            channel = listener.accept();
+            if (channel == null) {
+                return;
+            }
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+            c = new Connection(channel, key);
+            key.attach(c);
+            clients.add(c);
+            peakClients = Math.max(peakClients, clients.size());
+            writeWelcome(c.out);
+            flush(c);
+            Log.info(LogCategory.NET, "Client connected: {} ({} connected)", channel.getRemoteAddress(), clients.size());
+        } catch (IOException e) {
+            if (c != null) {
+                // Registered already: drop it from clients and cancel its key
+                disconnect(c, e);
+                return;
+            }
+            Log.warn(LogCategory.NET, "Accepting a client failed", e);
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                    // Already failing
+                }
+            }
+        }
+    }
+
+    private void writeWelcome(ByteBuffer out) {
+        ByteBuffer payload = ByteBuffer.allocate(64);
+        payload.put((byte) NetProtocol.WELCOME);
+        NetProtocol.writeVarInt(payload, NetProtocol.VERSION);
+        NetProtocol.writeVarInt(payload, updatesPerSecond);
+        NetProtocol.writeVarInt(payload, snapshotInterval);
+        NetProtocol.writeVarInt(payload, world.tileSize);
+        NetProtocol.writeVarInt(payload, world.mapManager.mapWidth);
+        NetProtocol.writeVarInt(payload, world.mapManager.mapHeight);
+        NetProtocol.writeVarLong(payload, world.tick);
+        payload.flip();
+        NetProtocol.writeFrame(out, payload);
+    }
+
+    /**
+     * Reads the client's messages. Only the latest input counts.
+     */
+    private void read(Connection c) throws IOException {
+        if (c.channel.read(c.in) < 0) {
+            disconnect(c, null);
+            return;
+        }
+        ByteBuffer in = c.in;
+        in.flip();
+        int length;
+        while ((length = NetProtocol.nextFrame(in)) >= 0) {
+            int end = in.position() + length;
+            int type = length > 0 ? in.get() : 0;
+            if (type == NetProtocol.INPUT && length >= 2) {
+                pendingInput = in.get() & 0xFF;
+            }
+            in.position(end);
+        }
+        in.compact();
+        if (!in.hasRemaining()) {
+            throw new IOException("Message larger than " + RECEIVE_BUFFER + " bytes");
+        }
+    }
+
+    /**
+     * Writes as much queued output as the socket takes, and asks to be told
+     * when it can take more if some is left.
+     */
+    private void flush(Connection c) throws IOException {
+        ByteBuffer out = c.out;
+        out.flip();
+        try {
+            c.channel.write(out);
+        } finally {
+            out.compact();
+        }
+        int ops = out.position() > 0 ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ;
+        if (c.key.interestOps() != ops) {
+            c.key.interestOps(ops);
+        }
+    }
+
+    private void disconnect(Connection c, Exception cause) {
+        if (c.closed) {
+            return;
+        }
+        c.closed = true;
+        clients.remove(c);
+        c.key.cancel();
+        try {
+            c.channel.close();
+        } catch (IOException ignored) {
+            // Closing anyway
+        }
+        if (cause != null) {
+            Log.warn(LogCategory.NET, "Client dropped: {}", cause.toString());
+        } else {
+            Log.info(LogCategory.NET, "Client disconnected ({} connected)", clients.size());
+        }
+    }
+
+    /**
+     * Applies the latest input, advances the world and sends the new state.
+     */
+    private void tick() {
+        long t = cpuTime();
+        if (pendingInput >= 0) {
+            InputRecorder.apply(pendingInput, keys);
+            pendingInput = -1;
+        }
+        world.update();
+        simNanos += cpuTime() - t;
+        ticks++;
+
+        if (world.tick % snapshotInterval == 0 && !clients.isEmpty()) {
+            frameSeq++;
+            EntityFrame frame = history[(int) (frameSeq % HISTORY)].capture(world);
+            encodedCount = 0;
+            snapshotTicks++;
+            for (int i = 0; i < clients.size(); i++) {
+                Connection c = clients.get(i);
+                try {
+                    send(c, frame);
+                } catch (IOException | RuntimeException e) {
+                    disconnect(c, e);
+                    i--;
+                }
+            }
+        }
+        if (ticks % updatesPerSecond == 0) {
+            stats = buildStatsLine();
+        }
+    }
+
+    private void send(Connection c, EntityFrame frame) throws IOException {
+        boolean delta = c.baseSeq >= 0 && frameSeq - c.baseSeq < HISTORY;
+        long baseSeq = delta ? c.baseSeq : -1;
+        ByteBuffer payload = encode(delta ? history[(int) (baseSeq % HISTORY)] : null, baseSeq, frame);
+        if (c.out.remaining() < NetProtocol.frameSize(payload.remaining())) {
+            skipped++;
+            return;
+        }
+        int before = c.out.position();
+        NetProtocol.writeFrame(c.out, payload);
+        bytesQueued += c.out.position() - before;
+        c.baseSeq = frameSeq;
+        clientSnapshots++;
+        if (!delta) {
+            fullSnapshots++;
+        }
+        flush(c);
+    }
+
+    /**
+     * @return The frame encoded against the baseline, shared with the
+     *         clients that have the same one (read mode, do not modify)
+     */
+    private ByteBuffer encode(EntityFrame base, long baseSeq, EntityFrame frame) {
+        for (int k = 0; k < encodedCount; k++) {
+            if (encodedBase[k] == baseSeq) {
+                return encoded[k];
+            }
+        }
+        int k = encodedCount < ENCODINGS ? encodedCount++ : ENCODINGS - 1;
+        encodedBase[k] = baseSeq;
+        while (true) {
+            ByteBuffer buffer = encoded[k];
+            buffer.clear();
+            try {
+                codec.encode(base, frame, buffer);
+                buffer.flip();
+                return buffer;
+            } catch (BufferOverflowException e) {
+                encoded[k] = ByteBuffer.allocate(buffer.capacity() * 2);
+            }
+        }
+    }
+
+    private long cpuTime() {
+        return threadBean.isCurrentThreadCpuTimeSupported() ? threadBean.getCurrentThreadCpuTime() : System.nanoTime();
+    }
+
+    /**
+     * @return The latest statistics line (any thread), such as
+     *         "net: 4 clients, 600 ticks, sim 120.0 us/tick, net 30.0 us/tick,
+     *         4.0 us and 40.0 bytes per client snapshot, 0 full, 0 skipped, ~3400 clients/core"
+     */
+    public String statsLine() {
+        return stats;
+    }
+
+    private String buildStatsLine() {
+        double simPerTick = ticks == 0 ? 0 : (double) simNanos / ticks;
+        double netPerTick = ticks == 0 ? 0 : (double) (cpuNanos - simNanos) / ticks;
+        // Network cost per client snapshot, all networking overhead included
+        double perClient = clientSnapshots == 0 ? 0 : (double) (cpuNanos - simNanos) / clientSnapshots;
+        double bytesPerClient = clientSnapshots == 0 ? 0 : (double) bytesQueued / clientSnapshots;
+        // Clients one core could serve: the time left by the simulation over the cost of one client
+        double snapshotsPerSecond = (double) updatesPerSecond / snapshotInterval;
+        long perCore = perClient == 0 ? 0
+                : (long) Math.max(0, (1e9 - simPerTick * updatesPerSecond) / (perClient * snapshotsPerSecond));
+        return String.format("net: %d clients (peak %d), %d ticks, sim %.1f us/tick, net %.1f us/tick, "
+                        + "%.2f us and %.1f bytes per client snapshot, %d snapshots (%d full, %d skipped), "
+                        + "~%d clients/core",
+                clients.size(), peakClients, ticks, simPerTick / 1e3, netPerTick / 1e3,
+                perClient / 1e3, bytesPerClient, clientSnapshots, fullSnapshots, skipped, perCore);
+    }
+
+    public static void main(String[] args) throws IOException {
+        System.setProperty("java.awt.headless", "true");
+
+        int port = GameConfig.NET_PORT;
+        String bind = null;
+        int npcs = GameConfig.NPC_COUNT;
+        long seconds = 0;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--port":    port = Integer.parseInt(args[++i]); break;
+                case "--bind":    bind = args[++i]; break;
+                case "--npcs":    npcs = Integer.parseInt(args[++i]); break;
+                case "--seconds": seconds = Long.parseLong(args[++i]); break;
+                default:
+                    System.err.println("Unknown option: " + args[i]);
+                    System.err.println("Usage: java game.net.GameServer [--port P] [--bind host] [--npcs N] [--seconds S]");
+                    System.exit(1);
+            }
+        }
+
+        KeyHandler keys = new KeyHandler();
+        World world = new World(keys, npcs);
+        InetAddress address = bind != null ? InetAddress.getByName(bind) : InetAddress.getLoopbackAddress();
+        GameServer server = new GameServer(world, keys, new InetSocketAddress(address, port),
+                GameConfig.UPDATES_PER_SECOND, GameConfig.NET_SNAPSHOT_INTERVAL);
+        if (seconds > 0) {
+            long millis = seconds * 1000;
+            Thread timer = new Thread(() -> {
+                try {
+                    Thread.sleep(millis);
+                } catch (InterruptedException ignored) {
+                    // Stop early
+                }
+                server.stop();
+            }, "Server Timer");
+            timer.setDaemon(true);
+            timer.start();
+        }
+        server.run();
+        Log.flush();
+        System.out.println(server.statsLine());
+    }
+}
@@ -0,0 +1,210 @@
+package game.net;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import game.GameConfig;
+import game.InputRecorder;
+import game.KeyHandler;
+import game.RandomWalkInput;
+import game.RenderSnapshot;
+import game.World;
+import game.log.Log;
+
+/**
+ * NetLoadTest connects many scripted headless clients to a game server on
+ * this machine and reports what the traffic costs: bytes per snapshot and
+ * per second for each client, how often interpolation ran out of
+ * snapshots, and the server's CPU time per tick with the number of clients
+ * one core could serve.
+ *
+ * All clients run on one selector thread. The first one drives the player
+ * with a seeded random walk; the others watch. The first few clients
+ * sample their interpolated state at the render rate, as a window would.
+ *
+ * Usage:
+ * <pre>
+ *   java game.net.NetLoadTest [--clients N] [--seconds S] [--npcs N] [--seed S]
+ *                             [--fps F] [--connect host:port]
+ * </pre>
+ * Without --connect a server runs in the same process on its own thread.
+ * Snapshots are sent every tick unless -Dgame.net.sendEvery=N is set.
+ */
+public class NetLoadTest {
+
+    // Clients that sample their interpolated state every frame
+    static final int SAMPLED_CLIENTS = 8;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        System.setProperty("java.awt.headless", "true");
+
+        int clientCount = 16;
+        long seconds = 10;
+        int npcs = GameConfig.NPC_COUNT;
+        long seed = 1;
+        int fps = 60;
+        String connect = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--clients": clientCount = Integer.parseInt(args[++i]); break;
+                case "--seconds": seconds = Long.parseLong(args[++i]); break;
+                case "--npcs":    npcs = Integer.parseInt(args[++i]); break;
+                case "--seed":    seed = Long.parseLong(args[++i]); break;
+                case "--fps":     fps = Integer.parseInt(args[++i]); break;
+                case "--connect": connect = args[++i]; break;
+                default:
+                    System.err.println("Unknown option: " + args[i]);
+                    System.err.println("Usage: java game.net.NetLoadTest [--clients N] [--seconds S] [--npcs N] [--seed S] [--fps F] [--connect host:port]");
+                    System.exit(1);
+            }
+        }
+
+        GameServer server = null;
+        Thread serverThread = null;
+        InetSocketAddress address;
+        if (connect != null) {
+            int colon = connect.lastIndexOf(':');
+            address = new InetSocketAddress(connect.substring(0, colon), Integer.parseInt(connect.substring(colon + 1)));
+        } else {
+            KeyHandler keys = new KeyHandler();
+            World world = new World(keys, npcs);
+            server = new GameServer(world, keys, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0),
+                    GameConfig.UPDATES_PER_SECOND, GameConfig.NET_SNAPSHOT_INTERVAL);
+            address = new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getPort());
+            serverThread = new Thread(server, "Game Server");
+            serverThread.start();
+        }
+
+        Selector selector = Selector.open();
+        List<GameClient> clients = new ArrayList<>();
+        for (int i = 0; i < clientCount; i++) {
+            clients.add(GameClient.open(address, selector));
+        }
+        GameClient driver = clients.get(0);
+        int sampled = Math.min(SAMPLED_CLIENTS, clientCount);
+        RenderSnapshot[] views = new RenderSnapshot[sampled];
+        for (int i = 0; i < sampled; i++) {
+            views[i] = new RenderSnapshot();
+        }
+
+        KeyHandler input = new KeyHandler();
+        RandomWalkInput walk = new RandomWalkInput(seed);
+        int lastMask = -1;
+        long tickNanos = 1_000_000_000L / GameConfig.UPDATES_PER_SECOND;
+        long frameNanos = 1_000_000_000L / Math.max(1, fps);
+        int failures = 0;
+        // Largest on-screen player step between two frames of the driving client
+        int lastPlayerX = Integer.MIN_VALUE, lastPlayerY = 0, maxStep = 0;
+
+        long start = System.nanoTime();
+        long end = start + seconds * 1_000_000_000L;
+        long nextFrame = start;
+        long now;
+        while ((now = System.nanoTime()) < end && !clients.isEmpty()) {
+            long wait = nextFrame - now;
+            if (wait > 0) {
+                selector.select(Math.max(1, wait / 1_000_000));
+            } else {
+                selector.selectNow();
+            }
+            now = System.nanoTime();
+            Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+            while (it.hasNext()) {
+                SelectionKey key = it.next();
+                it.remove();
+                GameClient client = (GameClient) key.attachment();
+                try {
+                    if (key.isValid() && key.isReadable()) {
+                        client.onReadable(now);
+                    }
+                    if (key.isValid() && key.isWritable()) {
+                        client.onWritable();
+                    }
+                } catch (IOException e) {
+                    System.err.println("Client failed: " + e);
+                    client.close();
+                    clients.remove(client);
+                    failures++;
+                }
+            }
+
+            if (now - nextFrame < 0) {
+                continue;
+            }
+            nextFrame = Math.max(nextFrame + frameNanos, now);
+
+            // Scripted input, sent whenever it changes
+            if (clients.contains(driver)) {
+                walk.apply((now - start) / tickNanos, input);
+                int mask = InputRecorder.mask(input);
+                if (mask != lastMask) {
+                    driver.sendInput(mask);
+                    lastMask = mask;
+                }
+            }
+
+            // Render-rate sampling
+            for (int i = 0; i < Math.min(sampled, clients.size()); i++) {
+                double alpha = clients.get(i).sample(now, views[i]);
+                if (i == 0 && alpha >= 0) {
+                    RenderSnapshot view = views[0];
+                    int px = RenderSnapshot.interpolate(view.playerPrevX, view.playerX, alpha);
+                    int py = RenderSnapshot.interpolate(view.playerPrevY, view.playerY, alpha);
+                    if (lastPlayerX != Integer.MIN_VALUE) {
+                        maxStep = Math.max(maxStep, Math.abs(px - lastPlayerX) + Math.abs(py - lastPlayerY));
+                    }
+                    lastPlayerX = px;
+                    lastPlayerY = py;
+                }
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+
+        for (GameClient client : clients) {
+            client.close();
+        }
+        selector.close();
+        if (server != null) {
+            server.stop();
+            serverThread.join();
+        }
+        Log.flush();
+
+        long bytes = 0, snapshots = 0, full = 0, samples = 0, starved = 0;
+        long minSnapshots = Long.MAX_VALUE;
+        for (GameClient client : clients) {
+            bytes += client.getBytesReceived();
+            snapshots += client.getSnapshots();
+            full += client.getFullSnapshots();
+            minSnapshots = Math.min(minSnapshots, client.getSnapshots());
+        }
+        for (int i = 0; i < Math.min(sampled, clients.size()); i++) {
+            samples += clients.get(i).getSamples();
+            starved += clients.get(i).getStarvedSamples();
+        }
+        int connected = clients.size();
+        double secondsRun = elapsed / 1e9;
+        System.out.printf("%d clients for %.1f s (%d failed), %d NPCs, %d updates/s, snapshot every %d tick(s)%n",
+                clientCount, secondsRun, failures, npcs, GameConfig.UPDATES_PER_SECOND, GameConfig.NET_SNAPSHOT_INTERVAL);
+        if (connected > 0) {
+            // Rates at the nominal snapshot rate: an embedded server was already ticking while clients connected
+            double perSnapshot = snapshots == 0 ? 0.0 : (double) bytes / snapshots;
+            double snapshotsPerSecond = (double) GameConfig.UPDATES_PER_SECOND / GameConfig.NET_SNAPSHOT_INTERVAL;
+            System.out.printf("Per client: %.1f bytes/snapshot, %.0f bytes/s at %.0f snapshots/s, %d snapshots (slowest client), %d full%n",
+                    perSnapshot, perSnapshot * snapshotsPerSecond, snapshotsPerSecond, minSnapshots, full);
+            System.out.printf("Interpolation: %d samples, %.2f%% without a newer snapshot, largest player step %d px/frame%n",
+                    samples, samples == 0 ? 0.0 : starved * 100.0 / samples, maxStep);
+        }
+        if (server != null) {
+            System.out.println(server.statsLine());
+        }
+        System.out.println("Cores: " + Runtime.getRuntime().availableProcessors()
+                + " (clients and server share them when run in one process)");
+    }
+}
@@ -0,0 +1,173 @@
+package game.net;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Wire format shared by {@link GameServer} and {@link GameClient}.
+ *
+ * Every message is a frame: its payload length as a varint, then the
+ * payload, whose first byte is the message type. Integers are varints
+ * (7 bits per byte, low bits first), signed values zigzag-encoded first so
+ * small negative deltas stay small.
+ *
+ * Server to client:
+ * <pre>
+ *   WELCOME   version, updates per second, ticks per snapshot, tile size,
+ *             map width, map height, current tick
+ *   SNAPSHOT  see {@link DeltaCodec}
+ * </pre>
+ * Client to server:
+ * <pre>
+ *   INPUT     one byte of held keys and buffered move (see game.InputRecorder.mask)
+ * </pre>
+ */
+public final class NetProtocol {
+
+    public static final int VERSION = 1;
+
+    // Message types
+    public static final int WELCOME = 1;
+    public static final int SNAPSHOT = 2;
+    public static final int INPUT = 3;
+
+    // Frames longer than this are a protocol error
+    public static final int MAX_FRAME = 1 << 20;
+
+    private NetProtocol() {
+    }
+
+    /**
+     * Writes an unsigned varint (1 to 5 bytes).
+     */
+    public static void writeVarInt(ByteBuffer out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    /**
+     * Writes an unsigned varint (1 to 10 bytes).
+     */
+    public static void writeVarLong(ByteBuffer out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    /**
+     * Writes a signed value as a zigzag varint.
+     */
+    public static void writeSigned(ByteBuffer out, int value) {
+        writeVarInt(out, (value << 1) ^ (value >> 31));
+    }
+
+    /**
+     * Reads an unsigned varint.
+     *
+     * @throws IllegalArgumentException if the varint is longer than 5 bytes
+     */
+    public static int readVarInt(ByteBuffer in) {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+
+    /**
+     * Reads an unsigned varint of up to 64 bits.
+     */
+    public static long readVarLong(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; shift < 70; shift += 7) {
+            int b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+
+    /**
+     * Reads a zigzag varint.
+     */
+    public static int readSigned(ByteBuffer in) {
+        int value = readVarInt(in);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * @return Number of bytes of a varint
+     */
+    public static int varIntSize(int value) {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    /**
+     * Appends a frame (length prefix and payload) to a buffer.
+     *
+     * @param out Buffer in write mode
+     * @param payload Payload between its position and limit (left unchanged)
+     */
+    public static void writeFrame(ByteBuffer out, ByteBuffer payload) {
+        writeVarInt(out, payload.remaining());
+        out.put(payload.duplicate());
+    }
+
+    /**
+     * @param payloadLength Payload size
+     * @return Size of the whole frame
+     */
+    public static int frameSize(int payloadLength) {
+        return varIntSize(payloadLength) + payloadLength;
+    }
+
+    /**
+     * Finds the next complete frame of a receive buffer.
+     *
+     * @param in Buffer in read mode; on success its position is moved to the
+     *           payload, else it is left unchanged
+     * @return Payload length, or -1 if the frame is not complete yet
+     * @throws IllegalArgumentException if the frame is malformed or too long
+     */
+    public static int nextFrame(ByteBuffer in) {
+        int start = in.position();
+        int length = 0;
+        for (int shift = 0; ; shift += 7) {
+            if (!in.hasRemaining()) {
+                in.position(start);
+                return -1;
+            }
+            if (shift >= 28) {
+                throw new IllegalArgumentException("Malformed frame length");
+            }
+            int b = in.get();
+            length |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                break;
+            }
+        }
+        if (length > MAX_FRAME) {
+            throw new IllegalArgumentException("Frame too long: " + length);
+        }
+        if (in.remaining() < length) {
+            in.position(start);
+            return -1;
+        }
+        return length;
+    }
+}
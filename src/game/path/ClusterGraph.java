@@ -0,0 +1,267 @@
+package game.path;
+
+import java.util.Arrays;
+
+import game.log.Log;
+import game.log.LogCategory;
+import game.map.CollisionMap;
+
+/**
+ * ClusterGraph is the abstraction used for long paths: the map is cut into
+ * square clusters, and every run of walkable tiles along a cluster border
+ * gets one entrance (two, at its ends, when the run is long). Entrances of
+ * the same cluster are linked by their walking distance inside it, and each
+ * entrance by one step to its twin across the border.
+ *
+ * A long search then walks a few thousand entrances instead of a million
+ * tiles, and only has to search tiles inside single clusters to turn the
+ * route into steps (see PathSearch.hierarchical).
+ *
+ * The graph follows the collision layer: when tiles change, the clusters
+ * containing them (and the neighbours sharing a changed border) are rebuilt
+ * and the cluster array is replaced as a whole, so searches running at the
+ * same time keep the consistent array they started with.
+ */
+public final class ClusterGraph implements CollisionMap.Listener {
+
+    // Border runs at least this long get an entrance at each end instead of one in the middle
+    static final int WIDE_ENTRANCE = 6;
+
+    public final CollisionMap map;
+    // Cluster side in tiles
+    public final int size;
+    public final int clusterCols, clusterRows;
+    // Most entrances one cluster can have (one per border tile), the stride of node ids
+    final int maxNodes;
+
+    private volatile Cluster[] clusters;
+    // Used to rebuild clusters (under the lock)
+    private final PathSearch builder = new PathSearch();
+    private long rebuilt;
+
+    /**
+     * Entrances of one cluster. Node id of entrance i: cluster * maxNodes + i.
+     */
+    static final class Cluster {
+        final int count;
+        // Tile index, column and row of each entrance
+        final int[] tiles, cols, rows;
+        // Tile across the border in each direction (up, down, left, right), -1 = none
+        final int[] links;
+        // Walking distance between entrances i and j at [i * count + j] (-1 = not connected inside the cluster)
+        final int[] dist;
+
+        Cluster(int count, int[] tiles, int mapCols, int[] links, int[] dist) {
+            this.count = count;
+            this.tiles = tiles;
+            this.cols = new int[count];
+            this.rows = new int[count];
+            for (int i = 0; i < count; i++) {
+                cols[i] = tiles[i] % mapCols;
+                rows[i] = tiles[i] / mapCols;
+            }
+            this.links = links;
+            this.dist = dist;
+        }
+
+        int indexOf(int tile) {
+            for (int i = 0; i < count; i++) {
+                if (tiles[i] == tile) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * Builds the graph for the whole map and starts following its changes.
+     *
+     * @param map Collision layer
+     * @param size Cluster side in tiles
+     */
+    public ClusterGraph(CollisionMap map, int size) {
+        this.map = map;
+        this.size = Math.max(2, size);
+        this.clusterCols = (map.cols + this.size - 1) / this.size;
+        this.clusterRows = (map.rows + this.size - 1) / this.size;
+        this.maxNodes = 4 * this.size;
+
+        long start = System.nanoTime();
+        Cluster[] built = new Cluster[clusterCols * clusterRows];
+        int entrances = 0;
+        synchronized (this) {
+            for (int i = 0; i < built.length; i++) {
+                built[i] = build(i);
+                entrances += built[i].count;
+            }
+            clusters = built;
+        }
+        map.addListener(this);
+        Log.info(LogCategory.PATH, "Path clusters built: {} clusters of {} tiles, {} entrances in {} ms",
+                built.length, this.size, entrances, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * @return The current clusters (never modified; replaced when the map changes)
+     */
+    Cluster[] clusters() {
+        return clusters;
+    }
+
+    /**
+     * @param tile Tile index
+     * @return Index of the cluster containing it
+     */
+    public int clusterOf(int tile) {
+        return (tile / map.cols / size) * clusterCols + (tile % map.cols) / size;
+    }
+
+    int originCol(int cluster) {
+        return (cluster % clusterCols) * size;
+    }
+
+    int originRow(int cluster) {
+        return (cluster / clusterCols) * size;
+    }
+
+    int width(int cluster) {
+        return Math.min(size, map.cols - originCol(cluster));
+    }
+
+    int height(int cluster) {
+        return Math.min(size, map.rows - originRow(cluster));
+    }
+
+    /**
+     * @return Number of clusters rebuilt because tiles changed
+     */
+    public synchronized long getRebuilt() {
+        return rebuilt;
+    }
+
+    /**
+     * Rebuilds the clusters touched by a change. A tile on a cluster border
+     * also changes the entrances of the cluster across it, so the range is
+     * widened by one tile.
+     */
+    @Override
+    public synchronized void tilesChanged(int minCol, int minRow, int maxCol, int maxRow) {
+        int fromX = Math.max(0, (minCol - 1) / size), toX = Math.min(clusterCols - 1, (maxCol + 1) / size);
+        int fromY = Math.max(0, (minRow - 1) / size), toY = Math.min(clusterRows - 1, (maxRow + 1) / size);
+        Cluster[] copy = Arrays.copyOf(clusters, clusters.length);
+        for (int cy = fromY; cy <= toY; cy++) {
+            for (int cx = fromX; cx <= toX; cx++) {
+                copy[cy * clusterCols + cx] = build(cy * clusterCols + cx);
+                rebuilt++;
+            }
+        }
+        clusters = copy;
+    }
+
+    /**
+     * Finds the entrances of a cluster and the distances between them.
+     */
+    private Cluster build(int index) {
+        int x0 = originCol(index), y0 = originRow(index);
+        int x1 = x0 + width(index), y1 = y0 + height(index);
+        int cols = map.cols;
+        int[] tiles = new int[maxNodes];
+        int[] links = new int[maxNodes * 4];
+        Arrays.fill(links, -1);
+        int[] along = new int[size];
+        int count = 0;
+
+        // Up: border with the cluster above
+        if (y0 > 0) {
+            int n = entrances(false, y0 - 1, x0, x1, along);
+            for (int i = 0; i < n; i++) {
+                count = addEntrance(tiles, links, count, y0 * cols + along[i], 0, (y0 - 1) * cols + along[i]);
+            }
+        }
+        // Down
+        if (y1 < map.rows) {
+            int n = entrances(false, y1 - 1, x0, x1, along);
+            for (int i = 0; i < n; i++) {
+                count = addEntrance(tiles, links, count, (y1 - 1) * cols + along[i], 1, y1 * cols + along[i]);
+            }
+        }
+        // Left
+        if (x0 > 0) {
+            int n = entrances(true, x0 - 1, y0, y1, along);
+            for (int i = 0; i < n; i++) {
+                count = addEntrance(tiles, links, count, along[i] * cols + x0, 2, along[i] * cols + x0 - 1);
+            }
+        }
+        // Right
+        if (x1 < cols) {
+            int n = entrances(true, x1 - 1, y0, y1, along);
+            for (int i = 0; i < n; i++) {
+                count = addEntrance(tiles, links, count, along[i] * cols + x1 - 1, 3, along[i] * cols + x1);
+            }
+        }
+
+        int[] dist = new int[count * count];
+        for (int i = 0; i < count; i++) {
+            builder.distances(map, x0, y0, x1 - x0, y1 - y0, tiles[i], tiles, count, dist, i * count);
+        }
+        return new Cluster(count, Arrays.copyOf(tiles, count), cols, Arrays.copyOf(links, count * 4), dist);
+    }
+
+    /**
+     * Adds an entrance, merging it with an existing one on the same tile (a
+     * corner tile can be an entrance on two borders).
+     */
+    private static int addEntrance(int[] tiles, int[] links, int count, int tile, int dir, int across) {
+        int i = 0;
+        while (i < count && tiles[i] != tile) {
+            i++;
+        }
+        if (i == count) {
+            tiles[count++] = tile;
+        }
+        links[i * 4 + dir] = across;
+        return count;
+    }
+
+    /**
+     * Places the entrances along one border. The same border is computed
+     * from both sides, so the result must only depend on the border itself.
+     *
+     * @param vertical true for the border between columns line and line + 1,
+     *                 false for the one between rows line and line + 1
+     * @param line Column or row on the first side of the border
+     * @param from First row (vertical) or column of the border
+     * @param to End of the border (exclusive)
+     * @param along Receives the row or column of each entrance
+     * @return Number of entrances
+     */
+    private int entrances(boolean vertical, int line, int from, int to, int[] along) {
+        int count = 0;
+        int p = from;
+        while (p < to) {
+            if (!open(vertical, line, p)) {
+                p++;
+                continue;
+            }
+            int first = p;
+            while (p < to && open(vertical, line, p)) {
+                p++;
+            }
+            int last = p - 1;
+            if (last - first + 1 >= WIDE_ENTRANCE) {
+                along[count++] = first;
+                along[count++] = last;
+            } else {
+                along[count++] = (first + last) / 2;
+            }
+        }
+        return count;
+    }
+
+    private boolean open(boolean vertical, int line, int p) {
+        return vertical
+                ? !map.isBlocked(line, p) && !map.isBlocked(line + 1, p)
+                : !map.isBlocked(p, line) && !map.isBlocked(p, line + 1);
+    }
+}
@@ -0,0 +1,100 @@
+package game.path;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Size-bounded LRU cache of solved paths, keyed by start and goal tile.
+ * Unreachable goals are cached too, so repeated hopeless requests stay cheap.
+ *
+ * Every entry remembers the collision layer version it was solved against;
+ * once tiles change, older entries count as stale and are dropped when
+ * looked up. Accessed from the game thread and the path workers, so all
+ * access is synchronized.
+ */
+class PathCache {
+
+    /**
+     * A cached result: the path, or null if the goal was unreachable.
+     */
+    static final class Entry {
+        final long version;
+        final TilePath path;
+
+        Entry(long version, TilePath path) {
+            this.version = version;
+            this.path = path;
+        }
+    }
+
+    private final int capacity;
+    private final LinkedHashMap<Long, Entry> paths;
+
+    private long hits, misses, stale;
+
+    /**
+     * @param capacity Maximum number of paths kept (0 = cache nothing)
+     */
+    PathCache(int capacity) {
+        this.capacity = Math.max(0, capacity);
+        // Access order: iteration starts at the least recently used path
+        this.paths = new LinkedHashMap<Long, Entry>(Math.max(16, this.capacity * 4 / 3 + 1), 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+                return size() > PathCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * @param start Start tile index
+     * @param goal Goal tile index
+     * @return The cache key of a request
+     */
+    static long key(int start, int goal) {
+        return ((long) start << 32) | (goal & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Looks up a path solved against the given layer version.
+     *
+     * @param key Request key
+     * @param version Current collision layer version
+     * @return The entry, or null on a miss
+     */
+    synchronized Entry get(long key, long version) {
+        Entry entry = paths.get(key);
+        if (entry != null && entry.version != version) {
+            paths.remove(key);
+            stale++;
+            entry = null;
+        }
+        if (entry != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return entry;
+    }
+
+    /**
+     * Stores a result, evicting the least recently used one if the cache is full.
+     *
+     * @param key Request key
+     * @param version Collision layer version the path was solved against
+     * @param path The path, or null if there is none
+     */
+    synchronized void put(long key, long version, TilePath path) {
+        if (capacity > 0) {
+            paths.put(key, new Entry(version, path));
+        }
+    }
+
+    /**
+     * @return A single line such as "cache: 900/4096, hits: 1200, misses: 950, stale: 12"
+     */
+    synchronized String statsLine() {
+        return "cache: " + paths.size() + "/" + capacity + ", hits: " + hits
+                + ", misses: " + misses + ", stale: " + stale;
+    }
+}
@@ -0,0 +1,441 @@
+package game.path;
+
+import java.util.Arrays;
+
+import game.map.CollisionMap;
+
+/**
+ * PathSearch is the working memory of one searching thread: A* on the tile
+ * grid, breadth-first distances inside a cluster, and A* on the cluster
+ * graph of {@link ClusterGraph}.
+ *
+ * Everything is kept in primitive arrays that are reused from one search to
+ * the next: the open set is a bucket queue indexed by f (costs are whole
+ * steps, so popping the best node never needs a heap), and instead of
+ * clearing the cost and closed arrays every search gets a new stamp (a node
+ * whose mark is older than the stamp was not reached yet).
+ * Grid searches run inside a rectangle of the map (a cluster, or the whole
+ * map) and size their arrays to it.
+ *
+ * Not thread-safe: PathService keeps one per worker thread.
+ */
+public final class PathSearch {
+
+    // Neighbour offsets: up, down, left, right (Direction order)
+    static final int[] DX = {0, 0, -1, 1};
+    static final int[] DY = {-1, 1, 0, 0};
+    // The cluster graph search overestimates the remaining distance by
+    // h / 2^shift: entrance routes are approximate anyway, and this halves
+    // the entrances expanded for paths about 3% longer
+    static final int HEURISTIC_WEIGHT_SHIFT = 3;
+
+    // Grid search state, indexed by tile inside the searched rectangle
+    private int[] cost = new int[0];
+    private int[] parent = new int[0];
+    // mark == stamp: reached, mark == stamp + 1: closed
+    private int[] mark = new int[0];
+    private int[] queue = new int[0];
+    private int stamp;
+
+    // Cluster graph search state, indexed by node id (see ClusterGraph)
+    private int[] nodeCost = new int[0];
+    private int[] nodeParent = new int[0];
+    private int[] nodeMark = new int[0];
+    private int nodeStamp;
+    // Distances from the start and to the goal to the nodes of their clusters
+    private int[] startDist = new int[0];
+    private int[] goalDist = new int[0];
+
+    // Open set: a bucket queue, since all costs are integers. Bucket f holds
+    // a linked stack of entries (node, next); nodes improved later are pushed
+    // again and the outdated entries skipped when popped.
+    private int[] bucketHead = new int[0];
+    private int[] entryNode = new int[1024];
+    private int[] entryNext = new int[1024];
+    private int entries;
+    // Lowest possibly non-empty bucket, highest bucket used, open entries left
+    private int minF, maxF, openCount;
+
+    // Path being assembled by hierarchical()
+    private int[] out = new int[256];
+    private int outLength;
+
+    // Nodes expanded so far, by all searches
+    public long expanded;
+
+    /**
+     * A* inside a rectangle of the map, 4-connected, unit step cost.
+     *
+     * @param map Collision layer
+     * @param x0 First column of the rectangle
+     * @param y0 First row of the rectangle
+     * @param w Width of the rectangle in tiles
+     * @param h Height of the rectangle in tiles
+     * @param start Start tile index (row * cols + col), inside the rectangle
+     * @param goal Goal tile index, inside the rectangle
+     * @return Tile indices from start to goal, or null if the goal cannot be reached inside the rectangle
+     */
+    public int[] grid(CollisionMap map, int x0, int y0, int w, int h, int start, int goal) {
+        ensureGrid(w * h);
+        int open = nextStamp();
+        int closed = open + 1;
+        int cols = map.cols;
+        int goalCol = goal % cols - x0, goalRow = goal / cols - y0;
+        int first = (start / cols - y0) * w + (start % cols - x0);
+        int target = goalRow * w + goalCol;
+
+        clearOpen();
+        cost[first] = 0;
+        parent[first] = -1;
+        mark[first] = open;
+        push(Math.abs(first % w - goalCol) + Math.abs(first / w - goalRow), first);
+
+        while (openCount > 0) {
+            int current = pop();
+            if (mark[current] == closed) {
+                continue;
+            }
+            mark[current] = closed;
+            expanded++;
+            if (current == target) {
+                int length = 0;
+                for (int n = current; n != -1; n = parent[n]) {
+                    length++;
+                }
+                int[] tiles = new int[length];
+                for (int n = current; n != -1; n = parent[n]) {
+                    tiles[--length] = (y0 + n / w) * cols + x0 + n % w;
+                }
+                return tiles;
+            }
+            int col = current % w, row = current / w;
+            int g = cost[current] + 1;
+            for (int dir = 0; dir < 4; dir++) {
+                int c = col + DX[dir], r = row + DY[dir];
+                if (c < 0 || r < 0 || c >= w || r >= h) {
+                    continue;
+                }
+                int next = r * w + c;
+                // The heuristic is consistent, so closed tiles are final
+                if (mark[next] == closed || (mark[next] == open && cost[next] <= g)) {
+                    continue;
+                }
+                if (map.isBlocked(x0 + c, y0 + r)) {
+                    continue;
+                }
+                cost[next] = g;
+                parent[next] = current;
+                mark[next] = open;
+                push(g + Math.abs(c - goalCol) + Math.abs(r - goalRow), next);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Breadth-first walking distances from one tile to a set of tiles,
+     * staying inside a rectangle.
+     *
+     * @param map Collision layer
+     * @param x0 First column of the rectangle
+     * @param y0 First row of the rectangle
+     * @param w Width of the rectangle in tiles
+     * @param h Height of the rectangle in tiles
+     * @param start Start tile index, inside the rectangle
+     * @param targets Target tile indices, inside the rectangle
+     * @param count Number of targets
+     * @param distances Receives the distance to each target (-1 = unreachable)
+     * @param offset Index in distances of the first result
+     */
+    public void distances(CollisionMap map, int x0, int y0, int w, int h, int start,
+                          int[] targets, int count, int[] distances, int offset) {
+        ensureGrid(w * h);
+        int seen = nextStamp();
+        int cols = map.cols;
+        int first = (start / cols - y0) * w + (start % cols - x0);
+        cost[first] = 0;
+        mark[first] = seen;
+        queue[0] = first;
+        int head = 0, tail = 1;
+        while (head < tail) {
+            int current = queue[head++];
+            int col = current % w, row = current / w;
+            int g = cost[current] + 1;
+            for (int dir = 0; dir < 4; dir++) {
+                int c = col + DX[dir], r = row + DY[dir];
+                if (c < 0 || r < 0 || c >= w || r >= h) {
+                    continue;
+                }
+                int next = r * w + c;
+                if (mark[next] == seen || map.isBlocked(x0 + c, y0 + r)) {
+                    continue;
+                }
+                cost[next] = g;
+                mark[next] = seen;
+                queue[tail++] = next;
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            int local = (targets[i] / cols - y0) * w + (targets[i] % cols - x0);
+            distances[offset + i] = mark[local] == seen ? cost[local] : -1;
+        }
+    }
+
+    /**
+     * Hierarchical A*: finds a route through the cluster graph, then the
+     * tiles of each leg inside one cluster. Start and goal in the same
+     * cluster are first tried with a plain search inside that cluster.
+     *
+     * The result is close to, but not always exactly, the shortest path
+     * (entrances are fixed points on the cluster borders).
+     *
+     * @param graph Cluster abstraction of the map
+     * @param start Start tile index (walkable)
+     * @param goal Goal tile index (walkable)
+     * @return Tile indices from start to goal, or null if there is no path
+     */
+    public int[] hierarchical(ClusterGraph graph, int start, int goal) {
+        CollisionMap map = graph.map;
+        ClusterGraph.Cluster[] clusters = graph.clusters();
+        int startCluster = graph.clusterOf(start);
+        int goalCluster = graph.clusterOf(goal);
+        if (startCluster == goalCluster) {
+            int[] local = gridInCluster(graph, startCluster, start, goal);
+            if (local != null) {
+                return local;
+            }
+        }
+
+        // Connect the start and the goal to the entrances of their clusters
+        ClusterGraph.Cluster from = clusters[startCluster];
+        ClusterGraph.Cluster to = clusters[goalCluster];
+        if (startDist.length < graph.maxNodes) {
+            startDist = new int[graph.maxNodes];
+            goalDist = new int[graph.maxNodes];
+        }
+        distancesInCluster(graph, startCluster, start, from, startDist);
+        distancesInCluster(graph, goalCluster, goal, to, goalDist);
+
+        // A* over the entrances; two extra node ids stand for the start and the goal
+        int startNode = clusters.length * graph.maxNodes;
+        int goalNode = startNode + 1;
+        ensureNodes(goalNode + 1);
+        int open = nextNodeStamp();
+        int closed = open + 1;
+        int cols = map.cols;
+        int goalCol = goal % cols, goalRow = goal / cols;
+
+        clearOpen();
+        nodeCost[startNode] = 0;
+        nodeParent[startNode] = -1;
+        nodeMark[startNode] = open;
+        push(0, startNode);
+        boolean found = false;
+        while (openCount > 0) {
+            int current = pop();
+            if (nodeMark[current] == closed) {
+                continue;
+            }
+            nodeMark[current] = closed;
+            expanded++;
+            if (current == goalNode) {
+                found = true;
+                break;
+            }
+            int g = nodeCost[current];
+            if (current == startNode) {
+                for (int i = 0; i < from.count; i++) {
+                    if (startDist[i] >= 0) {
+                        relax(startCluster * graph.maxNodes + i, current, startDist[i], from.cols[i], from.rows[i], goalCol, goalRow);
+                    }
+                }
+                continue;
+            }
+            int cluster = current / graph.maxNodes;
+            int i = current % graph.maxNodes;
+            ClusterGraph.Cluster c = clusters[cluster];
+            if (cluster == goalCluster && goalDist[i] >= 0) {
+                relax(goalNode, current, g + goalDist[i], goalCol, goalRow, goalCol, goalRow);
+            }
+            // Other entrances of the same cluster
+            int row = i * c.count;
+            for (int j = 0; j < c.count; j++) {
+                int d = c.dist[row + j];
+                if (d > 0) {
+                    relax(cluster * graph.maxNodes + j, current, g + d, c.cols[j], c.rows[j], goalCol, goalRow);
+                }
+            }
+            // One step across the border into the neighbouring cluster
+            for (int dir = 0; dir < 4; dir++) {
+                int tile = c.links[i * 4 + dir];
+                if (tile < 0) {
+                    continue;
+                }
+                int neighbour = cluster + DY[dir] * graph.clusterCols + DX[dir];
+                ClusterGraph.Cluster across = clusters[neighbour];
+                int k = across.indexOf(tile);
+                if (k >= 0) {
+                    relax(neighbour * graph.maxNodes + k, current, g + 1, across.cols[k], across.rows[k], goalCol, goalRow);
+                }
+            }
+        }
+        if (!found) {
+            return null;
+        }
+
+        // Refine: walk the node chain back to the start, then search each leg
+        int legs = 0;
+        for (int n = goalNode; n != -1; n = nodeParent[n]) {
+            legs++;
+        }
+        int[] waypoints = new int[legs];
+        for (int n = goalNode; n != -1; n = nodeParent[n]) {
+            int tile;
+            if (n == goalNode) {
+                tile = goal;
+            } else if (n == startNode) {
+                tile = start;
+            } else {
+                tile = clusters[n / graph.maxNodes].tiles[n % graph.maxNodes];
+            }
+            waypoints[--legs] = tile;
+        }
+        outLength = 0;
+        append(start);
+        for (int w = 1; w < waypoints.length; w++) {
+            int a = waypoints[w - 1], b = waypoints[w];
+            if (a == b) {
+                continue;
+            }
+            int cluster = graph.clusterOf(a);
+            if (cluster != graph.clusterOf(b)) {
+                // Border crossing: adjacent tiles
+                append(b);
+                continue;
+            }
+            int[] leg = gridInCluster(graph, cluster, a, b);
+            if (leg == null) {
+                // The map changed under the search
+                return null;
+            }
+            for (int t = 1; t < leg.length; t++) {
+                append(leg[t]);
+            }
+        }
+        return Arrays.copyOf(out, outLength);
+    }
+
+    private int[] gridInCluster(ClusterGraph graph, int cluster, int start, int goal) {
+        return grid(graph.map, graph.originCol(cluster), graph.originRow(cluster),
+                graph.width(cluster), graph.height(cluster), start, goal);
+    }
+
+    private void distancesInCluster(ClusterGraph graph, int cluster, int tile, ClusterGraph.Cluster c, int[] result) {
+        distances(graph.map, graph.originCol(cluster), graph.originRow(cluster),
+                graph.width(cluster), graph.height(cluster), tile, c.tiles, c.count, result, 0);
+    }
+
+    private void relax(int node, int from, int g, int col, int row, int goalCol, int goalRow) {
+        int mark = nodeMark[node];
+        if (mark == nodeStamp + 1 || (mark == nodeStamp && nodeCost[node] <= g)) {
+            return;
+        }
+        nodeCost[node] = g;
+        nodeParent[node] = from;
+        nodeMark[node] = nodeStamp;
+        int h = Math.abs(col - goalCol) + Math.abs(row - goalRow);
+        push(g + h + (h >> HEURISTIC_WEIGHT_SHIFT), node);
+    }
+
+    private void append(int tile) {
+        if (outLength == out.length) {
+            out = Arrays.copyOf(out, outLength * 2);
+        }
+        out[outLength++] = tile;
+    }
+
+    private void clearOpen() {
+        for (int f = 0; f <= maxF && f < bucketHead.length; f++) {
+            bucketHead[f] = -1;
+        }
+        entries = 0;
+        openCount = 0;
+        minF = Integer.MAX_VALUE;
+        maxF = 0;
+    }
+
+    private void push(int f, int node) {
+        if (f >= bucketHead.length) {
+            int old = bucketHead.length;
+            bucketHead = Arrays.copyOf(bucketHead, Math.max(f + 1, old * 2));
+            Arrays.fill(bucketHead, old, bucketHead.length, -1);
+        }
+        if (entries == entryNode.length) {
+            entryNode = Arrays.copyOf(entryNode, entries * 2);
+            entryNext = Arrays.copyOf(entryNext, entries * 2);
+        }
+        int e = entries++;
+        entryNode[e] = node;
+        entryNext[e] = bucketHead[f];
+        bucketHead[f] = e;
+        if (f < minF) {
+            minF = f;
+        }
+        if (f > maxF) {
+            maxF = f;
+        }
+        openCount++;
+    }
+
+    /**
+     * Pops the most recently pushed node of the lowest f. Taking the newest
+     * one first breaks ties towards the nodes deepest into the search, which
+     * keeps straight runs from fanning out.
+     */
+    private int pop() {
+        while (bucketHead[minF] == -1) {
+            minF++;
+        }
+        int e = bucketHead[minF];
+        bucketHead[minF] = entryNext[e];
+        openCount--;
+        return entryNode[e];
+    }
+
+    private void ensureGrid(int size) {
+        if (cost.length < size) {
+            cost = new int[size];
+            parent = new int[size];
+            mark = new int[size];
+            queue = new int[size];
+            stamp = 0;
+        }
+    }
+
+    private void ensureNodes(int size) {
+        if (nodeCost.length < size) {
+            nodeCost = new int[size];
+            nodeParent = new int[size];
+            nodeMark = new int[size];
+            nodeStamp = 0;
+        }
+    }
+
+    private int nextStamp() {
+        if (stamp >= Integer.MAX_VALUE - 2) {
+            Arrays.fill(mark, 0);
+            stamp = 0;
+        }
+        stamp += 2;
+        return stamp;
+    }
+
+    private int nextNodeStamp() {
+        if (nodeStamp >= Integer.MAX_VALUE - 2) {
+            Arrays.fill(nodeMark, 0);
+            nodeStamp = 0;
+        }
+        nodeStamp += 2;
+        return nodeStamp;
+    }
+}
@@ -0,0 +1,186 @@
+package game.path;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import game.map.CollisionMap;
+
+/**
+ * PathService finds walking paths between tiles of the collision layer.
+ *
+ * Searches use hierarchical A* over a {@link ClusterGraph} (plain A* inside
+ * one cluster), so a path across a 1024x1024 map costs about as much as a
+ * few short ones. Results are kept in an LRU {@link PathCache} that drops
+ * entries once the layer changes.
+ *
+ * Paths can be found synchronously with {@link #find}, or requested with
+ * {@link #request}: requests are solved on a small pool of worker threads,
+ * each with its own {@link PathSearch}, so the many requests of a tick are
+ * solved in parallel without slowing the game thread down. Identical
+ * requests in flight at the same time share one search.
+ */
+public class PathService {
+
+    public final CollisionMap map;
+    public final ClusterGraph graph;
+    private final PathCache cache;
+    private final int threads;
+
+    // Search memory of each thread that solves paths
+    private final ThreadLocal<PathSearch> searches = ThreadLocal.withInitial(PathSearch::new);
+    // Requests being solved, by cache key
+    private final ConcurrentHashMap<Long, CompletableFuture<TilePath>> inFlight = new ConcurrentHashMap<>();
+    // Started on the first request
+    private ExecutorService executor;
+
+    // Searches run (cache misses) and the time they took
+    private final AtomicLong solved = new AtomicLong();
+    private final AtomicLong solveNanos = new AtomicLong();
+
+    /**
+     * Builds the cluster graph of a collision layer.
+     *
+     * @param map Collision layer (followed as it changes)
+     * @param clusterSize Cluster side in tiles
+     * @param threads Number of worker threads for requests
+     * @param cacheCapacity Paths kept in the cache (0 = no caching)
+     */
+    public PathService(CollisionMap map, int clusterSize, int threads, int cacheCapacity) {
+        this.map = map;
+        this.graph = new ClusterGraph(map, clusterSize);
+        this.cache = new PathCache(cacheCapacity);
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Finds a path on the calling thread, using the cache.
+     *
+     * @param startCol Start column
+     * @param startRow Start row
+     * @param goalCol Goal column
+     * @param goalRow Goal row
+     * @return The path, or null if either tile is blocked or the goal is unreachable
+     */
+    public TilePath find(int startCol, int startRow, int goalCol, int goalRow) {
+        if (map.isBlocked(startCol, startRow) || map.isBlocked(goalCol, goalRow)) {
+            return null;
+        }
+        int start = startRow * map.cols + startCol;
+        int goal = goalRow * map.cols + goalCol;
+        long key = PathCache.key(start, goal);
+        PathCache.Entry cached = cache.get(key, map.version());
+        return cached != null ? cached.path : solveAndCache(key, start, goal);
+    }
+
+    /**
+     * Requests a path, solved on a worker thread unless it is cached.
+     *
+     * @param startCol Start column
+     * @param startRow Start row
+     * @param goalCol Goal column
+     * @param goalRow Goal row
+     * @return The pending path (completes with null if there is none)
+     */
+    public CompletableFuture<TilePath> request(int startCol, int startRow, int goalCol, int goalRow) {
+        if (map.isBlocked(startCol, startRow) || map.isBlocked(goalCol, goalRow)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        int start = startRow * map.cols + startCol;
+        int goal = goalRow * map.cols + goalCol;
+        long key = PathCache.key(start, goal);
+        PathCache.Entry cached = cache.get(key, map.version());
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached.path);
+        }
+        CompletableFuture<TilePath> future = new CompletableFuture<>();
+        CompletableFuture<TilePath> running = inFlight.putIfAbsent(key, future);
+        if (running != null) {
+            return running;
+        }
+        executor().execute(() -> {
+            try {
+                TilePath path = solveAndCache(key, start, goal);
+                // Leave the in-flight map first, so no later request joins a finished search
+                inFlight.remove(key, future);
+                future.complete(path);
+            } catch (RuntimeException | Error e) {
+                inFlight.remove(key, future);
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    private TilePath solveAndCache(long key, int start, int goal) {
+        // Read the version first: a change during the search makes the entry stale, never wrong
+        long version = map.version();
+        TilePath path = solve(start, goal);
+        cache.put(key, version, path);
+        return path;
+    }
+
+    /**
+     * Runs a hierarchical search on the calling thread, bypassing the cache.
+     *
+     * @param start Start tile index (row * cols + col), walkable
+     * @param goal Goal tile index, walkable
+     * @return The path, or null if there is none
+     */
+    public TilePath solve(int start, int goal) {
+        long t = System.nanoTime();
+        int[] tiles = searches.get().hierarchical(graph, start, goal);
+        solveNanos.addAndGet(System.nanoTime() - t);
+        solved.incrementAndGet();
+        return tiles != null ? new TilePath(tiles, map.cols) : null;
+    }
+
+    /**
+     * Runs plain A* over the whole map on the calling thread (the exact
+     * shortest path; mainly to compare against the hierarchical search).
+     *
+     * @param start Start tile index, walkable
+     * @param goal Goal tile index, walkable
+     * @return The path, or null if there is none
+     */
+    public TilePath solveDirect(int start, int goal) {
+        int[] tiles = searches.get().grid(map, 0, 0, map.cols, map.rows, start, goal);
+        return tiles != null ? new TilePath(tiles, map.cols) : null;
+    }
+
+    private synchronized ExecutorService executor() {
+        if (executor == null) {
+            AtomicInteger index = new AtomicInteger();
+            executor = Executors.newFixedThreadPool(threads, runnable -> {
+                Thread thread = new Thread(runnable, "Path Worker-" + index.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return executor;
+    }
+
+    /**
+     * Stops the worker threads and stops following the collision layer.
+     * Requests still queued are not solved.
+     */
+    public synchronized void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+        map.removeListener(graph);
+    }
+
+    /**
+     * @return A single line such as "paths: 950 solved (avg 41.0 us), cache: 900/4096, hits: ..."
+     */
+    public String statsLine() {
+        long count = solved.get();
+        return String.format("paths: %d solved (avg %.1f us), %s, clusters rebuilt: %d",
+                count, count == 0 ? 0.0 : solveNanos.get() / 1e3 / count, cache.statsLine(), graph.getRebuilt());
+    }
+}
@@ -0,0 +1,65 @@
+package game.path;
+
+/**
+ * TilePath is a found path: the tiles to walk through, from the start tile
+ * to the goal tile, each one a 4-neighbour of the previous one.
+ *
+ * Paths are immutable and may be shared (the path cache hands the same
+ * instance to every entity asking for the same start and goal).
+ */
+public final class TilePath {
+
+    // Tile indices (row * cols + col), start first
+    private final int[] tiles;
+    // Columns of the map the indices refer to
+    public final int cols;
+
+    TilePath(int[] tiles, int cols) {
+        this.tiles = tiles;
+        this.cols = cols;
+    }
+
+    /**
+     * @return Number of tiles, including the start and the goal
+     */
+    public int length() {
+        return tiles.length;
+    }
+
+    /**
+     * @return Number of steps to walk (length - 1)
+     */
+    public int cost() {
+        return tiles.length - 1;
+    }
+
+    /**
+     * @param i Position along the path (0 = start)
+     * @return Tile column
+     */
+    public int col(int i) {
+        return tiles[i] % cols;
+    }
+
+    /**
+     * @param i Position along the path (0 = start)
+     * @return Tile row
+     */
+    public int row(int i) {
+        return tiles[i] / cols;
+    }
+
+    /**
+     * @param i Position along the path (0 = start)
+     * @return Tile index (row * cols + col)
+     */
+    public int tile(int i) {
+        return tiles[i];
+    }
+
+    @Override
+    public String toString() {
+        return "TilePath[" + col(0) + "," + row(0) + " -> " + col(tiles.length - 1) + ","
+                + row(tiles.length - 1) + ", " + cost() + " steps]";
+    }
+}
@@ -0,0 +1,140 @@
+package game.save;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import game.World;
+import game.log.Log;
+import game.log.LogCategory;
+
+/**
+ * AutoSaver saves the game every few seconds without stalling the game
+ * thread: the game thread only copies the state into a {@link SaveState}
+ * (array copies, well under a millisecond even for large worlds); encoding,
+ * writing and forcing the file to disk happen on a background thread.
+ *
+ * Only one save is in flight at a time. If the disk is so slow that the
+ * previous save is still being written when the next one is due, that one
+ * is skipped rather than queued, so the game thread never waits.
+ */
+public class AutoSaver {
+
+    private final Path path;
+    private final long intervalTicks;
+    // Reused for every save; owned by the writer while a save is in flight
+    private final SaveState state = new SaveState();
+    private final SaveFile file = new SaveFile();
+    private final ExecutorService writer;
+    private volatile Future<?> inFlight;
+
+    // Statistics (saves and skips counted on the game thread, the rest by the writer)
+    private long saves, skipped;
+    private volatile long lastCaptureNanos, lastWriteNanos, lastBytes;
+
+    /**
+     * @param path File to save to
+     * @param intervalTicks Ticks between two saves (0 = only explicit saves)
+     */
+    public AutoSaver(Path path, long intervalTicks) {
+        this.path = path;
+        this.intervalTicks = Math.max(0, intervalTicks);
+        this.writer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "Autosave");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Saves if a save is due. Call on the game thread after every update.
+     *
+     * @param world The world, between two updates
+     */
+    public void update(World world) {
+        if (intervalTicks > 0 && world.tick % intervalTicks == 0) {
+            save(world);
+        }
+    }
+
+    /**
+     * Copies the world's state and writes it in the background.
+     * Game thread only.
+     *
+     * @param world The world, between two updates
+     * @return false if skipped because the previous save is still being written
+     */
+    public boolean save(World world) {
+        Future<?> previous = inFlight;
+        if (previous != null && !previous.isDone()) {
+            skipped++;
+            Log.warn(LogCategory.SAVE, "Autosave skipped: the previous save is still being written");
+            return false;
+        }
+        long start = System.nanoTime();
+        state.capture(world);
+        lastCaptureNanos = System.nanoTime() - start;
+        saves++;
+        inFlight = writer.submit(this::write);
+        return true;
+    }
+
+    private void write() {
+        long start = System.nanoTime();
+        try {
+            lastBytes = file.write(state, path);
+            lastWriteNanos = System.nanoTime() - start;
+            Log.debug(LogCategory.SAVE, "Saved tick {} ({} bytes)", state.tick, lastBytes);
+        } catch (IOException | RuntimeException e) {
+            Log.error(LogCategory.SAVE, "Saving to " + path + " failed", e);
+        }
+    }
+
+    /**
+     * Saves now and waits until the file is on disk (when exiting). The game
+     * loop must be stopped first.
+     *
+     * @param world The world
+     * @throws IOException if writing fails
+     */
+    public void saveAndWait(World world) throws IOException {
+        waitForWriter();
+        long start = System.nanoTime();
+        state.capture(world);
+        lastCaptureNanos = System.nanoTime() - start;
+        saves++;
+        start = System.nanoTime();
+        lastBytes = file.write(state, path);
+        lastWriteNanos = System.nanoTime() - start;
+    }
+
+    private void waitForWriter() {
+        Future<?> previous = inFlight;
+        if (previous == null) {
+            return;
+        }
+        try {
+            previous.get(10, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            Log.warn(LogCategory.SAVE, "Waiting for the autosave failed", e);
+        }
+    }
+
+    /**
+     * Stops the writer thread after the save in flight, if any.
+     */
+    public void shutdown() {
+        writer.shutdown();
+    }
+
+    /**
+     * @return A single line such as "saves: 12 (0 skipped), last: 4297.4 KB, captured in 310 us, written in 14.0 ms"
+     */
+    public String statsLine() {
+        return String.format("saves: %d (%d skipped), last: %.1f KB, captured in %d us, written in %.1f ms",
+                saves, skipped, lastBytes / 1024.0, lastCaptureNanos / 1000, lastWriteNanos / 1e6);
+    }
+}
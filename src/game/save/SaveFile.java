@@ -0,0 +1,364 @@
+package game.save;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+import game.World;
+import game.entity.Direction;
+import game.log.Log;
+import game.log.LogCategory;
+
+/**
+ * Binary save file format, read and written through NIO file channels.
+ *
+ * Layout (little-endian):
+ * <pre>
+ *   int   magic "J2DS"
+ *   short format version
+ *   short reserved (0)
+ *   sections, each: int tag, int length in bytes, payload
+ *     WRLD  long tick, int cameraX, int cameraY
+ *     PLYR  int x, y, direction, clip, animTime, moving (0/1), pixelsMoved,
+ *           long clip table hash (see SaveState.clipTable; missing in older files)
+ *     NPCS  int count, then count ints each of x, y, vx, vy, stepLeft,
+ *           idleTicks, clip, animTime, animSet, seed, then count direction
+ *           bytes, padded to 4 bytes
+ *     COLL  int cols, int rows, then the tile bits as longs
+ *     FOGW  int cols, int rows, then one fog state byte per tile, padded to 4 bytes
+ *   int   CRC32 of everything before it
+ * </pre>
+ * Readers skip sections they do not know, so newer versions can add
+ * sections without breaking older files; a file with a higher format
+ * version than {@link #VERSION} is refused.
+ *
+ * Files are written to a temporary file, forced to disk and then moved
+ * over the old one, so a crash during a save leaves the previous save
+ * intact. Arrays are copied in bulk through int views of a direct buffer,
+ * which is kept for the next save, so one instance should be used by one
+ * thread at a time.
+ */
+public final class SaveFile {
+
+    public static final int MAGIC = 0x5344324A; // "J2DS" read as a little-endian int
+    public static final int VERSION = 1;
+
+    static final int WORLD = tag("WRLD");
+    static final int PLAYER = tag("PLYR");
+    static final int NPCS = tag("NPCS");
+    static final int COLLISION = tag("COLL");
+    static final int FOG = tag("FOGW");
+
+    // Bytes of the PLYR section, and of the section before the clip table hash was added
+    static final int PLAYER_BYTES = 36;
+    static final int PLAYER_BYTES_NO_CLIP_TABLE = 28;
+    // Ints per NPC in the NPCS section
+    static final int NPC_INTS = 10;
+
+    private ByteBuffer buffer = ByteBuffer.allocateDirect(0);
+    private final CRC32 crc = new CRC32();
+
+    private static int tag(String name) {
+        return name.charAt(0) | name.charAt(1) << 8 | name.charAt(2) << 16 | name.charAt(3) << 24;
+    }
+
+    /**
+     * @return Bytes a save of the given state takes
+     */
+    public static long size(SaveState state) {
+        long npcs = 4 + (long) state.npcCount * (NPC_INTS * 4) + ((state.npcCount + 3) & ~3);
+        long collision = state.collision != null ? 8 + 8L * state.collision.length : 0;
+        long fog = state.fogCols > 0 ? 8 + (((long) state.fogCols * state.fogRows + 3) & ~3) : 0;
+        return 8 + (8 + 16) + (8 + PLAYER_BYTES) + (8 + npcs) + (collision > 0 ? 8 + collision : 0)
+                + (fog > 0 ? 8 + fog : 0) + 4;
+    }
+
+    /**
+     * Writes a state to a file, replacing it atomically once the data is on disk.
+     *
+     * @param state State to save (not modified; must not change while writing)
+     * @param path File to write
+     * @return Bytes written
+     * @throws IOException if writing fails (the previous file is left as it was)
+     */
+    public long write(SaveState state, Path path) throws IOException {
+        long size = size(state);
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Save state too large: " + size + " bytes");
+        }
+        ByteBuffer out = buffer((int) size);
+
+        out.putInt(MAGIC).putShort((short) VERSION).putShort((short) 0);
+
+        out.putInt(WORLD).putInt(16);
+        out.putLong(state.tick).putInt(state.cameraX).putInt(state.cameraY);
+
+        out.putInt(PLAYER).putInt(PLAYER_BYTES);
+        out.putInt(state.playerX).putInt(state.playerY).putInt(state.playerDirection)
+                .putInt(state.playerClip).putInt(state.playerAnimTime)
+                .putInt(state.playerMoving ? 1 : 0).putInt(state.playerPixelsMoved)
+                .putLong(state.clipTable);
+
+        int n = state.npcCount;
+        int padded = (n + 3) & ~3;
+        out.putInt(NPCS).putInt(4 + n * NPC_INTS * 4 + padded);
+        out.putInt(n);
+        putInts(out, state.npcX, n);
+        putInts(out, state.npcY, n);
+        putInts(out, state.npcVx, n);
+        putInts(out, state.npcVy, n);
+        putInts(out, state.npcStepLeft, n);
+        putInts(out, state.npcIdleTicks, n);
+        putInts(out, state.npcClip, n);
+        putInts(out, state.npcAnimTime, n);
+        putInts(out, state.npcAnimSet, n);
+        putInts(out, state.npcSeed, n);
+        out.put(state.npcDirection, 0, n);
+        for (int i = n; i < padded; i++) {
+            out.put((byte) 0);
+        }
+
+        if (state.collision != null) {
+            long[] bits = state.collision;
+            out.putInt(COLLISION).putInt(8 + bits.length * 8);
+            out.putInt(state.collisionCols).putInt(state.collisionRows);
+            out.asLongBuffer().put(bits);
+            out.position(out.position() + bits.length * 8);
+        }
+
+        if (state.fogCols > 0) {
+            int tiles = state.fogCols * state.fogRows;
+            int fogPadded = (tiles + 3) & ~3;
+            out.putInt(FOG).putInt(8 + fogPadded);
+            out.putInt(state.fogCols).putInt(state.fogRows);
+            out.put(state.fog, 0, tiles);
+            for (int i = tiles; i < fogPadded; i++) {
+                out.put((byte) 0);
+            }
+        }
+
+        if (out.position() != size - 4) {
+            throw new IllegalStateException("Save size computed as " + size + ", wrote " + (out.position() + 4));
+        }
+        crc.reset();
+        out.flip();
+        crc.update(out.duplicate());
+        out.limit(out.capacity());
+        out.position((int) size - 4);
+        out.putInt((int) crc.getValue());
+        out.flip();
+
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+            // Data and size on disk before the new file replaces the old one
+            channel.force(true);
+        }
+        try {
+            Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+        return size;
+    }
+
+    /**
+     * Reads a save file.
+     *
+     * @param path File to read
+     * @param into State to fill (its arrays are reused)
+     * @return into
+     * @throws IOException if the file cannot be read, is damaged or was
+     *                     written by a newer version
+     */
+    public SaveState read(Path path, SaveState into) throws IOException {
+        ByteBuffer in;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < 12 || size > Integer.MAX_VALUE) {
+                throw new IOException(path + ": not a save file (" + size + " bytes)");
+            }
+            in = buffer((int) size);
+            while (in.hasRemaining()) {
+                if (channel.read(in) < 0) {
+                    throw new IOException(path + ": file shrank while reading");
+                }
+            }
+            in.flip();
+        }
+
+        int end = in.limit() - 4;
+        if (in.getInt(0) != MAGIC) {
+            throw new IOException(path + ": not a save file");
+        }
+        crc.reset();
+        ByteBuffer data = in.duplicate();
+        data.limit(end);
+        crc.update(data);
+        if ((int) crc.getValue() != in.getInt(end)) {
+            throw new IOException(path + ": save file is damaged (checksum mismatch)");
+        }
+        int version = in.getShort(4);
+        if (version > VERSION) {
+            throw new IOException(path + ": saved by a newer version (format " + version + ", this reads up to " + VERSION + ")");
+        }
+
+        in.position(8);
+        boolean world = false, player = false;
+        into.npcCount = 0;
+        into.collision = null;
+        into.collisionCols = into.collisionRows = 0;
+        into.fogCols = into.fogRows = 0;
+        while (in.position() < end) {
+            if (end - in.position() < 8) {
+                throw new IOException(path + ": truncated section header");
+            }
+            int tag = in.getInt();
+            int length = in.getInt();
+            int start = in.position();
+            if (length < 0 || length > end - start) {
+                throw new IOException(path + ": section length " + length + " out of bounds");
+            }
+            if (tag == WORLD) {
+                into.tick = in.getLong();
+                into.cameraX = in.getInt();
+                into.cameraY = in.getInt();
+                world = true;
+            } else if (tag == PLAYER) {
+                if (length < PLAYER_BYTES_NO_CLIP_TABLE) {
+                    throw new IOException(path + ": player section too short (" + length + " bytes)");
+                }
+                into.playerX = in.getInt();
+                into.playerY = in.getInt();
+                into.playerDirection = in.getInt();
+                into.playerClip = in.getInt();
+                into.playerAnimTime = in.getInt();
+                into.playerMoving = in.getInt() != 0;
+                into.playerPixelsMoved = in.getInt();
+                into.clipTable = length >= PLAYER_BYTES ? in.getLong() : 0;
+                if (into.playerDirection < 0 || into.playerDirection >= Direction.VALUES.length) {
+                    throw new IOException(path + ": bad player direction " + into.playerDirection);
+                }
+                player = true;
+            } else if (tag == NPCS) {
+                int n = in.getInt();
+                if (n < 0 || (long) n * (NPC_INTS * 4 + 1) > length - 4) {
+                    throw new IOException(path + ": bad NPC count " + n);
+                }
+                into.ensureCapacity(n);
+                getInts(in, into.npcX, n);
+                getInts(in, into.npcY, n);
+                getInts(in, into.npcVx, n);
+                getInts(in, into.npcVy, n);
+                getInts(in, into.npcStepLeft, n);
+                getInts(in, into.npcIdleTicks, n);
+                getInts(in, into.npcClip, n);
+                getInts(in, into.npcAnimTime, n);
+                getInts(in, into.npcAnimSet, n);
+                getInts(in, into.npcSeed, n);
+                in.get(into.npcDirection, 0, n);
+                for (int i = 0; i < n; i++) {
+                    if (into.npcDirection[i] < 0 || into.npcDirection[i] >= Direction.VALUES.length) {
+                        throw new IOException(path + ": bad direction " + into.npcDirection[i] + " of NPC " + i);
+                    }
+                }
+                into.npcCount = n;
+            } else if (tag == COLLISION) {
+                int cols = in.getInt();
+                int rows = in.getInt();
+                int longs = (length - 8) / 8;
+                if (cols < 0 || rows < 0 || longs != ((long) cols * rows + 63) >>> 6) {
+                    throw new IOException(path + ": bad collision layer size " + cols + "x" + rows);
+                }
+                long[] bits = new long[longs];
+                in.asLongBuffer().get(bits);
+                into.collision = bits;
+                into.collisionCols = cols;
+                into.collisionRows = rows;
+            } else if (tag == FOG) {
+                int cols = in.getInt();
+                int rows = in.getInt();
+                if (cols <= 0 || rows <= 0 || (long) cols * rows > length - 8) {
+                    throw new IOException(path + ": bad fog size " + cols + "x" + rows);
+                }
+                if (into.fog.length < cols * rows) {
+                    into.fog = new byte[cols * rows];
+                }
+                in.get(into.fog, 0, cols * rows);
+                into.fogCols = cols;
+                into.fogRows = rows;
+            }
+            // Unknown sections are skipped
+            in.position(start + length);
+        }
+        if (!world || !player) {
+            throw new IOException(path + ": missing " + (world ? "player" : "world") + " section");
+        }
+        return into;
+    }
+
+    /**
+     * Loads a save file into a world if the file exists. A damaged or
+     * incompatible file is reported and left alone, and the world stays as it was.
+     *
+     * @param path Save file
+     * @param world The world (before the game loop starts, or on the game thread)
+     * @return true if the save was loaded
+     */
+    public static boolean loadIfPresent(Path path, World world) {
+        if (!Files.exists(path)) {
+            return false;
+        }
+        long start = System.nanoTime();
+        SaveState state;
+        try {
+            state = new SaveFile().read(path, new SaveState());
+        } catch (IOException e) {
+            Log.warn(LogCategory.SAVE, "Ignoring save file: {}", e.getMessage());
+            return false;
+        }
+        long read = System.nanoTime();
+        try {
+            state.apply(world);
+        } catch (IllegalArgumentException e) {
+            Log.warn(LogCategory.SAVE, "Ignoring save file: {}", e.getMessage());
+            return false;
+        }
+        long end = System.nanoTime();
+        Log.info(LogCategory.SAVE, "Save loaded: tick {}, {} NPCs, read in {} us, applied in {} us",
+                state.tick, state.npcCount, (read - start) / 1000, (end - read) / 1000);
+        return true;
+    }
+
+    /**
+     * @return The reusable buffer, cleared, with room for the given number of bytes
+     */
+    private ByteBuffer buffer(int size) {
+        if (buffer.capacity() < size) {
+            buffer = ByteBuffer.allocateDirect(Math.max(size, buffer.capacity() + buffer.capacity() / 2));
+        }
+        buffer.clear().limit(size);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        return buffer;
+    }
+
+    private static void putInts(ByteBuffer out, int[] values, int count) {
+        out.asIntBuffer().put(values, 0, count);
+        out.position(out.position() + count * 4);
+    }
+
+    private static void getInts(ByteBuffer in, int[] values, int count) {
+        in.asIntBuffer().get(values, 0, count);
+        in.position(in.position() + count * 4);
+    }
+}
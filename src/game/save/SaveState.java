@@ -0,0 +1,251 @@
+package game.save;
+
+import java.util.Arrays;
+
+import game.World;
+import game.anim.AnimationSet;
+import game.anim.Animations;
+import game.entity.Direction;
+import game.entity.EntityStore;
+import game.entity.Player;
+import game.light.FogOfWar;
+import game.map.CollisionMap;
+
+/**
+ * SaveState is a copy of everything a saved game restores: the tick, the
+ * camera, the player, every NPC, the collision layer (which can change
+ * at runtime) and the tiles explored under the fog of war.
+ *
+ * Capturing only copies primitive arrays, so it can run on the game thread
+ * between two ticks; the copy is then written by {@link SaveFile} on any
+ * thread while the game goes on. The arrays are reused and only grow.
+ * The collision layer is copy-on-write already, so its current bits are
+ * kept as they are.
+ *
+ * Animation clips are saved as ids, together with a hash of the clip table
+ * they refer to. If the clip table changed since, every entity restarts the
+ * idle or walking clip of its animation set instead.
+ *
+ * NPC paths are not saved: seeking NPCs request new ones after loading.
+ */
+public final class SaveState {
+
+    public long tick;
+    public int cameraX, cameraY;
+
+    // Player, mid-step included
+    public int playerX, playerY;
+    public int playerDirection;
+    public int playerClip, playerAnimTime;
+    public boolean playerMoving;
+    public int playerPixelsMoved;
+    // Animations.tableHash() the clip ids refer to, 0 if unknown (older saves)
+    public long clipTable;
+
+    // NPCs, struct-of-arrays like EntityStore
+    public int npcCount;
+    public int[] npcX = new int[0], npcY = new int[0];
+    public int[] npcVx = new int[0], npcVy = new int[0];
+    public byte[] npcDirection = new byte[0];
+    public int[] npcStepLeft = new int[0], npcIdleTicks = new int[0];
+    public int[] npcClip = new int[0], npcAnimTime = new int[0], npcAnimSet = new int[0];
+    public int[] npcSeed = new int[0];
+
+    // Collision layer (see CollisionMap.bits), null if the world has none
+    public int collisionCols, collisionRows;
+    public long[] collision;
+
+    // Fog of war tiles (see FogOfWar.copyTiles), fogCols is 0 if the world has no fog
+    public int fogCols, fogRows;
+    public byte[] fog = new byte[0];
+
+    /**
+     * Copies the state of the world. Game thread only, between updates.
+     *
+     * @param world The world
+     * @return This state
+     */
+    public SaveState capture(World world) {
+        tick = world.tick;
+        cameraX = world.cameraX;
+        cameraY = world.cameraY;
+
+        Player player = world.player;
+        playerX = player.x;
+        playerY = player.y;
+        playerDirection = player.direction.ordinal();
+        playerClip = player.clip;
+        playerAnimTime = player.animTime;
+        playerMoving = player.isMoving();
+        playerPixelsMoved = player.getPixelsMoved();
+        clipTable = Animations.tableHash();
+
+        EntityStore npcs = world.npcs;
+        int n = npcs.count;
+        ensureCapacity(n);
+        System.arraycopy(npcs.x, 0, npcX, 0, n);
+        System.arraycopy(npcs.y, 0, npcY, 0, n);
+        System.arraycopy(npcs.vx, 0, npcVx, 0, n);
+        System.arraycopy(npcs.vy, 0, npcVy, 0, n);
+        System.arraycopy(npcs.direction, 0, npcDirection, 0, n);
+        System.arraycopy(npcs.stepLeft, 0, npcStepLeft, 0, n);
+        System.arraycopy(npcs.idleTicks, 0, npcIdleTicks, 0, n);
+        System.arraycopy(npcs.clip, 0, npcClip, 0, n);
+        System.arraycopy(npcs.animTime, 0, npcAnimTime, 0, n);
+        System.arraycopy(npcs.animSet, 0, npcAnimSet, 0, n);
+        System.arraycopy(npcs.seed, 0, npcSeed, 0, n);
+        npcCount = n;
+
+        CollisionMap map = world.collisionMap;
+        collision = map != null ? map.bits() : null;
+        collisionCols = map != null ? map.cols : 0;
+        collisionRows = map != null ? map.rows : 0;
+
+        FogOfWar fogOfWar = world.fog;
+        fogCols = fogOfWar != null ? fogOfWar.cols : 0;
+        fogRows = fogOfWar != null ? fogOfWar.rows : 0;
+        if (fog.length < fogCols * fogRows) {
+            fog = new byte[fogCols * fogRows];
+        }
+        if (fogOfWar != null) {
+            fogOfWar.copyTiles(fog);
+        }
+        return this;
+    }
+
+    /**
+     * Puts the saved state into a world: the player, camera and tick are
+     * set, the NPCs replaced. Game thread only, or before the game loop starts.
+     *
+     * @param world The world
+     * @throws IllegalArgumentException if the collision layer or the fog was
+     *                                  saved for a map of another size, or a
+     *                                  direction or animation id is out of range
+     */
+    public void apply(World world) {
+        // Clip ids only mean the same clips if the table did not change
+        boolean sameClips = clipTable == 0 || clipTable == Animations.tableHash();
+        validate(world, sameClips);
+
+        CollisionMap map = world.collisionMap;
+        if (collision != null && map != null && !Arrays.equals(collision, map.bits())) {
+            map.setBits(collision);
+        }
+        FogOfWar fogOfWar = world.fog;
+
+        world.tick = tick;
+        world.cameraX = world.prevCameraX = cameraX;
+        world.cameraY = world.prevCameraY = cameraY;
+
+        Player player = world.player;
+        player.x = player.prevX = playerX;
+        player.y = player.prevY = playerY;
+        player.direction = Direction.VALUES[playerDirection];
+        if (sameClips) {
+            player.clip = playerClip;
+            player.animTime = playerAnimTime;
+        } else {
+            AnimationSet animations = player.animations;
+            player.clip = playerMoving ? animations.walk(playerDirection) : animations.idle(playerDirection);
+            player.animTime = 0;
+        }
+        player.setMovement(playerMoving, playerPixelsMoved);
+
+        world.clearNpcs(npcCount);
+        EntityStore npcs = world.npcs;
+        int n = npcCount;
+        System.arraycopy(npcX, 0, npcs.x, 0, n);
+        System.arraycopy(npcY, 0, npcs.y, 0, n);
+        System.arraycopy(npcX, 0, npcs.prevX, 0, n);
+        System.arraycopy(npcY, 0, npcs.prevY, 0, n);
+        System.arraycopy(npcVx, 0, npcs.vx, 0, n);
+        System.arraycopy(npcVy, 0, npcs.vy, 0, n);
+        System.arraycopy(npcDirection, 0, npcs.direction, 0, n);
+        System.arraycopy(npcStepLeft, 0, npcs.stepLeft, 0, n);
+        System.arraycopy(npcIdleTicks, 0, npcs.idleTicks, 0, n);
+        System.arraycopy(npcClip, 0, npcs.clip, 0, n);
+        System.arraycopy(npcAnimTime, 0, npcs.animTime, 0, n);
+        System.arraycopy(npcAnimSet, 0, npcs.animSet, 0, n);
+        System.arraycopy(npcSeed, 0, npcs.seed, 0, n);
+        if (!sameClips) {
+            for (int i = 0; i < n; i++) {
+                npcs.clip[i] = Animations.set(npcAnimSet[i]).idle(npcDirection[i]);
+                npcs.animTime[i] = 0;
+            }
+        }
+        npcs.count = n;
+        world.npcGrid.sync(npcs);
+
+        if (fogCols > 0 && fogOfWar != null) {
+            fogOfWar.restore(fog);
+            world.updateFog();
+        }
+
+        // Stream the map in around the restored camera and show the result
+        world.mapManager.update(cameraX, cameraY, 0, 0);
+        world.publishSnapshot();
+    }
+
+    /**
+     * Checks the map sizes against the world and the directions and animation
+     * ids against this game's tables, before anything in the world is changed.
+     *
+     * @param world     The world the state is applied to
+     * @param sameClips Whether the clip ids refer to the current clip table
+     */
+    private void validate(World world, boolean sameClips) {
+        CollisionMap map = world.collisionMap;
+        if (collision != null && map != null && (collisionCols != map.cols || collisionRows != map.rows)) {
+            throw new IllegalArgumentException("Saved for a " + collisionCols + "x" + collisionRows
+                    + " tile map, this one is " + map.cols + "x" + map.rows);
+        }
+        FogOfWar fogOfWar = world.fog;
+        if (fogCols > 0 && fogOfWar != null && (fogCols != fogOfWar.cols || fogRows != fogOfWar.rows)) {
+            throw new IllegalArgumentException("Fog saved for a " + fogCols + "x" + fogRows
+                    + " tile map, this one is " + fogOfWar.cols + "x" + fogOfWar.rows);
+        }
+        int directions = Direction.VALUES.length;
+        int clips = Animations.clipCount();
+        int sets = Animations.setCount();
+        if (playerDirection < 0 || playerDirection >= directions) {
+            throw new IllegalArgumentException("Bad player direction " + playerDirection);
+        }
+        if (sameClips && (playerClip < 0 || playerClip >= clips)) {
+            throw new IllegalArgumentException("Bad player clip " + playerClip + " (" + clips + " clips)");
+        }
+        for (int i = 0; i < npcCount; i++) {
+            if (npcDirection[i] < 0 || npcDirection[i] >= directions) {
+                throw new IllegalArgumentException("Bad direction " + npcDirection[i] + " of NPC " + i);
+            }
+            if (npcAnimSet[i] < 0 || npcAnimSet[i] >= sets) {
+                throw new IllegalArgumentException("Bad animation set " + npcAnimSet[i] + " of NPC " + i
+                        + " (" + sets + " sets)");
+            }
+            if (sameClips && (npcClip[i] < 0 || npcClip[i] >= clips)) {
+                throw new IllegalArgumentException("Bad clip " + npcClip[i] + " of NPC " + i + " (" + clips + " clips)");
+            }
+        }
+    }
+
+    /**
+     * Grows the NPC arrays to hold at least the given number of NPCs.
+     * The content is not kept.
+     */
+    public void ensureCapacity(int count) {
+        if (npcX.length >= count) {
+            return;
+        }
+        int size = Math.max(count, npcX.length + npcX.length / 2);
+        npcX = new int[size];
+        npcY = new int[size];
+        npcVx = new int[size];
+        npcVy = new int[size];
+        npcDirection = new byte[size];
+        npcStepLeft = new int[size];
+        npcIdleTicks = new int[size];
+        npcClip = new int[size];
+        npcAnimTime = new int[size];
+        npcAnimSet = new int[size];
+        npcSeed = new int[size];
+    }
+}